@@ -0,0 +1,104 @@
+package com.sirebringo.autoclip;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import net.runelite.api.Client;
+import net.runelite.client.callback.ClientThread;
+
+/**
+ * Helpers shared by the benchmarks: loading the checked-in corpora and building the triggers without Guice.
+ */
+final class BenchmarkSupport {
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Reads a corpus resource next to this class, skipping blank lines and lines starting with {@code #}.
+     */
+    static List<String> readCorpus(String name) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (InputStream in = BenchmarkSupport.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Missing corpus " + name);
+            }
+
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Creates a trigger dispatcher, without its thread, over all the plugin's triggers and an inert client. Every
+     * config toggle reads as enabled and every varbit reads as 1, so chat messages travel the longest path through the
+     * triggers; saves are swallowed, so nothing reaches OBS.
+     */
+    static TriggerDispatcher createTriggerDispatcher() {
+        final Client client = (Client) stub(Client.class);
+        final ConfigSnapshot config = ConfigSnapshot.of((AutoClipConfig) stub(AutoClipConfig.class));
+        final ItemPriceCache prices = new ItemPriceCache();
+        final TriggerDispatcher[] dispatcher = new TriggerDispatcher[1];
+        final ClipTriggerRegistry registry = AutoClipPlugin.createTriggerRegistry(new TriggerContext() {
+            @Override
+            public GameSnapshot getGame() {
+                return dispatcher[0].getGame();
+            }
+
+            @Override
+            public ConfigSnapshot getConfig() {
+                return config;
+            }
+
+            @Override
+            public ItemPriceCache getItemPrices() {
+                return prices;
+            }
+
+            @Override
+            public void save(String fileName, ClipCategory category, String subDirectory, String player) {
+            }
+        });
+        dispatcher[0] = new TriggerDispatcher(client, new ClientThread(), null, registry, new ClipMetrics());
+        return dispatcher[0];
+    }
+
+    private static Object stub(Class<?> type) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            final Class<?> returnType = method.getReturnType();
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return type.getSimpleName() + " stub";
+                }
+            }
+            if (returnType == boolean.class) {
+                return type == AutoClipConfig.class;
+            }
+            if (returnType == int.class) {
+                return "getVarbitValue".equals(method.getName()) ? 1 : 0;
+            }
+            if (returnType == long.class) {
+                return 0L;
+            }
+            if (returnType == String.class) {
+                return "";
+            }
+            return null;
+        });
+    }
+}
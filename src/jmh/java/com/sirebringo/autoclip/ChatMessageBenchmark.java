@@ -0,0 +1,76 @@
+package com.sirebringo.autoclip;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.ChatMessageType;
+import net.runelite.api.events.ChatMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a chat message per message, replaying the chat corpus round-robin. The corpus is mostly noise, which is what
+ * the handler sees on the client thread during raids and skilling.
+ * <p>
+ * {@link #evaluateTriggers} runs the triggers on the calling thread, which is what the client thread spent before the
+ * triggers moved to the {@link TriggerDispatcher} and what the trigger thread spends now. {@link #handOff} is what is
+ * left on the client thread: the snapshot, the copy and the queue. It takes the event back off the queue so the queue
+ * never fills, which adds a few nanoseconds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatMessageBenchmark {
+    private TriggerDispatcher dispatcher;
+    private ChatMessage[] messages;
+    private TriggerEvent[] events;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        dispatcher = BenchmarkSupport.createTriggerDispatcher();
+
+        final List<String> corpus = BenchmarkSupport.readCorpus("chat-messages.txt");
+        messages = new ChatMessage[corpus.size()];
+        events = new TriggerEvent[corpus.size()];
+        for (int i = 0; i < corpus.size(); i++) {
+            final String[] parts = corpus.get(i).split("\t", 2);
+            final ChatMessage message = new ChatMessage();
+            message.setType(ChatMessageType.valueOf(parts[0]));
+            message.setMessage(parts[1]);
+            messages[i] = message;
+            // null for the chat types no trigger subscribed to
+            dispatcher.chatMessage(message);
+            events[i] = dispatcher.poll();
+        }
+    }
+
+    @Benchmark
+    public void evaluateTriggers() {
+        if (events[next] != null) {
+            dispatcher.dispatch(events[next]);
+        }
+        if (++next == events.length) {
+            next = 0;
+        }
+    }
+
+    @Benchmark
+    public TriggerEvent handOff() {
+        dispatcher.chatMessage(messages[next]);
+        if (++next == messages.length) {
+            next = 0;
+        }
+        return dispatcher.poll();
+    }
+}
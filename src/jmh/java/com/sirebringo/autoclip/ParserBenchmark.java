@@ -0,0 +1,70 @@
+package com.sirebringo.autoclip;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the widget and message parsers that build clip file names.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    private static final String[] HIGH_GAMBLES = {
+            "Dragon chainbody!<br>High level gamble count: <col=7f0000>1,234</col>",
+            "Clue scroll (elite)!<br>High level gamble count: <col=7f0000>57</col>",
+            "You receive nothing.",
+    };
+    private static final String[] COMBAT_TASKS = {
+            "Congratulations, you've completed an elite combat task: <col=06600c>Perfect Zulrah</col>.",
+            "Congratulations, you've completed a master combat task: <col=06600c>Can't Drain This?</col>.",
+            "Your Zulrah kill count is: <col=ff0000>500</col>.",
+    };
+    private static final String[] LEVEL_UPS = {
+            "Congratulations, you just advanced an Attack level.<br>Your Attack level is now 99.",
+            "Your Hitpoints are now 10.",
+            "Congratulations, you've just advanced your Combat level.",
+    };
+
+    private String[] quests;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        final List<String> corpus = BenchmarkSupport.readCorpus("quest-completed.txt");
+        quests = corpus.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public String parseQuestCompletedWidget() {
+        return DialogTrigger.parseQuestCompletedWidget(quests[next++ % quests.length]);
+    }
+
+    @Benchmark
+    public String parseBAHighGambleWidget() {
+        return DialogTrigger.parseBAHighGambleWidget(HIGH_GAMBLES[next++ % HIGH_GAMBLES.length]);
+    }
+
+    @Benchmark
+    public String parseCombatAchievementWidget() {
+        return CombatAchievementTrigger.parseCombatAchievementWidget(COMBAT_TASKS[next++ % COMBAT_TASKS.length]);
+    }
+
+    @Benchmark
+    public String parseLevelUpText() {
+        return DialogTrigger.parseLevelUpText(LEVEL_UPS[next++ % LEVEL_UPS.length]);
+    }
+}
@@ -0,0 +1,57 @@
+package com.sirebringo.autoclip;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adversarial inputs for the lazy {@code .+?} groups of the quest patterns. The texts are full of the tokens those
+ * groups anchor on ("ve", "ed", quotes) but can never match, so the score shows how backtracking grows with length.
+ * A score that grows much faster than {@code length} is a regression.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class QuestPatternBacktrackingBenchmark {
+    @Param({"16", "32", "64"})
+    private int length;
+
+    private String repeatedVerbs;
+    private String repeatedQuotes;
+
+    @Setup
+    public void setUp() {
+        repeatedVerbs = repeat("ve ed ", length) + "\n";
+        repeatedQuotes = "You've " + repeat("'a' ", length) + "\n";
+    }
+
+    @Benchmark
+    public String repeatedVerbs() {
+        return DialogTrigger.parseQuestCompletedWidget(repeatedVerbs);
+    }
+
+    @Benchmark
+    public String repeatedQuotes() {
+        return DialogTrigger.parseQuestCompletedWidget(repeatedQuotes);
+    }
+
+    private static String repeat(String text, int times) {
+        final StringBuilder builder = new StringBuilder(text.length() * times);
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
@@ -31,9 +31,16 @@ import net.runelite.client.config.ConfigSection;
 import net.runelite.client.config.Keybind;
 import net.runelite.client.util.ImageUploadStyle;
 
-@ConfigGroup("clip")
+@ConfigGroup(AutoClipConfig.GROUP)
 public interface AutoClipConfig extends Config
 {
+	String GROUP = "clip";
+	String POST_ROLL_KEY = "postRoll";
+	/**
+	 * The post-roll in whole seconds, before it moved to {@link #postRoll()}.
+	 */
+	String LEGACY_DELAY_KEY = "obsDelay";
+
 	@ConfigSection(
 			name = "What to Record",
 			description = "All the options that select what to clip",
@@ -48,6 +55,20 @@ public interface AutoClipConfig extends Config
 	)
 	String obsSection = "OBS Settings";
 
+	@ConfigSection(
+			name = "Disk Space",
+			description = "Limits on how much space the clip folders may take up",
+			position = 2
+	)
+	String diskSection = "Disk Space";
+
+	@ConfigSection(
+			name = "Rate Limits",
+			description = "Limits on how many clips are saved when triggers keep firing",
+			position = 3
+	)
+	String rateLimitSection = "Rate Limits";
+
 	@ConfigItem(
 			keyName = "notifyWhenClipTaken",
 			name = "Notify When Taken",
@@ -226,11 +247,37 @@ public interface AutoClipConfig extends Config
 		return false;
 	}
 
+	@ConfigItem(
+			keyName = "clipLootValue",
+			name = "Record Loot value",
+			description = "Configures whether or not clips are automatically taken when the loot of a kill or a raid, "
+					+ "Barrows or Tombs of Amascut chest is worth at least the loot value threshold. Does not need the "
+					+ "game's valuable drop messages",
+			position = 17,
+			section = whatSection
+	)
+	default boolean clipLootValue()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+			keyName = "lootValueThreshold",
+			name = "Loot Value Threshold",
+			description = "The minimum Grand Exchange value of all the items of a loot to save a clip of it.",
+			position = 18,
+			section = whatSection
+	)
+	default int lootValueThreshold()
+	{
+		return 1_000_000;
+	}
+
 	@ConfigItem(
 			keyName = "clipBaHighGamble",
 			name = "Record BA high gambles",
 			description = "Take a clip of your reward from a high gamble at Barbarian Assault.",
-			position = 18,
+			position = 19,
 			section = whatSection
 	)
 	default boolean clipHighGamble()
@@ -242,7 +289,7 @@ public interface AutoClipConfig extends Config
 			keyName = "clipCollectionLogEntries",
 			name = "Record collection log entries",
 			description = "Take a clip when completing an entry in the collection log",
-			position = 19,
+			position = 20,
 			section = whatSection
 	)
 	default boolean clipCollectionLogEntries()
@@ -254,7 +301,7 @@ public interface AutoClipConfig extends Config
 			keyName = "clipCombatAchievements",
 			name = "Record combat achievements",
 			description = "Take a clip when completing a combat achievement task",
-			position = 20,
+			position = 21,
 			section = whatSection
 	)
 	default boolean clipCombatAchievements()
@@ -262,6 +309,21 @@ public interface AutoClipConfig extends Config
 		return true;
 	}
 
+	@ConfigItem(
+			keyName = "customTriggers",
+			name = "Custom triggers",
+			description = "One rule per line: <regex> => <subdirectory>/<file name>. The regex is matched against game "
+					+ "and clan messages without colour tags, and the file name may refer to its groups as $1 to $9. "
+					+ "The first rule to match is used. Backreferences must use named groups, \\k<name>. "
+					+ "Lines starting with # are ignored",
+			position = 22,
+			section = whatSection
+	)
+	default String customTriggers()
+	{
+		return "";
+	}
+
 	@ConfigItem(
 			keyName = "obsServerHost",
 			name = "Websocket host address",
@@ -277,7 +339,7 @@ public interface AutoClipConfig extends Config
 			keyName = "obsServerPort",
 			name = "Websocket port",
 			description = "The port on which OBS Websocket runs",
-			position = 3,
+			position = 2,
 			section = obsSection
 	)
 	default int obsServerPort()
@@ -289,7 +351,7 @@ public interface AutoClipConfig extends Config
 			keyName = "obsServerPassword",
 			name = "Websocket password",
 			description = "The password to authenticate with the server (optional)",
-			position = 4,
+			position = 3,
 			section = obsSection
 	)
 	default String obsServerPassword()
@@ -298,14 +360,258 @@ public interface AutoClipConfig extends Config
 	}
 
 	@ConfigItem(
-			keyName = "obsDelay",
-			name = "Delay (seconds)",
-			description = "How many seconds to wait until the replay buffer will save (0 = instant)",
+			keyName = "additionalObsTargets",
+			name = "Other OBS instances",
+			description = "Also save every clip on these OBS instances, one \"<host>:<port>:<password>\" per line. "
+					+ "The password may be left out, an IPv6 host goes in brackets, e.g. \"[::1]:4455\"",
 			position = 4,
 			section = obsSection
 	)
-	default int obsDelay()
+	default String additionalObsTargets()
+	{
+		return "";
+	}
+
+	@ConfigItem(
+			keyName = AutoClipConfig.POST_ROLL_KEY,
+			name = "Post-roll (ms)",
+			description = "How much of the game after the trigger to keep in the clip. The save is sent early by the "
+					+ "time OBS takes to receive it",
+			position = 5,
+			section = obsSection
+	)
+	default int postRoll()
+	{
+		return 0;
+	}
+
+	@ConfigItem(
+			keyName = "postRollPerCategory",
+			name = "Post-roll per category",
+			description = "One \"<category>: <ms>\" per line to override the post-roll, e.g. \"Deaths: 3000\"",
+			position = 6,
+			section = obsSection
+	)
+	default String postRollPerCategory()
+	{
+		return "";
+	}
+
+	@ConfigItem(
+			keyName = "mergeWindow",
+			name = "Merge window (ms)",
+			description = "Triggers within this many milliseconds of the first one join its clip while it waits for its "
+					+ "post-roll, without delaying it (0 = never merge)",
+			position = 7,
+			section = obsSection
+	)
+	default int mergeWindow()
+	{
+		return 1200;
+	}
+
+	@ConfigItem(
+			keyName = "clipQueueSize",
+			name = "Clip queue size",
+			description = "How many clips may wait for OBS while another clip is being saved",
+			position = 8,
+			section = obsSection
+	)
+	default int clipQueueSize()
+	{
+		return 8;
+	}
+
+	@ConfigItem(
+			keyName = "clipQueueOverflow",
+			name = "When queue is full",
+			description = "What to do with a new clip when the clip queue is full",
+			position = 9,
+			section = obsSection
+	)
+	default ClipOverflowPolicy clipQueueOverflow()
+	{
+		return ClipOverflowPolicy.MERGE;
+	}
+
+	@ConfigItem(
+			keyName = "clipMode",
+			name = "Clip mode",
+			description = "Change output settings: OBS saves straight into the category folder<br>"
+					+ "Move file after save: only asks OBS to save, then moves the file into the category folder. "
+					+ "Only works when OBS runs on this computer<br>"
+					+ "Cut from recording: keeps OBS recording and cuts the clips out of the recording when it stops, "
+					+ "or on ::clips cut. Only works when OBS runs on this computer",
+			position = 10,
+			section = obsSection
+	)
+	default ClipMode clipMode()
+	{
+		return ClipMode.OUTPUT_SETTINGS;
+	}
+
+	@ConfigItem(
+			keyName = "metricsLogInterval",
+			name = "Metrics log interval (minutes)",
+			description = "How often to write clip timings and counts to the client log (0 = never). "
+					+ "The same numbers are always available over JMX",
+			position = 11,
+			section = obsSection
+	)
+	default int metricsLogInterval()
+	{
+		return 30;
+	}
+
+	@ConfigItem(
+			keyName = "trimClips",
+			name = "Trim saved clips",
+			description = "Cut saved clips down to the pre-roll before their trigger, at the nearest keyframe and without "
+					+ "re-encoding. Works for MKV and MP4 recordings",
+			position = 12,
+			section = obsSection
+	)
+	default boolean trimClips()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+			keyName = "trimPreRoll",
+			name = "Trim pre-roll (seconds)",
+			description = "How much of the recording before the trigger to keep when trimming, or when cutting clips "
+					+ "from a recording",
+			position = 13,
+			section = obsSection
+	)
+	default int trimPreRoll()
+	{
+		return 30;
+	}
+
+	@ConfigItem(
+			keyName = "trimPreRollPerCategory",
+			name = "Pre-roll per category",
+			description = "One \"<category>: <seconds>\" per line to override the pre-roll, e.g. \"Pets: 15\". "
+					+ "0 keeps the whole clip",
+			position = 14,
+			section = obsSection
+	)
+	default String trimPreRollPerCategory()
+	{
+		return "";
+	}
+
+	@ConfigItem(
+			keyName = "saveThumbnails",
+			name = "Save thumbnails",
+			description = "Save a picture of the game at the moment of the trigger next to each clip",
+			position = 15,
+			section = obsSection
+	)
+	default boolean saveThumbnails()
+	{
+		return true;
+	}
+
+	@ConfigItem(
+			keyName = "recordGameEvents",
+			name = "Record game events",
+			description = "Write the game events the clip triggers see to .runelite/obs-auto-clip/events, to replay "
+					+ "them when a clip was missed or taken by mistake",
+			position = 16,
+			section = obsSection
+	)
+	default boolean recordGameEvents()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+			keyName = "clipFolderLimit",
+			name = "Clip folder limit (MB)",
+			description = "Delete old clips once the category folders under the OBS replay path take up more than this "
+					+ "(0 = no limit). Manual clips are never deleted. Only works when OBS runs on this computer",
+			position = 1,
+			section = diskSection
+	)
+	default int clipFolderLimit()
+	{
+		return 0;
+	}
+
+	@ConfigItem(
+			keyName = "categoryFolderLimits",
+			name = "Limit per category",
+			description = "One \"<category>: <MB>\" per line to limit the folder of a single category, e.g. \"Deaths: 2000\"",
+			position = 2,
+			section = diskSection
+	)
+	default String categoryFolderLimits()
+	{
+		return "";
+	}
+
+	@ConfigItem(
+			keyName = "quotaEviction",
+			name = "Delete first",
+			description = "Which clips to delete first when the clip folder is over its limit",
+			position = 3,
+			section = diskSection
+	)
+	default QuotaEvictionPolicy quotaEviction()
+	{
+		return QuotaEvictionPolicy.OLDEST_FIRST;
+	}
+
+	@ConfigItem(
+			keyName = "clipBurst",
+			name = "Clips in a row",
+			description = "How many clips of one category may be saved in quick succession. Triggers past that are "
+					+ "counted into the name of the next clip of the category (0 = no limit)",
+			position = 1,
+			section = rateLimitSection
+	)
+	default int clipBurst()
+	{
+		return 2;
+	}
+
+	@ConfigItem(
+			keyName = "clipBurstPerCategory",
+			name = "Clips in a row per category",
+			description = "One \"<category>: <clips>\" per line to override the clips in a row, e.g. \"Deaths: 1\"",
+			position = 2,
+			section = rateLimitSection
+	)
+	default String clipBurstPerCategory()
+	{
+		return "";
+	}
+
+	@ConfigItem(
+			keyName = "playerClipBurst",
+			name = "Clips in a row per player",
+			description = "How many kills or deaths of the same other player may be clipped in quick succession "
+					+ "(0 = no limit)",
+			position = 3,
+			section = rateLimitSection
+	)
+	default int playerClipBurst()
+	{
+		return 1;
+	}
+
+	@ConfigItem(
+			keyName = "clipRefill",
+			name = "Seconds per clip",
+			description = "How long it takes until one more clip of a category, or of a player, may be saved "
+					+ "(0 = no rate limits)",
+			position = 4,
+			section = rateLimitSection
+	)
+	default int clipRefill()
 	{
 		return 0;
 	}
-}
\ No newline at end of file
+}
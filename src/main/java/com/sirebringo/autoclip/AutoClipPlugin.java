@@ -25,23 +25,21 @@
 package com.sirebringo.autoclip;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-import com.google.gson.JsonObject;
 import com.google.inject.Provides;
-import io.obswebsocket.community.client.OBSRemoteController;
-import io.obswebsocket.community.client.message.event.outputs.ReplayBufferSavedEvent;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.*;
 import net.runelite.api.events.*;
-import net.runelite.api.widgets.Widget;
-import net.runelite.api.widgets.WidgetInfo;
 import net.runelite.client.Notifier;
+import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.Subscribe;
+import net.runelite.client.events.ConfigChanged;
+import net.runelite.client.events.NpcLootReceived;
 import net.runelite.client.events.PlayerLootReceived;
+import net.runelite.client.game.ItemClient;
+import net.runelite.client.game.ItemManager;
 import net.runelite.client.game.SpriteManager;
 import net.runelite.client.input.KeyManager;
 import net.runelite.client.plugins.Plugin;
@@ -52,17 +50,26 @@ import net.runelite.client.ui.DrawManager;
 import net.runelite.client.ui.NavigationButton;
 import net.runelite.client.util.HotkeyListener;
 import net.runelite.client.util.ImageCapture;
-import net.runelite.client.util.Text;
+import net.runelite.http.api.item.ItemPrice;
 
 import javax.inject.Inject;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import java.awt.image.BufferedImage;
-import java.time.LocalDate;
-import java.util.Map;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
 import java.util.concurrent.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import static net.runelite.api.widgets.WidgetID.*;
 
 @PluginDescriptor(
         name = "OBS Auto Clip",
@@ -71,74 +78,77 @@ import static net.runelite.api.widgets.WidgetID.*;
 )
 @Slf4j
 public class AutoClipPlugin extends Plugin {
-    private static final String COLLECTION_LOG_TEXT = "New item added to your collection log: ";
-    private static final String CHEST_LOOTED_MESSAGE = "You find some treasure in the chest!";
-    private static final Map<Integer, String> CHEST_LOOT_EVENTS = ImmutableMap.of(12127, "The Gauntlet");
-    private static final int GAUNTLET_REGION = 7512;
-    private static final int CORRUPTED_GAUNTLET_REGION = 7768;
-    private static final Pattern NUMBER_PATTERN = Pattern.compile("([0-9]+)");
-    private static final Pattern LEVEL_UP_PATTERN = Pattern.compile(".*Your ([a-zA-Z]+) (?:level is|are)? now (\\d+)\\.");
-    private static final Pattern BOSSKILL_MESSAGE_PATTERN = Pattern.compile("Your (.+) kill count is: <col=ff0000>(\\d+)</col>.");
-    private static final Pattern VALUABLE_DROP_PATTERN = Pattern.compile(".*Valuable drop: ([^<>]+?\\(((?:\\d+,?)+) coins\\))(?:</col>)?");
-    private static final Pattern UNTRADEABLE_DROP_PATTERN = Pattern.compile(".*Untradeable drop: ([^<>]+)(?:</col>)?");
-    private static final Pattern DUEL_END_PATTERN = Pattern.compile("You have now (won|lost) ([0-9,]+) duels?\\.");
-    private static final Pattern QUEST_PATTERN_1 = Pattern.compile(".+?ve\\.*? (?<verb>been|rebuilt|.+?ed)? ?(?:the )?'?(?<quest>.+?)'?(?: [Qq]uest)?[!.]?$");
-    private static final Pattern QUEST_PATTERN_2 = Pattern.compile("'?(?<quest>.+?)'?(?: [Qq]uest)? (?<verb>[a-z]\\w+?ed)?(?: f.*?)?[!.]?$");
-    private static final Pattern COMBAT_ACHIEVEMENTS_PATTERN = Pattern.compile("Congratulations, you've completed an? (?<tier>\\w+) combat task: <col=[0-9a-f]+>(?<task>(.+))</col>\\.");
-    private static final ImmutableList<String> RFD_TAGS = ImmutableList.of("Another Cook", "freed", "defeated", "saved");
-    private static final ImmutableList<String> WORD_QUEST_IN_NAME_TAGS = ImmutableList.of("Another Cook", "Doric", "Heroes", "Legends", "Observatory", "Olaf", "Waterfall");
-    private static final ImmutableList<String> PET_MESSAGES = ImmutableList.of("You have a funny feeling like you're being followed",
-            "You feel something weird sneaking into your backpack",
-            "You have a funny feeling like you would have been followed");
-    private static final Pattern BA_HIGH_GAMBLE_REWARD_PATTERN = Pattern.compile("(?<reward>.+)!<br>High level gamble count: <col=7f0000>(?<gambleCount>.+)</col>");
-    private static final String SD_KINGDOM_REWARDS = "Kingdom Rewards";
-    private static final String SD_BOSS_KILLS = "Boss Kills";
-    private static final String SD_CLUE_SCROLL_REWARDS = "Clue Scroll Rewards";
-    private static final String SD_PETS = "Pets";
-    private static final String SD_CHEST_LOOT = "Chest Loot";
-    private static final String SD_VALUABLE_DROPS = "Valuable Drops";
-    private static final String SD_UNTRADEABLE_DROPS = "Untradeable Drops";
-    private static final String SD_DUELS = "Duels";
-    private static final String SD_COLLECTION_LOG = "Collection Log";
-    private static final String SD_PVP_KILLS = "PvP Kills";
-    private static final String SD_DEATHS = "Deaths";
-    private static final String SD_COMBAT_ACHIEVEMENTS = "Combat Achievements";
-
-    private String clueType;
-    private Integer clueNumber;
-
-    enum KillType {
-        BARROWS,
-        COX,
-        COX_CM,
-        TOB,
-        TOB_SM,
-        TOB_HM,
-        TOA_ENTRY_MODE,
-        TOA,
-        TOA_EXPERT_MODE
-    }
-
-    private KillType killType;
-    private Integer killCountNumber;
-
-    private boolean shouldTakeClip;
-    private boolean notificationStarted;
-
-    private OBSRemoteController obsController;
-    private JsonObject baseObsOutputSettings;
-
-    private final String OBS_BASE_FORMAT = "%CCYY-%MM-%DD %hh-%mm-%ss";
-    private long replayBufferDuration = -1; // lazy init, see onOBSWSReady
-
-    private ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    private static final long PIPELINE_DRAIN_SECONDS = 3;
+    private static final String CLIPS_COMMAND = "clips";
+    private static final String CUT_ARGUMENT = "cut";
+    private static final int CLIPS_COMMAND_RESULTS = 5;
+    private static final String SHUTDOWN = "shutdown";
+
+    private volatile ConfigSnapshot configSnapshot;
+    private final ClipMetrics clipMetrics = new ClipMetrics();
+    private final TriggerJournal triggerJournal = new TriggerJournal(TriggerJournal.DEFAULT_FILE);
+    private final ClipCatalog clipCatalog = new ClipCatalog(ClipCatalog.DEFAULT_FILE);
+    private ScheduledFuture<?> metricsSummaryFuture;
+    private ObsTargets obsTargets;
+    private ClipPipeline clipPipeline;
+    private ClipCoalescer clipCoalescer;
+    private ExecutorService clipFileExecutor;
+    // saves are timed to the millisecond, keep them off the executor shared with other plugins
+    private ScheduledExecutorService saveScheduler;
+    // saves waiting on the scheduler for their post-roll, so a shutdown can tell which never reached the pipeline
+    private final Set<ClipRequest> scheduledSaves = ConcurrentHashMap.newKeySet();
+    private DiskQuotaManager diskQuotaManager;
+    private ClipThumbnails clipThumbnails;
+    private RecordingClipper recordingClipper;
+    private TriggerDispatcher triggerDispatcher;
+    // only used on the trigger thread
+    private final ClipRateLimiter clipRateLimiter = new ClipRateLimiter();
+    private final ItemPriceCache itemPrices = new ItemPriceCache();
+    // the price download blocks for a while, keep it off the executor shared with other plugins
+    private ScheduledExecutorService itemPriceScheduler;
+    private final TriggerContext triggerContext = new TriggerContext() {
+        @Override
+        public GameSnapshot getGame() {
+            return triggerDispatcher.getGame();
+        }
+
+        @Override
+        public ConfigSnapshot getConfig() {
+            return configSnapshot;
+        }
+
+        @Override
+        public ItemPriceCache getItemPrices() {
+            return itemPrices;
+        }
+
+        @Override
+        public void save(String fileName, ClipCategory category, String subDirectory, String player) {
+            final GameSnapshot game = triggerDispatcher.getGame();
+            final String name = clipRateLimiter.acquire(fileName, category, player, game.getCapturedNanos(),
+                    configSnapshot);
+            if (name == null) {
+                log.debug("Rate limited clip {} into {}", fileName, subDirectory);
+                clipMetrics.recordSuppressedTrigger();
+                return;
+            }
+            startReplayBufferSave(name, category, subDirectory, game);
+        }
+    };
+    private final ClipTriggerRegistry clipTriggers = createTriggerRegistry(triggerContext);
 
     @Inject
     private AutoClipConfig config;
 
+    @Inject
+    private ConfigManager configManager;
+
     @Inject
     private Client client;
 
+    @Inject
+    private ClientThread clientThread;
+
     @Inject
     private ClientUI clientUi;
 
@@ -163,6 +173,12 @@ public class AutoClipPlugin extends Plugin {
     @Inject
     private Notifier notifier;
 
+    @Inject
+    private ItemManager itemManager;
+
+    @Inject
+    private ItemClient itemClient;
+
     @Getter(AccessLevel.PACKAGE)
     private BufferedImage reportButton;
 
@@ -177,6 +193,27 @@ public class AutoClipPlugin extends Plugin {
         }
     };
 
+    @VisibleForTesting
+    static ClipTriggerRegistry createTriggerRegistry(TriggerContext context) {
+        return new ClipTriggerRegistry(Arrays.asList(
+                new ClueRewardTrigger(context),
+                new RaidRewardTrigger(context),
+                new PetTrigger(context),
+                new BossKillTrigger(context),
+                new ChestLootTrigger(context),
+                new ValuableDropTrigger(context),
+                new LootValueTrigger(context),
+                new UntradeableDropTrigger(context),
+                new DuelTrigger(context),
+                new CollectionLogTrigger(context),
+                new CombatAchievementTrigger(context),
+                new KingdomTrigger(context),
+                new DialogTrigger(context),
+                new DeathTrigger(context),
+                new PvpKillTrigger(context),
+                new CustomTrigger(context)));
+    }
+
     @Provides
     AutoClipConfig getConfig(ConfigManager configManager) {
         return configManager.getConfig(AutoClipConfig.class);
@@ -184,611 +221,617 @@ public class AutoClipPlugin extends Plugin {
 
     @Override
     protected void startUp() {
-        obsController = OBSRemoteController
-                .builder()
-                .host(config.obsServerHost())
-                .port(config.obsServerPort())
-                .password(config.obsServerPassword())
-                .registerEventListener(
-                        ReplayBufferSavedEvent.class, this::onSuccessfulSave
-                )
-                .lifecycle()
-                .onReady(this::onOBSWSReady)
-                .and()
-                .autoConnect(true)
-                .build();
+        migrateConfig();
+        updateConfigSnapshot();
+        saveScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "obs-auto-clip-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        clipFileExecutor = Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "obs-auto-clip-files");
+            thread.setDaemon(true);
+            return thread;
+        });
+        obsTargets = ObsTargets.connect(config.obsServerHost(), config.obsServerPort(), config.obsServerPassword(),
+                config.additionalObsTargets(), config.clipQueueSize(), clipMetrics);
+        triggerJournal.start();
+        recordingClipper = new RecordingClipper(clipFileExecutor, () -> configSnapshot, new RecordingClipper.Handler() {
+            @Override
+            public void cut(ClipRequest request, Path clip) {
+                clipCatalog.add(clip, request.getCategory(), request.getFileName(), System.currentTimeMillis());
+                triggerJournal.recordOutcome(request, TriggerJournal.Outcome.SAVED, clip.toString());
+                clipMetrics.recordSave(true);
+            }
+
+            @Override
+            public void failed(ClipRequest request, String reason) {
+                triggerJournal.recordOutcome(request, TriggerJournal.Outcome.FAILED, reason);
+                clipMetrics.recordSave(false);
+            }
+
+            @Override
+            public void finished(Path recording, int cut, int failed) {
+                notifyRecordingCut(recording, cut, failed);
+            }
+        });
+        followRecording();
+        clipThumbnails = new ClipThumbnails(drawManager);
+        clipCatalog.load();
+        final ObsTargets targets = obsTargets;
+        diskQuotaManager = new DiskQuotaManager(targets::getLocalOutputDirectory, clipCatalog, configSnapshot);
+        diskQuotaManager.start();
+        clipPipeline = new ClipPipeline(config.clipQueueSize(), config.clipQueueOverflow(), new ClipPipeline.Handler() {
+            @Override
+            public void process(ClipRequest request) throws InterruptedException {
+                processClip(request);
+            }
+
+            @Override
+            public void dropped(ClipRequest request, String reason) {
+                dropClip(request, reason);
+            }
+        }, clipMetrics);
+        clipCoalescer = new ClipCoalescer(saveScheduler, clipPipeline::submit);
+        final ClipPipeline pipeline = clipPipeline;
+        final ClipCoalescer coalescer = clipCoalescer;
+        clipMetrics.setPendingClips(() -> pipeline.getQueueDepth() + (pipeline.isBusy() ? 1 : 0) + coalescer.getPendingCount());
+        registerMetrics();
+        itemPriceScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "obs-auto-clip-prices");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        itemPriceScheduler.scheduleWithFixedDelay(this::loadItemPrices, 0, ItemPriceCache.REFRESH_MINUTES,
+                TimeUnit.MINUTES);
+        startTriggerDispatcher();
         keyManager.registerKeyListener(hotkeyListener);
     }
 
+    @VisibleForTesting
+    void startTriggerDispatcher() {
+        triggerDispatcher = new TriggerDispatcher(client, clientThread, itemManager, clipTriggers, clipMetrics);
+        triggerDispatcher.setRecording(config.recordGameEvents());
+        triggerDispatcher.start();
+    }
+
     @Override
     protected void shutDown() throws Exception {
         clientToolbar.removeNavigation(titleBarButton);
         keyManager.unregisterKeyListener(hotkeyListener);
         kickPlayerName = null;
-        notificationStarted = false;
-        obsController.disconnect();
-        obsController.stop();
-        obsController = null;
-    }
-
-    @Subscribe
-    public void onGameTick(GameTick event) {
-        if (!shouldTakeClip) {
-            return;
-        }
-
-        shouldTakeClip = false;
-        String clipSubDir = null;
-
-        String fileName = null;
-        if (client.getWidget(WidgetInfo.LEVEL_UP_LEVEL) != null) {
-            fileName = parseLevelUpWidget(WidgetInfo.LEVEL_UP_LEVEL);
-            clipSubDir = "Levels";
-        } else if (client.getWidget(WidgetInfo.DIALOG_SPRITE_TEXT) != null) {
-            String text = client.getWidget(WidgetInfo.DIALOG_SPRITE_TEXT).getText();
-            if (Text.removeTags(text).contains("High level gamble")) {
-                if (config.clipHighGamble()) {
-                    fileName = parseBAHighGambleWidget(text);
-                    clipSubDir = "BA High Gambles";
-                }
-            } else {
-                if (config.clipLevels()) {
-                    fileName = parseLevelUpWidget(WidgetInfo.DIALOG_SPRITE_TEXT);
-                    clipSubDir = "Levels";
-                }
+        itemPriceScheduler.shutdownNow();
+        itemPriceScheduler = null;
+        // the triggers' saves still reach the pipeline, which drains them below
+        triggerDispatcher.stop(PIPELINE_DRAIN_SECONDS, TimeUnit.SECONDS);
+        triggerDispatcher = null;
+        clipTriggers.reset();
+        clipRateLimiter.reset();
+        for (ClipRequest request : clipCoalescer.clear()) {
+            dropClip(request, SHUTDOWN);
+        }
+        obsTargets.getConnections().get(0).followRecording(null);
+        for (ClipRequest request : recordingClipper.clear()) {
+            triggerJournal.recordOutcome(request, TriggerJournal.Outcome.DROPPED, "the recording was not cut");
+        }
+        saveScheduler.shutdownNow();
+        saveScheduler = null;
+        for (ClipRequest request : scheduledSaves) {
+            if (scheduledSaves.remove(request)) {
+                dropClip(request, SHUTDOWN);
             }
-        } else if (client.getWidget(WidgetInfo.QUEST_COMPLETED_NAME_TEXT) != null) {
-            String text = client.getWidget(WidgetInfo.QUEST_COMPLETED_NAME_TEXT).getText();
-            fileName = parseQuestCompletedWidget(text);
-            clipSubDir = "Quests";
-        }
-
-        if (fileName != null) {
-            startReplayBufferSave(fileName, clipSubDir);
-
-            // this is a copy of the "clip" plugin they already had, but instead of saving a clip, I now want to
-            // save the replay buffer of OBS
-
-
-            // basically, this function should send a "save" request
         }
+        clipPipeline.shutdown(PIPELINE_DRAIN_SECONDS, TimeUnit.SECONDS);
+        clipPipeline = null;
+        obsTargets.shutdown(PIPELINE_DRAIN_SECONDS, TimeUnit.SECONDS);
+        clipFileExecutor.shutdown();
+        clipFileExecutor.awaitTermination(PIPELINE_DRAIN_SECONDS, TimeUnit.SECONDS);
+        clipFileExecutor = null;
+        recordingClipper = null;
+        triggerJournal.stop(PIPELINE_DRAIN_SECONDS, TimeUnit.SECONDS);
+        clipThumbnails.shutdown(PIPELINE_DRAIN_SECONDS, TimeUnit.SECONDS);
+        clipThumbnails = null;
+        diskQuotaManager.stop(PIPELINE_DRAIN_SECONDS, TimeUnit.SECONDS);
+        diskQuotaManager = null;
+        clipCatalog.close();
+        obsTargets.disconnect();
+        obsTargets = null;
+        unregisterMetrics();
     }
 
-    @Subscribe
-    public void onActorDeath(ActorDeath actorDeath) { // this is where a player dies for instance
-        Actor actor = actorDeath.getActor();
-        if (actor instanceof Player) {
-            Player player = (Player) actor;
-            if (player == client.getLocalPlayer() && config.clipPlayerDeath()) {
-                startReplayBufferSave("Deaths", SD_DEATHS);
-            } else if (player != client.getLocalPlayer()
-                    && player.getCanvasTilePoly() != null
-                    && (((player.isFriendsChatMember() || player.isFriend()) && config.clipFriendDeath())
-                    || (player.isClanMember() && config.clipClanDeath()))) {
-                startReplayBufferSave("Death " + player.getName(), SD_DEATHS);
-            }
-        }
-    }
-
-    @Subscribe
-    public void onPlayerLootReceived(final PlayerLootReceived playerLootReceived) { // here a user gets some loot
-        if (config.clipKills()) {
-            final Player player = playerLootReceived.getPlayer();
-            final String name = player.getName();
-            String fileName = "Kill " + name;
-            startReplayBufferSave(fileName, SD_PVP_KILLS);
+    private void registerMetrics() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(clipMetrics, ClipMetricsMXBean.class, true), new ObjectName(ClipMetrics.OBJECT_NAME));
+        } catch (JMException e) {
+            log.debug("Could not register clip metrics with JMX", e);
         }
-    }
 
-    @Subscribe
-    public void onScriptCallbackEvent(ScriptCallbackEvent e) {
-        if (!"confirmFriendsChatKick".equals(e.getEventName())) {
-            return;
+        final int interval = config.metricsLogInterval();
+        if (interval > 0) {
+            final ClipMetrics metrics = clipMetrics;
+            metricsSummaryFuture = executor.scheduleAtFixedRate(() -> logMetricsSummary(metrics), interval, interval, TimeUnit.MINUTES);
         }
-
-        final String[] stringStack = client.getStringStack();
-        final int stringSize = client.getStringStackSize();
-        kickPlayerName = stringStack[stringSize - 1];
     }
 
-    @Subscribe
-    public void onChatMessage(ChatMessage event) {
-        if (event.getType() != ChatMessageType.GAMEMESSAGE
-                && event.getType() != ChatMessageType.SPAM
-                && event.getType() != ChatMessageType.TRADE
-                && event.getType() != ChatMessageType.FRIENDSCHATNOTIFICATION) {
+    /**
+     * Loads the prices for the loot value trigger, while it is enabled.
+     */
+    private void loadItemPrices() {
+        if (!configSnapshot.clipLootValue()) {
             return;
         }
 
-        String chatMessage = event.getMessage();
-
-        if (chatMessage.contains("You have completed") && chatMessage.contains("Treasure")) {
-            Matcher m = NUMBER_PATTERN.matcher(Text.removeTags(chatMessage));
-            if (m.find()) {
-                clueNumber = Integer.valueOf(m.group());
-                clueType = chatMessage.substring(chatMessage.lastIndexOf(m.group()) + m.group().length() + 1, chatMessage.indexOf("Treasure") - 1);
-                return;
-            }
-        }
-
-        if (chatMessage.startsWith("Your Barrows chest count is")) {
-            Matcher m = NUMBER_PATTERN.matcher(Text.removeTags(chatMessage));
-            if (m.find()) {
-                killType = KillType.BARROWS;
-                killCountNumber = Integer.valueOf(m.group());
-                return;
-            }
-        }
-
-        if (chatMessage.startsWith("Your completed Chambers of Xeric count is:")) {
-            Matcher m = NUMBER_PATTERN.matcher(Text.removeTags(chatMessage));
-            if (m.find()) {
-                killType = KillType.COX;
-                killCountNumber = Integer.valueOf(m.group());
-                return;
-            }
-        }
-
-        if (chatMessage.startsWith("Your completed Chambers of Xeric Challenge Mode count is:")) {
-            Matcher m = NUMBER_PATTERN.matcher(Text.removeTags(chatMessage));
-            if (m.find()) {
-                killType = KillType.COX_CM;
-                killCountNumber = Integer.valueOf(m.group());
-                return;
+        try {
+            final ItemPrice[] prices = itemClient.getPrices();
+            if (prices != null) {
+                itemPrices.load(prices);
+                log.debug("Loaded {} item prices", prices.length);
             }
+        } catch (IOException e) {
+            log.debug("Could not load the item prices", e);
         }
+    }
 
-        if (chatMessage.startsWith("Your completed Theatre of Blood")) {
-            Matcher m = NUMBER_PATTERN.matcher(Text.removeTags(chatMessage));
-            if (m.find()) {
-                killType = chatMessage.contains("Hard Mode") ? KillType.TOB_HM : (chatMessage.contains("Story Mode") ? KillType.TOB_SM : KillType.TOB);
-                killCountNumber = Integer.valueOf(m.group());
-                return;
-            }
+    private void unregisterMetrics() {
+        if (metricsSummaryFuture != null) {
+            metricsSummaryFuture.cancel(false);
+            metricsSummaryFuture = null;
         }
+        logMetricsSummary(clipMetrics);
+        clipMetrics.setPendingClips(() -> 0);
 
-        if (chatMessage.startsWith("Your completed Tombs of Amascut")) {
-            Matcher m = NUMBER_PATTERN.matcher(Text.removeTags(chatMessage));
-            if (m.find()) {
-                killType = chatMessage.contains("Expert Mode") ? KillType.TOA_EXPERT_MODE :
-                        chatMessage.contains("Entry Mode") ? KillType.TOA_ENTRY_MODE :
-                                KillType.TOA;
-                killCountNumber = Integer.valueOf(m.group());
-                return;
-            }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(ClipMetrics.OBJECT_NAME));
+        } catch (JMException e) {
+            log.debug("Could not unregister clip metrics from JMX", e);
         }
+    }
 
-        if (config.clipPet() && PET_MESSAGES.stream().anyMatch(chatMessage::contains)) {
-            String fileName = "Pet";
-            startReplayBufferSave(fileName, SD_PETS);
+    private static void logMetricsSummary(ClipMetrics metrics) {
+        final String summary = metrics.summary();
+        if (summary != null) {
+            log.info("Clip metrics: {}", summary);
         }
+    }
 
-        if (config.clipBossKills()) {
-            Matcher m = BOSSKILL_MESSAGE_PATTERN.matcher(chatMessage);
-            if (m.matches()) {
-                String bossName = m.group(1);
-                String bossKillcount = m.group(2);
-                String fileName = bossName + "(" + bossKillcount + ")";
-                startReplayBufferSave(fileName, SD_BOSS_KILLS);
-            }
+    /**
+     * Moves the post-roll from whole seconds in {@code obsDelay} to milliseconds in {@code postRoll}.
+     */
+    private void migrateConfig() {
+        final String legacyDelay = configManager.getConfiguration(AutoClipConfig.GROUP, AutoClipConfig.LEGACY_DELAY_KEY);
+        if (legacyDelay == null) {
+            return;
         }
 
-        if (chatMessage.equals(CHEST_LOOTED_MESSAGE) && config.clipRewards()) {
-            final int regionID = client.getLocalPlayer().getWorldLocation().getRegionID();
-            String eventName = CHEST_LOOT_EVENTS.get(regionID);
-            if (eventName != null) {
-                startReplayBufferSave(eventName, SD_CHEST_LOOT);
+        if (configManager.getConfiguration(AutoClipConfig.GROUP, AutoClipConfig.POST_ROLL_KEY) == null) {
+            try {
+                configManager.setConfiguration(AutoClipConfig.GROUP, AutoClipConfig.POST_ROLL_KEY,
+                        TimeUnit.SECONDS.toMillis(Integer.parseInt(legacyDelay.trim())));
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring unreadable obsDelay setting \"{}\"", legacyDelay);
             }
         }
+        configManager.unsetConfiguration(AutoClipConfig.GROUP, AutoClipConfig.LEGACY_DELAY_KEY);
+    }
 
-        if (config.clipValuableDrop()) {
-            Matcher m = VALUABLE_DROP_PATTERN.matcher(chatMessage);
-            if (m.matches()) {
-                int valuableDropValue = Integer.parseInt(m.group(2).replaceAll(",", ""));
-                if (valuableDropValue >= config.valuableDropThreshold()) {
-                    String valuableDropName = m.group(1);
-                    String fileName = "Valuable drop " + valuableDropName;
-                    startReplayBufferSave(fileName, SD_VALUABLE_DROPS);
-                }
-            }
+    @Subscribe
+    public void onConfigChanged(ConfigChanged event) {
+        if (AutoClipConfig.GROUP.equals(event.getGroup())) {
+            updateConfigSnapshot();
         }
+    }
 
-        if (config.clipUntradeableDrop() && !isInsideGauntlet()) {
-            Matcher m = UNTRADEABLE_DROP_PATTERN.matcher(chatMessage);
-            if (m.matches()) {
-                String untradeableDropName = m.group(1);
-                String fileName = "Untradeable drop " + untradeableDropName;
-                startReplayBufferSave(fileName, SD_UNTRADEABLE_DROPS);
-            }
-        }
+    @VisibleForTesting
+    void updateConfigSnapshot() {
+        final boolean lootValueEnabled = configSnapshot != null && configSnapshot.clipLootValue();
+        configSnapshot = ConfigSnapshot.of(config);
+        final ScheduledExecutorService prices = itemPriceScheduler;
+        if (configSnapshot.clipLootValue() && !lootValueEnabled && prices != null && !prices.isShutdown()
+                && !itemPrices.isLoaded()) {
+            // rather than after the next refresh
+            prices.execute(this::loadItemPrices);
+        }
+        if (diskQuotaManager != null) {
+            diskQuotaManager.setConfig(configSnapshot);
+        }
+        if (triggerDispatcher != null) {
+            triggerDispatcher.setRecording(config.recordGameEvents());
+        }
+        followRecording();
+    }
 
-        if (config.clipDuels()) {
-            Matcher m = DUEL_END_PATTERN.matcher(chatMessage);
-            if (m.find()) {
-                String result = m.group(1);
-                String count = m.group(2).replace(",", "");
-                String fileName = "Duel " + result + " (" + count + ")";
-                startReplayBufferSave(fileName, SD_DUELS);
-            }
+    /**
+     * Has the first OBS record while clips are cut from its recording.
+     */
+    private void followRecording() {
+        final ObsTargets targets = obsTargets;
+        final RecordingClipper clipper = recordingClipper;
+        if (targets == null || clipper == null) {
+            return;
         }
+        targets.getConnections().get(0).followRecording(configSnapshot.clipMode() == ClipMode.CUT_FROM_RECORDING
+                ? clipper::recordingStopped
+                : null);
+    }
 
-        if (config.clipCollectionLogEntries() && chatMessage.startsWith(COLLECTION_LOG_TEXT) && client.getVarbitValue(Varbits.COLLECTION_LOG_NOTIFICATION) == 1) {
-            String entry = Text.removeTags(chatMessage).substring(COLLECTION_LOG_TEXT.length());
-            String fileName = "Collection log (" + entry + ")";
-            startReplayBufferSave(fileName, SD_COLLECTION_LOG);
-        }
+    @Subscribe
+    public void onGameTick(GameTick event) {
+        triggerDispatcher.gameTick(event);
+    }
 
-        if (chatMessage.contains("combat task") && config.clipCombatAchievements() && client.getVarbitValue(Varbits.COMBAT_ACHIEVEMENTS_POPUP) == 1) {
-            String fileName = parseCombatAchievementWidget(chatMessage);
-            if (!fileName.isEmpty()) {
-                startReplayBufferSave(fileName, SD_COMBAT_ACHIEVEMENTS);
-            }
-        }
+    @Subscribe
+    public void onActorDeath(ActorDeath event) {
+        triggerDispatcher.actorDeath(event);
     }
 
     @Subscribe
-    public void onWidgetLoaded(WidgetLoaded event) {
-        String fileName;
-        String clipSubDir;
-        int groupId = event.getGroupId();
-
-        switch (groupId) {
-            case QUEST_COMPLETED_GROUP_ID:
-            case CLUE_SCROLL_REWARD_GROUP_ID:
-            case CHAMBERS_OF_XERIC_REWARD_GROUP_ID:
-            case THEATRE_OF_BLOOD_REWARD_GROUP_ID:
-            case TOA_REWARD_GROUP_ID:
-            case BARROWS_REWARD_GROUP_ID:
-                if (!config.clipRewards()) {
-                    return;
-                }
-                break;
-            case LEVEL_UP_GROUP_ID:
-                if (!config.clipLevels()) {
-                    return;
-                }
-                break;
-            case DIALOG_SPRITE_GROUP_ID:
-                if (!(config.clipLevels() || config.clipHighGamble())) {
-                    return;
-                }
-                break;
-            case KINGDOM_GROUP_ID:
-                if (!config.clipKingdom()) {
-                    return;
-                }
-                break;
-        }
+    public void onPlayerLootReceived(final PlayerLootReceived event) {
+        triggerDispatcher.playerLootReceived(event);
+    }
 
-        switch (groupId) {
-            case KINGDOM_GROUP_ID: {
-                fileName = "Kingdom " + LocalDate.now();
-                clipSubDir = SD_KINGDOM_REWARDS;
-                break;
-            }
-            case CHAMBERS_OF_XERIC_REWARD_GROUP_ID: {
-                if (killType == KillType.COX) {
-                    fileName = "Chambers of Xeric(" + killCountNumber + ")";
-                    clipSubDir = SD_BOSS_KILLS;
-                    killType = null;
-                    killCountNumber = 0;
-                    break;
-                } else if (killType == KillType.COX_CM) {
-                    fileName = "Chambers of Xeric Challenge Mode(" + killCountNumber + ")";
-                    clipSubDir = SD_BOSS_KILLS;
-                    killType = null;
-                    killCountNumber = 0;
-                    break;
-                }
-                return;
-            }
-            case THEATRE_OF_BLOOD_REWARD_GROUP_ID: {
-                if (killType != KillType.TOB && killType != KillType.TOB_SM && killType != KillType.TOB_HM) {
-                    return;
-                }
+    @Subscribe
+    public void onNpcLootReceived(final NpcLootReceived event) {
+        triggerDispatcher.npcLootReceived(event);
+    }
 
-                switch (killType) {
-                    case TOB:
-                        fileName = "Theatre of Blood(" + killCountNumber + ")";
-                        break;
-                    case TOB_SM:
-                        fileName = "Theatre of Blood Story Mode(" + killCountNumber + ")";
-                        break;
-                    case TOB_HM:
-                        fileName = "Theatre of Blood Hard Mode(" + killCountNumber + ")";
-                        break;
-                    default:
-                        throw new IllegalStateException();
-                }
 
-                clipSubDir = SD_BOSS_KILLS;
-                killType = null;
-                killCountNumber = 0;
-                break;
-            }
-            case TOA_REWARD_GROUP_ID: {
-                if (killType != KillType.TOA && killType != KillType.TOA_ENTRY_MODE && killType != KillType.TOA_EXPERT_MODE) {
-                    return;
-                }
+    @Subscribe
+    public void onChatMessage(ChatMessage event) {
+        triggerDispatcher.chatMessage(event);
+    }
 
-                switch (killType) {
-                    case TOA:
-                        fileName = "Tombs of Amascut(" + killCountNumber + ")";
-                        break;
-                    case TOA_ENTRY_MODE:
-                        fileName = "Tombs of Amascut Entry Mode(" + killCountNumber + ")";
-                        break;
-                    case TOA_EXPERT_MODE:
-                        fileName = "Tombs of Amascut Expert Mode(" + killCountNumber + ")";
-                        break;
-                    default:
-                        throw new IllegalStateException();
-                }
+    @Subscribe
+    public void onWidgetLoaded(WidgetLoaded event) {
+        triggerDispatcher.widgetLoaded(event);
+    }
 
-                clipSubDir = SD_BOSS_KILLS;
-                killType = null;
-                killCountNumber = 0;
-                break;
-            }
-            case BARROWS_REWARD_GROUP_ID: {
-                if (killType != KillType.BARROWS) {
-                    return;
-                }
+    @Subscribe
+    public void onScriptPreFired(ScriptPreFired event) {
+        triggerDispatcher.scriptPreFired(event);
+    }
 
-                fileName = "Barrows(" + killCountNumber + ")";
-                clipSubDir = SD_BOSS_KILLS;
-                killType = null;
-                killCountNumber = 0;
-                break;
-            }
-            case LEVEL_UP_GROUP_ID:
-            case DIALOG_SPRITE_GROUP_ID:
-            case QUEST_COMPLETED_GROUP_ID: {
-                // level up widget gets loaded prior to the text being set, so wait until the next tick
-                shouldTakeClip = true;
-                return;
-            }
-            case CLUE_SCROLL_REWARD_GROUP_ID: {
-                if (clueType == null || clueNumber == null) {
-                    return;
-                }
+    @Subscribe
+    public void onCommandExecuted(CommandExecuted event) {
+        if (!CLIPS_COMMAND.equalsIgnoreCase(event.getCommand())) {
+            return;
+        }
 
-                fileName = Character.toUpperCase(clueType.charAt(0)) + clueType.substring(1) + "(" + clueNumber + ")";
-                clipSubDir = SD_CLUE_SCROLL_REWARDS;
-                clueType = null;
-                clueNumber = null;
-                break;
-            }
-            default:
-                return;
+        final String prefix = String.join(" ", event.getArguments());
+        if (CUT_ARGUMENT.equalsIgnoreCase(prefix)) {
+            cutRecording();
+            return;
+        }
+        if (prefix.isEmpty()) {
+            printChat(clipCatalog.size() + " clips in the catalog. Use ::" + CLIPS_COMMAND + " <name> to find some");
+            return;
         }
 
-        startReplayBufferSave(fileName, clipSubDir);
+        final List<ClipCatalog.Entry> found = clipCatalog.findByName(prefix);
+        printChat(found.size() + " clips found for \"" + prefix + "\"");
+        found.sort(Comparator.comparingLong(ClipCatalog.Entry::getSavedMillis).reversed());
+        for (ClipCatalog.Entry entry : found.subList(0, Math.min(found.size(), CLIPS_COMMAND_RESULTS))) {
+            printChat(entry.getName() + (entry.getCount() >= 0 ? " (" + entry.getCount() + ")" : "") + ": " + entry.getPath());
+        }
     }
 
-    @Subscribe
-    public void onScriptPreFired(ScriptPreFired scriptPreFired) {
-        switch (scriptPreFired.getScriptId()) {
-            case ScriptID.NOTIFICATION_START:
-                notificationStarted = true;
-                break;
-            case ScriptID.NOTIFICATION_DELAY:
-                if (!notificationStarted) {
-                    return;
-                }
-                String topText = client.getVarcStrValue(VarClientStr.NOTIFICATION_TOP_TEXT);
-                String bottomText = client.getVarcStrValue(VarClientStr.NOTIFICATION_BOTTOM_TEXT);
-                if (topText.equalsIgnoreCase("Collection log") && config.clipCollectionLogEntries()) {
-                    String entry = Text.removeTags(bottomText).substring("New item:".length());
-                    String fileName = "Collection log (" + entry + ")";
-                    startReplayBufferSave(fileName, SD_COLLECTION_LOG);
-                }
-                if (topText.equalsIgnoreCase("Combat Task Completed!") && config.clipCombatAchievements() && client.getVarbitValue(Varbits.COMBAT_ACHIEVEMENTS_POPUP) == 0) {
-                    String entry = Text.removeTags(bottomText).substring("Task Completed: ".length());
-                    String fileName = "Combat task (" + entry.replaceAll("[:?]", "") + ")";
-                    startReplayBufferSave(fileName, SD_COMBAT_ACHIEVEMENTS);
-                }
-                notificationStarted = false;
-                break;
+    private void cutRecording() {
+        if (configSnapshot.clipMode() != ClipMode.CUT_FROM_RECORDING) {
+            printChat("Clips are only cut from recordings in the \"" + ClipMode.CUT_FROM_RECORDING + "\" clip mode");
+        } else if (obsTargets.getConnections().get(0).splitRecording()) {
+            printChat("Cutting the clips from the recording so far, OBS starts a new recording");
+        } else {
+            printChat("OBS is not recording");
         }
     }
 
+    private void printChat(String message) {
+        client.addChatMessage(ChatMessageType.GAMEMESSAGE, "", message, null);
+    }
+
     private void manualScreenshot() {
-        startReplayBufferSave("Manual", "Manual");
+        // the hotkey is handled on the AWT thread, and the client may only be read on the client thread
+        clientThread.invoke(() -> startReplayBufferSave("Manual", ClipCategory.MANUAL,
+                ClipCategory.MANUAL.getDirectoryName(), GameSnapshot.capture(client)));
     }
 
     /**
-     * Receives a WidgetInfo pointing to the middle widget of the level-up dialog,
-     * and parses it into a shortened string for filename usage.
-     *
-     * @param levelUpLevel WidgetInfo pointing to the required text widget,
-     *                     with the format "Your Skill (level is/are) now 99."
-     * @return Shortened string in the format "Skill(99)"
+     * Runs one clip job on the pipeline worker. The outcome is reported once every OBS is done with it, which may be
+     * after the next job started.
+     */
+    private void processClip(ClipRequest request) throws InterruptedException {
+        final ClipMode mode = configSnapshot.clipMode();
+        obsTargets.save(request, mode, results -> placeClip(request, mode, results));
+    }
+
+    /**
+     * Moves and trims the saved replays, then reports the outcome. Runs once every OBS is done with the clip.
      */
-    String parseLevelUpWidget(WidgetInfo levelUpLevel) {
-        Widget levelChild = client.getWidget(levelUpLevel);
-        if (levelChild == null) {
-            return null;
+    private void placeClip(ClipRequest request, ClipMode mode, List<ObsConnection.SaveResult> results) {
+        boolean anySaved = false;
+        for (ObsConnection.SaveResult result : results) {
+            if (result.isSuccessful()) {
+                anySaved = true;
+            } else {
+                log.debug("Clip {} failed on {}: {}", request, result.getConnection().getName(), result.getFailureReason());
+            }
         }
 
-        Matcher m = LEVEL_UP_PATTERN.matcher(levelChild.getText());
-        if (!m.matches()) {
-            return null;
+        final boolean move = mode == ClipMode.RENAME_AFTER_SAVE;
+        final int preRollSeconds = configSnapshot.trimClips() ? configSnapshot.trimPreRoll(request.getCategory()) : 0;
+        if (anySaved && (move || preRollSeconds > 0)) {
+            // the end of the replay, and so the end of the clip once trimmed
+            final long savedNanos = System.nanoTime();
+            // OBS is free for the next clip while the file is moved and trimmed
+            clipFileExecutor.execute(() -> {
+                final List<ObsConnection.SaveResult> placed = new ArrayList<>(results.size());
+                for (ObsConnection.SaveResult result : results) {
+                    if (!isLocalClip(result)) {
+                        placed.add(result);
+                        continue;
+                    }
+
+                    final ObsConnection.SaveResult moved = move ? moveSavedReplay(request, result) : result;
+                    if (preRollSeconds > 0) {
+                        trimSavedReplay(request, moved, preRollSeconds, savedNanos);
+                    }
+                    placed.add(moved);
+                }
+                finishClip(request, placed);
+            });
+            return;
         }
 
-        String skillName = m.group(1);
-        String skillLevel = m.group(2);
-        return skillName + "(" + skillLevel + ")";
+        finishClip(request, results);
     }
 
     /**
-     * Parses the passed quest completion dialog text into a shortened string for filename usage.
-     *
-     * @param text The {@link Widget#getText() text} of the {@link WidgetInfo#QUEST_COMPLETED_NAME_TEXT} widget.
-     * @return Shortened string in the format "Quest(The Corsair Curse)"
+     * @return Whether the clip was saved onto this computer, rather than by an OBS running elsewhere.
      */
-    @VisibleForTesting
-    static String parseQuestCompletedWidget(final String text) {
-        // "You have completed The Corsair Curse!"
-        final Matcher questMatch1 = QUEST_PATTERN_1.matcher(text);
-        // "'One Small Favour' completed!"
-        final Matcher questMatch2 = QUEST_PATTERN_2.matcher(text);
-        final Matcher questMatchFinal = questMatch1.matches() ? questMatch1 : questMatch2;
-        if (!questMatchFinal.matches()) {
-            return "Quest(quest not found)";
+    private static boolean isLocalClip(ObsConnection.SaveResult result) {
+        if (!result.isSuccessful()) {
+            return false;
         }
-
-        String quest = questMatchFinal.group("quest");
-        String verb = questMatchFinal.group("verb") != null ? questMatchFinal.group("verb") : "";
-
-        if (verb.contains("kind of")) {
-            quest += " partial completion";
-        } else if (verb.contains("completely")) {
-            quest += " II";
+        try {
+            return Files.isRegularFile(Paths.get(result.getSavedReplayPath()));
+        } catch (InvalidPathException e) {
+            return false;
         }
+    }
 
-        if (RFD_TAGS.stream().anyMatch((quest + verb)::contains)) {
-            quest = "Recipe for Disaster - " + quest;
+    private void finishClip(ClipRequest request, List<ObsConnection.SaveResult> results) {
+        final StringJoiner details = new StringJoiner(", ");
+        boolean anySaved = false;
+        boolean thumbnailSaved = false;
+        for (ObsConnection.SaveResult result : results) {
+            anySaved |= result.isSuccessful();
+            details.add((result.isSuccessful() ? result.getSavedReplayPath() : result.getFailureReason())
+                    + (result.getWarning() != null ? " (" + result.getWarning() + ")" : ""));
+            if (isLocalClip(result)) {
+                final Path clip = Paths.get(result.getSavedReplayPath());
+                clipCatalog.add(clip, request.getCategory(), request.getFileName(), System.currentTimeMillis());
+                if (!thumbnailSaved) {
+                    clipThumbnails.saved(request, clip);
+                    thumbnailSaved = true;
+                }
+            }
         }
 
-        if (WORD_QUEST_IN_NAME_TAGS.stream().anyMatch(quest::contains)) {
-            quest += " Quest";
+        triggerJournal.recordOutcome(request, anySaved ? TriggerJournal.Outcome.SAVED : TriggerJournal.Outcome.FAILED,
+                details.toString());
+        clipMetrics.recordSave(anySaved);
+        if (anySaved) {
+            clipMetrics.recordSince(ClipMetrics.Stage.TOTAL, request.getTriggeredNanos());
         }
+        if (!thumbnailSaved) {
+            clipThumbnails.discard(request);
+        }
+        notifyClipResult(results);
+    }
 
-        return "Quest(" + quest + ')';
+    private ObsConnection.SaveResult moveSavedReplay(ClipRequest request, ObsConnection.SaveResult result) {
+        final long startNanos = System.nanoTime();
+        try {
+            final Path moved = SavedReplayMover.move(Paths.get(result.getSavedReplayPath()), request);
+            clipMetrics.recordSince(ClipMetrics.Stage.FILE_MOVE, startNanos);
+            return result.withSavedReplayPath(moved.toString());
+        } catch (IOException e) {
+            log.warn("Could not move saved replay {} into {}", result.getSavedReplayPath(), request.getSubDirectory(), e);
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return result;
+        }
     }
 
     /**
-     * Parses the Barbarian Assault high gamble reward dialog text into a shortened string for filename usage.
-     *
-     * @param text The {@link Widget#getText() text} of the {@link WidgetInfo#DIALOG_SPRITE_TEXT} widget.
-     * @return Shortened string in the format "High Gamble(100)"
+     * Cuts the saved replay down to the pre-roll before the earliest trigger in the request, plus the time from that
+     * trigger until the save. Keeps the whole replay if trimming fails.
      */
-    @VisibleForTesting
-    static String parseBAHighGambleWidget(final String text) {
-        final Matcher highGambleMatch = BA_HIGH_GAMBLE_REWARD_PATTERN.matcher(text);
-        if (highGambleMatch.find()) {
-            String gambleCount = highGambleMatch.group("gambleCount");
-            return String.format("High Gamble(%s)", gambleCount);
+    private void trimSavedReplay(ClipRequest request, ObsConnection.SaveResult result, int preRollSeconds, long savedNanos) {
+        final long startNanos = System.nanoTime();
+        final long keepMillis = TimeUnit.SECONDS.toMillis(preRollSeconds)
+                + TimeUnit.NANOSECONDS.toMillis(savedNanos - request.getTriggeredNanos());
+        final long replayBufferDuration = result.getConnection().getReplayBufferDuration();
+        if (replayBufferDuration > 0 && keepMillis >= TimeUnit.SECONDS.toMillis(replayBufferDuration)) {
+            return;
         }
 
-        return "High Gamble(count not found)";
+        try {
+            final ClipTrimmer.Result trimmed = ClipTrimmer.trim(Paths.get(result.getSavedReplayPath()), keepMillis);
+            if (trimmed == ClipTrimmer.Result.TRIMMED) {
+                clipMetrics.recordSince(ClipMetrics.Stage.TRIM, startNanos);
+            } else if (trimmed == ClipTrimmer.Result.UNSUPPORTED) {
+                log.debug("Cannot trim saved replay {}, keeping all of it", result.getSavedReplayPath());
+            }
+        } catch (IOException e) {
+            log.warn("Could not trim saved replay {}, keeping all of it", result.getSavedReplayPath(), e);
+        }
     }
 
     /**
-     * Parses a combat achievement success chat message into a filename-safe string.
-     *
-     * @param text A received chat message which may or may not be from completing a combat achievement.
-     * @return A formatted string of the achieved combat task name, or the empty string if the passed message
-     * is not a combat achievement completion message.
+     * Sends one notification for all the OBS a clip was saved on, naming them only when there is more than one.
      */
-    @VisibleForTesting
-    static String parseCombatAchievementWidget(final String text) {
-        final Matcher m = COMBAT_ACHIEVEMENTS_PATTERN.matcher(text);
-        if (m.matches()) {
-            String task = m.group("task").replaceAll("[:?]", "");
-            return "Combat task (" + task + ")";
+    private void notifyClipResult(List<ObsConnection.SaveResult> results) {
+        if (!configSnapshot.notifyWhenClipTaken()) {
+            return;
         }
-        return "";
-    }
-
-    private void onOBSWSReady() {
-        // OBS WebSocket is ready
 
-        // Let's fetch Replay Buffer Settings and save the data we need from it
-        this.obsController.getOutputSettings("Replay Buffer", getOutputSettingsResponse -> {
-            this.baseObsOutputSettings = getOutputSettingsResponse.getOutputSettings();
-            if (this.baseObsOutputSettings.has("max_time_sec")) {
-                this.replayBufferDuration = this.baseObsOutputSettings.get("max_time_sec").getAsLong();
+        final boolean named = results.size() > 1;
+        final StringJoiner saved = new StringJoiner(", ", "(path: ", "");
+        final StringJoiner failed = new StringJoiner(", ");
+        final StringJoiner warnings = new StringJoiner(", ");
+        long replayBufferDuration = 0;
+        boolean anySaved = false;
+        for (ObsConnection.SaveResult result : results) {
+            final String prefix = named ? result.getConnection().getName() + ": " : "";
+            if (result.isSuccessful()) {
+                anySaved = true;
+                saved.add(prefix + result.getSavedReplayPath());
+                replayBufferDuration = Math.max(replayBufferDuration, result.getConnection().getReplayBufferDuration());
+            } else {
+                failed.add(prefix + result.getFailureReason());
             }
-        });
-    }
-
-    private synchronized void setReplayBufferOutput(String fileName, String subDir) {
-        JsonObject alteredOutputSettings = this.baseObsOutputSettings.deepCopy();
-        alteredOutputSettings.addProperty("path", this.baseObsOutputSettings.get("path").getAsString() + "/" + subDir);
-        alteredOutputSettings.addProperty("directory", this.baseObsOutputSettings.get("directory").getAsString() + "/" + subDir);
-        alteredOutputSettings.addProperty("format", fileName + " " + this.OBS_BASE_FORMAT);
+            if (result.getWarning() != null) {
+                warnings.add(prefix + result.getWarning());
+            }
+        }
 
-        this.obsController.setOutputSettings("Replay Buffer", alteredOutputSettings, 1000);
-    }
+        if (!anySaved) {
+            this.notifier.notify("OBS Auto-clip save failed (" + failed
+                    + (warnings.length() > 0 ? ", " + warnings : "") + ")");
+            return;
+        }
 
-    private synchronized void resetReplayBufferOutput() {
-        JsonObject alteredOutputSettings = this.baseObsOutputSettings.deepCopy();
+        final StringBuilder notificationStringBuilder = new StringBuilder();
+        notificationStringBuilder
+                .append("OBS Auto-clip save successful ")
+                .append(saved)
+        ;
+        if (replayBufferDuration > 0) {
+            notificationStringBuilder
+                    .append(", duration: ")
+                    .append(replayBufferDuration)
+                    .append("s");
+        }
+        if (failed.length() > 0) {
+            notificationStringBuilder
+                    .append(", failed on ")
+                    .append(failed);
+        }
+        if (warnings.length() > 0) {
+            notificationStringBuilder
+                    .append(", ")
+                    .append(warnings);
+        }
+        notificationStringBuilder.append(").");
 
-        this.obsController.setOutputSettings("Replay Buffer", alteredOutputSettings, 1000);
+        this.notifier.notify(notificationStringBuilder.toString());
     }
 
-    private synchronized void sendSaveReplayBufferRequest() {
-        this.obsController.saveReplayBuffer(saveReplayBufferResponse -> {
-
-            if (!saveReplayBufferResponse.isSuccessful()) {
-                if (this.config.notifyWhenClipTaken()) {
-                    this.notifier.notify("OBS Auto-clip save failed");
-                }
-            }
-        });
-    }
+    private void notifyRecordingCut(Path recording, int cut, int failed) {
+        if (!configSnapshot.notifyWhenClipTaken()) {
+            return;
+        }
 
-    private void onSuccessfulSave(ReplayBufferSavedEvent event) {
         final StringBuilder notificationStringBuilder = new StringBuilder();
-        if (this.config.notifyWhenClipTaken()) {
+        notificationStringBuilder
+                .append("OBS Auto-clip cut ")
+                .append(cut)
+                .append(cut == 1 ? " clip" : " clips")
+                .append(" from ")
+                .append(recording.getFileName());
+        if (failed > 0) {
             notificationStringBuilder
-                    .append("OBS Auto-clip save successful ")
-                    .append("(path: ")
-                    .append(event.getSavedReplayPath())
-            ;
-            if (this.replayBufferDuration > 0) {
-                notificationStringBuilder
-                        .append(", duration: ")
-                        .append(replayBufferDuration)
-                        .append("s");
-            }
-            notificationStringBuilder.append(").");
-
-            this.notifier.notify(notificationStringBuilder.toString());
+                    .append(", ")
+                    .append(failed)
+                    .append(" failed");
         }
-        this.executorService.submit(this::resetReplayBufferOutput);
+        notificationStringBuilder.append('.');
+
+        this.notifier.notify(notificationStringBuilder.toString());
     }
 
     /**
      * Start Replay Buffer Save
+     * <p>
+     * Triggers that fire within the merge window of a pending save are folded into that save, which is sent once the
+     * longest post-roll of its triggers has passed.
+     *
+     * @param game The game when the trigger fired, which the post-roll is timed from.
      */
-    private synchronized void startReplayBufferSave(String fileName, String subDir) {
-        try {
-            this.executor.schedule(() -> {
-                this.executorService.submit(() -> this.setReplayBufferOutput(fileName, subDir));
-                this.executorService.schedule(this::sendSaveReplayBufferRequest, 1, TimeUnit.SECONDS);
-            }, config.obsDelay(), TimeUnit.SECONDS);
-        } catch (Exception e) {
-            log.warn("startReplayBufferSave error 2", e);
+    private void startReplayBufferSave(String fileName, ClipCategory category, String subDirectory, GameSnapshot game) {
+        clipMetrics.recordTrigger(category);
+        final long triggerId = triggerJournal.recordTrigger(category, fileName, game.getTick(), game.getWorld(), game.getRegionId());
+        final ClipRequest request = ClipRequest.of(triggerId, fileName, category, subDirectory, game.getCapturedNanos());
+        if (configSnapshot.clipMode() == ClipMode.CUT_FROM_RECORDING) {
+            markInRecording(request);
+            return;
+        }
+        if (configSnapshot.saveThumbnails()) {
+            clipThumbnails.capture(triggerId);
+        }
+        final long delayMillis = saveDelayMillis(request);
+        final int mergeWindow = configSnapshot.mergeWindow();
+        if (mergeWindow <= 0) {
+            scheduleReplayBufferSave(request, delayMillis);
+            return;
         }
-    }
 
-    private boolean isInsideGauntlet() {
-        return this.client.isInInstancedRegion()
-                && this.client.getMapRegions().length > 0
-                && (this.client.getMapRegions()[0] == GAUNTLET_REGION
-                || this.client.getMapRegions()[0] == CORRUPTED_GAUNTLET_REGION);
+        clipCoalescer.submit(request, delayMillis, mergeWindow);
     }
 
-    @VisibleForTesting
-    int getClueNumber() {
-        return clueNumber;
+    /**
+     * Leaves the clip to be cut from the recording once it stops.
+     */
+    private void markInRecording(ClipRequest request) {
+        if (obsTargets.getConnections().get(0).getRecordingStartNanos() < 0) {
+            log.debug("Not clipping {}, OBS is not recording", request);
+            triggerJournal.recordOutcome(request, TriggerJournal.Outcome.FAILED, "OBS is not recording");
+            clipMetrics.recordSave(false);
+            return;
+        }
+        recordingClipper.mark(request);
     }
 
-    @VisibleForTesting
-    String getClueType() {
-        return clueType;
+    /**
+     * @return How long to wait before sending the save so that OBS receives it the post-roll after the trigger.
+     */
+    private long saveDelayMillis(ClipRequest request) {
+        final long elapsedNanos = System.nanoTime() - request.getTriggeredNanos();
+        final long delayNanos = TimeUnit.MILLISECONDS.toNanos(configSnapshot.postRoll(request.getCategory()))
+                - obsTargets.getSaveLeadNanos() - elapsedNanos;
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(delayNanos));
     }
 
-    @VisibleForTesting
-    KillType getKillType() {
-        return killType;
+    private void scheduleReplayBufferSave(ClipRequest request, long delayMillis) {
+        final ClipPipeline pipeline = this.clipPipeline;
+        if (delayMillis <= 0) {
+            pipeline.submit(request);
+            return;
+        }
+
+        scheduledSaves.add(request);
+        try {
+            saveScheduler.schedule(() -> {
+                if (scheduledSaves.remove(request)) {
+                    pipeline.submit(request);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Not saving {}, the plugin is shutting down", request);
+            if (scheduledSaves.remove(request)) {
+                dropClip(request, SHUTDOWN);
+            }
+        }
     }
 
-    @VisibleForTesting
-    int getKillCountNumber() {
-        return killCountNumber;
+    /**
+     * Gives up on a clip that was never sent to OBS.
+     */
+    private void dropClip(ClipRequest request, String reason) {
+        clipThumbnails.discard(request);
+        triggerJournal.recordOutcome(request, TriggerJournal.Outcome.DROPPED, reason);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package com.sirebringo.autoclip;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.runelite.api.events.ChatMessage;
+
+/**
+ * Clips a boss kill count message.
+ */
+final class BossKillTrigger implements ClipTrigger {
+    private static final Pattern BOSSKILL_MESSAGE_PATTERN = Pattern.compile("Your (.+) kill count is: <col=ff0000>(\\d+)</col>.");
+
+    private final TriggerContext context;
+
+    BossKillTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.chatMessages(ChatMessageClassifier.Candidate.BOSS_KILL)
+                .chatRules()
+                .startsWithAndContains(ChatMessageClassifier.Candidate.BOSS_KILL, "Your ", " kill count is: <col=ff0000>");
+    }
+
+    @Override
+    public void onChatMessage(ChatMessage event, ChatMessageClassifier.Candidate candidate) {
+        if (!context.getConfig().clipBossKills()) {
+            return;
+        }
+
+        Matcher m = BOSSKILL_MESSAGE_PATTERN.matcher(event.getMessage());
+        if (m.matches()) {
+            String bossName = m.group(1);
+            String bossKillcount = m.group(2);
+            String fileName = bossName + "(" + bossKillcount + ")";
+            context.save(fileName, ClipCategory.BOSS_KILLS);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.sirebringo.autoclip;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Picks the clip candidates a chat message can belong to in one pass over its characters.
+ * <p>
+ * Every trigger in {@link AutoClipPlugin#onChatMessage} is anchored on some literal text (a prefix, a fragment or
+ * the whole message). All anchors are compiled into one Aho-Corasick automaton, so a message is scanned once and
+ * only the regexes of the candidates it matched have to run afterwards. Messages that hit no rule are rejected
+ * without any regex work.
+ */
+final class ChatMessageClassifier {
+    /**
+     * The chat message categories, in the order they are checked. A message can belong to several candidates, except
+     * that the first exclusive candidate it belongs to is its only one: the count messages only remember the count
+     * for the reward interface that follows them and end the check.
+     */
+    enum Candidate {
+        CLUE_COUNT(true),
+        BARROWS_COUNT(true),
+        COX_COUNT(true),
+        COX_CM_COUNT(true),
+        TOB_COUNT(true),
+        TOA_COUNT(true),
+        PET,
+        BOSS_KILL,
+        CHEST_LOOT,
+        VALUABLE_DROP,
+        UNTRADEABLE_DROP,
+        DUEL,
+        COLLECTION_LOG,
+        COMBAT_TASK;
+
+        private final boolean exclusive;
+
+        Candidate() {
+            this(false);
+        }
+
+        Candidate(boolean exclusive) {
+            this.exclusive = exclusive;
+        }
+    }
+
+    private enum AnchorType {
+        PREFIX,
+        CONTAINS,
+        EXACT
+    }
+
+    private static final int ALPHABET_LIMIT = 128;
+    private static final int MAX_ANCHORS = Long.SIZE;
+    private static final Candidate[] CANDIDATES = Candidate.values();
+
+    // symbol 0 is shared by every character that does not appear in any anchor
+    private final int[] symbols;
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final long[] outputs;
+    private final AnchorType[] anchorTypes;
+    private final int[] anchorLengths;
+    private final Candidate[] ruleCandidates;
+    private final long[] ruleMasks;
+
+    private ChatMessageClassifier(Builder builder) {
+        final List<String> anchors = builder.anchors;
+        anchorTypes = builder.anchorTypes.toArray(new AnchorType[0]);
+        anchorLengths = new int[anchors.size()];
+
+        symbols = new int[ALPHABET_LIMIT];
+        int nextSymbol = 1;
+        for (int a = 0; a < anchors.size(); a++) {
+            final String anchor = anchors.get(a);
+            anchorLengths[a] = anchor.length();
+            for (int i = 0; i < anchor.length(); i++) {
+                final char c = anchor.charAt(i);
+                if (symbols[c] == 0) {
+                    symbols[c] = nextSymbol++;
+                }
+            }
+        }
+        alphabetSize = nextSymbol;
+
+        // plain trie first, then fill in the failure transitions breadth first
+        final List<int[]> trie = new ArrayList<>();
+        final List<Long> trieOutputs = new ArrayList<>();
+        trie.add(new int[alphabetSize]);
+        trieOutputs.add(0L);
+        for (int a = 0; a < anchors.size(); a++) {
+            final String anchor = anchors.get(a);
+            int state = 0;
+            for (int i = 0; i < anchor.length(); i++) {
+                final int symbol = symbols[anchor.charAt(i)];
+                int next = trie.get(state)[symbol];
+                if (next == 0) {
+                    next = trie.size();
+                    trie.add(new int[alphabetSize]);
+                    trieOutputs.add(0L);
+                    trie.get(state)[symbol] = next;
+                }
+                state = next;
+            }
+            trieOutputs.set(state, trieOutputs.get(state) | (1L << a));
+        }
+
+        final int states = trie.size();
+        transitions = new int[states * alphabetSize];
+        outputs = new long[states];
+        final int[] failure = new int[states];
+        final Queue<Integer> queue = new ArrayDeque<>();
+
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            final int next = trie.get(0)[symbol];
+            transitions[symbol] = next;
+            if (next != 0) {
+                queue.add(next);
+            }
+        }
+        outputs[0] = trieOutputs.get(0);
+
+        while (!queue.isEmpty()) {
+            final int state = queue.poll();
+            outputs[state] = trieOutputs.get(state) | outputs[failure[state]];
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                final int next = trie.get(state)[symbol];
+                if (next != 0) {
+                    failure[next] = transitions[failure[state] * alphabetSize + symbol];
+                    transitions[state * alphabetSize + symbol] = next;
+                    queue.add(next);
+                } else {
+                    transitions[state * alphabetSize + symbol] = transitions[failure[state] * alphabetSize + symbol];
+                }
+            }
+        }
+
+        final List<Rule> rules = new ArrayList<>(builder.rules);
+        rules.sort(Comparator.comparingInt(rule -> rule.candidate.ordinal()));
+        ruleCandidates = new Candidate[rules.size()];
+        ruleMasks = new long[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            ruleCandidates[i] = rules.get(i).candidate;
+            ruleMasks[i] = rules.get(i).mask;
+        }
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Classifies a raw (tagged) chat message.
+     *
+     * @param message The message as received in {@link net.runelite.api.events.ChatMessage#getMessage()}.
+     * @return The candidates whose anchors all occur in the message, as a bit per {@link Candidate#ordinal()}, or 0 if
+     * the message can not trigger a clip.
+     */
+    int classify(final String message) {
+        final int length = message.length();
+        long seen = 0;
+        int state = 0;
+
+        for (int i = 0; i < length; i++) {
+            final char c = message.charAt(i);
+            final int symbol = c < ALPHABET_LIMIT ? symbols[c] : 0;
+            state = transitions[state * alphabetSize + symbol];
+
+            long matched = outputs[state];
+            while (matched != 0) {
+                final int anchor = Long.numberOfTrailingZeros(matched);
+                matched &= matched - 1;
+                switch (anchorTypes[anchor]) {
+                    case PREFIX:
+                        if (i + 1 == anchorLengths[anchor]) {
+                            seen |= 1L << anchor;
+                        }
+                        break;
+                    case EXACT:
+                        if (i + 1 == anchorLengths[anchor] && length == anchorLengths[anchor]) {
+                            seen |= 1L << anchor;
+                        }
+                        break;
+                    default:
+                        seen |= 1L << anchor;
+                        break;
+                }
+            }
+        }
+
+        if (seen == 0) {
+            return 0;
+        }
+
+        int candidates = 0;
+        for (int i = 0; i < ruleMasks.length; i++) {
+            if ((seen & ruleMasks[i]) == ruleMasks[i]) {
+                if (ruleCandidates[i].exclusive) {
+                    return 1 << ruleCandidates[i].ordinal();
+                }
+                candidates |= 1 << ruleCandidates[i].ordinal();
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return The candidate of the lowest bit of {@link #classify}, which {@code candidates &= candidates - 1} clears.
+     */
+    static Candidate first(int candidates) {
+        return CANDIDATES[Integer.numberOfTrailingZeros(candidates)];
+    }
+
+    private static final class Rule {
+        private final Candidate candidate;
+        private final long mask;
+
+        private Rule(Candidate candidate, long mask) {
+            this.candidate = candidate;
+            this.mask = mask;
+        }
+    }
+
+    /**
+     * Collects the rules of a classifier. A rule is a set of anchors which all have to occur in a message for it to
+     * match, a candidate may have several alternative rules.
+     */
+    static final class Builder {
+        private final List<String> anchors = new ArrayList<>();
+        private final List<AnchorType> anchorTypes = new ArrayList<>();
+        private final Map<String, Integer> anchorIndex = new HashMap<>();
+        private final List<Rule> rules = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        Builder startsWith(Candidate candidate, String prefix) {
+            return rule(candidate, anchor(AnchorType.PREFIX, prefix));
+        }
+
+        Builder contains(Candidate candidate, String fragment) {
+            return rule(candidate, anchor(AnchorType.CONTAINS, fragment));
+        }
+
+        Builder containsAny(Candidate candidate, Iterable<String> fragments) {
+            for (String fragment : fragments) {
+                contains(candidate, fragment);
+            }
+            return this;
+        }
+
+        Builder containsAll(Candidate candidate, String... fragments) {
+            long mask = 0;
+            for (String fragment : fragments) {
+                mask |= anchor(AnchorType.CONTAINS, fragment);
+            }
+            return rule(candidate, mask);
+        }
+
+        Builder startsWithAndContains(Candidate candidate, String prefix, String fragment) {
+            return rule(candidate, anchor(AnchorType.PREFIX, prefix) | anchor(AnchorType.CONTAINS, fragment));
+        }
+
+        Builder equalTo(Candidate candidate, String message) {
+            return rule(candidate, anchor(AnchorType.EXACT, message));
+        }
+
+        ChatMessageClassifier build() {
+            return new ChatMessageClassifier(this);
+        }
+
+        private Builder rule(Candidate candidate, long mask) {
+            rules.add(new Rule(candidate, mask));
+            return this;
+        }
+
+        private long anchor(AnchorType type, String text) {
+            if (text.isEmpty()) {
+                throw new IllegalArgumentException("Empty anchor");
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) >= ALPHABET_LIMIT) {
+                    throw new IllegalArgumentException("Anchor must be ASCII: " + text);
+                }
+            }
+
+            final String key = type + ":" + text;
+            Integer index = anchorIndex.get(key);
+            if (index == null) {
+                if (anchors.size() == MAX_ANCHORS) {
+                    throw new IllegalStateException("Too many anchors");
+                }
+                index = anchors.size();
+                anchors.add(text);
+                anchorTypes.add(type);
+                anchorIndex.put(key, index);
+            }
+            return 1L << index;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.sirebringo.autoclip;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import net.runelite.api.events.ChatMessage;
+
+/**
+ * Clips looting a reward chest that announces itself in chat, such as the one at the end of the Gauntlet.
+ */
+final class ChestLootTrigger implements ClipTrigger {
+    private static final String CHEST_LOOTED_MESSAGE = "You find some treasure in the chest!";
+    private static final Map<Integer, String> CHEST_LOOT_EVENTS = ImmutableMap.of(12127, "The Gauntlet");
+
+    private final TriggerContext context;
+
+    ChestLootTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.chatMessages(ChatMessageClassifier.Candidate.CHEST_LOOT)
+                .chatRules()
+                .equalTo(ChatMessageClassifier.Candidate.CHEST_LOOT, CHEST_LOOTED_MESSAGE);
+    }
+
+    @Override
+    public void onChatMessage(ChatMessage event, ChatMessageClassifier.Candidate candidate) {
+        if (!context.getConfig().clipRewards()) {
+            return;
+        }
+
+        String eventName = CHEST_LOOT_EVENTS.get(context.getGame().getRegionId());
+        if (eventName != null) {
+            context.save(eventName, ClipCategory.CHEST_LOOT);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.sirebringo.autoclip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+
+/**
+ * An index of every saved clip, so clips can be found by name or date without walking the clip folders.
+ * <p>
+ * The index lives in memory, sorted by lower case name for prefix queries and by save time for range queries. On disk
+ * it is an append-only log of added and removed clips, framed like the {@link TriggerJournal}, which is read once at
+ * start up and rewritten without the removed clips when they make up most of it.
+ * <p>
+ * All methods are synchronized. Clips are added from the background threads that finish saves, and the in-memory
+ * queries are cheap enough to run on the client thread.
+ */
+@Slf4j
+final class ClipCatalog {
+    static final Path DEFAULT_FILE = RuneLite.RUNELITE_DIR.toPath().resolve("obs-auto-clip").resolve("clips.catalog");
+
+    private static final byte ADD_RECORD = 'A';
+    private static final byte REMOVE_RECORD = 'R';
+    private static final String COMPACT_SUFFIX = ".compacting";
+    // "Zulrah(500)", "Duel won (5)": a count; "Collection log (Abyssal whip)": the name of what was clipped
+    private static final Pattern PARENTHESIZED = Pattern.compile("^(.*?)\\s*\\(([^()]*)\\)$");
+    // prefixes the triggers put in front of an item or player name
+    private static final String[] NAME_PREFIXES = {"Valuable drop ", "Untradeable drop ", "Death ", "Kill "};
+    private static final String MERGED_NAME_SEPARATOR = " + ";
+    private static final Comparator<Entry> BY_SAVE_TIME = Comparator.<Entry>comparingLong(e -> e.savedMillis)
+            .thenComparing(e -> e.path);
+
+    private final Path file;
+    private final Map<String, Entry> byPath = new HashMap<>();
+    // keyed by lower case name, then path, so names can repeat
+    private final NavigableMap<String, Entry> byName = new TreeMap<>();
+    private final TreeSet<Entry> bySaveTime = new TreeSet<>(BY_SAVE_TIME);
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+    private final CRC32 crc = new CRC32();
+    private DataOutputStream out;
+    private int removedRecords;
+
+    ClipCatalog(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the catalog from disk, replacing what is in memory.
+     */
+    synchronized void load() {
+        clearIndexes();
+        removedRecords = 0;
+        boolean torn = false;
+        try (InputStream stream = Files.newInputStream(file)) {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            while (true) {
+                final int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+
+                final byte[] bytes;
+                try {
+                    bytes = new byte[in.readUnsignedShort()];
+                    in.readFully(bytes);
+                    crc.reset();
+                    crc.update(type);
+                    crc.update(bytes, 0, bytes.length);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        log.warn("Clip catalog {} has a corrupt record, ignoring the rest", file);
+                        torn = true;
+                        break;
+                    }
+                } catch (EOFException e) {
+                    // torn write at the end of the catalog
+                    torn = true;
+                    break;
+                }
+
+                final DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+                if (type == ADD_RECORD) {
+                    index(Entry.read(record));
+                } else if (type == REMOVE_RECORD) {
+                    unindex(record.readUTF());
+                    removedRecords++;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            log.warn("Could not read the clip catalog {}", file, e);
+            return;
+        }
+
+        // appending after a torn record would hide everything written after it
+        if (torn || removedRecords > byPath.size()) {
+            compact();
+        }
+    }
+
+    synchronized void close() {
+        closeQuietly();
+    }
+
+    /**
+     * Adds a saved clip, replacing any clip already at its path.
+     *
+     * @param fileName The name the triggers gave the clip, see {@link ClipRequest#getFileName()}.
+     */
+    synchronized void add(Path clip, ClipCategory category, String fileName, long savedMillis) {
+        long size;
+        try {
+            size = Files.size(clip);
+        } catch (IOException e) {
+            size = -1;
+        }
+
+        final String mainName = mainName(fileName);
+        final Matcher parenthesized = PARENTHESIZED.matcher(mainName);
+        String name = mainName;
+        int count = -1;
+        if (parenthesized.matches()) {
+            final String inner = parenthesized.group(2).trim();
+            if (!inner.isEmpty() && inner.chars().allMatch(Character::isDigit) && inner.length() <= 9) {
+                name = parenthesized.group(1);
+                count = Integer.parseInt(inner);
+            } else {
+                name = inner;
+            }
+        }
+        for (String prefix : NAME_PREFIXES) {
+            if (name.startsWith(prefix)) {
+                name = name.substring(prefix.length());
+                break;
+            }
+        }
+
+        final Entry entry = new Entry(clip.toString(), category, name.trim(), count, savedMillis, size);
+        index(entry);
+        append(ADD_RECORD, entry);
+    }
+
+    /**
+     * Forgets a clip that was deleted or moved away.
+     */
+    synchronized void remove(Path clip) {
+        final String path = clip.toString();
+        if (unindex(path)) {
+            removedRecords++;
+            append(REMOVE_RECORD, path);
+        }
+    }
+
+    synchronized int size() {
+        return byPath.size();
+    }
+
+    /**
+     * @return The clips whose name starts with the prefix, ignoring case, sorted by name and then path.
+     */
+    synchronized List<Entry> findByName(String prefix) {
+        final String from = prefix.toLowerCase(Locale.ROOT);
+        return new ArrayList<>(byName.subMap(from, true, from + Character.MAX_VALUE, false).values());
+    }
+
+    /**
+     * @param category Only clips of this category, or null for all.
+     * @return The clips saved between the two times, both inclusive, oldest first.
+     */
+    synchronized List<Entry> findBySaveTime(ClipCategory category, long fromMillis, long toMillis) {
+        final List<Entry> found = new ArrayList<>();
+        if (fromMillis > toMillis) {
+            return found;
+        }
+
+        final Entry from = new Entry("", null, "", -1, fromMillis, 0);
+        for (Entry entry : bySaveTime.tailSet(from, true)) {
+            if (entry.savedMillis > toMillis) {
+                break;
+            }
+            if (category == null || entry.category == category) {
+                found.add(entry);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return The first name of a clip that several triggers were merged into.
+     */
+    private static String mainName(String fileName) {
+        final int separator = fileName.indexOf(MERGED_NAME_SEPARATOR);
+        return separator < 0 ? fileName : fileName.substring(0, separator);
+    }
+
+    private void index(Entry entry) {
+        if (unindex(entry.path)) {
+            removedRecords++;
+        }
+        byPath.put(entry.path, entry);
+        byName.put(nameKey(entry), entry);
+        bySaveTime.add(entry);
+    }
+
+    private boolean unindex(String path) {
+        final Entry entry = byPath.remove(path);
+        if (entry == null) {
+            return false;
+        }
+        byName.remove(nameKey(entry));
+        bySaveTime.remove(entry);
+        return true;
+    }
+
+    private void clearIndexes() {
+        byPath.clear();
+        byName.clear();
+        bySaveTime.clear();
+    }
+
+    private static String nameKey(Entry entry) {
+        return entry.name.toLowerCase(Locale.ROOT) + '\0' + entry.path;
+    }
+
+    private void append(byte type, Object record) {
+        try {
+            if (out == null) {
+                Files.createDirectories(file.getParent());
+                out = open(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writeRecord(out, type, record);
+            out.flush();
+        } catch (IOException e) {
+            log.warn("Could not write to the clip catalog {}", file, e);
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Rewrites the catalog with only the clips it still holds.
+     */
+    private void compact() {
+        closeQuietly();
+        final Path compacted = file.resolveSibling(file.getFileName() + COMPACT_SUFFIX);
+        try {
+            try (DataOutputStream compactedOut = open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Entry entry : bySaveTime) {
+                    writeRecord(compactedOut, ADD_RECORD, entry);
+                }
+            }
+            try {
+                Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            removedRecords = 0;
+        } catch (IOException e) {
+            log.warn("Could not compact the clip catalog {}", file, e);
+        }
+    }
+
+    private static DataOutputStream open(Path path, StandardOpenOption... options) throws IOException {
+        final OutputStream stream = Files.newOutputStream(path, options);
+        return new DataOutputStream(new BufferedOutputStream(stream));
+    }
+
+    private void writeRecord(DataOutputStream out, byte type, Object record) throws IOException {
+        payload.reset();
+        final DataOutputStream payloadOut = new DataOutputStream(payload);
+        if (record instanceof Entry) {
+            ((Entry) record).write(payloadOut);
+        } else {
+            payloadOut.writeUTF((String) record);
+        }
+        final byte[] bytes = payload.toByteArray();
+
+        crc.reset();
+        crc.update(type);
+        crc.update(bytes, 0, bytes.length);
+
+        out.writeByte(type);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private void closeQuietly() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.debug("Could not close the clip catalog", e);
+        }
+        out = null;
+    }
+
+    /**
+     * One saved clip.
+     */
+    @Getter
+    static final class Entry {
+        private final String path;
+        /**
+         * {@code null} if the category no longer exists.
+         */
+        private final ClipCategory category;
+        /**
+         * The boss, item, task or player the clip is about.
+         */
+        private final String name;
+        /**
+         * The kill count or other count in the clip name, -1 if there is none.
+         */
+        private final int count;
+        private final long savedMillis;
+        /**
+         * The file size when the clip was saved, -1 if unknown.
+         */
+        private final long size;
+
+        private Entry(String path, ClipCategory category, String name, int count, long savedMillis, long size) {
+            this.path = path;
+            this.category = category;
+            this.name = name;
+            this.count = count;
+            this.savedMillis = savedMillis;
+            this.size = size;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeUTF(category != null ? category.name() : "");
+            out.writeUTF(name);
+            out.writeInt(count);
+            out.writeLong(savedMillis);
+            out.writeLong(size);
+        }
+
+        private static Entry read(DataInputStream in) throws IOException {
+            final String path = in.readUTF();
+            final String categoryName = in.readUTF();
+            ClipCategory category = null;
+            for (ClipCategory candidate : ClipCategory.values()) {
+                if (candidate.name().equals(categoryName)) {
+                    category = candidate;
+                    break;
+                }
+            }
+            return new Entry(path, category, in.readUTF(), in.readInt(), in.readLong(), in.readLong());
+        }
+    }
+}
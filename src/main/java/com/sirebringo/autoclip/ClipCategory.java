@@ -0,0 +1,43 @@
+package com.sirebringo.autoclip;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The kinds of moments that are clipped, each saved into its own subdirectory of the OBS replay buffer path.
+ * <p>
+ * When several triggers end up in one save, the clip goes into the directory of the highest priority category among
+ * them. New categories are added at the end with a priority of their own, so the ordinals of the others stay put.
+ */
+@Getter
+@RequiredArgsConstructor
+enum ClipCategory {
+    MANUAL("Manual", 0),
+    PETS("Pets", 1),
+    COLLECTION_LOG("Collection Log", 2),
+    COMBAT_ACHIEVEMENTS("Combat Achievements", 3),
+    QUESTS("Quests", 4),
+    LEVELS("Levels", 5),
+    UNTRADEABLE_DROPS("Untradeable Drops", 6),
+    VALUABLE_DROPS("Valuable Drops", 7),
+    BOSS_KILLS("Boss Kills", 9),
+    CHEST_LOOT("Chest Loot", 10),
+    CLUE_SCROLL_REWARDS("Clue Scroll Rewards", 11),
+    BA_HIGH_GAMBLES("BA High Gambles", 12),
+    KINGDOM_REWARDS("Kingdom Rewards", 13),
+    DUELS("Duels", 14),
+    PVP_KILLS("PvP Kills", 15),
+    DEATHS("Deaths", 16),
+    CUSTOM("Custom", 17),
+    LOOT_VALUE("Loot Value", 8);
+
+    private final String directoryName;
+    /**
+     * 0 for the highest priority.
+     */
+    private final int priority;
+
+    boolean hasPriorityOver(ClipCategory other) {
+        return priority < other.priority;
+    }
+}
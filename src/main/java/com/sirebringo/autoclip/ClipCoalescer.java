@@ -0,0 +1,108 @@
+package com.sirebringo.autoclip;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Folds clip requests that were triggered within a short window of each other into one, so that a burst of triggers
+ * from one moment (kill count, drops and collection log for the same kill) causes one replay buffer save instead of
+ * several copies of the same buffer.
+ * <p>
+ * The window only decides which triggers share a save. A save is handed to the sink once the latest post-roll of its
+ * triggers has passed, and no later.
+ */
+@Slf4j
+final class ClipCoalescer {
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<ClipRequest> sink;
+
+    /**
+     * The saves waiting for their post-roll, oldest first. Only the last one still takes new triggers.
+     */
+    private final List<PendingSave> pending = new ArrayList<>();
+
+    ClipCoalescer(ScheduledExecutorService scheduler, Consumer<ClipRequest> sink) {
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    /**
+     * Queues a request. It is merged into the newest pending save if it was triggered within the merge window of
+     * that save's first trigger, which then waits for the later of both delays.
+     *
+     * @param request           The request to save.
+     * @param delayMillis       How long the request has to wait before it is saved.
+     * @param mergeWindowMillis How long after the first trigger of a save later triggers still join it.
+     */
+    synchronized void submit(ClipRequest request, long delayMillis, long mergeWindowMillis) {
+        final long dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        final PendingSave last = pending.isEmpty() ? null : pending.get(pending.size() - 1);
+        if (last != null
+                && request.getTriggeredNanos() - last.firstTriggeredNanos <= TimeUnit.MILLISECONDS.toNanos(mergeWindowMillis)) {
+            last.request = last.request.merge(request);
+            log.debug("Merged clip trigger into pending save {}", last.request);
+            if (dueNanos - last.dueNanos > 0) {
+                last.dueNanos = dueNanos;
+                last.flushFuture.cancel(false);
+                schedule(last);
+            }
+            return;
+        }
+
+        final PendingSave save = new PendingSave(request, dueNanos);
+        pending.add(save);
+        schedule(save);
+    }
+
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Drops the pending requests without saving them.
+     *
+     * @return The dropped requests, oldest first.
+     */
+    synchronized List<ClipRequest> clear() {
+        final List<ClipRequest> dropped = new ArrayList<>(pending.size());
+        for (PendingSave save : pending) {
+            save.flushFuture.cancel(false);
+            dropped.add(save.request);
+        }
+        pending.clear();
+        return dropped;
+    }
+
+    private void schedule(PendingSave save) {
+        save.flushFuture = scheduler.schedule(() -> flush(save), save.dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private void flush(PendingSave save) {
+        synchronized (this) {
+            // a trigger that pushed the save back may have raced with this flush, which leaves it to the new one
+            if (save.dueNanos - System.nanoTime() > 0 || !pending.remove(save)) {
+                return;
+            }
+        }
+
+        sink.accept(save.request);
+    }
+
+    private static final class PendingSave {
+        private final long firstTriggeredNanos;
+        private ClipRequest request;
+        private long dueNanos;
+        private ScheduledFuture<?> flushFuture;
+
+        private PendingSave(ClipRequest request, long dueNanos) {
+            this.firstTriggeredNanos = request.getTriggeredNanos();
+            this.request = request;
+            this.dueNanos = dueNanos;
+        }
+    }
+}
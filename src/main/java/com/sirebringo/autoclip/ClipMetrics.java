@@ -0,0 +1,292 @@
+package com.sirebringo.autoclip;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Latency and throughput counters for the path from a trigger to a saved clip.
+ * <p>
+ * Recording only touches atomics and {@link LongAdder}s, never a lock, so it is safe to call from the client thread.
+ * Latencies go into histograms with log-linear microsecond buckets; percentiles read from them are accurate to
+ * within 12.5%, which is plenty to tell a slow OBS from a slow disk.
+ */
+final class ClipMetrics implements ClipMetricsMXBean {
+    static final String OBJECT_NAME = "com.sirebringo.autoclip:type=ClipMetrics";
+
+    @Getter
+    @RequiredArgsConstructor
+    enum Stage {
+        /**
+         * From the trigger until its save is handed to the pipeline, which is the post-roll of its triggers.
+         */
+        POST_ROLL("post-roll"),
+        /**
+         * Waiting in the pipeline queue behind other clips.
+         */
+        QUEUE("queue"),
+        /**
+         * The OBS requests of the save: the set/save/reset batch, or the lone save request.
+         */
+        OBS_REQUEST("obs request"),
+        /**
+         * From OBS accepting the save until it reports the written file.
+         */
+        SAVED_EVENT("saved event"),
+        /**
+         * Moving the saved file into its category directory.
+         */
+        FILE_MOVE("file move"),
+        /**
+         * Cutting the saved file down to its pre-roll.
+         */
+        TRIM("trim"),
+        /**
+         * From the trigger until the clip is in place.
+         */
+        TOTAL("total");
+
+        private final String name;
+    }
+
+    private final Histogram[] histograms = new Histogram[Stage.values().length];
+    private final AtomicLongArray triggers = new AtomicLongArray(ClipCategory.values().length);
+    private final LongAdder successfulSaves = new LongAdder();
+    private final LongAdder failedSaves = new LongAdder();
+    private final LongAdder droppedClips = new LongAdder();
+    private final LongAdder droppedTriggerEvents = new LongAdder();
+    private final LongAdder suppressedTriggers = new LongAdder();
+
+    private volatile IntSupplier pendingClips = () -> 0;
+
+    ClipMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    void setPendingClips(IntSupplier pendingClips) {
+        this.pendingClips = pendingClips;
+    }
+
+    void recordTrigger(ClipCategory category) {
+        triggers.incrementAndGet(category.ordinal());
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} reading.
+     */
+    void recordSince(Stage stage, long startNanos) {
+        histograms[stage.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    void recordSave(boolean successful) {
+        (successful ? successfulSaves : failedSaves).increment();
+    }
+
+    void recordDropped() {
+        droppedClips.increment();
+    }
+
+    void recordDroppedTriggerEvent() {
+        droppedTriggerEvents.increment();
+    }
+
+    void recordSuppressedTrigger() {
+        suppressedTriggers.increment();
+    }
+
+    @Override
+    public Map<String, Long> getTriggerCounts() {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        for (ClipCategory category : ClipCategory.values()) {
+            counts.put(category.getDirectoryName(), triggers.get(category.ordinal()));
+        }
+        return counts;
+    }
+
+    @Override
+    public long getSuccessfulSaves() {
+        return successfulSaves.sum();
+    }
+
+    @Override
+    public long getFailedSaves() {
+        return failedSaves.sum();
+    }
+
+    @Override
+    public long getDroppedClips() {
+        return droppedClips.sum();
+    }
+
+    @Override
+    public long getDroppedTriggerEvents() {
+        return droppedTriggerEvents.sum();
+    }
+
+    @Override
+    public long getSuppressedTriggers() {
+        return suppressedTriggers.sum();
+    }
+
+    @Override
+    public int getPendingClips() {
+        return pendingClips.getAsInt();
+    }
+
+    @Override
+    public Map<String, String> getStageLatencies() {
+        final Map<String, String> latencies = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            latencies.put(stage.getName(), histograms[stage.ordinal()].describe());
+        }
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Double> getStageMedianMillis() {
+        return percentiles(0.5);
+    }
+
+    @Override
+    public Map<String, Double> getStage99thPercentileMillis() {
+        return percentiles(0.99);
+    }
+
+    @Override
+    public void reset() {
+        for (Histogram histogram : histograms) {
+            histogram.reset();
+        }
+        for (int i = 0; i < triggers.length(); i++) {
+            triggers.set(i, 0);
+        }
+        successfulSaves.reset();
+        failedSaves.reset();
+        droppedClips.reset();
+        droppedTriggerEvents.reset();
+        suppressedTriggers.reset();
+    }
+
+    /**
+     * @return A one line summary for the log, or {@code null} if nothing was clipped since the last reset.
+     */
+    String summary() {
+        final long saves = getSuccessfulSaves() + getFailedSaves();
+        final long triggerCount = getTriggerCounts().values().stream().mapToLong(Long::longValue).sum();
+        if (saves == 0 && triggerCount == 0) {
+            return null;
+        }
+
+        final StringBuilder summary = new StringBuilder()
+                .append(triggerCount).append(" triggers, ")
+                .append(getSuccessfulSaves()).append(" saved, ")
+                .append(getFailedSaves()).append(" failed, ")
+                .append(getDroppedClips()).append(" dropped, ")
+                .append(getPendingClips()).append(" pending");
+        if (getDroppedTriggerEvents() > 0) {
+            summary.append(", ").append(getDroppedTriggerEvents()).append(" game events dropped");
+        }
+        if (getSuppressedTriggers() > 0) {
+            summary.append(", ").append(getSuppressedTriggers()).append(" rate limited");
+        }
+        for (Stage stage : Stage.values()) {
+            final Histogram histogram = histograms[stage.ordinal()];
+            if (histogram.count() > 0) {
+                summary.append("; ").append(stage.getName()).append(' ').append(histogram.describe());
+            }
+        }
+        return summary.toString();
+    }
+
+    private Map<String, Double> percentiles(double quantile) {
+        final Map<String, Double> values = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            values.put(stage.getName(), histograms[stage.ordinal()].percentileMicros(quantile) / 1000.0);
+        }
+        return values;
+    }
+
+    private static final class Histogram {
+        // every power of two microseconds is split into 8 linear sub-buckets, so a bucket is at most 12.5% wide
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = SUB_BUCKETS * (Long.SIZE - SUB_BUCKET_BITS);
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        void record(long nanos) {
+            final long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+            buckets.incrementAndGet(bucket(micros));
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+
+        private static int bucket(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) micros;
+            }
+            final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+            return SUB_BUCKETS * (shift + 1) + (int) ((micros >>> shift) & (SUB_BUCKETS - 1));
+        }
+
+        /**
+         * @return The largest value that falls into the given bucket.
+         */
+        private static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            final int shift = bucket / SUB_BUCKETS - 1;
+            final long subBucket = SUB_BUCKETS + bucket % SUB_BUCKETS;
+            return ((subBucket + 1) << shift) - 1;
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * @return The upper bound of the bucket holding the given quantile, capped at the largest sample.
+         */
+        long percentileMicros(double quantile) {
+            final long count = count();
+            if (count == 0) {
+                return 0;
+            }
+
+            final long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), maxMicros.get());
+                }
+            }
+            return maxMicros.get();
+        }
+
+        String describe() {
+            return String.format("n=%d p50=%.1fms p99=%.1fms max=%.1fms",
+                    count(), percentileMicros(0.5) / 1000.0, percentileMicros(0.99) / 1000.0, maxMicros.get() / 1000.0);
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            maxMicros.set(0);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.sirebringo.autoclip;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ClipMetrics}, registered as {@value ClipMetrics#OBJECT_NAME} while the plugin is running.
+ */
+public interface ClipMetricsMXBean {
+    /**
+     * @return Triggers seen per clip category, keyed by subdirectory name.
+     */
+    Map<String, Long> getTriggerCounts();
+
+    long getSuccessfulSaves();
+
+    long getFailedSaves();
+
+    long getDroppedClips();
+
+    /**
+     * @return Game events the triggers never saw because their queue was full.
+     */
+    long getDroppedTriggerEvents();
+
+    /**
+     * @return Triggers that were not saved because their category or player was over its rate limit.
+     */
+    long getSuppressedTriggers();
+
+    /**
+     * @return Clips waiting to be merged, waiting in the queue or being saved.
+     */
+    int getPendingClips();
+
+    /**
+     * @return Per stage: sample count, median, 99th percentile and maximum latency.
+     */
+    Map<String, String> getStageLatencies();
+
+    Map<String, Double> getStageMedianMillis();
+
+    Map<String, Double> getStage99thPercentileMillis();
+
+    void reset();
+}
@@ -0,0 +1,32 @@
+package com.sirebringo.autoclip;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * How a clip ends up in its category directory.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum ClipMode {
+    /**
+     * Point the replay buffer output at the category directory before saving, and restore it afterwards.
+     */
+    OUTPUT_SETTINGS("Change output settings"),
+    /**
+     * Leave the OBS settings alone, save the replay buffer and move the saved file into the category directory.
+     */
+    RENAME_AFTER_SAVE("Move file after save"),
+    /**
+     * Keep OBS recording instead of saving the replay buffer, note when each trigger happened in the recording, and
+     * cut the clips out of it once the recording stops, see {@link RecordingClipper}.
+     */
+    CUT_FROM_RECORDING("Cut from recording");
+
+    private final String name;
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
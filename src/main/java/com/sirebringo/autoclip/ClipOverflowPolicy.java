@@ -0,0 +1,22 @@
+package com.sirebringo.autoclip;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * What happens to a clip when the queue of saves waiting for OBS is full.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum ClipOverflowPolicy {
+    MERGE("Merge into last"),
+    DROP_OLDEST("Drop oldest"),
+    DROP_NEWEST("Drop newest");
+
+    private final String name;
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,180 @@
+package com.sirebringo.autoclip;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs clip jobs one at a time, in submission order, on a single worker thread.
+ * <p>
+ * A job changes shared OBS state (the replay buffer output settings) and has to wait for OBS to finish with it, so
+ * jobs must never interleave. Jobs wait in a bounded queue; what happens when it is full is decided by the
+ * {@link ClipOverflowPolicy}.
+ */
+@Slf4j
+final class ClipPipeline {
+    interface Handler {
+        void process(ClipRequest request) throws InterruptedException;
+
+        /**
+         * Called instead of {@link #process} for a request thrown away by the overflow policy or a shutdown.
+         *
+         * @param reason Why the request was thrown away.
+         */
+        default void dropped(ClipRequest request, String reason) {
+        }
+    }
+
+    private static final long IDLE_POLL_MILLIS = 250;
+    private static final String QUEUE_FULL = "the clip queue was full";
+
+    private final LinkedBlockingDeque<Job> queue;
+    private final ClipOverflowPolicy overflowPolicy;
+    private final Handler handler;
+    private final ClipMetrics metrics;
+    private final ExecutorService worker;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean accepting = true;
+    private volatile boolean busy;
+
+    ClipPipeline(int capacity, ClipOverflowPolicy overflowPolicy, Handler handler, ClipMetrics metrics) {
+        this.queue = new LinkedBlockingDeque<>(Math.max(1, capacity));
+        this.overflowPolicy = overflowPolicy;
+        this.handler = handler;
+        this.metrics = metrics;
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "obs-auto-clip");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.worker.execute(this::run);
+    }
+
+    /**
+     * Queues a request, applying the overflow policy if the queue is full.
+     *
+     * @return {@code false} if the request was dropped.
+     */
+    synchronized boolean submit(ClipRequest request) {
+        if (!accepting) {
+            return false;
+        }
+
+        metrics.recordSince(ClipMetrics.Stage.POST_ROLL, request.getTriggeredNanos());
+        final Job job = new Job(request, System.nanoTime());
+        if (queue.offerLast(job)) {
+            return true;
+        }
+
+        switch (overflowPolicy) {
+            case MERGE: {
+                final Job last = queue.pollLast();
+                queue.offerLast(last == null ? job : new Job(last.request.merge(request), last.queuedNanos));
+                log.debug("Clip queue full, merged {} into the last queued save", request);
+                return true;
+            }
+            case DROP_OLDEST: {
+                final Job oldest = queue.pollFirst();
+                queue.offerLast(job);
+                if (oldest != null) {
+                    recordDropped(oldest.request, QUEUE_FULL);
+                    log.debug("Clip queue full, dropped {}", oldest.request);
+                }
+                return true;
+            }
+            default:
+                recordDropped(request, QUEUE_FULL);
+                log.debug("Clip queue full, dropped {}", request);
+                return false;
+        }
+    }
+
+    /**
+     * @return The number of clips waiting for the worker, not counting the one in progress.
+     */
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return Whether the worker is running a job right now.
+     */
+    boolean isBusy() {
+        return busy;
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops accepting clips and lets the worker finish what is queued, interrupting it if that takes longer than the
+     * given timeout. The clips still queued then are dropped.
+     */
+    void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (this) {
+            accepting = false;
+        }
+
+        worker.shutdown();
+        if (!worker.awaitTermination(timeout, unit)) {
+            log.debug("Clip pipeline did not drain in time, abandoning {} clip(s)", queue.size());
+            worker.shutdownNow();
+            Job job;
+            while ((job = queue.pollFirst()) != null) {
+                recordDropped(job.request, "shutdown");
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            final Job job;
+            try {
+                // wake up regularly so a shutdown is noticed without interrupting a running job
+                job = queue.pollFirst(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (job == null) {
+                if (!accepting) {
+                    return;
+                }
+                continue;
+            }
+
+            metrics.recordSince(ClipMetrics.Stage.QUEUE, job.queuedNanos);
+            busy = true;
+            try {
+                handler.process(job.request);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.warn("Clip job {} failed", job.request, e);
+            } finally {
+                busy = false;
+            }
+        }
+    }
+
+    private void recordDropped(ClipRequest request, String reason) {
+        dropped.incrementAndGet();
+        metrics.recordDropped();
+        handler.dropped(request, reason);
+    }
+
+    private static final class Job {
+        private final ClipRequest request;
+        private final long queuedNanos;
+
+        private Job(ClipRequest request, long queuedNanos) {
+            this.request = request;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+}
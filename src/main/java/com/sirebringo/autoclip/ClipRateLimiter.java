@@ -0,0 +1,140 @@
+package com.sirebringo.autoclip;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token buckets that keep triggers firing in a burst, like deaths in a clan wipe or loot piles in multi-combat, from
+ * each asking OBS to write the whole replay buffer.
+ * <p>
+ * Every category has a bucket, and so does every other player a kill or death is about. A trigger is allowed when
+ * both of its buckets hold a clip. A suppressed trigger is counted instead, and the count is added to the name of the
+ * next clip of its category. Manual clips are never limited.
+ * <p>
+ * Not thread safe, only used on the trigger thread.
+ */
+final class ClipRateLimiter {
+    // beyond this, buckets that filled up again are forgotten
+    private static final int MAX_PLAYER_BUCKETS = 256;
+
+    private final Bucket[] categoryBuckets = new Bucket[ClipCategory.values().length];
+    private final int[] suppressed = new int[ClipCategory.values().length];
+    private final Map<String, Bucket> playerBuckets = new HashMap<>();
+
+    ClipRateLimiter() {
+        for (int i = 0; i < categoryBuckets.length; i++) {
+            categoryBuckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Takes a clip from the buckets of a trigger.
+     *
+     * @param player The other player the trigger is about, or {@code null}.
+     * @param nanos  {@link System#nanoTime()} when the trigger happened.
+     * @return The file name to save the clip as, with the suppressed triggers of its category, or {@code null} if the
+     * trigger is suppressed.
+     */
+    String acquire(String fileName, ClipCategory category, String player, long nanos, ConfigSnapshot config) {
+        final long refillNanos = TimeUnit.SECONDS.toNanos(config.clipRefill());
+        if (category == ClipCategory.MANUAL || refillNanos <= 0) {
+            return fileName;
+        }
+
+        final Bucket categoryBucket = categoryBuckets[category.ordinal()];
+        final int categoryBurst = config.clipBurst(category);
+        if (categoryBurst > 0 && !categoryBucket.refill(nanos, categoryBurst, refillNanos)) {
+            suppressed[category.ordinal()]++;
+            return null;
+        }
+
+        final int playerBurst = config.playerClipBurst();
+        Bucket playerBucket = null;
+        if (player != null && playerBurst > 0) {
+            playerBucket = playerBuckets.get(player);
+            if (playerBucket == null) {
+                evictFullPlayerBuckets(nanos, playerBurst, refillNanos);
+                playerBucket = new Bucket();
+                playerBuckets.put(player, playerBucket);
+            }
+            if (!playerBucket.refill(nanos, playerBurst, refillNanos)) {
+                suppressed[category.ordinal()]++;
+                return null;
+            }
+        }
+
+        if (categoryBurst > 0) {
+            categoryBucket.take();
+        }
+        if (playerBucket != null) {
+            playerBucket.take();
+        }
+
+        final int count = suppressed[category.ordinal()];
+        if (count == 0) {
+            return fileName;
+        }
+        suppressed[category.ordinal()] = 0;
+        return fileName + " (+" + count + " more)";
+    }
+
+    /**
+     * Fills all buckets and forgets the suppressed triggers.
+     */
+    void reset() {
+        for (int i = 0; i < categoryBuckets.length; i++) {
+            categoryBuckets[i] = new Bucket();
+            suppressed[i] = 0;
+        }
+        playerBuckets.clear();
+    }
+
+    private void evictFullPlayerBuckets(long nanos, int burst, long refillNanos) {
+        if (playerBuckets.size() < MAX_PLAYER_BUCKETS) {
+            return;
+        }
+
+        final Iterator<Bucket> buckets = playerBuckets.values().iterator();
+        while (buckets.hasNext()) {
+            final Bucket bucket = buckets.next();
+            bucket.refill(nanos, burst, refillNanos);
+            if (bucket.tokens >= burst) {
+                buckets.remove();
+            }
+        }
+        // everyone was clipped within the refill time, start over rather than grow without bound
+        if (playerBuckets.size() >= MAX_PLAYER_BUCKETS) {
+            playerBuckets.clear();
+        }
+    }
+
+    private static final class Bucket {
+        // a new bucket is full
+        private double tokens = Double.MAX_VALUE;
+        private long updatedNanos;
+        private boolean updated;
+
+        /**
+         * Adds the clips earned since the last refill, up to the burst.
+         *
+         * @return Whether the bucket holds a clip.
+         */
+        boolean refill(long nanos, int burst, long refillNanos) {
+            if (updated && nanos > updatedNanos) {
+                tokens += (double) (nanos - updatedNanos) / refillNanos;
+            }
+            if (!updated || nanos > updatedNanos) {
+                updatedNanos = nanos;
+                updated = true;
+            }
+            tokens = Math.min(tokens, burst);
+            return tokens >= 1;
+        }
+
+        void take() {
+            tokens -= 1;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.sirebringo.autoclip;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import lombok.Getter;
+
+/**
+ * One replay buffer save. A request starts out as a single trigger and can absorb other triggers that fire before it
+ * is sent to OBS, see {@link #merge(ClipRequest)}.
+ */
+final class ClipRequest {
+    private static final String NAME_SEPARATOR = " + ";
+    // leave plenty of room for the OBS date suffix and the path within the usual 255 character file name limit
+    private static final int MAX_FILE_NAME_LENGTH = 120;
+
+    private final List<Trigger> triggers;
+
+    @Getter
+    private final ClipCategory category;
+
+    @Getter
+    private final String subDirectory;
+
+    /**
+     * {@link System#nanoTime()} of the earliest trigger in the request.
+     */
+    @Getter
+    private final long triggeredNanos;
+
+    private ClipRequest(List<Trigger> triggers, ClipCategory category, String subDirectory, long triggeredNanos) {
+        this.triggers = triggers;
+        this.category = category;
+        this.subDirectory = subDirectory;
+        this.triggeredNanos = triggeredNanos;
+    }
+
+    /**
+     * @param triggerId The id of the trigger in the {@link TriggerJournal}.
+     */
+    static ClipRequest of(long triggerId, String fileName, ClipCategory category) {
+        return of(triggerId, fileName, category, category.getDirectoryName());
+    }
+
+    /**
+     * @param subDirectory The directory to save into instead of the one of the category.
+     */
+    static ClipRequest of(long triggerId, String fileName, ClipCategory category, String subDirectory) {
+        return of(triggerId, fileName, category, subDirectory, System.nanoTime());
+    }
+
+    /**
+     * @param triggeredNanos {@link System#nanoTime()} of the game event behind the trigger.
+     */
+    static ClipRequest of(long triggerId, String fileName, ClipCategory category, String subDirectory, long triggeredNanos) {
+        return new ClipRequest(Collections.singletonList(new Trigger(triggerId, fileName, category)), category, subDirectory,
+                triggeredNanos);
+    }
+
+    /**
+     * @return A request holding the triggers of both requests, saved into the directory of the higher priority
+     * category.
+     */
+    ClipRequest merge(ClipRequest other) {
+        final List<Trigger> merged = new ArrayList<>(triggers.size() + other.triggers.size());
+        merged.addAll(triggers);
+        merged.addAll(other.triggers);
+        final ClipRequest first = other.category.hasPriorityOver(category) ? other : this;
+        return new ClipRequest(Collections.unmodifiableList(merged), first.category, first.subDirectory,
+                other.triggeredNanos - triggeredNanos < 0 ? other.triggeredNanos : triggeredNanos);
+    }
+
+    int getTriggerCount() {
+        return triggers.size();
+    }
+
+    long[] getTriggerIds() {
+        final long[] ids = new long[triggers.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = triggers.get(i).id;
+        }
+        return ids;
+    }
+
+    /**
+     * Builds the file name of the save: the names of all triggers, highest priority first, without duplicates. Names
+     * that do not fit are summarised as a count.
+     */
+    String getFileName() {
+        if (triggers.size() == 1) {
+            return triggers.get(0).fileName;
+        }
+
+        final List<Trigger> ordered = new ArrayList<>(triggers);
+        ordered.sort((a, b) -> Integer.compare(a.category.getPriority(), b.category.getPriority()));
+        final Set<String> names = new LinkedHashSet<>();
+        for (Trigger trigger : ordered) {
+            names.add(trigger.fileName);
+        }
+
+        final StringBuilder fileName = new StringBuilder();
+        int omitted = 0;
+        for (String name : names) {
+            if (fileName.length() == 0) {
+                fileName.append(name);
+            } else if (omitted == 0 && fileName.length() + NAME_SEPARATOR.length() + name.length() <= MAX_FILE_NAME_LENGTH) {
+                fileName.append(NAME_SEPARATOR).append(name);
+            } else {
+                omitted++;
+            }
+        }
+
+        if (omitted > 0) {
+            fileName.append(" (+").append(omitted).append(" more)");
+        }
+        return fileName.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getSubDirectory() + "/" + getFileName();
+    }
+
+    private static final class Trigger {
+        private final long id;
+        private final String fileName;
+        private final ClipCategory category;
+
+        private Trigger(long id, String fileName, ClipCategory category) {
+            this.id = id;
+            this.fileName = fileName;
+            this.category = category;
+        }
+    }
+}
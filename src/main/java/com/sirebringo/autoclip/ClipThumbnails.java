@@ -0,0 +1,195 @@
+package com.sirebringo.autoclip;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.ui.DrawManager;
+
+/**
+ * Saves a JPEG of the game as it was when a clip was triggered, next to the clip.
+ * <p>
+ * The next rendered frame is copied into a pooled image on the client thread, which is the only work done there.
+ * Scaling and encoding happen on a background thread, and the thumbnail waits in memory until the clip has been saved
+ * and its final path is known. When several triggers are merged into one clip, the thumbnail of the earliest is kept.
+ */
+@Slf4j
+final class ClipThumbnails {
+    /**
+     * The extension of the thumbnail saved next to a clip.
+     */
+    static final String FORMAT = "jpg";
+
+    private static final int WIDTH = 480;
+    // frames copied but not yet scaled; a trigger that finds none free gets no thumbnail
+    private static final int FRAME_POOL_SIZE = 2;
+    private static final int MAX_PENDING = 16;
+
+    private final DrawManager drawManager;
+    private final ExecutorService worker;
+    private final BlockingQueue<BufferedImage> framePool = new ArrayBlockingQueue<>(FRAME_POOL_SIZE);
+    private final AtomicInteger framesAllocated = new AtomicInteger();
+    private final Map<Long, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+    // only used on the worker
+    private final ByteArrayOutputStream encoded = new ByteArrayOutputStream(64 * 1024);
+    private BufferedImage thumbnail;
+
+    ClipThumbnails(DrawManager drawManager) {
+        this.drawManager = drawManager;
+        worker = Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "obs-auto-clip-thumbnails");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Captures the next frame for a trigger.
+     *
+     * @param triggerId The id of the trigger in the {@link TriggerJournal}.
+     */
+    void capture(long triggerId) {
+        if (pending.size() >= MAX_PENDING) {
+            return;
+        }
+
+        final CompletableFuture<byte[]> thumbnail = new CompletableFuture<>();
+        pending.put(triggerId, thumbnail);
+        drawManager.requestNextFrameListener(image -> copyFrame(image, thumbnail));
+    }
+
+    /**
+     * Writes the thumbnail of a saved clip next to it, named like the clip.
+     */
+    void saved(ClipRequest request, Path clip) {
+        final CompletableFuture<byte[]> thumbnail = take(request);
+        if (thumbnail == null) {
+            return;
+        }
+
+        final String fileName = clip.getFileName().toString();
+        final int extensionStart = fileName.lastIndexOf('.');
+        final Path target = clip.resolveSibling((extensionStart < 0 ? fileName : fileName.substring(0, extensionStart)) + "." + FORMAT);
+        thumbnail.thenAccept(bytes -> {
+            if (bytes == null) {
+                return;
+            }
+            try {
+                Files.write(target, bytes);
+            } catch (IOException e) {
+                log.warn("Could not save the thumbnail {}", target, e);
+            }
+        });
+    }
+
+    /**
+     * Forgets the thumbnail of a clip that was not saved.
+     */
+    void discard(ClipRequest request) {
+        take(request);
+    }
+
+    void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        worker.shutdown();
+        worker.awaitTermination(timeout, unit);
+        pending.clear();
+    }
+
+    /**
+     * @return The thumbnail of the earliest trigger in the request that has one.
+     */
+    private CompletableFuture<byte[]> take(ClipRequest request) {
+        CompletableFuture<byte[]> first = null;
+        for (long id : request.getTriggerIds()) {
+            final CompletableFuture<byte[]> thumbnail = pending.remove(id);
+            if (first == null) {
+                first = thumbnail;
+            }
+        }
+        return first;
+    }
+
+    private void copyFrame(Image image, CompletableFuture<byte[]> thumbnail) {
+        final BufferedImage frame = acquireFrame(image.getWidth(null), image.getHeight(null));
+        if (frame == null) {
+            thumbnail.complete(null);
+            return;
+        }
+
+        final Graphics2D graphics = frame.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+
+        try {
+            worker.execute(() -> {
+                try {
+                    thumbnail.complete(encode(frame));
+                } catch (IOException | RuntimeException e) {
+                    log.debug("Could not encode a clip thumbnail", e);
+                    thumbnail.complete(null);
+                } finally {
+                    framePool.offer(frame);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            framePool.offer(frame);
+            thumbnail.complete(null);
+        }
+    }
+
+    /**
+     * @return A pooled image of the given size, or null if all are in use.
+     */
+    private BufferedImage acquireFrame(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        BufferedImage frame = framePool.poll();
+        if (frame == null) {
+            if (framesAllocated.incrementAndGet() > FRAME_POOL_SIZE) {
+                framesAllocated.decrementAndGet();
+                return null;
+            }
+        } else if (frame.getWidth() == width && frame.getHeight() == height) {
+            return frame;
+        }
+        // first use, or the client was resized
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private byte[] encode(BufferedImage frame) throws IOException {
+        final int height = Math.max(1, frame.getHeight() * WIDTH / frame.getWidth());
+        if (thumbnail == null || thumbnail.getHeight() != height) {
+            thumbnail = new BufferedImage(WIDTH, height, BufferedImage.TYPE_INT_RGB);
+        }
+
+        final Graphics2D graphics = thumbnail.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(frame, 0, 0, WIDTH, height, null);
+        graphics.dispose();
+
+        encoded.reset();
+        if (!ImageIO.write(thumbnail, FORMAT, encoded)) {
+            throw new IOException("No " + FORMAT + " writer");
+        }
+        return encoded.toByteArray();
+    }
+}
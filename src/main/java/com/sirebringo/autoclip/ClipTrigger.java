@@ -0,0 +1,65 @@
+package com.sirebringo.autoclip;
+
+import net.runelite.api.events.ChatMessage;
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ScriptPreFired;
+import net.runelite.api.events.WidgetLoaded;
+
+/**
+ * Something in the game that is worth a clip.
+ * <p>
+ * A trigger declares the events it needs in {@link #subscribe}, and the {@link ClipTriggerRegistry} only calls the
+ * matching handlers for those: a chat trigger only sees messages of its chat types that the classifier put in one of
+ * its candidates, a widget trigger only sees its widget groups, and so on.
+ * <p>
+ * Triggers are called one event at a time on the trigger thread of the {@link TriggerDispatcher}, never on the client
+ * thread, so they must not use the client. What they need of it is in {@link TriggerContext#getGame()}.
+ */
+interface ClipTrigger {
+    void subscribe(ClipTriggerRegistry.Subscriptions subscriptions);
+
+    /**
+     * @param candidate What the classifier made of the message, {@code null} for a trigger subscribed to all
+     *                  messages of a type.
+     */
+    default void onChatMessage(ChatMessage event, ChatMessageClassifier.Candidate candidate) {
+    }
+
+    default void onWidgetLoaded(WidgetLoaded event) {
+    }
+
+    /**
+     * Called once every widget of the group the trigger declared a text for has its text set.
+     *
+     * @param event The load of the widget group.
+     */
+    default void onWidgetTexts(WidgetLoaded event) {
+    }
+
+    default void onScriptPreFired(ScriptPreFired event) {
+    }
+
+    default void onGameTick(GameTick event) {
+    }
+
+    default void onPlayerDeath(TriggerEvent.PlayerDeath death) {
+    }
+
+    default void onPlayerLootReceived(TriggerEvent.Loot loot) {
+    }
+
+    default void onNpcLootReceived(TriggerEvent.Loot loot) {
+    }
+
+    /**
+     * Called when the reward interface of Barrows or a raid loads, with the items in its chest.
+     */
+    default void onRewardChestLoot(TriggerEvent.Loot loot) {
+    }
+
+    /**
+     * Forgets any state carried between events, called when the plugin shuts down.
+     */
+    default void reset() {
+    }
+}
@@ -0,0 +1,378 @@
+package com.sirebringo.autoclip;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import net.runelite.api.ChatMessageType;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ScriptPreFired;
+import net.runelite.api.events.WidgetLoaded;
+import net.runelite.api.widgets.WidgetInfo;
+
+/**
+ * Routes game events to the {@link ClipTrigger}s subscribed to them.
+ * <p>
+ * Subscriptions are resolved once into lookup tables: chat triggers by {@link ChatMessageType} and classifier
+ * candidate, widget and script triggers in arrays indexed by group or script id, and the remaining events by
+ * {@link EventType}. An event nobody subscribed to costs one lookup.
+ * <p>
+ * The {@code isSubscribed} queries and the captured varbits, client string variables and widget texts are read on the
+ * client thread by the {@link TriggerDispatcher}; the {@code dispatch} methods run on its trigger thread.
+ */
+final class ClipTriggerRegistry {
+    /**
+     * The chat message types game messages about kills, drops and achievements arrive as.
+     */
+    static final Set<ChatMessageType> GAME_MESSAGE_TYPES = Collections.unmodifiableSet(EnumSet.of(
+            ChatMessageType.GAMEMESSAGE,
+            ChatMessageType.SPAM,
+            ChatMessageType.TRADE,
+            ChatMessageType.FRIENDSCHATNOTIFICATION));
+
+    enum EventType {
+        GAME_TICK,
+        PLAYER_DEATH,
+        PLAYER_LOOT_RECEIVED,
+        NPC_LOOT_RECEIVED,
+        REWARD_CHEST_LOOT
+    }
+
+    private static final ClipTrigger[] NONE = new ClipTrigger[0];
+    private static final WidgetInfo[] NO_WIDGETS = new WidgetInfo[0];
+
+    private final ChatMessageClassifier classifier;
+    // by chat message type, then by candidate ordinal
+    private final EnumMap<ChatMessageType, ClipTrigger[][]> chatTriggers = new EnumMap<>(ChatMessageType.class);
+    private final EnumMap<ChatMessageType, ClipTrigger[]> unclassifiedChatTriggers = new EnumMap<>(ChatMessageType.class);
+    private final ClipTrigger[][] widgetTriggers;
+    private final ClipTrigger[][] scriptTriggers;
+    private final EnumMap<EventType, ClipTrigger[]> eventTriggers = new EnumMap<>(EventType.class);
+    private final ClipTrigger[] triggers;
+    private final int[] varbits;
+    private final int[] varcStrings;
+    // by widget group id
+    private final WidgetInfo[][] widgetTexts;
+    private final ClipTrigger[][] widgetTextTriggers;
+
+    ClipTriggerRegistry(List<? extends ClipTrigger> triggers) {
+        final ChatMessageClassifier.Builder chatRules = ChatMessageClassifier.builder();
+        final Map<ChatMessageType, Map<ChatMessageClassifier.Candidate, List<ClipTrigger>>> chat = new EnumMap<>(ChatMessageType.class);
+        final Map<ChatMessageType, List<ClipTrigger>> unclassifiedChat = new EnumMap<>(ChatMessageType.class);
+        final Map<Integer, List<ClipTrigger>> widgets = new HashMap<>();
+        final Map<Integer, List<ClipTrigger>> scripts = new HashMap<>();
+        final Map<EventType, List<ClipTrigger>> events = new EnumMap<>(EventType.class);
+        final Set<Integer> capturedVarbits = new TreeSet<>();
+        final Set<Integer> capturedVarcStrings = new TreeSet<>();
+        final Map<Integer, List<WidgetInfo>> texts = new HashMap<>();
+        final Map<Integer, List<ClipTrigger>> textTriggers = new HashMap<>();
+        this.triggers = triggers.toArray(NONE);
+
+        for (ClipTrigger trigger : triggers) {
+            final Subscriptions subscriptions = new Subscriptions(chatRules);
+            trigger.subscribe(subscriptions);
+
+            for (ChatMessageType type : subscriptions.chatMessageTypes) {
+                for (ChatMessageClassifier.Candidate candidate : subscriptions.chatCandidates) {
+                    chat.computeIfAbsent(type, t -> new EnumMap<>(ChatMessageClassifier.Candidate.class))
+                            .computeIfAbsent(candidate, c -> new ArrayList<>())
+                            .add(trigger);
+                }
+            }
+            for (ChatMessageType type : subscriptions.unclassifiedChatMessageTypes) {
+                unclassifiedChat.computeIfAbsent(type, t -> new ArrayList<>()).add(trigger);
+            }
+            for (int groupId : subscriptions.widgetGroupIds) {
+                widgets.computeIfAbsent(groupId, id -> new ArrayList<>()).add(trigger);
+            }
+            for (int scriptId : subscriptions.scriptIds) {
+                scripts.computeIfAbsent(scriptId, id -> new ArrayList<>()).add(trigger);
+            }
+            for (EventType eventType : subscriptions.eventTypes) {
+                events.computeIfAbsent(eventType, t -> new ArrayList<>()).add(trigger);
+            }
+            capturedVarbits.addAll(subscriptions.varbits);
+            capturedVarcStrings.addAll(subscriptions.varcStrings);
+            for (WidgetInfo widget : subscriptions.widgetTexts) {
+                final List<WidgetInfo> groupTexts = texts.computeIfAbsent(widget.getGroupId(), id -> new ArrayList<>());
+                if (!groupTexts.contains(widget)) {
+                    groupTexts.add(widget);
+                }
+                final List<ClipTrigger> groupTriggers = textTriggers.computeIfAbsent(widget.getGroupId(), id -> new ArrayList<>());
+                if (!groupTriggers.contains(trigger)) {
+                    groupTriggers.add(trigger);
+                }
+            }
+        }
+
+        classifier = chatRules.build();
+        for (Map.Entry<ChatMessageType, Map<ChatMessageClassifier.Candidate, List<ClipTrigger>>> entry : chat.entrySet()) {
+            final ClipTrigger[][] byCandidate = new ClipTrigger[ChatMessageClassifier.Candidate.values().length][];
+            for (Map.Entry<ChatMessageClassifier.Candidate, List<ClipTrigger>> candidate : entry.getValue().entrySet()) {
+                byCandidate[candidate.getKey().ordinal()] = candidate.getValue().toArray(NONE);
+            }
+            chatTriggers.put(entry.getKey(), byCandidate);
+        }
+        for (Map.Entry<ChatMessageType, List<ClipTrigger>> entry : unclassifiedChat.entrySet()) {
+            unclassifiedChatTriggers.put(entry.getKey(), entry.getValue().toArray(NONE));
+        }
+        widgetTriggers = table(widgets);
+        scriptTriggers = table(scripts);
+        for (Map.Entry<EventType, List<ClipTrigger>> entry : events.entrySet()) {
+            eventTriggers.put(entry.getKey(), entry.getValue().toArray(NONE));
+        }
+        varbits = capturedVarbits.stream().mapToInt(Integer::intValue).toArray();
+        varcStrings = capturedVarcStrings.stream().mapToInt(Integer::intValue).toArray();
+
+        int widgetGroups = 0;
+        for (int groupId : texts.keySet()) {
+            widgetGroups = Math.max(widgetGroups, groupId + 1);
+        }
+        widgetTexts = new WidgetInfo[widgetGroups][];
+        for (Map.Entry<Integer, List<WidgetInfo>> entry : texts.entrySet()) {
+            widgetTexts[entry.getKey()] = entry.getValue().toArray(NO_WIDGETS);
+        }
+        widgetTextTriggers = table(textTriggers);
+    }
+
+    private static ClipTrigger[][] table(Map<Integer, List<ClipTrigger>> triggers) {
+        int size = 0;
+        for (int id : triggers.keySet()) {
+            if (id < 0) {
+                throw new IllegalArgumentException("Negative id " + id);
+            }
+            size = Math.max(size, id + 1);
+        }
+
+        final ClipTrigger[][] table = new ClipTrigger[size][];
+        for (Map.Entry<Integer, List<ClipTrigger>> entry : triggers.entrySet()) {
+            table[entry.getKey()] = entry.getValue().toArray(NONE);
+        }
+        return table;
+    }
+
+    private static ClipTrigger[] lookup(ClipTrigger[][] table, int id) {
+        return id >= 0 && id < table.length && table[id] != null ? table[id] : NONE;
+    }
+
+    boolean isSubscribed(ChatMessageType type) {
+        return unclassifiedChatTriggers.containsKey(type) || chatTriggers.containsKey(type);
+    }
+
+    boolean isSubscribedToWidget(int groupId) {
+        return lookup(widgetTriggers, groupId) != NONE;
+    }
+
+    boolean isSubscribedToScript(int scriptId) {
+        return lookup(scriptTriggers, scriptId) != NONE;
+    }
+
+    boolean isSubscribed(EventType type) {
+        return eventTriggers.containsKey(type);
+    }
+
+    /**
+     * @return The varbits every {@link GameSnapshot} holds. Must not be modified.
+     */
+    int[] getVarbits() {
+        return varbits;
+    }
+
+    /**
+     * @return The client string variables every {@link GameSnapshot} holds. Must not be modified.
+     */
+    int[] getVarcStrings() {
+        return varcStrings;
+    }
+
+    /**
+     * @return The widgets of the group whose text is waited for after the group loads.
+     */
+    WidgetInfo[] getWidgetTexts(int groupId) {
+        return groupId >= 0 && groupId < widgetTexts.length && widgetTexts[groupId] != null ? widgetTexts[groupId] : NO_WIDGETS;
+    }
+
+    void dispatchChatMessage(ChatMessage event) {
+        final ClipTrigger[] unclassified = unclassifiedChatTriggers.get(event.getType());
+        if (unclassified != null) {
+            for (ClipTrigger trigger : unclassified) {
+                trigger.onChatMessage(event, null);
+            }
+        }
+
+        final ClipTrigger[][] byCandidate = chatTriggers.get(event.getType());
+        if (byCandidate == null) {
+            return;
+        }
+
+        for (int candidates = classifier.classify(event.getMessage()); candidates != 0; candidates &= candidates - 1) {
+            final ChatMessageClassifier.Candidate candidate = ChatMessageClassifier.first(candidates);
+            final ClipTrigger[] candidateTriggers = byCandidate[candidate.ordinal()];
+            if (candidateTriggers != null) {
+                for (ClipTrigger trigger : candidateTriggers) {
+                    trigger.onChatMessage(event, candidate);
+                }
+            }
+        }
+    }
+
+    void dispatchWidgetLoaded(WidgetLoaded event) {
+        for (ClipTrigger trigger : lookup(widgetTriggers, event.getGroupId())) {
+            trigger.onWidgetLoaded(event);
+        }
+    }
+
+    void dispatchWidgetTexts(WidgetLoaded event) {
+        for (ClipTrigger trigger : lookup(widgetTextTriggers, event.getGroupId())) {
+            trigger.onWidgetTexts(event);
+        }
+    }
+
+    void dispatchScriptPreFired(ScriptPreFired event) {
+        for (ClipTrigger trigger : lookup(scriptTriggers, event.getScriptId())) {
+            trigger.onScriptPreFired(event);
+        }
+    }
+
+    void dispatchGameTick(GameTick event) {
+        for (ClipTrigger trigger : eventTriggers.getOrDefault(EventType.GAME_TICK, NONE)) {
+            trigger.onGameTick(event);
+        }
+    }
+
+    void dispatchPlayerDeath(TriggerEvent.PlayerDeath death) {
+        for (ClipTrigger trigger : eventTriggers.getOrDefault(EventType.PLAYER_DEATH, NONE)) {
+            trigger.onPlayerDeath(death);
+        }
+    }
+
+    void dispatchPlayerLootReceived(TriggerEvent.Loot loot) {
+        for (ClipTrigger trigger : eventTriggers.getOrDefault(EventType.PLAYER_LOOT_RECEIVED, NONE)) {
+            trigger.onPlayerLootReceived(loot);
+        }
+    }
+
+    void dispatchNpcLootReceived(TriggerEvent.Loot loot) {
+        for (ClipTrigger trigger : eventTriggers.getOrDefault(EventType.NPC_LOOT_RECEIVED, NONE)) {
+            trigger.onNpcLootReceived(loot);
+        }
+    }
+
+    void dispatchRewardChestLoot(TriggerEvent.Loot loot) {
+        for (ClipTrigger trigger : eventTriggers.getOrDefault(EventType.REWARD_CHEST_LOOT, NONE)) {
+            trigger.onRewardChestLoot(loot);
+        }
+    }
+
+    void reset() {
+        for (ClipTrigger trigger : triggers) {
+            trigger.reset();
+        }
+    }
+
+    /**
+     * The events one trigger wants, filled in by {@link ClipTrigger#subscribe}.
+     */
+    static final class Subscriptions {
+        private final ChatMessageClassifier.Builder chatRules;
+        private final Set<ChatMessageType> chatMessageTypes = EnumSet.noneOf(ChatMessageType.class);
+        private final Set<ChatMessageClassifier.Candidate> chatCandidates = EnumSet.noneOf(ChatMessageClassifier.Candidate.class);
+        private final Set<ChatMessageType> unclassifiedChatMessageTypes = EnumSet.noneOf(ChatMessageType.class);
+        private final List<Integer> widgetGroupIds = new ArrayList<>();
+        private final List<Integer> scriptIds = new ArrayList<>();
+        private final Set<EventType> eventTypes = EnumSet.noneOf(EventType.class);
+        private final List<Integer> varbits = new ArrayList<>();
+        private final List<Integer> varcStrings = new ArrayList<>();
+        private final List<WidgetInfo> widgetTexts = new ArrayList<>();
+
+        private Subscriptions(ChatMessageClassifier.Builder chatRules) {
+            this.chatRules = chatRules;
+        }
+
+        /**
+         * Subscribes to game messages (see {@link #GAME_MESSAGE_TYPES}) the classifier assigns to the given
+         * candidates. The rules for those candidates go into {@link #chatRules()}.
+         */
+        Subscriptions chatMessages(ChatMessageClassifier.Candidate... candidates) {
+            return chatMessages(GAME_MESSAGE_TYPES, candidates);
+        }
+
+        Subscriptions chatMessages(Set<ChatMessageType> types, ChatMessageClassifier.Candidate... candidates) {
+            chatMessageTypes.addAll(types);
+            Collections.addAll(chatCandidates, candidates);
+            return this;
+        }
+
+        /**
+         * Subscribes to every chat message of the given types, whether the classifier knows it or not. These arrive
+         * with a {@code null} candidate.
+         */
+        Subscriptions allChatMessages(Set<ChatMessageType> types) {
+            unclassifiedChatMessageTypes.addAll(types);
+            return this;
+        }
+
+        /**
+         * @return The rules of the chat message classifier shared by all triggers.
+         */
+        ChatMessageClassifier.Builder chatRules() {
+            return chatRules;
+        }
+
+        Subscriptions widgets(int... groupIds) {
+            for (int groupId : groupIds) {
+                widgetGroupIds.add(groupId);
+            }
+            return this;
+        }
+
+        Subscriptions scripts(int... ids) {
+            for (int id : ids) {
+                scriptIds.add(id);
+            }
+            return this;
+        }
+
+        Subscriptions events(EventType... types) {
+            Collections.addAll(eventTypes, types);
+            return this;
+        }
+
+        /**
+         * Reads the varbits into the {@link GameSnapshot} of every event, see {@link GameSnapshot#getVarbitValue}.
+         */
+        Subscriptions varbits(int... ids) {
+            for (int id : ids) {
+                varbits.add(id);
+            }
+            return this;
+        }
+
+        /**
+         * Reads the client string variables into the {@link GameSnapshot} of every event, see
+         * {@link GameSnapshot#getVarcStrValue}.
+         */
+        Subscriptions varcStrings(int... ids) {
+            for (int id : ids) {
+                varcStrings.add(id);
+            }
+            return this;
+        }
+
+        /**
+         * Subscribes to the moment the text of the widgets is set, which is some time after their group loads. The
+         * texts arrive in the {@link GameSnapshot} of {@link ClipTrigger#onWidgetTexts}, see
+         * {@link GameSnapshot#getWidgetText}.
+         */
+        Subscriptions widgetTexts(WidgetInfo... widgets) {
+            Collections.addAll(widgetTexts, widgets);
+            return this;
+        }
+    }
+}
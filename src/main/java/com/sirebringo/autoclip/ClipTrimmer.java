@@ -0,0 +1,181 @@
+package com.sirebringo.autoclip;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Shortens a saved replay to its last seconds without re-encoding.
+ * <p>
+ * A save holds the whole replay buffer, while a clip only needs the moments before its trigger. The trimmer cuts the
+ * file at a keyframe and copies the rest as is, see {@link MkvTrimmer} and {@link Mp4Trimmer}. The trimmed copy is
+ * written next to the original, read back and checked, and only then moved over the original. Memory use does not
+ * depend on the size of the clip, only on its number of frames.
+ * <p>
+ * Clips are cut out of a long recording the same way, see {@link #extract}.
+ */
+final class ClipTrimmer {
+    enum Result {
+        TRIMMED,
+        /**
+         * The clip is no longer than what should be kept.
+         */
+        NOT_NEEDED,
+        /**
+         * Not a container the trimmer can cut.
+         */
+        UNSUPPORTED
+    }
+
+    /**
+     * A recording whose layout was read, to cut clips out of.
+     */
+    interface Source {
+        /**
+         * Writes the part of the recording from the keyframe at or before {@code fromMillis} to {@code toMillis} to
+         * {@code target} and checks the result.
+         */
+        void cut(Path target, long fromMillis, long toMillis) throws IOException;
+    }
+
+    /**
+     * A clip to cut out of a recording, see {@link #extract}.
+     */
+    @RequiredArgsConstructor
+    @Getter
+    static final class Extraction {
+        private final Path target;
+        /**
+         * Where the clip starts and ends, from the start of the recording.
+         */
+        private final long fromMillis;
+        private final long toMillis;
+        /**
+         * Why the clip could not be cut, or {@code null} once it was.
+         */
+        private IOException failure;
+    }
+
+    private static final String TEMPORARY_SUFFIX = ".trimming";
+
+    private ClipTrimmer() {
+    }
+
+    /**
+     * @param keepMillis How much of the end of the clip to keep. The cut is at the keyframe at or before that point,
+     *                   so the result is a little longer.
+     */
+    static Result trim(Path clip, long keepMillis) throws IOException {
+        final Path trimmed = clip.resolveSibling(clip.getFileName() + TEMPORARY_SUFFIX);
+        try {
+            final Result result;
+            switch (extension(clip)) {
+                case "mkv":
+                    result = MkvTrimmer.trim(clip, trimmed, keepMillis);
+                    break;
+                case "mp4":
+                case "mov":
+                    result = Mp4Trimmer.trim(clip, trimmed, keepMillis);
+                    break;
+                default:
+                    return Result.UNSUPPORTED;
+            }
+
+            if (result == Result.TRIMMED) {
+                replace(trimmed, clip);
+            }
+            return result;
+        } finally {
+            Files.deleteIfExists(trimmed);
+        }
+    }
+
+    /**
+     * Cuts clips out of a recording, reading its layout only once. A clip that cannot be cut has its
+     * {@link Extraction#getFailure() failure} set and does not keep the others from being cut. If the layout cannot
+     * be read, every clip has that failure.
+     *
+     * @return {@link Result#UNSUPPORTED} if the recording is not a container the trimmer can cut, see
+     * {@link #unsupportedReason}, and {@link Result#TRIMMED} otherwise.
+     */
+    static Result extract(Path recording, List<Extraction> extractions) {
+        final Source source;
+        try {
+            switch (extension(recording)) {
+                case "mkv":
+                    source = MkvTrimmer.open(recording);
+                    break;
+                case "mp4":
+                case "mov":
+                    source = Mp4Trimmer.open(recording);
+                    break;
+                default:
+                    source = null;
+            }
+        } catch (IOException e) {
+            for (Extraction extraction : extractions) {
+                extraction.failure = e;
+            }
+            return Result.TRIMMED;
+        }
+        if (source == null) {
+            return Result.UNSUPPORTED;
+        }
+
+        for (Extraction extraction : extractions) {
+            final Path target = extraction.target;
+            final Path temporary = target.resolveSibling(target.getFileName() + TEMPORARY_SUFFIX);
+            try {
+                Files.createDirectories(target.getParent());
+                source.cut(temporary, extraction.fromMillis, extraction.toMillis);
+                replace(temporary, target);
+                extraction.failure = null;
+            } catch (IOException e) {
+                extraction.failure = e;
+            } finally {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException e) {
+                    // the temporary file is overwritten by the next attempt
+                }
+            }
+        }
+        return Result.TRIMMED;
+    }
+
+    /**
+     * @return Why {@link #extract} could not cut clips from the recording.
+     */
+    static String unsupportedReason(Path recording) {
+        switch (extension(recording)) {
+            case "mkv":
+                return recording.getFileName() + " uses Matroska features the clipper cannot cut";
+            case "mp4":
+            case "mov":
+                // OBS writes the index of an MP4 last, so a recording that was not stopped cleanly has none
+                return recording.getFileName() + " has no readable index, record to MKV to keep the clips of a "
+                        + "recording that does not finish";
+            default:
+                return "clips can only be cut from MKV and MP4 recordings, not " + recording.getFileName();
+        }
+    }
+
+    private static String extension(Path file) {
+        final String fileName = file.getFileName().toString();
+        return fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static void replace(Path trimmed, Path clip) throws IOException {
+        try {
+            Files.move(trimmed, clip, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(trimmed, clip, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.sirebringo.autoclip;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.api.events.WidgetLoaded;
+import net.runelite.client.util.Text;
+
+import static net.runelite.api.widgets.WidgetID.CLUE_SCROLL_REWARD_GROUP_ID;
+
+/**
+ * Clips the clue scroll reward interface, named after the clue count message that precedes it.
+ */
+final class ClueRewardTrigger implements ClipTrigger {
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("([0-9]+)");
+
+    private final TriggerContext context;
+    private String clueType;
+    private Integer clueNumber;
+
+    ClueRewardTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.chatMessages(ChatMessageClassifier.Candidate.CLUE_COUNT)
+                .widgets(CLUE_SCROLL_REWARD_GROUP_ID)
+                .chatRules()
+                .containsAll(ChatMessageClassifier.Candidate.CLUE_COUNT, "You have completed", "Treasure");
+    }
+
+    @Override
+    public void onChatMessage(ChatMessage event, ChatMessageClassifier.Candidate candidate) {
+        final String chatMessage = event.getMessage();
+        Matcher m = NUMBER_PATTERN.matcher(Text.removeTags(chatMessage));
+        if (m.find()) {
+            clueNumber = Integer.valueOf(m.group());
+            clueType = chatMessage.substring(chatMessage.lastIndexOf(m.group()) + m.group().length() + 1, chatMessage.indexOf("Treasure") - 1);
+        }
+    }
+
+    @Override
+    public void onWidgetLoaded(WidgetLoaded event) {
+        if (!context.getConfig().clipRewards() || clueType == null || clueNumber == null) {
+            return;
+        }
+
+        String fileName = Character.toUpperCase(clueType.charAt(0)) + clueType.substring(1) + "(" + clueNumber + ")";
+        clueType = null;
+        clueNumber = null;
+        context.save(fileName, ClipCategory.CLUE_SCROLL_REWARDS);
+    }
+
+    @VisibleForTesting
+    int getClueNumber() {
+        return clueNumber;
+    }
+
+    @VisibleForTesting
+    String getClueType() {
+        return clueType;
+    }
+}
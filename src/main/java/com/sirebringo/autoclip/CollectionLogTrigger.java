@@ -0,0 +1,68 @@
+package com.sirebringo.autoclip;
+
+import net.runelite.api.ScriptID;
+import net.runelite.api.VarClientStr;
+import net.runelite.api.Varbits;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.api.events.ScriptPreFired;
+import net.runelite.client.util.Text;
+
+/**
+ * Clips a new collection log entry, announced either in chat or by the notification popup, depending on the
+ * player's collection log notification setting.
+ */
+final class CollectionLogTrigger implements ClipTrigger {
+    private static final String COLLECTION_LOG_TEXT = "New item added to your collection log: ";
+
+    private final TriggerContext context;
+    private boolean notificationStarted;
+
+    CollectionLogTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.chatMessages(ChatMessageClassifier.Candidate.COLLECTION_LOG)
+                .scripts(ScriptID.NOTIFICATION_START, ScriptID.NOTIFICATION_DELAY)
+                .varbits(Varbits.COLLECTION_LOG_NOTIFICATION)
+                .varcStrings(VarClientStr.NOTIFICATION_TOP_TEXT, VarClientStr.NOTIFICATION_BOTTOM_TEXT)
+                .chatRules()
+                .startsWith(ChatMessageClassifier.Candidate.COLLECTION_LOG, COLLECTION_LOG_TEXT);
+    }
+
+    @Override
+    public void onChatMessage(ChatMessage event, ChatMessageClassifier.Candidate candidate) {
+        if (context.getConfig().clipCollectionLogEntries() && context.getGame().getVarbitValue(Varbits.COLLECTION_LOG_NOTIFICATION) == 1) {
+            String entry = Text.removeTags(event.getMessage()).substring(COLLECTION_LOG_TEXT.length());
+            String fileName = "Collection log (" + entry + ")";
+            context.save(fileName, ClipCategory.COLLECTION_LOG);
+        }
+    }
+
+    @Override
+    public void onScriptPreFired(ScriptPreFired event) {
+        if (event.getScriptId() == ScriptID.NOTIFICATION_START) {
+            notificationStarted = true;
+            return;
+        }
+        if (!notificationStarted) {
+            return;
+        }
+
+        notificationStarted = false;
+        final GameSnapshot game = context.getGame();
+        String topText = game.getVarcStrValue(VarClientStr.NOTIFICATION_TOP_TEXT);
+        if (topText.equalsIgnoreCase("Collection log") && context.getConfig().clipCollectionLogEntries()) {
+            String bottomText = game.getVarcStrValue(VarClientStr.NOTIFICATION_BOTTOM_TEXT);
+            String entry = Text.removeTags(bottomText).substring("New item:".length());
+            String fileName = "Collection log (" + entry + ")";
+            context.save(fileName, ClipCategory.COLLECTION_LOG);
+        }
+    }
+
+    @Override
+    public void reset() {
+        notificationStarted = false;
+    }
+}
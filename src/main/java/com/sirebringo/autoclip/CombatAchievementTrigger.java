@@ -0,0 +1,89 @@
+package com.sirebringo.autoclip;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.runelite.api.ScriptID;
+import net.runelite.api.VarClientStr;
+import net.runelite.api.Varbits;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.api.events.ScriptPreFired;
+import net.runelite.client.util.Text;
+
+/**
+ * Clips a completed combat task, announced either in chat or by the notification popup, depending on the player's
+ * combat achievement popup setting.
+ */
+final class CombatAchievementTrigger implements ClipTrigger {
+    private static final Pattern COMBAT_ACHIEVEMENTS_PATTERN = Pattern.compile("Congratulations, you've completed an? (?<tier>\\w+) combat task: <col=[0-9a-f]+>(?<task>(.+))</col>\\.");
+
+    private final TriggerContext context;
+    private boolean notificationStarted;
+
+    CombatAchievementTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.chatMessages(ChatMessageClassifier.Candidate.COMBAT_TASK)
+                .scripts(ScriptID.NOTIFICATION_START, ScriptID.NOTIFICATION_DELAY)
+                .varbits(Varbits.COMBAT_ACHIEVEMENTS_POPUP)
+                .varcStrings(VarClientStr.NOTIFICATION_TOP_TEXT, VarClientStr.NOTIFICATION_BOTTOM_TEXT)
+                .chatRules()
+                .contains(ChatMessageClassifier.Candidate.COMBAT_TASK, "combat task");
+    }
+
+    @Override
+    public void onChatMessage(ChatMessage event, ChatMessageClassifier.Candidate candidate) {
+        if (context.getConfig().clipCombatAchievements() && context.getGame().getVarbitValue(Varbits.COMBAT_ACHIEVEMENTS_POPUP) == 1) {
+            String fileName = parseCombatAchievementWidget(event.getMessage());
+            if (!fileName.isEmpty()) {
+                context.save(fileName, ClipCategory.COMBAT_ACHIEVEMENTS);
+            }
+        }
+    }
+
+    @Override
+    public void onScriptPreFired(ScriptPreFired event) {
+        if (event.getScriptId() == ScriptID.NOTIFICATION_START) {
+            notificationStarted = true;
+            return;
+        }
+        if (!notificationStarted) {
+            return;
+        }
+
+        notificationStarted = false;
+        final GameSnapshot game = context.getGame();
+        String topText = game.getVarcStrValue(VarClientStr.NOTIFICATION_TOP_TEXT);
+        if (topText.equalsIgnoreCase("Combat Task Completed!") && context.getConfig().clipCombatAchievements() && game.getVarbitValue(Varbits.COMBAT_ACHIEVEMENTS_POPUP) == 0) {
+            String bottomText = game.getVarcStrValue(VarClientStr.NOTIFICATION_BOTTOM_TEXT);
+            String entry = Text.removeTags(bottomText).substring("Task Completed: ".length());
+            String fileName = "Combat task (" + entry.replaceAll("[:?]", "") + ")";
+            context.save(fileName, ClipCategory.COMBAT_ACHIEVEMENTS);
+        }
+    }
+
+    @Override
+    public void reset() {
+        notificationStarted = false;
+    }
+
+    /**
+     * Parses a combat achievement success chat message into a filename-safe string.
+     *
+     * @param text A received chat message which may or may not be from completing a combat achievement.
+     * @return A formatted string of the achieved combat task name, or the empty string if the passed message
+     * is not a combat achievement completion message.
+     */
+    @VisibleForTesting
+    static String parseCombatAchievementWidget(final String text) {
+        final Matcher m = COMBAT_ACHIEVEMENTS_PATTERN.matcher(text);
+        if (m.matches()) {
+            String task = m.group("task").replaceAll("[:?]", "");
+            return "Combat task (" + task + ")";
+        }
+        return "";
+    }
+}
@@ -0,0 +1,307 @@
+package com.sirebringo.autoclip;
+
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the {@link AutoClipConfig} values the event handlers read.
+ * <p>
+ * Every call on {@link AutoClipConfig} goes through the {@link net.runelite.client.config.ConfigManager} proxy, which
+ * looks the key up and parses the stored string. The handlers run for every chat message and widget, so the plugin
+ * copies the toggles into a bitset once and swaps in a new snapshot when the {@code clip} config group changes.
+ * The methods are named after their {@link AutoClipConfig} counterparts.
+ */
+final class ConfigSnapshot {
+    private enum Flag {
+        NOTIFY_WHEN_CLIP_TAKEN,
+        REWARDS,
+        LEVELS,
+        KINGDOM,
+        PETS,
+        KILLS,
+        BOSS_KILLS,
+        PLAYER_DEATH,
+        FRIEND_DEATH,
+        CLAN_DEATH,
+        DUELS,
+        VALUABLE_DROPS,
+        UNTRADEABLE_DROPS,
+        LOOT_VALUE,
+        HIGH_GAMBLES,
+        COLLECTION_LOG_ENTRIES,
+        COMBAT_ACHIEVEMENTS,
+        TRIM_CLIPS,
+        SAVE_THUMBNAILS
+    }
+
+    private final int flags;
+    private final int valuableDropThreshold;
+    private final int lootValueThreshold;
+    private final int mergeWindow;
+    private final ClipMode clipMode;
+    private final String customTriggers;
+    // by category ordinal
+    private final int[] postRollMillis;
+    // by category ordinal
+    private final int[] trimPreRollSeconds;
+    private final int diskQuota;
+    // by category ordinal
+    private final int[] categoryDiskQuotas;
+    private final QuotaEvictionPolicy quotaEviction;
+    // by category ordinal
+    private final int[] clipBursts;
+    private final int playerClipBurst;
+    private final int clipRefillSeconds;
+
+    private ConfigSnapshot(int flags, int valuableDropThreshold, int lootValueThreshold, int[] postRollMillis, int mergeWindow, ClipMode clipMode,
+                           String customTriggers, int[] trimPreRollSeconds, int diskQuota, int[] categoryDiskQuotas,
+                           QuotaEvictionPolicy quotaEviction, int[] clipBursts, int playerClipBurst,
+                           int clipRefillSeconds) {
+        this.flags = flags;
+        this.valuableDropThreshold = valuableDropThreshold;
+        this.lootValueThreshold = lootValueThreshold;
+        this.postRollMillis = postRollMillis;
+        this.mergeWindow = mergeWindow;
+        this.clipMode = clipMode;
+        this.customTriggers = customTriggers;
+        this.trimPreRollSeconds = trimPreRollSeconds;
+        this.diskQuota = diskQuota;
+        this.categoryDiskQuotas = categoryDiskQuotas;
+        this.quotaEviction = quotaEviction;
+        this.clipBursts = clipBursts;
+        this.playerClipBurst = playerClipBurst;
+        this.clipRefillSeconds = clipRefillSeconds;
+    }
+
+    static ConfigSnapshot of(AutoClipConfig config) {
+        int flags = 0;
+        flags |= flag(Flag.NOTIFY_WHEN_CLIP_TAKEN, config.notifyWhenClipTaken());
+        flags |= flag(Flag.REWARDS, config.clipRewards());
+        flags |= flag(Flag.LEVELS, config.clipLevels());
+        flags |= flag(Flag.KINGDOM, config.clipKingdom());
+        flags |= flag(Flag.PETS, config.clipPet());
+        flags |= flag(Flag.KILLS, config.clipKills());
+        flags |= flag(Flag.BOSS_KILLS, config.clipBossKills());
+        flags |= flag(Flag.PLAYER_DEATH, config.clipPlayerDeath());
+        flags |= flag(Flag.FRIEND_DEATH, config.clipFriendDeath());
+        flags |= flag(Flag.CLAN_DEATH, config.clipClanDeath());
+        flags |= flag(Flag.DUELS, config.clipDuels());
+        flags |= flag(Flag.VALUABLE_DROPS, config.clipValuableDrop());
+        flags |= flag(Flag.UNTRADEABLE_DROPS, config.clipUntradeableDrop());
+        flags |= flag(Flag.LOOT_VALUE, config.clipLootValue());
+        flags |= flag(Flag.HIGH_GAMBLES, config.clipHighGamble());
+        flags |= flag(Flag.COLLECTION_LOG_ENTRIES, config.clipCollectionLogEntries());
+        flags |= flag(Flag.COMBAT_ACHIEVEMENTS, config.clipCombatAchievements());
+        flags |= flag(Flag.TRIM_CLIPS, config.trimClips());
+        flags |= flag(Flag.SAVE_THUMBNAILS, config.saveThumbnails());
+
+        return new ConfigSnapshot(flags, config.valuableDropThreshold(), config.lootValueThreshold(),
+                parsePerCategory(config.postRoll(), config.postRollPerCategory()), config.mergeWindow(),
+                config.clipMode(), config.customTriggers(),
+                parsePerCategory(config.trimPreRoll(), config.trimPreRollPerCategory()),
+                config.clipFolderLimit(), parsePerCategory(0, config.categoryFolderLimits()), config.quotaEviction(),
+                parsePerCategory(config.clipBurst(), config.clipBurstPerCategory()), config.playerClipBurst(),
+                config.clipRefill());
+    }
+
+    /**
+     * Parses {@code <category>: <seconds>} lines, where the category is its directory name, ignoring case. Lines
+     * that do not parse are skipped.
+     */
+    private static int[] parsePerCategory(int defaultValue, String overrides) {
+        final int[] values = new int[ClipCategory.values().length];
+        Arrays.fill(values, defaultValue);
+        if (overrides == null) {
+            return values;
+        }
+
+        for (String line : overrides.split("\n")) {
+            final int separator = line.lastIndexOf(':');
+            if (separator < 0) {
+                continue;
+            }
+
+            final String name = line.substring(0, separator).trim();
+            final int value;
+            try {
+                value = Integer.parseInt(line.substring(separator + 1).trim());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            for (ClipCategory category : ClipCategory.values()) {
+                if (category.getDirectoryName().equalsIgnoreCase(name)) {
+                    values[category.ordinal()] = value;
+                }
+            }
+        }
+        return values;
+    }
+
+    private static int flag(Flag flag, boolean enabled) {
+        return enabled ? 1 << flag.ordinal() : 0;
+    }
+
+    private boolean isSet(Flag flag) {
+        return (flags & (1 << flag.ordinal())) != 0;
+    }
+
+    boolean notifyWhenClipTaken() {
+        return isSet(Flag.NOTIFY_WHEN_CLIP_TAKEN);
+    }
+
+    boolean clipRewards() {
+        return isSet(Flag.REWARDS);
+    }
+
+    boolean clipLevels() {
+        return isSet(Flag.LEVELS);
+    }
+
+    boolean clipKingdom() {
+        return isSet(Flag.KINGDOM);
+    }
+
+    boolean clipPet() {
+        return isSet(Flag.PETS);
+    }
+
+    boolean clipKills() {
+        return isSet(Flag.KILLS);
+    }
+
+    boolean clipBossKills() {
+        return isSet(Flag.BOSS_KILLS);
+    }
+
+    boolean clipPlayerDeath() {
+        return isSet(Flag.PLAYER_DEATH);
+    }
+
+    boolean clipFriendDeath() {
+        return isSet(Flag.FRIEND_DEATH);
+    }
+
+    boolean clipClanDeath() {
+        return isSet(Flag.CLAN_DEATH);
+    }
+
+    boolean clipDuels() {
+        return isSet(Flag.DUELS);
+    }
+
+    boolean clipValuableDrop() {
+        return isSet(Flag.VALUABLE_DROPS);
+    }
+
+    int valuableDropThreshold() {
+        return valuableDropThreshold;
+    }
+
+    boolean clipUntradeableDrop() {
+        return isSet(Flag.UNTRADEABLE_DROPS);
+    }
+
+    boolean clipLootValue() {
+        return isSet(Flag.LOOT_VALUE);
+    }
+
+    int lootValueThreshold() {
+        return lootValueThreshold;
+    }
+
+    boolean clipHighGamble() {
+        return isSet(Flag.HIGH_GAMBLES);
+    }
+
+    boolean clipCollectionLogEntries() {
+        return isSet(Flag.COLLECTION_LOG_ENTRIES);
+    }
+
+    boolean clipCombatAchievements() {
+        return isSet(Flag.COMBAT_ACHIEVEMENTS);
+    }
+
+    String customTriggers() {
+        return customTriggers;
+    }
+
+    boolean trimClips() {
+        return isSet(Flag.TRIM_CLIPS);
+    }
+
+    boolean saveThumbnails() {
+        return isSet(Flag.SAVE_THUMBNAILS);
+    }
+
+    /**
+     * @return The seconds before the trigger to keep when trimming a clip of the category, 0 or less to keep all.
+     */
+    int trimPreRoll(ClipCategory category) {
+        return trimPreRollSeconds[category.ordinal()];
+    }
+
+    /**
+     * @return The size limit of the whole clip folder in megabytes, 0 or less for none.
+     */
+    int diskQuota() {
+        return diskQuota;
+    }
+
+    /**
+     * @return The size limit of the category's directory in megabytes, 0 or less for none.
+     */
+    int categoryDiskQuota(ClipCategory category) {
+        return categoryDiskQuotas[category.ordinal()];
+    }
+
+    boolean hasDiskQuota() {
+        if (diskQuota > 0) {
+            return true;
+        }
+        for (int quota : categoryDiskQuotas) {
+            if (quota > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    QuotaEvictionPolicy quotaEviction() {
+        return quotaEviction;
+    }
+
+    /**
+     * @return How many milliseconds of the game after the trigger a clip of the category should hold.
+     */
+    int postRoll(ClipCategory category) {
+        return postRollMillis[category.ordinal()];
+    }
+
+    int mergeWindow() {
+        return mergeWindow;
+    }
+
+    ClipMode clipMode() {
+        return clipMode;
+    }
+
+    /**
+     * @return How many clips of the category may be saved in a row, 0 or less for no limit.
+     */
+    int clipBurst(ClipCategory category) {
+        return clipBursts[category.ordinal()];
+    }
+
+    /**
+     * @return How many clips about the same other player may be saved in a row, 0 or less for no limit.
+     */
+    int playerClipBurst() {
+        return playerClipBurst;
+    }
+
+    /**
+     * @return The seconds until one more clip may be saved, 0 or less for no limit.
+     */
+    int clipRefill() {
+        return clipRefillSeconds;
+    }
+}
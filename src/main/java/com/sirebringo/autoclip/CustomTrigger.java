@@ -0,0 +1,60 @@
+package com.sirebringo.autoclip;
+
+import com.google.common.collect.Sets;
+import java.util.Set;
+import net.runelite.api.ChatMessageType;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.client.util.Text;
+
+/**
+ * Clips chat messages matching the user's own rules, see {@link CustomTriggerRules}.
+ */
+final class CustomTrigger implements ClipTrigger {
+    private static final Set<ChatMessageType> CHAT_MESSAGE_TYPES = Sets.immutableEnumSet(Sets.union(
+            ClipTriggerRegistry.GAME_MESSAGE_TYPES,
+            Sets.immutableEnumSet(ChatMessageType.CLAN_MESSAGE, ChatMessageType.CLAN_GIM_MESSAGE)));
+
+    private final TriggerContext context;
+    // the snapshot the rules were last checked against, so the rules text is only compared once per config change
+    private ConfigSnapshot compiledFor;
+    private String rulesText = "";
+    private CustomTriggerRules rules = CustomTriggerRules.EMPTY;
+
+    CustomTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.allChatMessages(CHAT_MESSAGE_TYPES);
+    }
+
+    @Override
+    public void onChatMessage(ChatMessage event, ChatMessageClassifier.Candidate candidate) {
+        final ConfigSnapshot config = context.getConfig();
+        if (config != compiledFor) {
+            final String text = config.customTriggers() != null ? config.customTriggers() : "";
+            if (!text.equals(rulesText)) {
+                rulesText = text;
+                rules = CustomTriggerRules.parse(text);
+            }
+            compiledFor = config;
+        }
+
+        if (rules.isEmpty()) {
+            return;
+        }
+
+        final CustomTriggerRules.Match match = rules.match(Text.removeTags(event.getMessage()));
+        if (match == null) {
+            return;
+        }
+
+        final String fileName = match.getFileName().isEmpty() ? ClipCategory.CUSTOM.getDirectoryName() : match.getFileName();
+        if (match.getSubDirectory() != null) {
+            context.save(fileName, ClipCategory.CUSTOM, match.getSubDirectory());
+        } else {
+            context.save(fileName, ClipCategory.CUSTOM);
+        }
+    }
+}
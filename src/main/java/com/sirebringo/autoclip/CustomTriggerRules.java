@@ -0,0 +1,347 @@
+package com.sirebringo.autoclip;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The user's {@code pattern => subdirectory/file name} chat rules, compiled into a single alternation so a message is
+ * scanned once no matter how many rules there are.
+ * <p>
+ * The first rule in the list to match wins. The alternation finds the rule that matches earliest in the message, so
+ * when that is not the first rule, only the rules before it are tried again on the rest of the message. Numbered
+ * backreferences are rejected, as each rule's groups are renumbered in the alternation; named ones work.
+ * <p>
+ * A user's regex may backtrack catastrophically on some message. Every match runs on a {@link CharSequence} that
+ * gives up after {@link #MATCH_BUDGET} character reads; when that happens, the rules are tried one by one on the
+ * message and those that run out of budget on their own are disabled until the rules are changed.
+ * <p>
+ * Not thread-safe, only used on the trigger thread.
+ */
+@Slf4j
+final class CustomTriggerRules {
+    static final CustomTriggerRules EMPTY = new CustomTriggerRules(new ArrayList<>());
+
+    /**
+     * Character reads a match may take, well under a millisecond.
+     */
+    static final int MATCH_BUDGET = 200_000;
+
+    private static final String RULE_SEPARATOR = "=>";
+    private static final String ILLEGAL_CHARACTERS = "[<>:\"\\\\|?*\\p{Cntrl}]";
+    private static final String ILLEGAL_FILE_NAME_CHARACTERS = "[<>:\"/\\\\|?*\\p{Cntrl}]";
+    // dots at either end would make a hidden file, or with nothing else, a parent directory
+    private static final String OUTER_DOTS = "^[.\\s]+|[.\\s]+$";
+
+    private final List<Rule> rules;
+    private Pattern combined;
+    // the enabled rules in the order of their alternatives, and the group holding each alternative
+    private Rule[] alternatives;
+    private int[] alternativeGroups;
+
+    private CustomTriggerRules(List<Rule> rules) {
+        this.rules = rules;
+        compile();
+    }
+
+    /**
+     * Parses one rule per line. Blank lines and lines starting with {@code #} are skipped; rules that do not parse
+     * are logged and skipped.
+     */
+    static CustomTriggerRules parse(String text) {
+        final List<Rule> rules = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            final int separator = line.lastIndexOf(RULE_SEPARATOR);
+            if (separator <= 0) {
+                log.warn("Custom trigger \"{}\" has no \"{}\", skipping it", line, RULE_SEPARATOR);
+                continue;
+            }
+
+            final String regex = line.substring(0, separator).trim();
+            final String target = line.substring(separator + RULE_SEPARATOR.length()).trim();
+            if (hasNumberedBackreference(regex)) {
+                log.warn("Custom trigger \"{}\" uses a numbered backreference, skipping it: name the group and use \\k<name>",
+                        line);
+                continue;
+            }
+            try {
+                rules.add(new Rule(line, Pattern.compile(regex), target));
+            } catch (PatternSyntaxException e) {
+                log.warn("Custom trigger \"{}\" is not a valid regex, skipping it: {}", line, e.getDescription());
+            }
+        }
+        return rules.isEmpty() ? EMPTY : new CustomTriggerRules(rules);
+    }
+
+    boolean isEmpty() {
+        return combined == null;
+    }
+
+    /**
+     * @return The first rule to match somewhere in the message, expanded into a clip name, or {@code null}.
+     */
+    Match match(String message) {
+        if (combined == null) {
+            return null;
+        }
+
+        final Matcher m = combined.matcher(new BudgetedText(message));
+        try {
+            if (!m.find()) {
+                return null;
+            }
+
+            int matched = 0;
+            while (m.start(alternativeGroups[matched]) < 0) {
+                matched++;
+            }
+            // the earlier rules did not match up to here, but may further on
+            final int from = m.start() + 1;
+            for (int i = 0; i < matched && from <= message.length(); i++) {
+                final Matcher earlier = alternatives[i].pattern.matcher(new BudgetedText(message));
+                if (earlier.find(from)) {
+                    return alternatives[i].expand(earlier, 0);
+                }
+            }
+            return alternatives[matched].expand(m, alternativeGroups[matched]);
+        } catch (MatchBudgetExceededException e) {
+            disableSlowRules(message);
+            return null;
+        }
+    }
+
+    private void disableSlowRules(String message) {
+        boolean disabled = false;
+        for (Rule rule : alternatives) {
+            try {
+                rule.pattern.matcher(new BudgetedText(message)).find();
+            } catch (MatchBudgetExceededException e) {
+                log.warn("Custom trigger \"{}\" took too long on \"{}\", disabling it until the rules change", rule.source, message);
+                rule.disabled = true;
+                disabled = true;
+            }
+        }
+
+        if (disabled) {
+            compile();
+        } else {
+            log.debug("Custom triggers took too long together on \"{}\", skipping it", message);
+        }
+    }
+
+    private void compile() {
+        final StringBuilder regex = new StringBuilder();
+        final List<Rule> enabled = new ArrayList<>(rules.size());
+        final List<Integer> groups = new ArrayList<>(rules.size());
+        Pattern pattern = null;
+        int group = 1;
+        for (Rule rule : rules) {
+            if (rule.disabled) {
+                continue;
+            }
+
+            final int length = regex.length();
+            if (length > 0) {
+                regex.append('|');
+            }
+            regex.append('(').append(rule.pattern.pattern()).append(')');
+            try {
+                pattern = Pattern.compile(regex.toString());
+            } catch (PatternSyntaxException e) {
+                // a named group that another rule already uses
+                log.warn("Custom trigger \"{}\" conflicts with an earlier rule, skipping it: {}", rule.source, e.getDescription());
+                rule.disabled = true;
+                regex.setLength(length);
+                continue;
+            }
+
+            enabled.add(rule);
+            groups.add(group);
+            group += 1 + rule.groupCount;
+        }
+
+        combined = enabled.isEmpty() ? null : pattern;
+        alternatives = enabled.toArray(new Rule[0]);
+        alternativeGroups = new int[groups.size()];
+        for (int i = 0; i < alternativeGroups.length; i++) {
+            alternativeGroups[i] = groups.get(i);
+        }
+    }
+
+    /**
+     * @return Whether the regex refers back to a group by number, such as {@code \1}.
+     */
+    private static boolean hasNumberedBackreference(String regex) {
+        boolean quoted = false;
+        for (int i = 0; i + 1 < regex.length(); i++) {
+            if (regex.charAt(i) != '\\') {
+                continue;
+            }
+
+            final char next = regex.charAt(i + 1);
+            if (quoted) {
+                // only \E means anything between \Q and \E
+                quoted = next != 'E';
+                if (!quoted) {
+                    i++;
+                }
+                continue;
+            }
+            if (next >= '1' && next <= '9') {
+                // inside a character class this is not a valid regex anyway
+                return true;
+            }
+            quoted = next == 'Q';
+            i++;
+        }
+        return false;
+    }
+
+    /**
+     * Keeps the path inside the recording directory: strips characters the file system rejects and {@code .} or
+     * {@code ..} segments.
+     *
+     * @return {@code null} if nothing is left.
+     */
+    private static String sanitizeSubDirectory(String subDirectory) {
+        final StringBuilder sanitized = new StringBuilder();
+        for (String segment : subDirectory.split("/")) {
+            segment = segment.replaceAll(ILLEGAL_CHARACTERS, "").trim();
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                continue;
+            }
+            if (sanitized.length() > 0) {
+                sanitized.append('/');
+            }
+            sanitized.append(segment);
+        }
+        return sanitized.length() == 0 ? null : sanitized.toString();
+    }
+
+    /**
+     * Keeps the name a single file name that OBS saves as it is: strips characters the file system rejects, slashes
+     * and dots at either end, and escapes {@code %}, which starts a date field in an OBS file name format.
+     */
+    private static String sanitizeFileName(String fileName) {
+        return fileName.replaceAll(ILLEGAL_FILE_NAME_CHARACTERS, "")
+                .replaceAll(OUTER_DOTS, "")
+                .replace("%", "%%");
+    }
+
+    /**
+     * The clip a rule asks for.
+     */
+    @Getter
+    static final class Match {
+        /**
+         * {@code null} to save into the {@link ClipCategory#CUSTOM} directory.
+         */
+        private final String subDirectory;
+        private final String fileName;
+
+        private Match(String subDirectory, String fileName) {
+            this.subDirectory = subDirectory;
+            this.fileName = fileName;
+        }
+    }
+
+    private static final class Rule {
+        private final String source;
+        private final Pattern pattern;
+        private final int groupCount;
+        private final String subDirectory;
+        private final String fileNameTemplate;
+        private boolean disabled;
+
+        private Rule(String source, Pattern pattern, String target) {
+            this.source = source;
+            this.pattern = pattern;
+            this.groupCount = pattern.matcher("").groupCount();
+
+            final int slash = target.lastIndexOf('/');
+            this.subDirectory = slash < 0 ? null : sanitizeSubDirectory(target.substring(0, slash));
+            final String fileName = target.substring(slash + 1).trim();
+            this.fileNameTemplate = fileName.isEmpty() ? "$0" : fileName;
+        }
+
+        /**
+         * Replaces {@code $0} to {@code $9} in the file name template with the groups of this rule, and {@code $$}
+         * with {@code $}. The groups come from the chat, so the name is sanitized afterwards.
+         *
+         * @see #sanitizeFileName(String)
+         */
+        private Match expand(Matcher m, int firstGroup) {
+            final StringBuilder fileName = new StringBuilder(fileNameTemplate.length() + 16);
+            for (int i = 0; i < fileNameTemplate.length(); i++) {
+                final char c = fileNameTemplate.charAt(i);
+                final char next = i + 1 < fileNameTemplate.length() ? fileNameTemplate.charAt(i + 1) : 0;
+                if (c == '$' && next == '$') {
+                    fileName.append('$');
+                    i++;
+                } else if (c == '$' && next >= '0' && next <= '9') {
+                    final int group = next - '0';
+                    if (group <= groupCount && m.group(firstGroup + group) != null) {
+                        fileName.append(m.group(firstGroup + group));
+                    }
+                    i++;
+                } else {
+                    fileName.append(c);
+                }
+            }
+            return new Match(subDirectory, sanitizeFileName(fileName.toString()));
+        }
+    }
+
+    /**
+     * A message that throws once the regex engine has read {@link #MATCH_BUDGET} characters from it.
+     */
+    private static final class BudgetedText implements CharSequence {
+        private final String text;
+        private int budget = MATCH_BUDGET;
+
+        private BudgetedText(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (--budget < 0) {
+                throw MatchBudgetExceededException.INSTANCE;
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private static final class MatchBudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private static final MatchBudgetExceededException INSTANCE = new MatchBudgetExceededException();
+
+        private MatchBudgetExceededException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.sirebringo.autoclip;
+
+/**
+ * Clips the death of the local player, or of a friend or clan member on screen.
+ */
+final class DeathTrigger implements ClipTrigger {
+    private final TriggerContext context;
+
+    DeathTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.events(ClipTriggerRegistry.EventType.PLAYER_DEATH);
+    }
+
+    @Override
+    public void onPlayerDeath(TriggerEvent.PlayerDeath death) {
+        final ConfigSnapshot config = context.getConfig();
+        if (death.isLocalPlayer() && config.clipPlayerDeath()) {
+            context.save("Deaths", ClipCategory.DEATHS);
+        } else if (!death.isLocalPlayer()
+                && death.isVisible()
+                && ((death.isFriend() && config.clipFriendDeath())
+                || (death.isClanMember() && config.clipClanDeath()))) {
+            context.save("Death " + death.getName(), ClipCategory.DEATHS, ClipCategory.DEATHS.getDirectoryName(),
+                    death.getName());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.sirebringo.autoclip;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.runelite.api.events.WidgetLoaded;
+import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.WidgetInfo;
+import net.runelite.client.util.Text;
+
+import static net.runelite.api.widgets.WidgetID.*;
+
+/**
+ * Clips the level-up, quest completion and Barbarian Assault high gamble dialogs.
+ * <p>
+ * These widgets get loaded before their text is set, so the trigger waits for the text rather than the widget.
+ */
+final class DialogTrigger implements ClipTrigger {
+    private static final Pattern LEVEL_UP_PATTERN = Pattern.compile(".*Your ([a-zA-Z]+) (?:level is|are)? now (\\d+)\\.");
+    private static final Pattern QUEST_PATTERN_1 = Pattern.compile(".+?ve\\.*? (?<verb>been|rebuilt|.+?ed)? ?(?:the )?'?(?<quest>.+?)'?(?: [Qq]uest)?[!.]?$");
+    private static final Pattern QUEST_PATTERN_2 = Pattern.compile("'?(?<quest>.+?)'?(?: [Qq]uest)? (?<verb>[a-z]\\w+?ed)?(?: f.*?)?[!.]?$");
+    private static final ImmutableList<String> RFD_TAGS = ImmutableList.of("Another Cook", "freed", "defeated", "saved");
+    private static final ImmutableList<String> WORD_QUEST_IN_NAME_TAGS = ImmutableList.of("Another Cook", "Doric", "Heroes", "Legends", "Observatory", "Olaf", "Waterfall");
+    private static final Pattern BA_HIGH_GAMBLE_REWARD_PATTERN = Pattern.compile("(?<reward>.+)!<br>High level gamble count: <col=7f0000>(?<gambleCount>.+)</col>");
+
+    private final TriggerContext context;
+
+    DialogTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.widgetTexts(WidgetInfo.LEVEL_UP_LEVEL, WidgetInfo.DIALOG_SPRITE_TEXT, WidgetInfo.QUEST_COMPLETED_NAME_TEXT);
+    }
+
+    @Override
+    public void onWidgetTexts(WidgetLoaded event) {
+        final GameSnapshot game = context.getGame();
+        final ConfigSnapshot config = context.getConfig();
+        switch (event.getGroupId()) {
+            case LEVEL_UP_GROUP_ID:
+                if (config.clipLevels()) {
+                    save(parseLevelUpText(game.getWidgetText(WidgetInfo.LEVEL_UP_LEVEL)), ClipCategory.LEVELS);
+                }
+                break;
+            case DIALOG_SPRITE_GROUP_ID: {
+                final String text = game.getWidgetText(WidgetInfo.DIALOG_SPRITE_TEXT);
+                if (Text.removeTags(text).contains("High level gamble")) {
+                    if (config.clipHighGamble()) {
+                        save(parseBAHighGambleWidget(text), ClipCategory.BA_HIGH_GAMBLES);
+                    }
+                } else if (config.clipLevels()) {
+                    save(parseLevelUpText(text), ClipCategory.LEVELS);
+                }
+                break;
+            }
+            case QUEST_COMPLETED_GROUP_ID:
+                if (config.clipRewards()) {
+                    save(parseQuestCompletedWidget(game.getWidgetText(WidgetInfo.QUEST_COMPLETED_NAME_TEXT)), ClipCategory.QUESTS);
+                }
+                break;
+        }
+    }
+
+    private void save(String fileName, ClipCategory category) {
+        if (fileName != null) {
+            context.save(fileName, category);
+        }
+    }
+
+    /**
+     * Parses the text of a level-up dialog into a shortened string for filename usage.
+     *
+     * @param text The level-up text, with the format "Your Skill (level is/are) now 99."
+     * @return Shortened string in the format "Skill(99)", or {@code null} if the text is not a level-up message
+     */
+    @VisibleForTesting
+    static String parseLevelUpText(final String text) {
+        Matcher m = LEVEL_UP_PATTERN.matcher(text);
+        if (!m.matches()) {
+            return null;
+        }
+
+        String skillName = m.group(1);
+        String skillLevel = m.group(2);
+        return skillName + "(" + skillLevel + ")";
+    }
+
+    /**
+     * Parses the passed quest completion dialog text into a shortened string for filename usage.
+     *
+     * @param text The {@link Widget#getText() text} of the {@link WidgetInfo#QUEST_COMPLETED_NAME_TEXT} widget.
+     * @return Shortened string in the format "Quest(The Corsair Curse)"
+     */
+    @VisibleForTesting
+    static String parseQuestCompletedWidget(final String text) {
+        // "You have completed The Corsair Curse!"
+        final Matcher questMatch1 = QUEST_PATTERN_1.matcher(text);
+        // "'One Small Favour' completed!"
+        final Matcher questMatch2 = QUEST_PATTERN_2.matcher(text);
+        final Matcher questMatchFinal = questMatch1.matches() ? questMatch1 : questMatch2;
+        if (!questMatchFinal.matches()) {
+            return "Quest(quest not found)";
+        }
+
+        String quest = questMatchFinal.group("quest");
+        String verb = questMatchFinal.group("verb") != null ? questMatchFinal.group("verb") : "";
+
+        if (verb.contains("kind of")) {
+            quest += " partial completion";
+        } else if (verb.contains("completely")) {
+            quest += " II";
+        }
+
+        if (RFD_TAGS.stream().anyMatch((quest + verb)::contains)) {
+            quest = "Recipe for Disaster - " + quest;
+        }
+
+        if (WORD_QUEST_IN_NAME_TAGS.stream().anyMatch(quest::contains)) {
+            quest += " Quest";
+        }
+
+        return "Quest(" + quest + ')';
+    }
+
+    /**
+     * Parses the Barbarian Assault high gamble reward dialog text into a shortened string for filename usage.
+     *
+     * @param text The {@link Widget#getText() text} of the {@link WidgetInfo#DIALOG_SPRITE_TEXT} widget.
+     * @return Shortened string in the format "High Gamble(100)"
+     */
+    @VisibleForTesting
+    static String parseBAHighGambleWidget(final String text) {
+        final Matcher highGambleMatch = BA_HIGH_GAMBLE_REWARD_PATTERN.matcher(text);
+        if (highGambleMatch.find()) {
+            String gambleCount = highGambleMatch.group("gambleCount");
+            return String.format("High Gamble(%s)", gambleCount);
+        }
+
+        return "High Gamble(count not found)";
+    }
+}
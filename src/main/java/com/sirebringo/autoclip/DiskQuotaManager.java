@@ -0,0 +1,462 @@
+package com.sirebringo.autoclip;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the category directories under the OBS replay path within the configured size limits by deleting old clips.
+ * <p>
+ * The tree is walked once when the manager learns the replay path, after which sizes are kept up to date from
+ * {@link WatchService} events instead of rescanning. Only the videos and thumbnails in the directories named after a
+ * {@link ClipCategory} are counted and cleaned up, anything else OBS or the user keeps in or next to them is left
+ * alone, and {@link ClipCategory#MANUAL} clips are never deleted.
+ * <p>
+ * All the work happens on one low priority thread, which deletes at most a few files per second so a large clean up
+ * does not compete with the game for the disk.
+ */
+@Slf4j
+final class DiskQuotaManager {
+    private static final long POLL_MILLIS = 1000;
+    private static final long DELETE_INTERVAL_MILLIS = 250;
+    // OBS may still be writing a new clip, or the plugin trimming it
+    private static final long MIN_AGE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long MEGABYTE = 1024 * 1024;
+    // the containers OBS records into, and the thumbnails saved next to the clips
+    private static final Set<String> CLIP_EXTENSIONS = new HashSet<>(Arrays.asList("mkv", "mp4", "mov", "flv", "ts",
+            ClipThumbnails.FORMAT));
+
+    private final Supplier<String> outputDirectory;
+    private final ClipCatalog catalog;
+    private volatile ConfigSnapshot config;
+
+    private Thread worker;
+    private volatile boolean running;
+
+    // everything below is only used on the worker thread
+    private final Map<String, ClipCategory> categoriesByDirectory = new HashMap<>();
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final Map<Path, ClipFile> files = new HashMap<>();
+    private final List<TreeSet<ClipFile>> oldestFirst = new ArrayList<>();
+    private final long[] categoryBytes = new long[ClipCategory.values().length];
+    private long totalBytes;
+    private Path reportedRoot;
+    private Path root;
+    private WatchService watchService;
+    private long lastDeleteMillis;
+
+    /**
+     * @param outputDirectory Supplies the directory OBS saves replays into, or null while it is not known.
+     * @param catalog         Told about every clip that is deleted, by the manager or anyone else.
+     */
+    DiskQuotaManager(Supplier<String> outputDirectory, ClipCatalog catalog, ConfigSnapshot config) {
+        this.outputDirectory = outputDirectory;
+        this.catalog = catalog;
+        this.config = config;
+        for (ClipCategory category : ClipCategory.values()) {
+            categoriesByDirectory.put(category.getDirectoryName().toLowerCase(Locale.ROOT), category);
+            oldestFirst.add(new TreeSet<>());
+        }
+    }
+
+    void setConfig(ConfigSnapshot config) {
+        this.config = config;
+    }
+
+    synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+
+        running = true;
+        worker = new Thread(this::run, "obs-auto-clip-quota");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    synchronized void stop(long timeout, TimeUnit unit) throws InterruptedException {
+        if (worker == null) {
+            return;
+        }
+
+        running = false;
+        worker.interrupt();
+        worker.join(unit.toMillis(timeout));
+        worker = null;
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                final Path wanted = wantedRoot();
+                if (!Objects.equals(wanted, root)) {
+                    close();
+                    if (wanted != null) {
+                        open(wanted);
+                    }
+                }
+
+                if (watchService == null) {
+                    Thread.sleep(POLL_MILLIS);
+                    continue;
+                }
+
+                WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    process(key);
+                    key = watchService.poll();
+                }
+                enforce();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopping
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * @return The replay path to watch, or null when there are no limits or OBS has not told us where it saves.
+     */
+    private Path wantedRoot() {
+        final String directory = outputDirectory.get();
+        if (directory != null && !directory.isEmpty()) {
+            // keep the last known path while OBS is disconnected, a reconnect should not cost a rescan
+            reportedRoot = Paths.get(directory);
+        }
+
+        final ConfigSnapshot config = this.config;
+        if (reportedRoot == null || !config.hasDiskQuota() || !Files.isDirectory(reportedRoot)) {
+            return null;
+        }
+        return reportedRoot;
+    }
+
+    private void open(Path root) {
+        try {
+            watchService = root.getFileSystem().newWatchService();
+            this.root = root;
+            watch(root);
+            for (ClipCategory category : ClipCategory.values()) {
+                final Path directory = root.resolve(category.getDirectoryName());
+                if (Files.isDirectory(directory)) {
+                    scan(directory);
+                }
+            }
+            log.debug("Watching {}: {} clip(s), {} MB", root, files.size(), totalBytes / MEGABYTE);
+        } catch (IOException e) {
+            log.warn("Could not watch the clip folder {}, disk limits are not enforced", root, e);
+            close();
+            // do not retry every second, only once the path changes
+            this.root = root;
+        }
+    }
+
+    private void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("Could not close the clip folder watch service", e);
+            }
+            watchService = null;
+        }
+        root = null;
+        watchedDirectories.clear();
+        files.clear();
+        for (TreeSet<ClipFile> set : oldestFirst) {
+            set.clear();
+        }
+        Arrays.fill(categoryBytes, 0);
+        totalBytes = 0;
+    }
+
+    private void watch(Path directory) throws IOException {
+        final WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchedDirectories.put(key, directory);
+    }
+
+    /**
+     * Watches a directory inside a category directory and everything below it, and counts its files.
+     */
+    private void scan(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                watch(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile()) {
+                    track(file, attributes);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                log.debug("Could not read {}", file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void process(WatchKey key) {
+        final Path directory = watchedDirectories.get(key);
+        if (directory == null) {
+            key.cancel();
+            return;
+        }
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost, count the directory again
+                untrackAll(directory, false);
+                rescan(directory);
+                continue;
+            }
+
+            final Path child = directory.resolve((Path) event.context());
+            if (directory.equals(root) && categoryOf(child) == null) {
+                continue;
+            }
+
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                if (files.containsKey(child)) {
+                    untrack(files.get(child));
+                    catalog.remove(child);
+                } else {
+                    untrackAll(child, true);
+                }
+            } else if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    rescan(child);
+                }
+            } else {
+                update(child);
+            }
+        }
+
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    private void rescan(Path directory) {
+        if (directory.equals(root)) {
+            for (ClipCategory category : ClipCategory.values()) {
+                final Path categoryDirectory = root.resolve(category.getDirectoryName());
+                if (Files.isDirectory(categoryDirectory)) {
+                    rescan(categoryDirectory);
+                }
+            }
+            return;
+        }
+
+        try {
+            scan(directory);
+        } catch (IOException e) {
+            log.debug("Could not scan {}", directory, e);
+        }
+    }
+
+    private void update(Path file) {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (attributes.isRegularFile()) {
+                track(file, attributes);
+            }
+        } catch (NoSuchFileException e) {
+            final ClipFile tracked = files.get(file);
+            if (tracked != null) {
+                untrack(tracked);
+            }
+        } catch (IOException e) {
+            log.debug("Could not read {}", file, e);
+        }
+    }
+
+    private void track(Path file, BasicFileAttributes attributes) {
+        final ClipCategory category = categoryOf(file);
+        if (category == null || !isClipFile(file)) {
+            return;
+        }
+
+        final ClipFile existing = files.get(file);
+        if (existing != null) {
+            untrack(existing);
+        }
+
+        final ClipFile clipFile = new ClipFile(file, category, attributes.size(), attributes.lastModifiedTime().toMillis());
+        files.put(file, clipFile);
+        oldestFirst.get(category.ordinal()).add(clipFile);
+        categoryBytes[category.ordinal()] += clipFile.size;
+        totalBytes += clipFile.size;
+    }
+
+    private void untrack(ClipFile clipFile) {
+        files.remove(clipFile.path);
+        oldestFirst.get(clipFile.category.ordinal()).remove(clipFile);
+        categoryBytes[clipFile.category.ordinal()] -= clipFile.size;
+        totalBytes -= clipFile.size;
+    }
+
+    private void untrackAll(Path directory, boolean deleted) {
+        for (ClipFile clipFile : new ArrayList<>(files.values())) {
+            if (clipFile.path.startsWith(directory)) {
+                untrack(clipFile);
+                if (deleted) {
+                    catalog.remove(clipFile.path);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The category whose directory holds the path, or null if it is outside the category directories.
+     */
+    private ClipCategory categoryOf(Path path) {
+        if (root == null || !path.startsWith(root) || path.getNameCount() <= root.getNameCount()) {
+            return null;
+        }
+        final String directory = path.getName(root.getNameCount()).toString();
+        return categoriesByDirectory.get(directory.toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean isClipFile(Path file) {
+        final String fileName = file.getFileName().toString();
+        final int extensionStart = fileName.lastIndexOf('.');
+        return extensionStart > 0
+                && CLIP_EXTENSIONS.contains(fileName.substring(extensionStart + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private void enforce() throws InterruptedException {
+        final ConfigSnapshot config = this.config;
+        for (ClipCategory category : ClipCategory.values()) {
+            final long limit = config.categoryDiskQuota(category) * MEGABYTE;
+            while (limit > 0 && categoryBytes[category.ordinal()] > limit) {
+                if (!delete(oldestDeletable(category))) {
+                    break;
+                }
+            }
+        }
+
+        final long limit = config.diskQuota() * MEGABYTE;
+        while (limit > 0 && totalBytes > limit) {
+            final ClipFile victim = config.quotaEviction() == QuotaEvictionPolicy.LOWEST_PRIORITY_FIRST
+                    ? lowestPriorityDeletable()
+                    : oldestDeletable();
+            if (!delete(victim)) {
+                break;
+            }
+        }
+    }
+
+    private ClipFile oldestDeletable(ClipCategory category) {
+        final TreeSet<ClipFile> candidates = oldestFirst.get(category.ordinal());
+        if (category == ClipCategory.MANUAL || candidates.isEmpty()) {
+            return null;
+        }
+
+        final ClipFile oldest = candidates.first();
+        return System.currentTimeMillis() - oldest.modifiedMillis >= MIN_AGE_MILLIS ? oldest : null;
+    }
+
+    private ClipFile oldestDeletable() {
+        ClipFile oldest = null;
+        for (ClipCategory category : ClipCategory.values()) {
+            final ClipFile candidate = oldestDeletable(category);
+            if (candidate != null && (oldest == null || candidate.compareTo(oldest) < 0)) {
+                oldest = candidate;
+            }
+        }
+        return oldest;
+    }
+
+    private ClipFile lowestPriorityDeletable() {
+        ClipFile lowest = null;
+        for (ClipCategory category : ClipCategory.values()) {
+            final ClipFile candidate = oldestDeletable(category);
+            if (candidate != null && (lowest == null || lowest.category.hasPriorityOver(category))) {
+                lowest = candidate;
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Deletes a clip, waiting first if the previous delete was too recent.
+     *
+     * @return Whether there may be more to delete.
+     */
+    private boolean delete(ClipFile clipFile) throws InterruptedException {
+        if (clipFile == null || !running) {
+            return false;
+        }
+
+        final long wait = lastDeleteMillis + DELETE_INTERVAL_MILLIS - System.currentTimeMillis();
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+        lastDeleteMillis = System.currentTimeMillis();
+
+        // stop counting it either way, a file that cannot be deleted would otherwise be retried forever
+        untrack(clipFile);
+        try {
+            Files.deleteIfExists(clipFile.path);
+            catalog.remove(clipFile.path);
+            log.info("Deleted {} ({} MB) to stay within the clip folder limits", clipFile.path, clipFile.size / MEGABYTE);
+        } catch (IOException e) {
+            log.warn("Could not delete {} to stay within the clip folder limits", clipFile.path, e);
+        }
+        return true;
+    }
+
+    private static final class ClipFile implements Comparable<ClipFile> {
+        private final Path path;
+        private final ClipCategory category;
+        private final long size;
+        private final long modifiedMillis;
+
+        private ClipFile(Path path, ClipCategory category, long size, long modifiedMillis) {
+            this.path = path;
+            this.category = category;
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+        }
+
+        @Override
+        public int compareTo(ClipFile other) {
+            final int byAge = Long.compare(modifiedMillis, other.modifiedMillis);
+            return byAge != 0 ? byAge : path.compareTo(other.path);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.sirebringo.autoclip;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.runelite.api.events.ChatMessage;
+
+/**
+ * Clips the end of a duel.
+ */
+final class DuelTrigger implements ClipTrigger {
+    private static final Pattern DUEL_END_PATTERN = Pattern.compile("You have now (won|lost) ([0-9,]+) duels?\\.");
+
+    private final TriggerContext context;
+
+    DuelTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.chatMessages(ChatMessageClassifier.Candidate.DUEL)
+                .chatRules()
+                .containsAll(ChatMessageClassifier.Candidate.DUEL, "You have now ", " duel");
+    }
+
+    @Override
+    public void onChatMessage(ChatMessage event, ChatMessageClassifier.Candidate candidate) {
+        if (!context.getConfig().clipDuels()) {
+            return;
+        }
+
+        Matcher m = DUEL_END_PATTERN.matcher(event.getMessage());
+        if (m.find()) {
+            String result = m.group(1);
+            String count = m.group(2).replace(",", "");
+            String fileName = "Duel " + result + " (" + count + ")";
+            context.save(fileName, ClipCategory.DUELS);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.sirebringo.autoclip;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import lombok.Getter;
+import net.runelite.api.Client;
+import net.runelite.api.Player;
+import net.runelite.api.coords.WorldPoint;
+import net.runelite.api.widgets.WidgetInfo;
+
+/**
+ * What the client showed when a game event happened, read on the client thread so the triggers can look at it from
+ * the trigger thread.
+ * <p>
+ * Besides the location of the player, a snapshot only holds the varbits, client string variables and widget texts the
+ * triggers declared in their {@link ClipTriggerRegistry.Subscriptions}.
+ */
+final class GameSnapshot {
+    private static final int[] NONE = new int[0];
+
+    /**
+     * {@link System#nanoTime()} when the event happened.
+     */
+    @Getter
+    private final long capturedNanos;
+    @Getter
+    private final int tick;
+    @Getter
+    private final int world;
+    /**
+     * The region the player is in, resolving instances to the region they are a copy of, or -1 when logged out.
+     */
+    @Getter
+    private final int regionId;
+    @Getter
+    private final boolean inInstancedRegion;
+    /**
+     * The regions an instance was built from, empty outside of instances.
+     */
+    @Getter
+    private final int[] mapRegions;
+    private final int[] varbits;
+    private final int[] varbitValues;
+    private final int[] varcStrings;
+    private final String[] varcStringValues;
+    private final Map<WidgetInfo, String> widgetTexts;
+
+    @VisibleForTesting
+    GameSnapshot(long capturedNanos, int tick, int world, int regionId, boolean inInstancedRegion, int[] mapRegions,
+                 int[] varbits, int[] varbitValues, int[] varcStrings, String[] varcStringValues,
+                 Map<WidgetInfo, String> widgetTexts) {
+        this.capturedNanos = capturedNanos;
+        this.tick = tick;
+        this.world = world;
+        this.regionId = regionId;
+        this.inInstancedRegion = inInstancedRegion;
+        this.mapRegions = mapRegions;
+        this.varbits = varbits;
+        this.varbitValues = varbitValues;
+        this.varcStrings = varcStrings;
+        this.varcStringValues = varcStringValues;
+        this.widgetTexts = widgetTexts;
+    }
+
+    /**
+     * Reads the location of the player only, for a clip no trigger asked for.
+     */
+    static GameSnapshot capture(Client client) {
+        return capture(client, NONE, NONE, Collections.emptyMap());
+    }
+
+    /**
+     * Reads a snapshot. Must be called on the client thread.
+     *
+     * @param varbits     The varbits to read, kept by reference.
+     * @param varcStrings The client string variables to read, kept by reference.
+     * @param widgetTexts The texts of the widgets read for this event, by widget.
+     */
+    static GameSnapshot capture(Client client, int[] varbits, int[] varcStrings, Map<WidgetInfo, String> widgetTexts) {
+        final long capturedNanos = System.nanoTime();
+        final boolean instanced = client.isInInstancedRegion();
+        int[] mapRegions = NONE;
+        if (instanced && client.getMapRegions() != null) {
+            mapRegions = client.getMapRegions().clone();
+        }
+
+        int regionId = -1;
+        final Player player = client.getLocalPlayer();
+        if (player != null) {
+            regionId = WorldPoint.fromLocalInstance(client, player.getLocalLocation()).getRegionID();
+        }
+
+        final int[] varbitValues = new int[varbits.length];
+        for (int i = 0; i < varbits.length; i++) {
+            varbitValues[i] = client.getVarbitValue(varbits[i]);
+        }
+        final String[] varcStringValues = new String[varcStrings.length];
+        for (int i = 0; i < varcStrings.length; i++) {
+            varcStringValues[i] = client.getVarcStrValue(varcStrings[i]);
+        }
+
+        return new GameSnapshot(capturedNanos, client.getTickCount(), client.getWorld(), regionId, instanced, mapRegions,
+                varbits, varbitValues, varcStrings, varcStringValues,
+                widgetTexts.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(widgetTexts));
+    }
+
+    /**
+     * @throws IllegalArgumentException If no trigger declared the varbit.
+     */
+    int getVarbitValue(int varbit) {
+        for (int i = 0; i < varbits.length; i++) {
+            if (varbits[i] == varbit) {
+                return varbitValues[i];
+            }
+        }
+        throw new IllegalArgumentException("Varbit " + varbit + " was not captured");
+    }
+
+    /**
+     * @throws IllegalArgumentException If no trigger declared the variable.
+     */
+    String getVarcStrValue(int varc) {
+        for (int i = 0; i < varcStrings.length; i++) {
+            if (varcStrings[i] == varc) {
+                return varcStringValues[i];
+            }
+        }
+        throw new IllegalArgumentException("Client string variable " + varc + " was not captured");
+    }
+
+    /**
+     * @return The text of the widget, or {@code null} if it was not read for this event.
+     */
+    String getWidgetText(WidgetInfo widget) {
+        return widgetTexts.get(widget);
+    }
+
+    /**
+     * Writes the snapshot for a {@link TriggerEventRecorder} recording.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(capturedNanos);
+        out.writeInt(tick);
+        out.writeInt(world);
+        out.writeInt(regionId);
+        out.writeBoolean(inInstancedRegion);
+        writeInts(out, mapRegions);
+        writeInts(out, varbits);
+        writeInts(out, varbitValues);
+        writeInts(out, varcStrings);
+        for (String value : varcStringValues) {
+            TriggerEventRecorder.writeNullableUTF(out, value);
+        }
+        out.writeShort(widgetTexts.size());
+        for (Map.Entry<WidgetInfo, String> text : widgetTexts.entrySet()) {
+            out.writeUTF(text.getKey().name());
+            out.writeUTF(text.getValue());
+        }
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write}.
+     *
+     * @throws IllegalArgumentException If a widget no longer exists.
+     */
+    static GameSnapshot read(DataInputStream in) throws IOException {
+        final long capturedNanos = in.readLong();
+        final int tick = in.readInt();
+        final int world = in.readInt();
+        final int regionId = in.readInt();
+        final boolean instanced = in.readBoolean();
+        final int[] mapRegions = readInts(in);
+        final int[] varbits = readInts(in);
+        final int[] varbitValues = readInts(in);
+        final int[] varcStrings = readInts(in);
+        final String[] varcStringValues = new String[varcStrings.length];
+        for (int i = 0; i < varcStringValues.length; i++) {
+            varcStringValues[i] = TriggerEventRecorder.readNullableUTF(in);
+        }
+        final int textCount = in.readUnsignedShort();
+        final Map<WidgetInfo, String> widgetTexts = new EnumMap<>(WidgetInfo.class);
+        for (int i = 0; i < textCount; i++) {
+            widgetTexts.put(WidgetInfo.valueOf(in.readUTF()), in.readUTF());
+        }
+        return new GameSnapshot(capturedNanos, tick, world, regionId, instanced, mapRegions, varbits, varbitValues,
+                varcStrings, varcStringValues,
+                widgetTexts.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(widgetTexts));
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeShort(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        final int[] values = new int[in.readUnsignedShort()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,114 @@
+package com.sirebringo.autoclip;
+
+import java.util.Arrays;
+import java.util.Collection;
+import net.runelite.client.game.ItemStack;
+import net.runelite.http.api.item.ItemPrice;
+
+/**
+ * Grand Exchange prices by item id, for the triggers that add up loot on the trigger thread.
+ * <p>
+ * The whole price list is loaded at once, in the background, into an open addressing table of {@code int} keys and
+ * values, which is swapped in whole. A price lookup is a few array reads without boxing or locks, and the triggers
+ * never wait for a refresh.
+ */
+final class ItemPriceCache {
+    static final long REFRESH_MINUTES = 30;
+
+    // not in the price list, worth their face value
+    private static final int COINS = 995;
+    private static final int PLATINUM_TOKEN = 13204;
+    private static final int EMPTY = -1;
+
+    private volatile Table table = new Table(new int[]{EMPTY}, new int[1]);
+    private volatile boolean loaded;
+
+    /**
+     * Replaces all prices with the given ones. Items without a Grand Exchange price take their wiki price.
+     */
+    void load(ItemPrice[] prices) {
+        int capacity = 1;
+        while (capacity < prices.length * 2) {
+            capacity <<= 1;
+        }
+
+        final int[] keys = new int[capacity];
+        final int[] values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        final Table table = new Table(keys, values);
+        for (ItemPrice price : prices) {
+            final int value = price.getPrice() > 0 ? price.getPrice() : price.getWikiPrice();
+            if (price.getId() >= 0 && value > 0) {
+                table.put(price.getId(), value);
+            }
+        }
+        this.table = table;
+        loaded = true;
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return The price of one item, or 0 if it has none.
+     */
+    int price(int itemId) {
+        switch (itemId) {
+            case COINS:
+                return 1;
+            case PLATINUM_TOKEN:
+                return 1000;
+            default:
+                return table.get(itemId);
+        }
+    }
+
+    /**
+     * @return The price of all the items.
+     */
+    long value(Collection<ItemStack> items) {
+        long value = 0;
+        for (ItemStack item : items) {
+            value += (long) price(item.getId()) * item.getQuantity();
+        }
+        return value;
+    }
+
+    private static final class Table {
+        private final int[] keys;
+        private final int[] values;
+        private final int mask;
+
+        private Table(int[] keys, int[] values) {
+            this.keys = keys;
+            this.values = values;
+            this.mask = keys.length - 1;
+        }
+
+        private void put(int key, int value) {
+            int slot = slot(key);
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        private int get(int key) {
+            for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+                if (keys[slot] == EMPTY) {
+                    return 0;
+                }
+            }
+        }
+
+        private int slot(int key) {
+            // item ids are dense, spread them over the table
+            return (key * 0x9E3779B9) >>> 16 & mask;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.sirebringo.autoclip;
+
+import java.time.LocalDate;
+import net.runelite.api.events.WidgetLoaded;
+
+import static net.runelite.api.widgets.WidgetID.KINGDOM_GROUP_ID;
+
+/**
+ * Clips opening the Managing Miscellania interface.
+ */
+final class KingdomTrigger implements ClipTrigger {
+    private final TriggerContext context;
+
+    KingdomTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.widgets(KINGDOM_GROUP_ID);
+    }
+
+    @Override
+    public void onWidgetLoaded(WidgetLoaded event) {
+        if (context.getConfig().clipKingdom()) {
+            context.save("Kingdom " + LocalDate.now(), ClipCategory.KINGDOM_REWARDS);
+        }
+    }
+}
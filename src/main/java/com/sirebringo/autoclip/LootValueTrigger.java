@@ -0,0 +1,52 @@
+package com.sirebringo.autoclip;
+
+import java.util.Locale;
+
+/**
+ * Clips loot whose items are worth at least the threshold together: the drop of an NPC, the loot of a player kill or
+ * the chest of Barrows or a raid. Unlike the valuable drop messages, this needs no game setting and counts the whole
+ * loot rather than its most valuable item.
+ */
+final class LootValueTrigger implements ClipTrigger {
+    private final TriggerContext context;
+
+    LootValueTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.events(ClipTriggerRegistry.EventType.NPC_LOOT_RECEIVED,
+                ClipTriggerRegistry.EventType.PLAYER_LOOT_RECEIVED,
+                ClipTriggerRegistry.EventType.REWARD_CHEST_LOOT);
+    }
+
+    @Override
+    public void onNpcLootReceived(TriggerEvent.Loot loot) {
+        clipIfValuable(loot, "Loot " + (loot.getName() != null ? loot.getName() : "drop"), null);
+    }
+
+    @Override
+    public void onPlayerLootReceived(TriggerEvent.Loot loot) {
+        clipIfValuable(loot, "Loot " + loot.getName(), loot.getName());
+    }
+
+    @Override
+    public void onRewardChestLoot(TriggerEvent.Loot loot) {
+        clipIfValuable(loot, "Loot " + loot.getName() + " chest", null);
+    }
+
+    private void clipIfValuable(TriggerEvent.Loot loot, String name, String player) {
+        final ConfigSnapshot config = context.getConfig();
+        final ItemPriceCache prices = context.getItemPrices();
+        if (!config.clipLootValue() || !prices.isLoaded()) {
+            return;
+        }
+
+        final long value = prices.value(loot.getItems());
+        if (value >= config.lootValueThreshold()) {
+            final String fileName = name + " (" + String.format(Locale.ROOT, "%,d", value) + " coins)";
+            context.save(fileName, ClipCategory.LOOT_VALUE, ClipCategory.LOOT_VALUE.getDirectoryName(), player);
+        }
+    }
+}
@@ -0,0 +1,632 @@
+package com.sirebringo.autoclip;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cuts the start off a Matroska file by dropping whole clusters, so the blocks are copied byte for byte.
+ * <p>
+ * The cut is at the cluster holding the last keyframe that leaves the requested length; blocks before that keyframe
+ * in its cluster are dropped, and every cluster timecode is moved back by the timecode of that cluster. The seek head
+ * and cues would point at the wrong places afterwards and are left out; players index the file on their own.
+ * <p>
+ * A part of a long recording is cut the same way, also dropping the clusters and blocks after its end.
+ */
+final class MkvTrimmer {
+    private static final long EBML = 0x1A45DFA3L;
+    private static final long SEGMENT = 0x18538067L;
+    private static final long SEEK_HEAD = 0x114D9B74L;
+    private static final long INFO = 0x1549A966L;
+    private static final long TIMECODE_SCALE = 0x2AD7B1L;
+    private static final long DURATION = 0x4489L;
+    private static final long TRACKS = 0x1654AE6BL;
+    private static final long TRACK_ENTRY = 0xAEL;
+    private static final long TRACK_NUMBER = 0xD7L;
+    private static final long TRACK_TYPE = 0x83L;
+    private static final long CLUSTER = 0x1F43B675L;
+    private static final long TIMECODE = 0xE7L;
+    private static final long SIMPLE_BLOCK = 0xA3L;
+    private static final long BLOCK_GROUP = 0xA0L;
+    private static final long BLOCK = 0xA1L;
+    private static final long REFERENCE_BLOCK = 0xFBL;
+    private static final long PREV_SIZE = 0xABL;
+    private static final long POSITION = 0xA7L;
+    private static final long CUES = 0x1C53BB6BL;
+    private static final long VOID = 0xECL;
+    private static final long CRC_32 = 0xBFL;
+
+    private static final int VIDEO_TRACK_TYPE = 1;
+    private static final long UNKNOWN_SIZE = -1;
+    private static final long DEFAULT_TIMECODE_SCALE = 1_000_000;
+    // Info and Tracks are parsed in memory
+    private static final long MAX_HEADER_ELEMENT_SIZE = 1024 * 1024;
+
+    private MkvTrimmer() {
+    }
+
+    /**
+     * Writes the last {@code keepMillis} of {@code source}, from the keyframe at or before that point, to
+     * {@code target} and checks the result.
+     */
+    static ClipTrimmer.Result trim(Path source, Path target, long keepMillis) throws IOException {
+        final Layout layout;
+        try (SeekableInput in = new SeekableInput(source)) {
+            layout = Layout.scan(in);
+        }
+        if (layout == null) {
+            return ClipTrimmer.Result.UNSUPPORTED;
+        }
+
+        final long keepTicks = keepMillis * 1_000_000 / layout.timecodeScale;
+        final Keyframe cut = layout.keyframeBefore(layout.endTimecode - keepTicks);
+        if (cut == null || cut.cluster == 0) {
+            return ClipTrimmer.Result.NOT_NEEDED;
+        }
+
+        cut(source, target, layout, cut, Long.MAX_VALUE);
+        return ClipTrimmer.Result.TRIMMED;
+    }
+
+    /**
+     * Reads the layout of a recording once, to cut several parts out of it.
+     *
+     * @return {@code null} if the file is not Matroska the trimmer can cut.
+     */
+    static ClipTrimmer.Source open(Path source) throws IOException {
+        final Layout layout;
+        try (SeekableInput in = new SeekableInput(source)) {
+            layout = Layout.scan(in);
+        }
+        if (layout == null) {
+            return null;
+        }
+
+        return (target, fromMillis, toMillis) -> {
+            final long startTimecode = fromMillis * 1_000_000 / layout.timecodeScale;
+            final long endTimecode = toMillis * 1_000_000 / layout.timecodeScale;
+            final Keyframe cut = layout.keyframeBefore(startTimecode);
+            if (cut == null || startTimecode > layout.endTimecode || endTimecode < cut.timecode) {
+                throw new IOException("The recording has nothing from " + fromMillis + " to " + toMillis + " ms");
+            }
+            cut(source, target, layout, cut, endTimecode);
+        };
+    }
+
+    /**
+     * Writes the blocks from the keyframe up to and including {@code endTimecode} to {@code target} and checks the
+     * result.
+     */
+    private static void cut(Path source, Path target, Layout layout, Keyframe cut, long endTimecode) throws IOException {
+        final long base = layout.clusters.get(cut.cluster).timecode;
+        final Written written;
+        try (SeekableInput in = new SeekableInput(source);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            written = write(in, out, layout, cut, base, endTimecode);
+        }
+
+        try (SeekableInput in = new SeekableInput(target)) {
+            verify(Layout.scan(in), cut, base, written);
+        }
+    }
+
+    private static Written write(SeekableInput in, FileChannel out, Layout layout, Keyframe cut, long base, long endTimecode) throws IOException {
+        in.copyTo(out, 0, layout.segmentHeaderStart);
+        writeId(out, SEGMENT);
+        final long segmentSizePosition = out.position();
+        writeSize(out, 0);
+        final long segmentDataStart = out.position();
+
+        final Written written = new Written();
+        int cluster = 0;
+        for (Element element : layout.topLevel) {
+            if (element.id == SEEK_HEAD || element.id == CUES || element.id == VOID || element.id == CRC_32) {
+                continue;
+            }
+
+            if (element.id == INFO) {
+                final double duration;
+                if (endTimecode < layout.endTimecode) {
+                    duration = endTimecode - base;
+                } else {
+                    duration = layout.duration >= 0 ? layout.duration - base : layout.endTimecode - base;
+                }
+                writeInfo(in, out, element, duration);
+            } else if (element.id == CLUSTER) {
+                final int index = cluster++;
+                final long timecode = layout.clusters.get(index).timecode;
+                if (index < cut.cluster || timecode > endTimecode) {
+                    continue;
+                }
+                writeCluster(in, out, element, timecode, base,
+                        index == cut.cluster ? cut.blockStart : element.dataStart, endTimecode, written);
+            } else {
+                in.copyTo(out, element.headerStart, element.end() - element.headerStart);
+            }
+        }
+
+        final long segmentSize = out.position() - segmentDataStart;
+        out.position(segmentSizePosition);
+        writeSize(out, segmentSize);
+        return written;
+    }
+
+    private static void writeInfo(SeekableInput in, FileChannel out, Element info, double duration) throws IOException {
+        final List<Element> kept = new ArrayList<>();
+        long size = 0;
+        for (Element child : children(in, info)) {
+            if (child.id != DURATION && child.id != CRC_32) {
+                kept.add(child);
+                size += child.end() - child.headerStart;
+            }
+        }
+        // 2 byte id, 1 byte size, 8 byte float
+        size += 11;
+
+        writeId(out, INFO);
+        writeSize(out, size);
+        copy(in, out, kept);
+        final ByteBuffer durationElement = ByteBuffer.allocate(11);
+        durationElement.putShort((short) DURATION).put((byte) (0x80 | 8)).putDouble(duration).flip();
+        writeFully(out, durationElement);
+    }
+
+    /**
+     * Writes a cluster with its timecode moved back by {@code base}, leaving out the blocks that start before
+     * {@code firstBlock} or play after {@code endTimecode}, and the elements that refer to the old layout. Leaves out
+     * the whole cluster if none of its blocks are left.
+     */
+    private static void writeCluster(SeekableInput in, FileChannel out, Element cluster, long clusterTimecode, long base,
+                                     long firstBlock, long endTimecode, Written written) throws IOException {
+        final List<Element> kept = new ArrayList<>();
+        long blocks = 0;
+        long lastTimecode = Long.MIN_VALUE;
+        long size = 0;
+        for (Element child : children(in, cluster)) {
+            if (child.id == TIMECODE || child.id == PREV_SIZE || child.id == POSITION || child.id == CRC_32) {
+                continue;
+            }
+            final boolean block = child.id == SIMPLE_BLOCK || child.id == BLOCK_GROUP;
+            if (block && child.headerStart < firstBlock) {
+                continue;
+            }
+            if (block) {
+                final long timecode = blockTimecode(in, child, clusterTimecode);
+                if (timecode > endTimecode) {
+                    continue;
+                }
+                lastTimecode = Math.max(lastTimecode, timecode);
+                blocks++;
+            }
+
+            kept.add(child);
+            size += child.end() - child.headerStart;
+        }
+        if (blocks == 0) {
+            return;
+        }
+        written.blocks += blocks;
+        written.endTimecode = Math.max(written.endTimecode, lastTimecode);
+
+        final byte[] timecodeBytes = unsignedBytes(clusterTimecode - base);
+        size += 2 + timecodeBytes.length;
+
+        writeId(out, CLUSTER);
+        writeSize(out, size);
+        final ByteBuffer timecodeElement = ByteBuffer.allocate(2 + timecodeBytes.length);
+        timecodeElement.put((byte) TIMECODE).put((byte) (0x80 | timecodeBytes.length)).put(timecodeBytes).flip();
+        writeFully(out, timecodeElement);
+        copy(in, out, kept);
+    }
+
+    private static long blockTimecode(SeekableInput in, Element element, long clusterTimecode) throws IOException {
+        Element block = element;
+        if (element.id == BLOCK_GROUP) {
+            block = null;
+            for (Element child : children(in, element)) {
+                if (child.id == BLOCK) {
+                    block = child;
+                }
+            }
+            if (block == null) {
+                throw new IOException("Block group at " + element.headerStart + " has no block");
+            }
+        }
+
+        in.seek(block.dataStart);
+        readVint(in);
+        return clusterTimecode + (short) in.readUnsignedShort();
+    }
+
+    /**
+     * Copies elements, joining neighbours into one range.
+     */
+    private static void copy(SeekableInput in, FileChannel out, List<Element> elements) throws IOException {
+        long start = -1;
+        long end = -1;
+        for (Element element : elements) {
+            if (element.headerStart != end) {
+                if (start >= 0) {
+                    in.copyTo(out, start, end - start);
+                }
+                start = element.headerStart;
+            }
+            end = element.end();
+        }
+        if (start >= 0) {
+            in.copyTo(out, start, end - start);
+        }
+    }
+
+    private static void verify(Layout trimmed, Keyframe cut, long base, Written written) throws IOException {
+        if (trimmed == null) {
+            throw new IOException("Trimmed clip could not be read back");
+        }
+        if (trimmed.clusters.isEmpty() || trimmed.clusters.get(0).timecode != 0) {
+            throw new IOException("Trimmed clip does not start at timecode 0");
+        }
+        if (trimmed.blockCount != written.blocks) {
+            throw new IOException("Trimmed clip has " + trimmed.blockCount + " blocks, expected " + written.blocks);
+        }
+        if (trimmed.endTimecode != written.endTimecode - base) {
+            throw new IOException("Trimmed clip ends at " + trimmed.endTimecode + ", expected " + (written.endTimecode - base));
+        }
+        if (trimmed.keyframes.isEmpty() || trimmed.keyframes.get(0).timecode != cut.timecode - base
+                || trimmed.firstBlockOfKeyframeTrack != trimmed.keyframes.get(0).blockStart) {
+            throw new IOException("Trimmed clip does not start with a keyframe");
+        }
+    }
+
+    private static List<Element> children(SeekableInput in, Element parent) throws IOException {
+        final List<Element> children = new ArrayList<>();
+        in.seek(parent.dataStart);
+        while (in.position() < parent.end()) {
+            final Element child = Element.read(in);
+            if (child.size == UNKNOWN_SIZE || child.end() > parent.end()) {
+                throw new IOException("Element " + Long.toHexString(child.id) + " at " + child.headerStart + " does not fit in its parent");
+            }
+            children.add(child);
+            in.seek(child.end());
+        }
+        return children;
+    }
+
+    private static long readUnsigned(SeekableInput in, Element element) throws IOException {
+        if (element.size > 8) {
+            throw new IOException("Integer element " + Long.toHexString(element.id) + " is " + element.size + " bytes");
+        }
+        in.seek(element.dataStart);
+        long value = 0;
+        for (int i = 0; i < element.size; i++) {
+            value = value << 8 | in.readUnsignedByte();
+        }
+        return value;
+    }
+
+    private static double readFloat(SeekableInput in, Element element) throws IOException {
+        in.seek(element.dataStart);
+        if (element.size == 4) {
+            return Float.intBitsToFloat(in.readInt());
+        } else if (element.size == 8) {
+            return Double.longBitsToDouble(in.readLong());
+        } else if (element.size == 0) {
+            return 0;
+        }
+        throw new IOException("Float element " + Long.toHexString(element.id) + " is " + element.size + " bytes");
+    }
+
+    /**
+     * Reads an EBML variable size integer, without its length marker.
+     */
+    private static long readVint(SeekableInput in) throws IOException {
+        final int first = in.readUnsignedByte();
+        final int length = Integer.numberOfLeadingZeros(first) - 23;
+        if (length > 8) {
+            throw new IOException("Invalid variable size integer at " + (in.position() - 1));
+        }
+
+        long value = first & (0xFF >> length);
+        boolean allOnes = value == (0xFF >> length);
+        for (int i = 1; i < length; i++) {
+            final int next = in.readUnsignedByte();
+            allOnes &= next == 0xFF;
+            value = value << 8 | next;
+        }
+        return allOnes ? UNKNOWN_SIZE : value;
+    }
+
+    private static byte[] unsignedBytes(long value) {
+        int length = 1;
+        while (length < 8 && value >>> (8 * length) != 0) {
+            length++;
+        }
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (value >>> (8 * (length - 1 - i)));
+        }
+        return bytes;
+    }
+
+    private static void writeId(FileChannel out, long id) throws IOException {
+        writeFully(out, ByteBuffer.wrap(unsignedBytes(id)));
+    }
+
+    /**
+     * Writes an element size as an 8 byte variable size integer, so it can be patched in place.
+     */
+    private static void writeSize(FileChannel out, long size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putLong(size | 0x01L << 56).flip();
+        writeFully(out, buffer);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static final class Element {
+        private final long id;
+        private final long headerStart;
+        private final long dataStart;
+        private final long size;
+
+        private Element(long id, long headerStart, long dataStart, long size) {
+            this.id = id;
+            this.headerStart = headerStart;
+            this.dataStart = dataStart;
+            this.size = size;
+        }
+
+        private static Element read(SeekableInput in) throws IOException {
+            final long headerStart = in.position();
+            final int first = in.readUnsignedByte();
+            final int length = Integer.numberOfLeadingZeros(first) - 23;
+            if (length > 4) {
+                throw new IOException("Invalid element id at " + headerStart);
+            }
+            long id = first;
+            for (int i = 1; i < length; i++) {
+                id = id << 8 | in.readUnsignedByte();
+            }
+            final long size = readVint(in);
+            return new Element(id, headerStart, in.position(), size);
+        }
+
+        private long end() {
+            return dataStart + size;
+        }
+    }
+
+    /**
+     * What was written of the source, to check the result against.
+     */
+    private static final class Written {
+        private long blocks;
+        private long endTimecode = Long.MIN_VALUE;
+    }
+
+    private static final class Cluster {
+        private final long timecode;
+
+        private Cluster(long timecode) {
+            this.timecode = timecode;
+        }
+    }
+
+    private static final class Keyframe {
+        private final int cluster;
+        private final long blockStart;
+        private final long timecode;
+
+        private Keyframe(int cluster, long blockStart, long timecode) {
+            this.cluster = cluster;
+            this.blockStart = blockStart;
+            this.timecode = timecode;
+        }
+    }
+
+    /**
+     * What the trimmer needs to know about a file: its top level elements, cluster timecodes and the keyframes of the
+     * video track. Blocks are only read up to their flags.
+     */
+    private static final class Layout {
+        private long segmentHeaderStart;
+        private final List<Element> topLevel = new ArrayList<>();
+        private final List<Cluster> clusters = new ArrayList<>();
+        private final List<Keyframe> keyframes = new ArrayList<>();
+        private long timecodeScale = DEFAULT_TIMECODE_SCALE;
+        private double duration = -1;
+        private long keyframeTrack = -1;
+        private long firstBlockOfKeyframeTrack = -1;
+        private long endTimecode = Long.MIN_VALUE;
+        private long blockCount;
+
+        /**
+         * A file that ends in the middle of a cluster, as a recording does when OBS stops without finishing it, is read
+         * up to that cluster.
+         *
+         * @return {@code null} if the file is not Matroska, or uses something the trimmer does not handle, such as
+         * elements of unknown size.
+         */
+        private static Layout scan(SeekableInput in) throws IOException {
+            if (in.size() < 4) {
+                return null;
+            }
+            final Element header = Element.read(in);
+            if (header.id != EBML || header.size == UNKNOWN_SIZE) {
+                return null;
+            }
+
+            final Layout layout = new Layout();
+            layout.segmentHeaderStart = header.end();
+            in.seek(header.end());
+            final Element segment = Element.read(in);
+            if (segment.id != SEGMENT) {
+                return null;
+            }
+
+            final long segmentEnd = segment.size == UNKNOWN_SIZE ? in.size() : Math.min(segment.end(), in.size());
+            in.seek(segment.dataStart);
+            while (in.position() < segmentEnd) {
+                final Element element;
+                try {
+                    element = Element.read(in);
+                } catch (EOFException e) {
+                    if (layout.clusters.isEmpty()) {
+                        throw e;
+                    }
+                    break;
+                }
+                if (element.size == UNKNOWN_SIZE) {
+                    return null;
+                }
+                if (element.end() > segmentEnd) {
+                    // the last cluster of a recording that was cut short, the clusters before it can still be cut
+                    if (element.id == CLUSTER && !layout.clusters.isEmpty()) {
+                        break;
+                    }
+                    return null;
+                }
+
+                layout.topLevel.add(element);
+                if (element.id == INFO) {
+                    layout.readInfo(in, element);
+                } else if (element.id == TRACKS) {
+                    layout.readTracks(in, element);
+                } else if (element.id == CLUSTER) {
+                    if (layout.keyframeTrack < 0) {
+                        // clusters before the tracks
+                        return null;
+                    }
+                    layout.readCluster(in, element);
+                }
+                in.seek(element.end());
+            }
+            return layout.clusters.isEmpty() ? null : layout;
+        }
+
+        private void readInfo(SeekableInput in, Element info) throws IOException {
+            checkHeaderElementSize(info);
+            for (Element child : children(in, info)) {
+                if (child.id == TIMECODE_SCALE) {
+                    timecodeScale = readUnsigned(in, child);
+                } else if (child.id == DURATION) {
+                    duration = readFloat(in, child);
+                }
+            }
+        }
+
+        private void readTracks(SeekableInput in, Element tracks) throws IOException {
+            checkHeaderElementSize(tracks);
+            long firstTrack = -1;
+            long videoTrack = -1;
+            for (Element entry : children(in, tracks)) {
+                if (entry.id != TRACK_ENTRY) {
+                    continue;
+                }
+
+                long number = -1;
+                long type = -1;
+                for (Element child : children(in, entry)) {
+                    if (child.id == TRACK_NUMBER) {
+                        number = readUnsigned(in, child);
+                    } else if (child.id == TRACK_TYPE) {
+                        type = readUnsigned(in, child);
+                    }
+                }
+                if (firstTrack < 0) {
+                    firstTrack = number;
+                }
+                if (type == VIDEO_TRACK_TYPE && videoTrack < 0) {
+                    videoTrack = number;
+                }
+            }
+            // cut at video keyframes, or on the first track when there is no video
+            keyframeTrack = videoTrack >= 0 ? videoTrack : firstTrack;
+        }
+
+        private void readCluster(SeekableInput in, Element cluster) throws IOException {
+            final int index = clusters.size();
+            long timecode = -1;
+            for (Element child : children(in, cluster)) {
+                if (child.id == TIMECODE) {
+                    timecode = readUnsigned(in, child);
+                } else if (child.id == SIMPLE_BLOCK || child.id == BLOCK_GROUP) {
+                    if (timecode < 0) {
+                        throw new IOException("Cluster at " + cluster.headerStart + " has a block before its timecode");
+                    }
+                    readBlock(in, child, index, timecode);
+                }
+            }
+            if (timecode < 0) {
+                throw new IOException("Cluster at " + cluster.headerStart + " has no timecode");
+            }
+            clusters.add(new Cluster(timecode));
+        }
+
+        private void readBlock(SeekableInput in, Element element, int cluster, long clusterTimecode) throws IOException {
+            Element block = element;
+            boolean keyframe = false;
+            if (element.id == BLOCK_GROUP) {
+                block = null;
+                keyframe = true;
+                for (Element child : children(in, element)) {
+                    if (child.id == BLOCK) {
+                        block = child;
+                    } else if (child.id == REFERENCE_BLOCK) {
+                        keyframe = false;
+                    }
+                }
+                if (block == null) {
+                    throw new IOException("Block group at " + element.headerStart + " has no block");
+                }
+            }
+
+            in.seek(block.dataStart);
+            final long track = readVint(in);
+            final long timecode = clusterTimecode + (short) in.readUnsignedShort();
+            final int flags = in.readUnsignedByte();
+            if (element.id == SIMPLE_BLOCK) {
+                keyframe = (flags & 0x80) != 0;
+            }
+
+            blockCount++;
+            endTimecode = Math.max(endTimecode, timecode);
+            if (track == keyframeTrack) {
+                if (firstBlockOfKeyframeTrack < 0) {
+                    firstBlockOfKeyframeTrack = element.headerStart;
+                }
+                if (keyframe) {
+                    keyframes.add(new Keyframe(cluster, element.headerStart, timecode));
+                }
+            }
+        }
+
+        /**
+         * @return The last keyframe at or before the timecode, or the first keyframe if there is none.
+         */
+        private Keyframe keyframeBefore(long timecode) {
+            Keyframe before = keyframes.isEmpty() ? null : keyframes.get(0);
+            for (Keyframe keyframe : keyframes) {
+                if (keyframe.timecode > timecode) {
+                    break;
+                }
+                before = keyframe;
+            }
+            return before;
+        }
+
+        private static void checkHeaderElementSize(Element element) throws IOException {
+            if (element.size > MAX_HEADER_ELEMENT_SIZE) {
+                throw new IOException("Element " + Long.toHexString(element.id) + " is " + element.size + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,1242 @@
+package com.sirebringo.autoclip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cuts the start off an MP4 file without touching the samples.
+ * <p>
+ * The sample tables are walked one sample at a time, straight from the {@code moov} or, in a fragmented file, from
+ * the {@code trun} boxes of every {@code moof}, so memory grows with the part that is kept rather than with the whole
+ * file. The tables of the kept samples are rebuilt into a new {@code moov}, and only the chunks holding kept samples
+ * are copied behind it, in their original order. The cut is at the last video sync sample that leaves the requested
+ * length; other tracks start at their first sample from that point on. A fragmented file comes out as a plain MP4.
+ * <p>
+ * A part of a long recording is cut the same way, also dropping the samples after its end.
+ */
+final class Mp4Trimmer {
+    private static final Set<String> CONTAINERS = new HashSet<>(Arrays.asList("moov", "trak", "mdia", "minf", "stbl",
+            "edts", "mvex", "moof", "traf"));
+    // the sample tables as stored in the file are held in memory, a few megabytes for an hour of recording
+    private static final long MAX_TABLES_SIZE = 64L * 1024 * 1024;
+    private static final long MAX_STCO_OFFSET = 0xFFFFFFFFL;
+    // bytes of the first and last sample of every track compared between the clip and the trimmed clip
+    private static final int VERIFY_BYTES = 64 * 1024;
+
+    private static final int TFHD_BASE_DATA_OFFSET = 0x1;
+    private static final int TFHD_DESCRIPTION = 0x2;
+    private static final int TFHD_DEFAULT_DURATION = 0x8;
+    private static final int TFHD_DEFAULT_SIZE = 0x10;
+    private static final int TFHD_DEFAULT_FLAGS = 0x20;
+    private static final int TFHD_DEFAULT_BASE_IS_MOOF = 0x20000;
+    private static final int TRUN_DATA_OFFSET = 0x1;
+    private static final int TRUN_FIRST_SAMPLE_FLAGS = 0x4;
+    private static final int TRUN_DURATION = 0x100;
+    private static final int TRUN_SIZE = 0x200;
+    private static final int TRUN_FLAGS = 0x400;
+    private static final int TRUN_COMPOSITION_OFFSET = 0x800;
+    private static final int SAMPLE_IS_NON_SYNC = 0x10000;
+
+    private Mp4Trimmer() {
+    }
+
+    /**
+     * Writes the last {@code keepMillis} of {@code source}, from the sync sample at or before that point, to
+     * {@code target} and checks the result.
+     */
+    static ClipTrimmer.Result trim(Path source, Path target, long keepMillis) throws IOException {
+        try (SeekableInput in = new SeekableInput(source)) {
+            final Movie movie = Movie.read(in);
+            if (movie == null) {
+                return ClipTrimmer.Result.UNSUPPORTED;
+            }
+
+            final Track keyTrack = movie.keyTrack();
+            final Sync cut = keyTrack.syncSampleBefore(keyTrack.duration - keepMillis * keyTrack.timescale / 1000);
+            if (cut == null || cut.index <= 0) {
+                return ClipTrimmer.Result.NOT_NEEDED;
+            }
+
+            final int[] first = new int[movie.tracks.size()];
+            final int[] end = new int[first.length];
+            for (int t = 0; t < first.length; t++) {
+                final Track track = movie.tracks.get(t);
+                first[t] = track == keyTrack ? cut.index : track.firstSampleAtOrAfter(cut.decodeTime, keyTrack.timescale);
+                end[t] = track.sampleCount;
+            }
+            return cut(in, movie, first, end, target) ? ClipTrimmer.Result.TRIMMED : ClipTrimmer.Result.NOT_NEEDED;
+        }
+    }
+
+    /**
+     * Reads the sample tables of a recording once, to cut several parts out of it.
+     *
+     * @return {@code null} if the file is not an MP4 the trimmer can cut.
+     */
+    static ClipTrimmer.Source open(Path source) throws IOException {
+        final Movie movie;
+        try (SeekableInput in = new SeekableInput(source)) {
+            movie = Movie.read(in);
+        }
+        if (movie == null) {
+            return null;
+        }
+
+        return (target, fromMillis, toMillis) -> {
+            final Track keyTrack = movie.keyTrack();
+            final long startTime = fromMillis * keyTrack.timescale / 1000;
+            final long endTime = toMillis * keyTrack.timescale / 1000;
+            final Sync cut = keyTrack.syncSampleBefore(startTime);
+            if (cut == null || startTime >= keyTrack.duration || cut.decodeTime > endTime) {
+                throw new IOException("The recording has nothing from " + fromMillis + " to " + toMillis + " ms");
+            }
+            final int[] first = new int[movie.tracks.size()];
+            final int[] end = new int[first.length];
+            for (int t = 0; t < first.length; t++) {
+                final Track track = movie.tracks.get(t);
+                first[t] = track == keyTrack ? cut.index : track.firstSampleAtOrAfter(cut.decodeTime, keyTrack.timescale);
+                end[t] = Math.max(first[t], track.firstSampleAtOrAfter(endTime + 1, keyTrack.timescale));
+            }
+
+            try (SeekableInput in = new SeekableInput(source)) {
+                if (!cut(in, movie, first, end, target)) {
+                    throw new IOException("The recording has nothing from " + fromMillis + " to " + toMillis + " ms");
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes the samples from {@code first} up to {@code end} of every track to {@code target} and checks the result.
+     *
+     * @return {@code false} if there are no samples to write.
+     */
+    private static boolean cut(SeekableInput in, Movie movie, int[] first, int[] end, Path target) throws IOException {
+        final List<Kept> kept = new ArrayList<>(first.length);
+        final List<Chunk> chunks = new ArrayList<>();
+        for (int t = 0; t < first.length; t++) {
+            final Kept track = Kept.collect(movie.tracks.get(t), first[t], end[t]);
+            kept.add(track);
+            chunks.addAll(track.chunks);
+        }
+        if (chunks.isEmpty()) {
+            return false;
+        }
+
+        // the chunks keep their order in the file, without whatever lay between them
+        chunks.sort(Comparator.comparingLong(chunk -> chunk.sourceOffset));
+        long dataLength = 0;
+        for (Chunk chunk : chunks) {
+            dataLength += chunk.length;
+        }
+        final byte[] ftyp = movie.ftyp;
+        // the rebuilt tables are no larger than the ones read
+        final boolean largeOffsets = ftyp.length + MAX_TABLES_SIZE + 16 + dataLength > MAX_STCO_OFFSET;
+        final int mdatHeaderSize = dataLength + 8 > MAX_STCO_OFFSET ? 16 : 8;
+
+        // the moov size does not depend on the offsets it holds, so build it once to learn where the data goes
+        long position = ftyp.length + buildMoov(movie, kept, largeOffsets).length + mdatHeaderSize;
+        for (Chunk chunk : chunks) {
+            chunk.targetOffset = position;
+            position += chunk.length;
+        }
+        final byte[] moov = buildMoov(movie, kept, largeOffsets);
+
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.wrap(ftyp));
+            writeFully(out, ByteBuffer.wrap(moov));
+            final ByteBuffer mdatHeader = ByteBuffer.allocate(mdatHeaderSize);
+            if (mdatHeaderSize == 16) {
+                mdatHeader.putInt(1).put(fourCc("mdat")).putLong(dataLength + 16);
+            } else {
+                mdatHeader.putInt((int) (dataLength + 8)).put(fourCc("mdat"));
+            }
+            mdatHeader.flip();
+            writeFully(out, mdatHeader);
+            copy(in, out, chunks);
+        }
+
+        try (SeekableInput trimmed = new SeekableInput(target)) {
+            verify(in, movie, first, kept, trimmed);
+        }
+        return true;
+    }
+
+    /**
+     * Copies the chunks, joining neighbours into one range.
+     */
+    private static void copy(SeekableInput in, FileChannel out, List<Chunk> chunks) throws IOException {
+        long start = -1;
+        long end = -1;
+        for (Chunk chunk : chunks) {
+            if (chunk.sourceOffset != end) {
+                if (start >= 0) {
+                    in.copyTo(out, start, end - start);
+                }
+                start = chunk.sourceOffset;
+            }
+            end = chunk.sourceOffset + chunk.length;
+        }
+        in.copyTo(out, start, end - start);
+    }
+
+    private static void verify(SeekableInput source, Movie movie, int[] first, List<Kept> kept, SeekableInput trimmedInput) throws IOException {
+        final Movie trimmed = Movie.read(trimmedInput);
+        if (trimmed == null || trimmed.tracks.size() != movie.tracks.size()) {
+            throw new IOException("Trimmed clip could not be read back");
+        }
+
+        for (int t = 0; t < first.length; t++) {
+            final Track original = movie.tracks.get(t);
+            final Track track = trimmed.tracks.get(t);
+            final Kept expected = kept.get(t);
+            if (track.sampleCount != expected.count) {
+                throw new IOException("Track " + t + " has " + track.sampleCount + " samples, expected " + expected.count);
+            }
+            if (expected.count == 0) {
+                continue;
+            }
+
+            final Samples from = original.samples();
+            while (from.next() && from.index < first[t]) {
+                // walk up to the first kept sample
+            }
+            final Samples to = track.samples();
+            int chunk = 0;
+            int chunkSamplesLeft = expected.chunks.get(0).samples;
+            long firstSourceOffset = -1;
+            long firstTargetOffset = -1;
+            int firstSize = 0;
+            while (to.next()) {
+                if (to.index > 0 && !from.next()) {
+                    throw new IOException("Track " + t + " has more samples than the clip");
+                }
+                if (chunkSamplesLeft == 0) {
+                    chunkSamplesLeft = expected.chunks.get(++chunk).samples;
+                }
+                chunkSamplesLeft--;
+
+                final Chunk expectedChunk = expected.chunks.get(chunk);
+                if (to.offset != expectedChunk.targetOffset + from.offset - expectedChunk.sourceOffset
+                        || to.size != from.size || to.duration != from.duration
+                        || to.offset + to.size > trimmedInput.size()) {
+                    throw new IOException("Sample " + to.index + " of track " + t + " moved");
+                }
+                if (to.index == 0) {
+                    if (original == movie.keyTrack() && !to.sync) {
+                        throw new IOException("Trimmed clip does not start with a sync sample");
+                    }
+                    firstSourceOffset = from.offset;
+                    firstTargetOffset = to.offset;
+                    firstSize = to.size;
+                }
+            }
+            compareSample(source, firstSourceOffset, trimmedInput, firstTargetOffset, firstSize);
+            compareSample(source, from.offset, trimmedInput, to.offset, to.size);
+        }
+    }
+
+    private static void compareSample(SeekableInput source, long sourceOffset, SeekableInput trimmed, long trimmedOffset, int size) throws IOException {
+        final int length = Math.min(size, VERIFY_BYTES);
+        final byte[] expected = new byte[length];
+        final byte[] actual = new byte[length];
+        source.seek(sourceOffset);
+        source.readFully(expected);
+        trimmed.seek(trimmedOffset);
+        trimmed.readFully(actual);
+        if (!Arrays.equals(expected, actual)) {
+            throw new IOException("Sample data at " + trimmedOffset + " does not match the clip");
+        }
+    }
+
+    /**
+     * Builds the moov of the trimmed clip, without the {@code mvex} of a fragmented clip.
+     */
+    private static byte[] buildMoov(Movie movie, List<Kept> kept, boolean largeOffsets) throws IOException {
+        long movieDuration = 0;
+        final List<Box> children = new ArrayList<>();
+        int trackIndex = 0;
+        for (Box child : movie.moov.children) {
+            if (child.type.equals("mvex")) {
+                continue;
+            }
+            if (!child.type.equals("trak")) {
+                children.add(child);
+                continue;
+            }
+
+            final Track track = movie.tracks.get(trackIndex);
+            final Kept samples = kept.get(trackIndex++);
+            final long duration = samples.mediaDuration * movie.timescale / track.timescale;
+            movieDuration = Math.max(movieDuration, duration);
+            children.add(buildTrak(track, samples, largeOffsets, duration, movie.timescale));
+        }
+
+        for (int i = 0; i < children.size(); i++) {
+            if (children.get(i).type.equals("mvhd")) {
+                children.set(i, children.get(i).withDuration(movieDuration));
+            }
+        }
+        return new Box("moov", children).toBytes();
+    }
+
+    private static Box buildTrak(Track track, Kept kept, boolean largeOffsets, long duration, long movieTimescale) throws IOException {
+        final List<Box> children = new ArrayList<>();
+        for (Box child : track.trak.children) {
+            switch (child.type) {
+                case "tkhd":
+                    children.add(child.withDuration(duration));
+                    break;
+                case "edts":
+                    break;
+                case "mdia":
+                    children.add(new Box("mdia", mdiaChildren(child, kept, largeOffsets)));
+                    break;
+                default:
+                    children.add(child);
+            }
+            if (child.type.equals("tkhd")) {
+                children.add(buildEdts(kept, duration));
+            }
+        }
+        return new Box("trak", children);
+    }
+
+    /**
+     * One edit covering the whole track, starting at the presentation time of its first sample.
+     */
+    private static Box buildEdts(Kept kept, long duration) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream elst = new DataOutputStream(bytes);
+        elst.writeInt(1 << 24);
+        elst.writeInt(1);
+        elst.writeLong(duration);
+        elst.writeLong(kept.firstCompositionOffset);
+        elst.writeShort(1);
+        elst.writeShort(0);
+        return new Box("edts", new ArrayList<>(Arrays.asList(new Box("elst", bytes.toByteArray()))));
+    }
+
+    private static List<Box> mdiaChildren(Box mdia, Kept kept, boolean largeOffsets) throws IOException {
+        final List<Box> children = new ArrayList<>();
+        for (Box child : mdia.children) {
+            if (child.type.equals("mdhd")) {
+                children.add(child.withDuration(kept.mediaDuration));
+            } else if (child.type.equals("minf")) {
+                final List<Box> minf = new ArrayList<>();
+                for (Box grandchild : child.children) {
+                    minf.add(grandchild.type.equals("stbl") ? buildStbl(grandchild, kept, largeOffsets) : grandchild);
+                }
+                children.add(new Box("minf", minf));
+            } else {
+                children.add(child);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Puts the rebuilt sample tables next to the sample descriptions. Tables that are not rebuilt refer to samples by
+     * number and are left out.
+     */
+    private static Box buildStbl(Box stbl, Kept kept, boolean largeOffsets) throws IOException {
+        final List<Box> children = new ArrayList<>();
+        children.add(stbl.child("stsd"));
+        children.add(kept.stts.toBox("stts", 0));
+        if (kept.ctts != null) {
+            children.add(kept.ctts.toBox("ctts", kept.compositionOffsetsVersion));
+        }
+        // no stss when every sample is a sync sample
+        if (kept.stss.count < kept.count) {
+            children.add(kept.stss.toBox("stss", 0));
+        }
+
+        final ByteArrayOutputStream stszBytes = new ByteArrayOutputStream();
+        final DataOutputStream stsz = new DataOutputStream(stszBytes);
+        stsz.writeInt(0);
+        stsz.writeInt(kept.constantSize ? kept.firstSize : 0);
+        stsz.writeInt(kept.count);
+        if (!kept.constantSize) {
+            kept.sizes.writeTo(stsz);
+        }
+        children.add(new Box("stsz", stszBytes.toByteArray()));
+        children.add(kept.stsc.toBox("stsc", 0));
+
+        final ByteArrayOutputStream chunkBytes = new ByteArrayOutputStream();
+        final DataOutputStream chunkTable = new DataOutputStream(chunkBytes);
+        chunkTable.writeInt(0);
+        chunkTable.writeInt(kept.chunks.size());
+        for (Chunk chunk : kept.chunks) {
+            if (largeOffsets) {
+                chunkTable.writeLong(chunk.targetOffset);
+            } else if (chunk.targetOffset > MAX_STCO_OFFSET) {
+                throw new IOException("Chunk offset " + chunk.targetOffset + " does not fit in 32 bits");
+            } else {
+                chunkTable.writeInt((int) chunk.targetOffset);
+            }
+        }
+        children.add(new Box(largeOffsets ? "co64" : "stco", chunkBytes.toByteArray()));
+        return new Box("stbl", children);
+    }
+
+    private static byte[] fourCc(String type) {
+        return type.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * @param entrySize Bytes per entry after the version, flags and entry count.
+     * @return The payload of a full box table, checked to hold all of its entries.
+     */
+    private static ByteBuffer table(Box box, int entrySize) throws IOException {
+        final ByteBuffer table = box.payload();
+        if (table.limit() < 8 || table.limit() < 8 + (long) entrySize * table.getInt(4)) {
+            throw new IOException("Box " + box.type + " is shorter than its entries");
+        }
+        return table;
+    }
+
+    /**
+     * A full box table: version and flags, entry count, entries of 32 bit fields.
+     */
+    private static final class Table {
+        private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(entries);
+        private int count;
+
+        private void entry(int... fields) throws IOException {
+            for (int field : fields) {
+                out.writeInt(field);
+            }
+            count++;
+        }
+
+        private Box toBox(String type, int version) throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() + 8);
+            final DataOutputStream box = new DataOutputStream(bytes);
+            box.writeInt(version << 24);
+            box.writeInt(count);
+            entries.writeTo(box);
+            return new Box(type, bytes.toByteArray());
+        }
+    }
+
+    private static final class Box {
+        private final String type;
+        private final byte[] payload;
+        private final List<Box> children;
+
+        private Box(String type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+            this.children = null;
+        }
+
+        private Box(String type, List<Box> children) {
+            this.type = type;
+            this.payload = null;
+            this.children = children;
+        }
+
+        private static List<Box> parseChildren(byte[] data, int from, int to) throws IOException {
+            final List<Box> boxes = new ArrayList<>();
+            final ByteBuffer buffer = ByteBuffer.wrap(data, from, to - from);
+            while (buffer.remaining() >= 8) {
+                final int start = buffer.position();
+                long size = buffer.getInt() & 0xFFFFFFFFL;
+                final byte[] typeBytes = new byte[4];
+                buffer.get(typeBytes);
+                final String type = new String(typeBytes, StandardCharsets.ISO_8859_1);
+                if (size == 1) {
+                    size = buffer.getLong();
+                } else if (size == 0) {
+                    size = to - start;
+                }
+                final int headerSize = buffer.position() - start;
+                if (size < headerSize || start + size > to) {
+                    throw new IOException("Box " + type + " does not fit in its parent");
+                }
+
+                final int end = (int) (start + size);
+                if (CONTAINERS.contains(type)) {
+                    boxes.add(new Box(type, parseChildren(data, start + headerSize, end)));
+                } else {
+                    boxes.add(new Box(type, Arrays.copyOfRange(data, start + headerSize, end)));
+                }
+                buffer.position(end);
+            }
+            return boxes;
+        }
+
+        private Box child(String type) {
+            for (Box child : children) {
+                if (child.type.equals(type)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        private ByteBuffer payload() {
+            return ByteBuffer.wrap(payload);
+        }
+
+        private int version() {
+            return payload[0] & 0xFF;
+        }
+
+        private int flags() {
+            return payload().getInt(0) & 0xFFFFFF;
+        }
+
+        /**
+         * Copies an {@code mvhd}, {@code mdhd} or {@code tkhd} box with another duration. The time fields before the
+         * duration are 64 bits wide in a version 1 box.
+         */
+        private Box withDuration(long duration) {
+            final boolean tkhd = type.equals("tkhd");
+            final byte[] copy = payload.clone();
+            final ByteBuffer buffer = ByteBuffer.wrap(copy);
+            if (version() == 1) {
+                buffer.putLong(tkhd ? 28 : 24, duration);
+            } else {
+                final int offset = tkhd ? 20 : 16;
+                buffer.putInt(offset, (int) Math.min(duration, MAX_STCO_OFFSET));
+            }
+            return new Box(type, copy);
+        }
+
+        private byte[] toBytes() throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            write(new DataOutputStream(bytes));
+            return bytes.toByteArray();
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            byte[] content = payload;
+            if (children != null) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final DataOutputStream childOut = new DataOutputStream(bytes);
+                for (Box child : children) {
+                    child.write(childOut);
+                }
+                content = bytes.toByteArray();
+            }
+            out.writeInt(content.length + 8);
+            out.write(fourCc(type));
+            out.write(content);
+        }
+    }
+
+    private static final class Movie {
+        private byte[] ftyp = new byte[0];
+        private Box moov;
+        private long timescale;
+        private final List<Track> tracks = new ArrayList<>();
+        // bytes of sample tables read so far
+        private long tablesSize;
+
+        /**
+         * @return {@code null} if the file is not an MP4 the trimmer handles.
+         */
+        private static Movie read(SeekableInput in) throws IOException {
+            final Movie movie = new Movie();
+            // start and size of every moof, only read if the moov says the file is fragmented
+            final List<long[]> fragments = new ArrayList<>();
+            long position = 0;
+            while (position + 8 <= in.size()) {
+                in.seek(position);
+                long size = in.readUnsignedInt();
+                final byte[] typeBytes = new byte[4];
+                in.readFully(typeBytes);
+                final String type = new String(typeBytes, StandardCharsets.ISO_8859_1);
+                int headerSize = 8;
+                if (size == 1) {
+                    size = in.readLong();
+                    headerSize = 16;
+                } else if (size == 0) {
+                    size = in.size() - position;
+                }
+                if (size < headerSize || position + size > in.size()) {
+                    return null;
+                }
+
+                switch (type) {
+                    case "ftyp":
+                        movie.ftyp = new byte[(int) size];
+                        in.seek(position);
+                        in.readFully(movie.ftyp);
+                        break;
+                    case "moov":
+                        if (size > MAX_TABLES_SIZE) {
+                            return null;
+                        }
+                        final byte[] moov = new byte[(int) size - headerSize];
+                        in.readFully(moov);
+                        movie.moov = new Box("moov", Box.parseChildren(moov, 0, moov.length));
+                        movie.tablesSize = size;
+                        break;
+                    case "moof":
+                        fragments.add(new long[]{position, size, headerSize});
+                        break;
+                    default:
+                        break;
+                }
+                position += size;
+            }
+
+            if (movie.moov == null) {
+                return null;
+            }
+            final Box mvhd = movie.moov.child("mvhd");
+            if (mvhd == null) {
+                return null;
+            }
+            movie.timescale = mvhd.payload().getInt(mvhd.version() == 1 ? 20 : 12) & 0xFFFFFFFFL;
+
+            for (Box child : movie.moov.children) {
+                if (child.type.equals("trak")) {
+                    final Track track = Track.read(child);
+                    if (track == null) {
+                        return null;
+                    }
+                    movie.tracks.add(track);
+                }
+            }
+            if (movie.tracks.isEmpty()) {
+                return null;
+            }
+
+            // a hybrid file that was finished has a plain moov, and its fragments are only a copy of the samples
+            final Box mvex = movie.moov.child("mvex");
+            if (mvex != null && !movie.readFragments(in, mvex, fragments)) {
+                return null;
+            }
+            return movie;
+        }
+
+        /**
+         * Reads the samples of a fragmented file from its {@code moof} boxes.
+         *
+         * @return {@code false} if the fragments are not something the trimmer handles.
+         */
+        private boolean readFragments(SeekableInput in, Box mvex, List<long[]> fragments) throws IOException {
+            final Map<Integer, Track> tracksById = new HashMap<>();
+            for (Track track : tracks) {
+                if (track.sampleCount > 0) {
+                    // samples both in the moov and in fragments
+                    return false;
+                }
+                track.runs = new ArrayList<>();
+                tracksById.put(track.id, track);
+            }
+            for (Box trex : mvex.children) {
+                if (trex.type.equals("trex")) {
+                    final ByteBuffer defaults = trex.payload();
+                    final Track track = tracksById.get(defaults.getInt(4));
+                    if (track != null) {
+                        track.defaultDescription = defaults.getInt(8);
+                        track.defaultDuration = defaults.getInt(12);
+                        track.defaultSize = defaults.getInt(16);
+                        track.defaultFlags = defaults.getInt(20);
+                    }
+                }
+            }
+
+            for (long[] fragment : fragments) {
+                final long moofStart = fragment[0];
+                tablesSize += fragment[1];
+                if (tablesSize > MAX_TABLES_SIZE) {
+                    return false;
+                }
+                final byte[] moof = new byte[(int) (fragment[1] - fragment[2])];
+                in.seek(moofStart + fragment[2]);
+                in.readFully(moof);
+
+                long previousDataEnd = moofStart;
+                for (Box traf : Box.parseChildren(moof, 0, moof.length)) {
+                    if (traf.type.equals("traf")) {
+                        previousDataEnd = readTrackFragment(traf, tracksById, moofStart, previousDataEnd, in.size());
+                    }
+                }
+            }
+
+            for (Track track : tracks) {
+                track.duration = track.fragmentsEnd;
+            }
+            return true;
+        }
+
+        /**
+         * @param previousDataEnd Where the data of the previous track fragment in the moof ends, or the start of the
+         *                        moof for the first one.
+         * @return Where the data of this track fragment ends.
+         */
+        private static long readTrackFragment(Box traf, Map<Integer, Track> tracksById, long moofStart, long previousDataEnd,
+                                              long fileSize) throws IOException {
+            final Box tfhd = traf.child("tfhd");
+            if (tfhd == null) {
+                throw new IOException("Track fragment without a tfhd");
+            }
+            final ByteBuffer header = tfhd.payload();
+            final int flags = tfhd.flags();
+            final Track track = tracksById.get(header.getInt(4));
+            if (track == null) {
+                throw new IOException("Fragment of unknown track " + header.getInt(4));
+            }
+
+            int at = 8;
+            final long base;
+            if ((flags & TFHD_BASE_DATA_OFFSET) != 0) {
+                base = header.getLong(at);
+                at += 8;
+            } else {
+                base = (flags & TFHD_DEFAULT_BASE_IS_MOOF) != 0 ? moofStart : previousDataEnd;
+            }
+            final Run defaults = new Run();
+            defaults.description = track.defaultDescription;
+            defaults.defaultDuration = track.defaultDuration;
+            defaults.defaultSize = track.defaultSize;
+            defaults.defaultFlags = track.defaultFlags;
+            if ((flags & TFHD_DESCRIPTION) != 0) {
+                defaults.description = header.getInt(at);
+                at += 4;
+            }
+            if ((flags & TFHD_DEFAULT_DURATION) != 0) {
+                defaults.defaultDuration = header.getInt(at);
+                at += 4;
+            }
+            if ((flags & TFHD_DEFAULT_SIZE) != 0) {
+                defaults.defaultSize = header.getInt(at);
+                at += 4;
+            }
+            if ((flags & TFHD_DEFAULT_FLAGS) != 0) {
+                defaults.defaultFlags = header.getInt(at);
+            }
+
+            final Box tfdt = traf.child("tfdt");
+            long time = track.fragmentsEnd;
+            if (tfdt != null) {
+                time = tfdt.version() == 1 ? tfdt.payload().getLong(4) : tfdt.payload().getInt(4) & 0xFFFFFFFFL;
+            }
+
+            long dataEnd = base;
+            for (Box trun : traf.children) {
+                if (!trun.type.equals("trun")) {
+                    continue;
+                }
+                final Run run = Run.read(trun, defaults, base, dataEnd, time);
+                if (run.dataOffset < 0 || run.dataOffset + run.dataLength > fileSize) {
+                    throw new IOException("Track run at " + run.dataOffset + " is outside the file");
+                }
+                track.runs.add(run);
+                track.sampleCount += run.count;
+                if ((run.flags & TRUN_COMPOSITION_OFFSET) != 0) {
+                    track.compositionOffsets = true;
+                    track.compositionOffsetsVersion = Math.max(track.compositionOffsetsVersion, trun.version());
+                }
+                dataEnd = run.dataOffset + run.dataLength;
+                time += run.duration;
+            }
+            track.fragmentsEnd = time;
+            return dataEnd;
+        }
+
+        /**
+         * @return The track to cut at the sync samples of: the first video track, or the first track.
+         */
+        private Track keyTrack() {
+            for (Track track : tracks) {
+                if (track.video) {
+                    return track;
+                }
+            }
+            return tracks.get(0);
+        }
+    }
+
+    /**
+     * A track and where to find its samples: the sample tables in its {@code stbl}, or the runs of a fragmented file.
+     */
+    private static final class Track {
+        private Box trak;
+        private Box stbl;
+        private int id;
+        private long timescale;
+        private boolean video;
+        private int sampleCount;
+        /**
+         * Decode time of the end of the last sample.
+         */
+        private long duration;
+        private boolean compositionOffsets;
+        private int compositionOffsetsVersion;
+        /**
+         * {@code null} unless the file is fragmented.
+         */
+        private List<Run> runs;
+        private int defaultDescription = 1;
+        private int defaultDuration;
+        private int defaultSize;
+        private int defaultFlags;
+        private long fragmentsEnd;
+
+        private static Track read(Box trak) throws IOException {
+            final Box tkhd = trak.child("tkhd");
+            final Box mdia = trak.child("mdia");
+            final Box minf = mdia != null ? mdia.child("minf") : null;
+            final Box stbl = minf != null ? minf.child("stbl") : null;
+            final Box mdhd = mdia != null ? mdia.child("mdhd") : null;
+            final Box hdlr = mdia != null ? mdia.child("hdlr") : null;
+            if (tkhd == null || stbl == null || mdhd == null || hdlr == null || stbl.child("stsd") == null
+                    || stbl.child("stsz") == null || stbl.child("stts") == null || stbl.child("stsc") == null
+                    || (stbl.child("stco") == null && stbl.child("co64") == null)) {
+                return null;
+            }
+
+            final Track track = new Track();
+            track.trak = trak;
+            track.stbl = stbl;
+            track.id = tkhd.payload().getInt(tkhd.version() == 1 ? 20 : 12);
+            track.timescale = mdhd.payload().getInt(mdhd.version() == 1 ? 20 : 12) & 0xFFFFFFFFL;
+            track.video = new String(hdlr.payload, 8, 4, StandardCharsets.ISO_8859_1).equals("vide");
+            track.sampleCount = table(stbl.child("stsz"), 0).getInt(8);
+            final Box ctts = stbl.child("ctts");
+            if (ctts != null) {
+                track.compositionOffsets = true;
+                track.compositionOffsetsVersion = ctts.version();
+            }
+
+            // walk the tables once, so a table that does not cover every sample is found before cutting
+            final Samples samples = track.samples();
+            while (samples.next()) {
+                track.duration = samples.decodeTime + samples.duration;
+            }
+            return track;
+        }
+
+        private Samples samples() throws IOException {
+            return runs != null ? new FragmentSamples(runs) : new TableSamples(stbl, sampleCount);
+        }
+
+        /**
+         * @return The last sync sample decoded at or before the time, or the first sync sample if there is none.
+         */
+        private Sync syncSampleBefore(long time) throws IOException {
+            final Samples samples = samples();
+            Sync before = null;
+            while (samples.next()) {
+                if (!samples.sync) {
+                    continue;
+                }
+                if (samples.decodeTime > time && before != null) {
+                    break;
+                }
+                before = new Sync(samples.index, samples.decodeTime);
+            }
+            return before;
+        }
+
+        /**
+         * @return The first sample decoded at or after {@code time / timescale} seconds.
+         */
+        private int firstSampleAtOrAfter(long time, long timescale) throws IOException {
+            final Samples samples = samples();
+            while (samples.next()) {
+                if (samples.decodeTime * timescale >= time * this.timescale) {
+                    return samples.index;
+                }
+            }
+            return sampleCount;
+        }
+    }
+
+    private static final class Sync {
+        private final int index;
+        private final long decodeTime;
+
+        private Sync(int index, long decodeTime) {
+            this.index = index;
+            this.decodeTime = decodeTime;
+        }
+    }
+
+    /**
+     * Walks the samples of a track in decode order, one at a time.
+     */
+    private abstract static class Samples {
+        int index = -1;
+        long offset;
+        int size;
+        int duration;
+        long decodeTime;
+        int compositionOffset;
+        boolean sync;
+        /**
+         * Changes between samples that do not follow each other in the file.
+         */
+        int chunk;
+        int description;
+
+        /**
+         * Moves to the next sample.
+         *
+         * @return {@code false} if there is none.
+         */
+        abstract boolean next() throws IOException;
+    }
+
+    /**
+     * The samples of the sample tables in an {@code stbl}.
+     */
+    private static final class TableSamples extends Samples {
+        private final int count;
+        private final int sampleSize;
+        private final ByteBuffer stsz;
+        private final ByteBuffer stts;
+        private final ByteBuffer ctts;
+        private final ByteBuffer stss;
+        private final ByteBuffer stsc;
+        private final ByteBuffer chunkOffsets;
+        private final boolean largeOffsets;
+        private int sttsEntry;
+        private int sttsLeft;
+        private int cttsEntry;
+        private int cttsLeft;
+        private int stssEntry;
+        private int stscEntry;
+        private int chunkLeft;
+
+        private TableSamples(Box stbl, int count) throws IOException {
+            this.count = count;
+            final ByteBuffer sizes = stbl.child("stsz").payload();
+            sampleSize = sizes.getInt(4);
+            if (sampleSize == 0 && sizes.limit() < 12 + 4L * count) {
+                throw new IOException("Box stsz is shorter than its entries");
+            }
+            stsz = sizes;
+            stts = table(stbl.child("stts"), 8);
+            ctts = stbl.child("ctts") != null ? table(stbl.child("ctts"), 8) : null;
+            stss = stbl.child("stss") != null ? table(stbl.child("stss"), 4) : null;
+            stsc = table(stbl.child("stsc"), 12);
+            final Box chunkBox = stbl.child("stco") != null ? stbl.child("stco") : stbl.child("co64");
+            largeOffsets = chunkBox.type.equals("co64");
+            chunkOffsets = table(chunkBox, largeOffsets ? 8 : 4);
+        }
+
+        @Override
+        boolean next() throws IOException {
+            if (index + 1 >= count) {
+                return false;
+            }
+            final long nextOffset = offset + size;
+            index++;
+            size = sampleSize != 0 ? sampleSize : stsz.getInt(12 + 4 * index);
+
+            decodeTime += duration;
+            while (sttsLeft == 0) {
+                if (sttsEntry >= stts.getInt(4)) {
+                    throw new IOException("stts covers " + index + " of " + count + " samples");
+                }
+                sttsLeft = stts.getInt(8 + 8 * sttsEntry);
+                duration = stts.getInt(12 + 8 * sttsEntry);
+                sttsEntry++;
+            }
+            sttsLeft--;
+
+            if (ctts != null) {
+                while (cttsLeft == 0 && cttsEntry < ctts.getInt(4)) {
+                    cttsLeft = ctts.getInt(8 + 8 * cttsEntry);
+                    compositionOffset = ctts.getInt(12 + 8 * cttsEntry);
+                    cttsEntry++;
+                }
+                cttsLeft--;
+            }
+
+            if (stss == null) {
+                sync = true;
+            } else {
+                final int entries = stss.getInt(4);
+                while (stssEntry < entries && (stss.getInt(8 + 4 * stssEntry) & 0xFFFFFFFFL) < index + 1) {
+                    stssEntry++;
+                }
+                sync = stssEntry < entries && stss.getInt(8 + 4 * stssEntry) == index + 1;
+            }
+
+            if (chunkLeft > 0) {
+                offset = nextOffset;
+            } else {
+                final int entries = stsc.getInt(4);
+                do {
+                    if (++chunk > chunkOffsets.getInt(4) || entries == 0) {
+                        throw new IOException("stsc covers " + index + " of " + count + " samples");
+                    }
+                    while (stscEntry + 1 < entries && stsc.getInt(8 + 12 * (stscEntry + 1)) <= chunk) {
+                        stscEntry++;
+                    }
+                    chunkLeft = stsc.getInt(12 + 12 * stscEntry);
+                } while (chunkLeft <= 0);
+                description = stsc.getInt(16 + 12 * stscEntry);
+                offset = largeOffsets
+                        ? chunkOffsets.getLong(8 + 8 * (chunk - 1))
+                        : chunkOffsets.getInt(8 + 4 * (chunk - 1)) & 0xFFFFFFFFL;
+            }
+            chunkLeft--;
+            return true;
+        }
+    }
+
+    /**
+     * One {@code trun} of a fragmented file: samples that follow each other in the file.
+     */
+    private static final class Run {
+        private ByteBuffer payload;
+        private int flags;
+        private int count;
+        private int firstEntry;
+        private int entrySize;
+        private long dataOffset;
+        private long dataLength;
+        private long baseDecodeTime;
+        private long duration;
+        private int description;
+        private int defaultDuration;
+        private int defaultSize;
+        private int defaultFlags;
+        private int firstSampleFlags;
+
+        /**
+         * @param base     The base data offset of the track fragment.
+         * @param dataEnd  Where the data of the previous run ends, or the base for the first one.
+         * @param time     The decode time of the first sample.
+         */
+        private static Run read(Box trun, Run defaults, long base, long dataEnd, long time) throws IOException {
+            final Run run = new Run();
+            run.payload = trun.payload();
+            run.flags = trun.flags();
+            run.count = run.payload.getInt(4);
+            run.description = defaults.description;
+            run.defaultDuration = defaults.defaultDuration;
+            run.defaultSize = defaults.defaultSize;
+            run.defaultFlags = defaults.defaultFlags;
+            run.baseDecodeTime = time;
+
+            int at = 8;
+            run.dataOffset = dataEnd;
+            if ((run.flags & TRUN_DATA_OFFSET) != 0) {
+                run.dataOffset = base + run.payload.getInt(at);
+                at += 4;
+            }
+            run.firstSampleFlags = run.defaultFlags;
+            if ((run.flags & TRUN_FIRST_SAMPLE_FLAGS) != 0) {
+                run.firstSampleFlags = run.payload.getInt(at);
+                at += 4;
+            }
+            run.firstEntry = at;
+            run.entrySize = 4 * Integer.bitCount(run.flags & (TRUN_DURATION | TRUN_SIZE | TRUN_FLAGS | TRUN_COMPOSITION_OFFSET));
+            if (run.count < 0 || run.payload.limit() < at + (long) run.entrySize * run.count) {
+                throw new IOException("Box trun is shorter than its entries");
+            }
+
+            final FragmentSamples samples = new FragmentSamples(Arrays.asList(run));
+            while (samples.next()) {
+                run.dataLength += samples.size;
+                run.duration += samples.duration;
+            }
+            return run;
+        }
+    }
+
+    /**
+     * The samples of the runs of a fragmented file.
+     */
+    private static final class FragmentSamples extends Samples {
+        private final List<Run> runs;
+        private Run run;
+        private int runSample;
+
+        private FragmentSamples(List<Run> runs) {
+            this.runs = runs;
+        }
+
+        @Override
+        boolean next() {
+            while (run == null || runSample >= run.count) {
+                if (chunk >= runs.size()) {
+                    return false;
+                }
+                run = runs.get(chunk++);
+                runSample = 0;
+                offset = run.dataOffset;
+                size = 0;
+                decodeTime = run.baseDecodeTime;
+                duration = 0;
+                description = run.description;
+            }
+            index++;
+            offset += size;
+            decodeTime += duration;
+
+            int at = run.firstEntry + runSample * run.entrySize;
+            int flags = runSample == 0 ? run.firstSampleFlags : run.defaultFlags;
+            duration = run.defaultDuration;
+            size = run.defaultSize;
+            if ((run.flags & TRUN_DURATION) != 0) {
+                duration = run.payload.getInt(at);
+                at += 4;
+            }
+            if ((run.flags & TRUN_SIZE) != 0) {
+                size = run.payload.getInt(at);
+                at += 4;
+            }
+            if ((run.flags & TRUN_FLAGS) != 0) {
+                flags = run.payload.getInt(at);
+                at += 4;
+            }
+            compositionOffset = (run.flags & TRUN_COMPOSITION_OFFSET) != 0 ? run.payload.getInt(at) : 0;
+            sync = (flags & SAMPLE_IS_NON_SYNC) == 0;
+            runSample++;
+            return true;
+        }
+    }
+
+    /**
+     * A run of kept samples that follow each other in the file.
+     */
+    private static final class Chunk {
+        private final long sourceOffset;
+        private final int description;
+        private long length;
+        private int samples;
+        private long targetOffset;
+
+        private Chunk(long sourceOffset, int description) {
+            this.sourceOffset = sourceOffset;
+            this.description = description;
+        }
+    }
+
+    /**
+     * The sample tables of the kept samples of a track, built while walking them.
+     */
+    private static final class Kept {
+        private final Table stts = new Table();
+        private final Table ctts;
+        private final int compositionOffsetsVersion;
+        private final Table stss = new Table();
+        private final Table stsc = new Table();
+        private final ByteArrayOutputStream sizes = new ByteArrayOutputStream();
+        private final DataOutputStream sizesOut = new DataOutputStream(sizes);
+        private final List<Chunk> chunks = new ArrayList<>();
+        private int count;
+        private int firstSize;
+        private boolean constantSize = true;
+        private long mediaDuration;
+        private int firstCompositionOffset;
+        private int durationRun;
+        private int lastDuration;
+        private int compositionOffsetRun;
+        private int lastCompositionOffset;
+        private int lastSamplesPerChunk = -1;
+        private int lastDescription = -1;
+        private Chunk chunk;
+        private int sourceChunk;
+
+        private Kept(Track track) {
+            ctts = track.compositionOffsets ? new Table() : null;
+            compositionOffsetsVersion = track.compositionOffsetsVersion;
+        }
+
+        /**
+         * @return The samples from {@code first} up to {@code end} of the track.
+         */
+        private static Kept collect(Track track, int first, int end) throws IOException {
+            final Kept kept = new Kept(track);
+            final Samples samples = track.samples();
+            while (samples.next() && samples.index < end) {
+                if (samples.index >= first) {
+                    kept.add(samples);
+                }
+            }
+            kept.finish();
+            return kept;
+        }
+
+        private void add(Samples sample) throws IOException {
+            if (count == 0) {
+                firstSize = sample.size;
+                firstCompositionOffset = sample.compositionOffset;
+            }
+
+            if (durationRun > 0 && sample.duration != lastDuration) {
+                stts.entry(durationRun, lastDuration);
+                durationRun = 0;
+            }
+            lastDuration = sample.duration;
+            durationRun++;
+            if (ctts != null) {
+                if (compositionOffsetRun > 0 && sample.compositionOffset != lastCompositionOffset) {
+                    ctts.entry(compositionOffsetRun, lastCompositionOffset);
+                    compositionOffsetRun = 0;
+                }
+                lastCompositionOffset = sample.compositionOffset;
+                compositionOffsetRun++;
+            }
+            if (sample.sync) {
+                stss.entry(count + 1);
+            }
+            sizesOut.writeInt(sample.size);
+            constantSize &= sample.size == firstSize;
+            mediaDuration += sample.duration;
+
+            // a chunk is a run of samples that were in the same chunk before; the first one may have lost its start
+            if (chunk == null || sample.chunk != sourceChunk || sample.description != chunk.description
+                    || sample.offset != chunk.sourceOffset + chunk.length) {
+                closeChunk();
+                chunk = new Chunk(sample.offset, sample.description);
+                chunks.add(chunk);
+                sourceChunk = sample.chunk;
+            }
+            chunk.length += sample.size;
+            chunk.samples++;
+            count++;
+        }
+
+        private void finish() throws IOException {
+            if (durationRun > 0) {
+                stts.entry(durationRun, lastDuration);
+            }
+            if (ctts != null && compositionOffsetRun > 0) {
+                ctts.entry(compositionOffsetRun, lastCompositionOffset);
+            }
+            closeChunk();
+        }
+
+        private void closeChunk() throws IOException {
+            if (chunk != null && (chunk.samples != lastSamplesPerChunk || chunk.description != lastDescription)) {
+                stsc.entry(chunks.size(), chunk.samples, chunk.description);
+                lastSamplesPerChunk = chunk.samples;
+                lastDescription = chunk.description;
+            }
+        }
+    }
+}
@@ -0,0 +1,705 @@
+package com.sirebringo.autoclip;
+
+import com.google.gson.JsonObject;
+import io.obswebsocket.community.client.OBSRemoteController;
+import io.obswebsocket.community.client.message.event.config.CurrentProfileChangedEvent;
+import io.obswebsocket.community.client.message.event.outputs.RecordStateChangedEvent;
+import io.obswebsocket.community.client.message.event.outputs.ReplayBufferSavedEvent;
+import io.obswebsocket.community.client.message.event.outputs.ReplayBufferStateChangedEvent;
+import io.obswebsocket.community.client.message.request.RequestBatch;
+import io.obswebsocket.community.client.message.request.general.GetVersionRequest;
+import io.obswebsocket.community.client.message.request.general.SleepRequest;
+import io.obswebsocket.community.client.message.request.outputs.GetOutputSettingsRequest;
+import io.obswebsocket.community.client.message.request.outputs.SaveReplayBufferRequest;
+import io.obswebsocket.community.client.message.request.outputs.SetOutputSettingsRequest;
+import io.obswebsocket.community.client.message.request.record.GetRecordStatusRequest;
+import io.obswebsocket.community.client.message.request.record.StartRecordRequest;
+import io.obswebsocket.community.client.message.request.record.StopRecordRequest;
+import io.obswebsocket.community.client.message.response.RequestBatchResponse;
+import io.obswebsocket.community.client.message.response.RequestResponse;
+import io.obswebsocket.community.client.message.response.outputs.GetOutputSettingsResponse;
+import io.obswebsocket.community.client.message.response.record.GetRecordStatusResponse;
+import io.obswebsocket.community.client.message.response.record.StartRecordResponse;
+import io.obswebsocket.community.client.message.response.record.StopRecordResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A connection to one OBS instance, and the steps needed to save its replay buffer into a clip directory.
+ * <p>
+ * {@link #save(ClipRequest, ClipMode)} blocks until OBS has written the clip and the output settings are back to what the user
+ * configured, so it must only be called from the {@link ClipPipeline} worker.
+ * <p>
+ * The output settings are read when the connection is ready, and read again when OBS switches profiles or starts the
+ * replay buffer, which is when changed output settings take effect. A read that may have seen the settings of a clip
+ * being saved is thrown away and repeated after the save.
+ * <p>
+ * The connection also follows OBS's recording, for {@link ClipMode#CUT_FROM_RECORDING}: when it started, timed by the
+ * plugin's clock, and the file of every recording that stops. Pausing the recording is not accounted for.
+ */
+@Slf4j
+final class ObsConnection {
+    private static final String REPLAY_BUFFER_OUTPUT = "Replay Buffer";
+    private static final String OBS_BASE_FORMAT = "%CCYY-%MM-%DD %hh-%mm-%ss";
+    private static final long REQUEST_TIMEOUT_MILLIS = 1000;
+    private static final long SAVED_EVENT_TIMEOUT_MILLIS = 15000;
+    // OBS picks the replay file name shortly after the save request, on its output thread
+    private static final long RESET_DELAY_MILLIS = 500;
+    private static final int BATCH_READ_OUTPUT = 0;
+    private static final int BATCH_SET_OUTPUT = 1;
+    private static final int BATCH_SAVE = 2;
+    private static final int BATCH_RESET_OUTPUT = 4;
+    private static final String RESET_FAILED_WARNING = "could not restore the replay buffer output settings";
+    private static final long RECONNECT_INTERVAL_SECONDS = 5;
+    private static final long PING_INTERVAL_SECONDS = 5;
+    // weight of a new sample in the smoothed round trip time, as in TCP
+    private static final double ROUND_TRIP_GAIN = 0.125;
+    private static final String OUTPUT_STARTED = "OBS_WEBSOCKET_OUTPUT_STARTED";
+    private static final String OUTPUT_STOPPED = "OBS_WEBSOCKET_OUTPUT_STOPPED";
+    // a recording whose start was read from its duration is the same one if it started within this of the known start
+    private static final long RECORDING_START_TOLERANCE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Told about every recording that stops, see {@link #followRecording}.
+     */
+    interface RecordingListener {
+        /**
+         * @param outputPath The recording, as OBS named it.
+         * @param startNanos {@link System#nanoTime()} when the recording started.
+         */
+        void recordingStopped(String outputPath, long startNanos);
+    }
+
+    /**
+     * host:port, to tell targets apart in notifications and logs.
+     */
+    @Getter
+    private final String name;
+    private final OBSRemoteController controller;
+    private final ClipMetrics metrics;
+    private final ScheduledExecutorService reconnectExecutor;
+
+    private volatile ReplayOutputSettings outputSettings;
+    // the output settings changed while a clip was being saved, read them again after the save
+    private volatile boolean outputSettingsStale;
+    // counts the saves started, to tell whether one started while the output settings were being read
+    private final AtomicInteger saveCount = new AtomicInteger();
+    private volatile PendingSave pendingSave;
+    private volatile boolean sessionOpen;
+    private volatile boolean closed;
+
+    @Getter
+    private volatile long replayBufferDuration = -1; // lazy init, see readOutputSettings
+
+    private volatile long roundTripNanos = -1;
+
+    private volatile RecordingListener recordingListener;
+    /**
+     * {@link System#nanoTime()} when OBS started the recording it is making, or -1 if it is not recording or the
+     * recording was not followed.
+     */
+    @Getter
+    private volatile long recordingStartNanos = -1;
+    // start a new recording once the current one stopped, see splitRecording
+    private volatile boolean restartRecording;
+
+    ObsConnection(String host, int port, String password, ClipMetrics metrics) {
+        this.metrics = metrics;
+        // an IPv6 address is written in brackets in the websocket address
+        final String address = host.indexOf(':') >= 0 && !host.startsWith("[") ? "[" + host + "]" : host;
+        this.name = address + ":" + port;
+        controller = OBSRemoteController
+                .builder()
+                .host(address)
+                .port(port)
+                .password(password)
+                .registerEventListener(
+                        ReplayBufferSavedEvent.class, this::onReplayBufferSaved
+                )
+                .registerEventListener(
+                        ReplayBufferStateChangedEvent.class, this::onReplayBufferStateChanged
+                )
+                .registerEventListener(
+                        CurrentProfileChangedEvent.class, event -> refreshOutputSettings()
+                )
+                .registerEventListener(
+                        RecordStateChangedEvent.class, this::onRecordStateChanged
+                )
+                .lifecycle()
+                .onConnect(session -> sessionOpen = true)
+                .onReady(this::onReady)
+                .onDisconnect(this::onDisconnect)
+                .and()
+                .build();
+
+        // connecting blocks until OBS answers or the attempt times out, keep that off the plugin's executor. This is
+        // the only place that connects: the first attempt right away, then again whenever the session is gone.
+        reconnectExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "obs-auto-clip-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconnectExecutor.scheduleWithFixedDelay(this::reconnect,
+                0, RECONNECT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        reconnectExecutor.scheduleWithFixedDelay(this::ping,
+                PING_INTERVAL_SECONDS, PING_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    void disconnect() {
+        closed = true;
+        reconnectExecutor.shutdownNow();
+        final CompletableFuture<String> save = pendingSave;
+        if (save != null) {
+            save.cancel(false);
+        }
+        controller.disconnect();
+        controller.stop();
+    }
+
+    /**
+     * @return How long it takes a request to reach OBS, estimated as half the smoothed round trip time, or 0 while
+     * disconnected or before the first measurement.
+     */
+    long getSaveLeadNanos() {
+        final long roundTrip = roundTripNanos;
+        return roundTrip < 0 || !sessionOpen ? 0 : roundTrip / 2;
+    }
+
+    /**
+     * @return The directory OBS saves the replay buffer into, or null until the output settings have been read.
+     */
+    String getOutputDirectory() {
+        final ReplayOutputSettings settings = outputSettings;
+        return settings != null ? settings.getOutputDirectory() : null;
+    }
+
+    /**
+     * Saves the replay buffer and waits for OBS to report the saved file.
+     * <p>
+     * In {@link ClipMode#OUTPUT_SETTINGS} mode the replay buffer output is pointed at the clip's directory and file
+     * name first, and restored afterwards. In {@link ClipMode#RENAME_AFTER_SAVE} mode the output settings are left
+     * alone and the file is saved wherever OBS is configured to put it.
+     */
+    SaveResult save(ClipRequest request, ClipMode mode) throws InterruptedException {
+        return trySave(request, mode).from(this);
+    }
+
+    private SaveResult trySave(ClipRequest request, ClipMode mode) throws InterruptedException {
+        final ReplayOutputSettings settings = this.outputSettings;
+        if (settings == null) {
+            return SaveResult.failed("not connected to OBS");
+        }
+
+        saveCount.incrementAndGet();
+        try {
+            return mode == ClipMode.RENAME_AFTER_SAVE
+                    ? saveReplayBuffer()
+                    : saveWithOutputSettings(request, settings);
+        } catch (RuntimeException e) {
+            return connectionLost(e);
+        } finally {
+            pendingSave = null;
+            if (outputSettingsStale) {
+                refreshOutputSettings();
+            }
+        }
+    }
+
+    /**
+     * Sends the whole set output, save, restore output sequence as one serial request batch, so a clip costs a
+     * single round trip. The batch does not halt on failure: the original settings are restored even if the save
+     * fails.
+     * <p>
+     * OBS sends no event when the user changes the output settings, so the batch reads them first as well. If they are
+     * no longer the ones restored, the user's are put back right after the batch and kept for the next clips.
+     */
+    private SaveResult saveWithOutputSettings(ClipRequest request, ReplayOutputSettings settings) throws InterruptedException {
+        final JsonObject clipOutputSettings = settings.clipPayload(request.getSubDirectory(),
+                request.getFileName() + " " + OBS_BASE_FORMAT);
+
+        final RequestBatch batch = RequestBatch.builder()
+                .executionType(RequestBatch.RequestBatchExecutionType.SerialRealtime)
+                .haltOnFailure(false)
+                .request(GetOutputSettingsRequest.builder().outputName(REPLAY_BUFFER_OUTPUT).build())
+                .request(SetOutputSettingsRequest.builder()
+                        .outputName(REPLAY_BUFFER_OUTPUT)
+                        .outputSettings(clipOutputSettings)
+                        .build())
+                .request(SaveReplayBufferRequest.builder().build())
+                .request(SleepRequest.builder().sleepMillis(RESET_DELAY_MILLIS).build())
+                .request(SetOutputSettingsRequest.builder()
+                        .outputName(REPLAY_BUFFER_OUTPUT)
+                        .outputSettings(settings.getRestorePayload())
+                        .build())
+                .build();
+
+        final PendingSave save = new PendingSave(settings.clipDirectory(request.getSubDirectory()));
+        pendingSave = save;
+        final CompletableFuture<RequestBatchResponse> batchResponse = new CompletableFuture<>();
+        final long sentNanos = System.nanoTime();
+        controller.sendRequestBatch(batch, batchResponse::complete);
+
+        final List<?> results;
+        try {
+            results = batchResponse.get(REQUEST_TIMEOUT_MILLIS + RESET_DELAY_MILLIS, TimeUnit.MILLISECONDS).getData().getResults();
+            metrics.recordSince(ClipMetrics.Stage.OBS_REQUEST, sentNanos);
+        } catch (ExecutionException | TimeoutException e) {
+            // we can not tell how far OBS got, make sure the user's settings are back
+            final SaveResult result = SaveResult.failed("OBS did not answer the clip request");
+            return resetReplayBufferOutput(settings) ? result : result.withWarning(RESET_FAILED_WARNING);
+        }
+
+        final String setFailure = stepFailure(results, BATCH_SET_OUTPUT);
+        final String saveFailure = stepFailure(results, BATCH_SAVE);
+        final String resetFailure = stepFailure(results, BATCH_RESET_OUTPUT);
+        final ReplayOutputSettings changed = changedOutputSettings(results, settings);
+        final boolean restored;
+        if (changed != null) {
+            log.debug("The replay buffer output settings of {} changed since they were read", name);
+            useOutputSettings(changed);
+            restored = resetReplayBufferOutput(changed);
+        } else {
+            restored = resetFailure == null;
+            if (!restored) {
+                log.warn("Could not restore the replay buffer output settings: {}", resetFailure);
+            }
+        }
+        final String resetWarning = restored ? null : RESET_FAILED_WARNING;
+        if (saveFailure != null) {
+            return SaveResult.failed("saving the replay buffer failed: " + saveFailure).withWarning(resetWarning);
+        }
+
+        if (setFailure != null) {
+            // saved under the user's settings, where the clip can not be told apart from the user's own saves
+            save.acceptAnyDirectory();
+        }
+        // the saved event usually arrives during the sleep step, so this wait is often close to zero
+        SaveResult result = awaitSavedReplay(save);
+        if (setFailure != null && result.isSuccessful()) {
+            log.warn("Could not change the replay buffer output, clip saved to the default folder: {}", setFailure);
+            result = result.withWarning("saved to the default folder");
+        }
+        return result.withWarning(resetWarning);
+    }
+
+    private SaveResult saveReplayBuffer() throws InterruptedException {
+        // saved under the user's settings, only the first save reported after the request is taken
+        final PendingSave save = new PendingSave(null);
+        pendingSave = save;
+        final long sentNanos = System.nanoTime();
+        if (!isSuccessful(controller.saveReplayBuffer(REQUEST_TIMEOUT_MILLIS))) {
+            return SaveResult.failed("OBS refused to save the replay buffer");
+        }
+        recordRoundTrip(System.nanoTime() - sentNanos);
+        metrics.recordSince(ClipMetrics.Stage.OBS_REQUEST, sentNanos);
+
+        return awaitSavedReplay(save);
+    }
+
+    private SaveResult awaitSavedReplay(CompletableFuture<String> save) throws InterruptedException {
+        final long waitNanos = System.nanoTime();
+        try {
+            final String savedReplayPath = save.get(SAVED_EVENT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            metrics.recordSince(ClipMetrics.Stage.SAVED_EVENT, waitNanos);
+            return SaveResult.saved(savedReplayPath);
+        } catch (ExecutionException | TimeoutException e) {
+            return SaveResult.failed("OBS did not report the saved replay");
+        }
+    }
+
+    /**
+     * @return The output settings the batch read before pointing the replay buffer at the clip, or {@code null} if
+     * they are the restored ones or could not be read.
+     */
+    private static ReplayOutputSettings changedOutputSettings(List<?> results, ReplayOutputSettings restored) {
+        if (stepFailure(results, BATCH_READ_OUTPUT) != null
+                || !(step(results, BATCH_READ_OUTPUT).getResponseData() instanceof GetOutputSettingsResponse.SpecificData)) {
+            return null;
+        }
+
+        final JsonObject read = ((GetOutputSettingsResponse.SpecificData) step(results, BATCH_READ_OUTPUT).getResponseData())
+                .getOutputSettings();
+        if (read == null) {
+            return null;
+        }
+        final ReplayOutputSettings settings = ReplayOutputSettings.of(read, OBS_BASE_FORMAT);
+        return settings.getRestorePayload().equals(restored.getRestorePayload()) || restored.isClipDirectory(settings)
+                ? null
+                : settings;
+    }
+
+    /**
+     * @return Why the batch step at the given index failed, or {@code null} if it succeeded.
+     */
+    private static String stepFailure(List<?> results, int step) {
+        if (results == null || step >= results.size()) {
+            return "no response";
+        }
+
+        final RequestResponse.Status status = step(results, step).getRequestStatus();
+        if (status != null && Boolean.TRUE.equals(status.getResult())) {
+            return null;
+        }
+        if (status == null) {
+            return "no status";
+        }
+        return status.getComment() != null ? status.getComment() : "error " + status.getCode();
+    }
+
+    /**
+     * @return The response to the batch step at the given index, from the results the client hands over untyped.
+     */
+    private static RequestResponse.Data<?> step(List<?> results, int step) {
+        return (RequestResponse.Data<?>) results.get(step);
+    }
+
+    private static SaveResult connectionLost(RuntimeException e) throws InterruptedException {
+        if (e.getCause() instanceof InterruptedException) {
+            throw (InterruptedException) e.getCause();
+        }
+        log.warn("Replay buffer save failed", e);
+        return SaveResult.failed("lost the connection to OBS");
+    }
+
+    /**
+     * @return Whether the user's output settings are back.
+     */
+    private boolean resetReplayBufferOutput(ReplayOutputSettings settings) {
+        try {
+            if (isSuccessful(controller.setOutputSettings(REPLAY_BUFFER_OUTPUT, settings.getRestorePayload(),
+                    REQUEST_TIMEOUT_MILLIS))) {
+                return true;
+            }
+            log.warn("Could not restore the replay buffer output settings");
+        } catch (RuntimeException e) {
+            log.warn("Could not restore the replay buffer output settings", e);
+        }
+        return false;
+    }
+
+    private void onReady() {
+        refreshOutputSettings();
+        readRecordStatus();
+    }
+
+    /**
+     * Follows the recording of this OBS, and has OBS start recording if it is not.
+     *
+     * @param listener Told about every recording that stops, or {@code null} to stop following.
+     */
+    void followRecording(RecordingListener listener) {
+        final boolean started = listener != null && recordingListener == null;
+        recordingListener = listener;
+        if (listener == null) {
+            recordingStartNanos = -1;
+            restartRecording = false;
+        } else if (started) {
+            readRecordStatus();
+        }
+    }
+
+    /**
+     * Stops the recording and starts a new one, so the clips of the recording so far can be cut from it.
+     *
+     * @return Whether OBS was recording.
+     */
+    boolean splitRecording() {
+        if (recordingListener == null || recordingStartNanos < 0 || !sessionOpen) {
+            return false;
+        }
+
+        restartRecording = true;
+        try {
+            controller.sendRequest(StopRecordRequest.builder().build(), (StopRecordResponse response) -> {
+                if (!isSuccessful(response)) {
+                    restartRecording = false;
+                    log.warn("OBS {} did not stop recording", name);
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            restartRecording = false;
+            log.warn("Could not stop the recording of {}", name, e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads when the recording started, or starts one if OBS is not recording.
+     */
+    private void readRecordStatus() {
+        if (recordingListener == null || closed || !sessionOpen) {
+            return;
+        }
+
+        final long sentNanos = System.nanoTime();
+        try {
+            controller.sendRequest(GetRecordStatusRequest.builder().build(), (GetRecordStatusResponse response) -> {
+                if (!isSuccessful(response)) {
+                    log.warn("OBS {} did not return its recording status", name);
+                    return;
+                }
+                if (!Boolean.TRUE.equals(response.getOutputActive())) {
+                    recordingStartNanos = -1;
+                    startRecording();
+                    return;
+                }
+
+                final Number duration = response.getOutputDuration();
+                final long startNanos = sentNanos - TimeUnit.MILLISECONDS.toNanos(duration != null ? duration.longValue() : 0);
+                final long known = recordingStartNanos;
+                // keep the start from the event of the recording, the duration is only as exact as the round trip
+                if (known < 0 || Math.abs(startNanos - known) > RECORDING_START_TOLERANCE_NANOS) {
+                    recordingStartNanos = startNanos;
+                }
+            });
+        } catch (RuntimeException e) {
+            log.debug("Could not read the recording status of {}", name, e);
+        }
+    }
+
+    private void startRecording() {
+        if (recordingListener == null || closed || !sessionOpen) {
+            return;
+        }
+
+        try {
+            controller.sendRequest(StartRecordRequest.builder().build(), (StartRecordResponse response) -> {
+                if (!isSuccessful(response)) {
+                    log.warn("OBS {} did not start recording", name);
+                }
+            });
+            log.debug("Started recording on {}", name);
+        } catch (RuntimeException e) {
+            log.warn("Could not start recording on {}", name, e);
+        }
+    }
+
+    private void onRecordStateChanged(RecordStateChangedEvent event) {
+        if (OUTPUT_STARTED.equals(event.getOutputState())) {
+            recordingStartNanos = System.nanoTime();
+            return;
+        }
+        if (!OUTPUT_STOPPED.equals(event.getOutputState())) {
+            return;
+        }
+
+        final long startNanos = recordingStartNanos;
+        recordingStartNanos = -1;
+        final RecordingListener listener = recordingListener;
+        if (listener != null && startNanos >= 0 && event.getOutputPath() != null) {
+            listener.recordingStopped(event.getOutputPath(), startNanos);
+        }
+        if (restartRecording) {
+            restartRecording = false;
+            startRecording();
+        }
+    }
+
+    private void onReplayBufferStateChanged(ReplayBufferStateChangedEvent event) {
+        if (Boolean.TRUE.equals(event.getOutputActive())) {
+            refreshOutputSettings();
+        }
+    }
+
+    /**
+     * Reads the replay buffer output settings again, or after the save if a clip is being saved.
+     */
+    private void refreshOutputSettings() {
+        if (closed || !sessionOpen) {
+            return;
+        }
+        if (pendingSave != null) {
+            outputSettingsStale = true;
+            return;
+        }
+
+        outputSettingsStale = false;
+        final int savesBefore = saveCount.get();
+        final long sentNanos = System.nanoTime();
+        try {
+            controller.getOutputSettings(REPLAY_BUFFER_OUTPUT, response -> {
+                recordRoundTrip(System.nanoTime() - sentNanos);
+                final JsonObject settings = response.getOutputSettings();
+                if (settings == null) {
+                    log.warn("OBS did not return the replay buffer output settings of {}", name);
+                    return;
+                }
+                if (pendingSave != null || saveCount.get() != savesBefore) {
+                    // may hold the directory of the clip, not the user's
+                    outputSettingsStale = true;
+                    if (pendingSave == null) {
+                        refreshOutputSettings();
+                    }
+                    return;
+                }
+
+                useOutputSettings(ReplayOutputSettings.of(settings, OBS_BASE_FORMAT));
+                log.debug("Read the replay buffer output settings of {}", name);
+            });
+        } catch (RuntimeException e) {
+            log.debug("Could not read the replay buffer output settings of {}", name, e);
+        }
+    }
+
+    private void useOutputSettings(ReplayOutputSettings settings) {
+        if (settings.getReplayBufferDuration() >= 0) {
+            replayBufferDuration = settings.getReplayBufferDuration();
+        }
+        outputSettings = settings;
+    }
+
+    private void onDisconnect() {
+        sessionOpen = false;
+        outputSettings = null;
+        final CompletableFuture<String> save = pendingSave;
+        if (save != null) {
+            save.completeExceptionally(new IllegalStateException("Disconnected from OBS"));
+        }
+    }
+
+    private void reconnect() {
+        if (closed || sessionOpen) {
+            return;
+        }
+
+        try {
+            log.debug("Connecting to OBS {}", name);
+            controller.connect();
+        } catch (RuntimeException e) {
+            log.debug("Could not connect to OBS {}", name, e);
+        }
+    }
+
+    /**
+     * Measures the round trip to OBS with a request that does no work, between clips so it cannot delay one.
+     */
+    private void ping() {
+        if (closed || !sessionOpen || outputSettings == null || pendingSave != null) {
+            return;
+        }
+
+        final long sentNanos = System.nanoTime();
+        try {
+            controller.sendRequest(GetVersionRequest.builder().build(), response -> recordRoundTrip(System.nanoTime() - sentNanos));
+        } catch (RuntimeException e) {
+            log.debug("Could not ping OBS", e);
+        }
+    }
+
+    private void recordRoundTrip(long nanos) {
+        final long smoothed = roundTripNanos;
+        roundTripNanos = smoothed < 0 ? nanos : smoothed + (long) ((nanos - smoothed) * ROUND_TRIP_GAIN);
+    }
+
+    private void onReplayBufferSaved(ReplayBufferSavedEvent event) {
+        final PendingSave save = pendingSave;
+        if (save == null || !save.saved(event.getSavedReplayPath())) {
+            log.debug("Ignoring replay buffer save not requested by the plugin: {}", event.getSavedReplayPath());
+        }
+    }
+
+    private static boolean isSuccessful(RequestResponse<?> response) {
+        return response != null && response.isSuccessful();
+    }
+
+    /**
+     * A save of the plugin waiting for OBS to report the saved file. OBS reports every save of the replay buffer,
+     * including the ones the user makes, without telling which request it was for; a clip pointed at a directory of
+     * its own is told apart by the directory it was saved into.
+     */
+    private static final class PendingSave extends CompletableFuture<String> {
+        // null to take any save
+        private volatile String directory;
+        // the last save reported in another directory
+        private volatile String otherSave;
+
+        private PendingSave(String directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * @return Whether the save was this one.
+         */
+        private boolean saved(String savedReplayPath) {
+            final String directory = this.directory;
+            if (directory != null && savedReplayPath != null
+                    && !ReplayOutputSettings.isInDirectory(savedReplayPath, directory)) {
+                otherSave = savedReplayPath;
+                return false;
+            }
+            return complete(savedReplayPath);
+        }
+
+        /**
+         * Takes any save, also one already reported, for a clip that could not be pointed at its directory.
+         */
+        private void acceptAnyDirectory() {
+            directory = null;
+            final String other = otherSave;
+            if (other != null) {
+                complete(other);
+            }
+        }
+    }
+
+    @Getter
+    static final class SaveResult {
+        private final boolean successful;
+        private final String savedReplayPath;
+        private final String failureReason;
+        /**
+         * What went wrong around the save, such as the clip landing in the default folder or the user's output settings
+         * not being restored, or {@code null} if nothing did.
+         */
+        private final String warning;
+        /**
+         * The OBS the clip was saved on.
+         */
+        private final ObsConnection connection;
+
+        private SaveResult(boolean successful, String savedReplayPath, String failureReason, String warning,
+                ObsConnection connection) {
+            this.successful = successful;
+            this.savedReplayPath = savedReplayPath;
+            this.failureReason = failureReason;
+            this.warning = warning;
+            this.connection = connection;
+        }
+
+        static SaveResult saved(String savedReplayPath) {
+            return new SaveResult(true, savedReplayPath, null, null, null);
+        }
+
+        static SaveResult failed(String reason) {
+            return new SaveResult(false, null, reason, null, null);
+        }
+
+        SaveResult withSavedReplayPath(String path) {
+            return new SaveResult(successful, path, failureReason, warning, connection);
+        }
+
+        /**
+         * @param warning Added after any earlier warning, or ignored if {@code null}.
+         */
+        SaveResult withWarning(String warning) {
+            if (warning == null) {
+                return this;
+            }
+            return new SaveResult(successful, savedReplayPath, failureReason,
+                    this.warning != null ? this.warning + ", " + warning : warning, connection);
+        }
+
+        SaveResult from(ObsConnection connection) {
+            return new SaveResult(successful, savedReplayPath, failureReason, warning, connection);
+        }
+    }
+}
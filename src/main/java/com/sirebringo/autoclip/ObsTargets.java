@@ -0,0 +1,285 @@
+package com.sirebringo.autoclip;
+
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Every OBS the plugin saves clips on, each with its own connection and output settings.
+ * <p>
+ * Each OBS saves the clips in order on a thread and queue of its own, so a slow OBS only holds back its own clips and
+ * a disconnected one fails straight away.
+ */
+@Slf4j
+final class ObsTargets {
+    private static final int DEFAULT_PORT = 4455;
+    private static final String SHUTDOWN = "shutdown";
+
+    @Getter
+    private final List<ObsConnection> connections;
+    /**
+     * One per connection, or {@code null} with a single OBS, which is saved on by the caller.
+     */
+    private final List<ThreadPoolExecutor> saveExecutors;
+
+    ObsTargets(List<ObsConnection> connections, int queueSize) {
+        this.connections = Collections.unmodifiableList(new ArrayList<>(connections));
+        if (connections.size() > 1) {
+            saveExecutors = new ArrayList<>(connections.size());
+            for (int i = 0; i < connections.size(); i++) {
+                final String threadName = "obs-auto-clip-save-" + (i + 1);
+                saveExecutors.add(new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+                            final Thread thread = new Thread(r, threadName);
+                            thread.setDaemon(true);
+                            return thread;
+                        }));
+            }
+        } else {
+            saveExecutors = null;
+        }
+    }
+
+    /**
+     * Connects to the OBS in the host, port and password settings, and to each additional one.
+     *
+     * @param additionalTargets One {@code host:port[:password]} per line, with an IPv6 host in brackets like
+     *                          {@code [::1]:4455}. Lines that do not parse are skipped.
+     * @param queueSize         How many clips an OBS may fall behind the others before it fails the newest ones.
+     */
+    static ObsTargets connect(String host, int port, String password, String additionalTargets, int queueSize,
+                              ClipMetrics metrics) {
+        final List<ObsConnection> connections = new ArrayList<>();
+        connections.add(new ObsConnection(host, port, password, metrics));
+        if (additionalTargets != null) {
+            for (String line : additionalTargets.split("\n")) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                final ObsConnection connection = parseTarget(line, metrics);
+                if (connection != null) {
+                    connections.add(connection);
+                }
+            }
+        }
+        return new ObsTargets(connections, queueSize);
+    }
+
+    /**
+     * @return The connection to a {@code host:port[:password]} target, or {@code null} if the line does not parse.
+     */
+    private static ObsConnection parseTarget(String line, ClipMetrics metrics) {
+        final String host;
+        final String rest;
+        if (line.startsWith("[")) {
+            // an IPv6 address, its colons are not separators
+            final int end = line.indexOf(']');
+            if (end < 0 || end + 1 < line.length() && line.charAt(end + 1) != ':') {
+                log.warn("Ignoring OBS target \"{}\", an IPv6 address has to be followed by \":<port>\"", line);
+                return null;
+            }
+            host = line.substring(0, end + 1);
+            rest = end + 1 < line.length() ? line.substring(end + 2) : null;
+        } else {
+            final int colon = line.indexOf(':');
+            host = (colon < 0 ? line : line.substring(0, colon)).trim();
+            rest = colon < 0 ? null : line.substring(colon + 1);
+        }
+
+        int targetPort = DEFAULT_PORT;
+        String targetPassword = "";
+        if (rest != null) {
+            // the password may contain colons
+            final String[] parts = rest.split(":", 2);
+            try {
+                targetPort = Integer.parseInt(parts[0].trim());
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring OBS target \"{}\", the port is not a number", host);
+                return null;
+            }
+            if (parts.length > 1) {
+                targetPassword = parts[1];
+            }
+        }
+        return new ObsConnection(host, targetPort, targetPassword, metrics);
+    }
+
+    /**
+     * Saves the replay buffer on every OBS. With several, each saves in its own queue and this returns as soon as the
+     * first is done with the clip, so the next clip is not held back by the slowest OBS.
+     *
+     * @param finished Called once every OBS is done with the clip, with one result per connection in the order of
+     *                 {@link #getConnections()}. Runs on the thread of the OBS that finished last.
+     */
+    void save(ClipRequest request, ClipMode mode, Consumer<List<ObsConnection.SaveResult>> finished)
+            throws InterruptedException {
+        if (saveExecutors == null) {
+            finished.accept(Collections.singletonList(connections.get(0).save(request, mode)));
+            return;
+        }
+
+        // the save was scheduled early enough for the slowest OBS, hold back the faster ones so every clip ends at
+        // the same moment
+        final long lead = getSaveLeadNanos();
+        final ClipSave save = new ClipSave(connections.size(), finished);
+        for (int i = 0; i < connections.size(); i++) {
+            final TargetSave targetSave = new TargetSave(save, i, request, mode, lead - connections.get(i).getSaveLeadNanos());
+            try {
+                saveExecutors.get(i).execute(targetSave);
+            } catch (RejectedExecutionException e) {
+                targetSave.fail(saveExecutors.get(i).isShutdown() ? SHUTDOWN : "still saving earlier clips");
+            }
+        }
+        save.awaitFirst();
+    }
+
+    /**
+     * Lets every OBS finish the clips it has queued, interrupting them if that takes longer than the given timeout.
+     * The clips still queued then fail.
+     */
+    void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        if (saveExecutors == null) {
+            return;
+        }
+
+        for (ThreadPoolExecutor executor : saveExecutors) {
+            executor.shutdown();
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolExecutor executor : saveExecutors) {
+            if (!executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                for (Runnable abandoned : executor.shutdownNow()) {
+                    ((TargetSave) abandoned).fail(SHUTDOWN);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return How long before the end of the clip its save has to start to reach every connected OBS in time.
+     */
+    long getSaveLeadNanos() {
+        long lead = 0;
+        for (ObsConnection connection : connections) {
+            lead = Math.max(lead, connection.getSaveLeadNanos());
+        }
+        return lead;
+    }
+
+    /**
+     * @return The replay buffer directory of the first OBS that saves onto this computer, or null if none is known.
+     */
+    String getLocalOutputDirectory() {
+        for (ObsConnection connection : connections) {
+            final String directory = connection.getOutputDirectory();
+            if (directory == null) {
+                continue;
+            }
+            try {
+                if (Files.isDirectory(Paths.get(directory))) {
+                    return directory;
+                }
+            } catch (InvalidPathException e) {
+                // a path of another operating system
+            }
+        }
+        return null;
+    }
+
+    void disconnect() {
+        for (ObsConnection connection : connections) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * The results of one clip, collected as each OBS finishes it.
+     */
+    private static final class ClipSave {
+        private final AtomicReferenceArray<ObsConnection.SaveResult> results;
+        private final AtomicInteger remaining;
+        private final CountDownLatch firstDone = new CountDownLatch(1);
+        private final Consumer<List<ObsConnection.SaveResult>> finished;
+
+        private ClipSave(int targets, Consumer<List<ObsConnection.SaveResult>> finished) {
+            this.results = new AtomicReferenceArray<>(targets);
+            this.remaining = new AtomicInteger(targets);
+            this.finished = finished;
+        }
+
+        private void complete(int target, ObsConnection.SaveResult result) {
+            results.set(target, result);
+            firstDone.countDown();
+            if (remaining.decrementAndGet() > 0) {
+                return;
+            }
+
+            final List<ObsConnection.SaveResult> all = new ArrayList<>(results.length());
+            for (int i = 0; i < results.length(); i++) {
+                all.add(results.get(i));
+            }
+            finished.accept(all);
+        }
+
+        private void awaitFirst() throws InterruptedException {
+            firstDone.await();
+        }
+    }
+
+    /**
+     * A clip waiting in the queue of one OBS.
+     */
+    private final class TargetSave implements Runnable {
+        private final ClipSave save;
+        private final int target;
+        private final ClipRequest request;
+        private final ClipMode mode;
+        private final long holdNanos;
+
+        private TargetSave(ClipSave save, int target, ClipRequest request, ClipMode mode, long holdNanos) {
+            this.save = save;
+            this.target = target;
+            this.request = request;
+            this.mode = mode;
+            this.holdNanos = holdNanos;
+        }
+
+        @Override
+        public void run() {
+            final ObsConnection connection = connections.get(target);
+            ObsConnection.SaveResult result;
+            try {
+                if (holdNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(holdNanos);
+                }
+                result = connection.save(request, mode);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result = ObsConnection.SaveResult.failed(SHUTDOWN).from(connection);
+            } catch (RuntimeException e) {
+                log.warn("Replay buffer save on {} failed", connection.getName(), e);
+                result = ObsConnection.SaveResult.failed("the save request failed").from(connection);
+            }
+            save.complete(target, result);
+        }
+
+        private void fail(String reason) {
+            save.complete(target, ObsConnection.SaveResult.failed(reason).from(connections.get(target)));
+        }
+    }
+}
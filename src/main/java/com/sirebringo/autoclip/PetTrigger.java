@@ -0,0 +1,33 @@
+package com.sirebringo.autoclip;
+
+import com.google.common.collect.ImmutableList;
+import net.runelite.api.events.ChatMessage;
+
+/**
+ * Clips a pet drop.
+ */
+final class PetTrigger implements ClipTrigger {
+    private static final ImmutableList<String> PET_MESSAGES = ImmutableList.of("You have a funny feeling like you're being followed",
+            "You feel something weird sneaking into your backpack",
+            "You have a funny feeling like you would have been followed");
+
+    private final TriggerContext context;
+
+    PetTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.chatMessages(ChatMessageClassifier.Candidate.PET)
+                .chatRules()
+                .containsAny(ChatMessageClassifier.Candidate.PET, PET_MESSAGES);
+    }
+
+    @Override
+    public void onChatMessage(ChatMessage event, ChatMessageClassifier.Candidate candidate) {
+        if (context.getConfig().clipPet()) {
+            context.save("Pet", ClipCategory.PETS);
+        }
+    }
+}
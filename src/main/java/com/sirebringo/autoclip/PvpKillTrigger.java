@@ -0,0 +1,25 @@
+package com.sirebringo.autoclip;
+
+/**
+ * Clips receiving loot from a player kill.
+ */
+final class PvpKillTrigger implements ClipTrigger {
+    private final TriggerContext context;
+
+    PvpKillTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.events(ClipTriggerRegistry.EventType.PLAYER_LOOT_RECEIVED);
+    }
+
+    @Override
+    public void onPlayerLootReceived(TriggerEvent.Loot loot) {
+        if (context.getConfig().clipKills()) {
+            context.save("Kill " + loot.getName(), ClipCategory.PVP_KILLS, ClipCategory.PVP_KILLS.getDirectoryName(),
+                    loot.getName());
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.sirebringo.autoclip;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Which clips are deleted first when the clip folder is over its size limit. Manual clips are never deleted.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum QuotaEvictionPolicy {
+    OLDEST_FIRST("Oldest first"),
+    LOWEST_PRIORITY_FIRST("Lowest priority category first");
+
+    private final String name;
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,154 @@
+package com.sirebringo.autoclip;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.api.events.WidgetLoaded;
+import net.runelite.client.util.Text;
+
+import static net.runelite.api.widgets.WidgetID.*;
+
+/**
+ * Clips the reward interface of Barrows and the raids, named after the completion count message that precedes it.
+ */
+final class RaidRewardTrigger implements ClipTrigger {
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("([0-9]+)");
+
+    enum KillType {
+        BARROWS,
+        COX,
+        COX_CM,
+        TOB,
+        TOB_SM,
+        TOB_HM,
+        TOA_ENTRY_MODE,
+        TOA,
+        TOA_EXPERT_MODE
+    }
+
+    private final TriggerContext context;
+    private KillType killType;
+    private Integer killCountNumber;
+
+    RaidRewardTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.chatMessages(
+                        ChatMessageClassifier.Candidate.BARROWS_COUNT,
+                        ChatMessageClassifier.Candidate.COX_COUNT,
+                        ChatMessageClassifier.Candidate.COX_CM_COUNT,
+                        ChatMessageClassifier.Candidate.TOB_COUNT,
+                        ChatMessageClassifier.Candidate.TOA_COUNT)
+                .widgets(CHAMBERS_OF_XERIC_REWARD_GROUP_ID, THEATRE_OF_BLOOD_REWARD_GROUP_ID, TOA_REWARD_GROUP_ID, BARROWS_REWARD_GROUP_ID)
+                .chatRules()
+                .startsWith(ChatMessageClassifier.Candidate.BARROWS_COUNT, "Your Barrows chest count is")
+                .startsWith(ChatMessageClassifier.Candidate.COX_COUNT, "Your completed Chambers of Xeric count is:")
+                .startsWith(ChatMessageClassifier.Candidate.COX_CM_COUNT, "Your completed Chambers of Xeric Challenge Mode count is:")
+                .startsWith(ChatMessageClassifier.Candidate.TOB_COUNT, "Your completed Theatre of Blood")
+                .startsWith(ChatMessageClassifier.Candidate.TOA_COUNT, "Your completed Tombs of Amascut");
+    }
+
+    @Override
+    public void onChatMessage(ChatMessage event, ChatMessageClassifier.Candidate candidate) {
+        final String chatMessage = event.getMessage();
+        switch (candidate) {
+            case BARROWS_COUNT:
+                setKillCount(KillType.BARROWS, chatMessage);
+                break;
+            case COX_COUNT:
+                setKillCount(KillType.COX, chatMessage);
+                break;
+            case COX_CM_COUNT:
+                setKillCount(KillType.COX_CM, chatMessage);
+                break;
+            case TOB_COUNT:
+                setKillCount(chatMessage.contains("Hard Mode") ? KillType.TOB_HM : (chatMessage.contains("Story Mode") ? KillType.TOB_SM : KillType.TOB), chatMessage);
+                break;
+            case TOA_COUNT:
+                setKillCount(chatMessage.contains("Expert Mode") ? KillType.TOA_EXPERT_MODE :
+                        chatMessage.contains("Entry Mode") ? KillType.TOA_ENTRY_MODE :
+                                KillType.TOA, chatMessage);
+                break;
+        }
+    }
+
+    private void setKillCount(KillType type, String chatMessage) {
+        Matcher m = NUMBER_PATTERN.matcher(Text.removeTags(chatMessage));
+        if (m.find()) {
+            killType = type;
+            killCountNumber = Integer.valueOf(m.group());
+        }
+    }
+
+    @Override
+    public void onWidgetLoaded(WidgetLoaded event) {
+        if (!context.getConfig().clipRewards() || killType == null) {
+            return;
+        }
+
+        final String fileName = rewardName(event.getGroupId(), killType);
+        if (fileName == null) {
+            return;
+        }
+
+        killType = null;
+        killCountNumber = 0;
+        context.save(fileName, ClipCategory.BOSS_KILLS);
+    }
+
+    /**
+     * @return The clip name for the reward interface, or {@code null} if the last count message was for another
+     * activity.
+     */
+    private String rewardName(int groupId, KillType type) {
+        switch (groupId) {
+            case CHAMBERS_OF_XERIC_REWARD_GROUP_ID:
+                if (type == KillType.COX) {
+                    return "Chambers of Xeric(" + killCountNumber + ")";
+                } else if (type == KillType.COX_CM) {
+                    return "Chambers of Xeric Challenge Mode(" + killCountNumber + ")";
+                }
+                return null;
+            case THEATRE_OF_BLOOD_REWARD_GROUP_ID:
+                switch (type) {
+                    case TOB:
+                        return "Theatre of Blood(" + killCountNumber + ")";
+                    case TOB_SM:
+                        return "Theatre of Blood Story Mode(" + killCountNumber + ")";
+                    case TOB_HM:
+                        return "Theatre of Blood Hard Mode(" + killCountNumber + ")";
+                    default:
+                        return null;
+                }
+            case TOA_REWARD_GROUP_ID:
+                switch (type) {
+                    case TOA:
+                        return "Tombs of Amascut(" + killCountNumber + ")";
+                    case TOA_ENTRY_MODE:
+                        return "Tombs of Amascut Entry Mode(" + killCountNumber + ")";
+                    case TOA_EXPERT_MODE:
+                        return "Tombs of Amascut Expert Mode(" + killCountNumber + ")";
+                    default:
+                        return null;
+                }
+            case BARROWS_REWARD_GROUP_ID:
+                return type == KillType.BARROWS ? "Barrows(" + killCountNumber + ")" : null;
+            default:
+                return null;
+        }
+    }
+
+    @VisibleForTesting
+    KillType getKillType() {
+        return killType;
+    }
+
+    @VisibleForTesting
+    int getKillCountNumber() {
+        return killCountNumber;
+    }
+}
@@ -0,0 +1,162 @@
+package com.sirebringo.autoclip;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cuts the clips of {@link ClipMode#CUT_FROM_RECORDING} out of OBS's recording.
+ * <p>
+ * A trigger only costs a mark of its request. When the recording stops, every mark made during it becomes the range
+ * from the pre-roll before its trigger to the post-roll after it, overlapping ranges are merged into one clip, and the
+ * clips are cut from the recording on the file executor, see {@link ClipTrimmer#extract}.
+ */
+@Slf4j
+final class RecordingClipper {
+    // used when no pre-roll is configured, a clip of the whole recording is no clip
+    private static final int DEFAULT_PRE_ROLL_SECONDS = 30;
+
+    interface Handler {
+        void cut(ClipRequest request, Path clip);
+
+        void failed(ClipRequest request, String reason);
+
+        /**
+         * Called once all the clips of a recording were cut or failed.
+         */
+        void finished(Path recording, int cut, int failed);
+    }
+
+    private final Executor executor;
+    private final Supplier<ConfigSnapshot> config;
+    private final Handler handler;
+    private final List<ClipRequest> marks = new ArrayList<>();
+
+    RecordingClipper(Executor executor, Supplier<ConfigSnapshot> config, Handler handler) {
+        this.executor = executor;
+        this.config = config;
+        this.handler = handler;
+    }
+
+    /**
+     * Notes a clip to cut from the recording being made.
+     */
+    void mark(ClipRequest request) {
+        synchronized (marks) {
+            marks.add(request);
+        }
+    }
+
+    /**
+     * @return The marks not cut yet, which are forgotten.
+     */
+    List<ClipRequest> clear() {
+        synchronized (marks) {
+            final List<ClipRequest> cleared = new ArrayList<>(marks);
+            marks.clear();
+            return cleared;
+        }
+    }
+
+    /**
+     * Cuts the clips marked during a recording that stopped. Marks from before it started belong to a recording
+     * whose end was missed, they fail.
+     */
+    void recordingStopped(String outputPath, long startNanos) {
+        final List<ClipRequest> recorded = new ArrayList<>();
+        for (ClipRequest request : clear()) {
+            if (request.getTriggeredNanos() - startNanos >= 0) {
+                recorded.add(request);
+            } else {
+                handler.failed(request, "not in the recording " + outputPath);
+            }
+        }
+        if (recorded.isEmpty()) {
+            return;
+        }
+
+        final Path recording;
+        try {
+            recording = Paths.get(outputPath);
+        } catch (InvalidPathException e) {
+            recorded.forEach(request -> handler.failed(request, "the recording " + outputPath + " is not on this computer"));
+            return;
+        }
+        // when the recording started by the wall clock, to name the clips
+        final long startMillis = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        try {
+            executor.execute(() -> cut(recording, startNanos, startMillis, recorded));
+        } catch (RejectedExecutionException e) {
+            log.debug("Not cutting {} clips from {}, the plugin is shutting down", recorded.size(), recording);
+        }
+    }
+
+    private void cut(Path recording, long startNanos, long startMillis, List<ClipRequest> requests) {
+        final ConfigSnapshot config = this.config.get();
+        requests.sort(Comparator.comparingLong(request -> request.getTriggeredNanos() - startNanos));
+
+        final List<ClipRequest> clips = new ArrayList<>();
+        final List<ClipTrimmer.Extraction> extractions = new ArrayList<>();
+        ClipRequest clip = null;
+        long fromMillis = 0;
+        long toMillis = 0;
+        for (ClipRequest request : requests) {
+            final long offsetMillis = TimeUnit.NANOSECONDS.toMillis(request.getTriggeredNanos() - startNanos);
+            final int preRoll = config.trimPreRoll(request.getCategory());
+            final long from = Math.max(0, offsetMillis - TimeUnit.SECONDS.toMillis(preRoll > 0 ? preRoll : DEFAULT_PRE_ROLL_SECONDS));
+            final long to = offsetMillis + config.postRoll(request.getCategory());
+            if (clip != null && from <= toMillis) {
+                clip = clip.merge(request);
+                toMillis = Math.max(toMillis, to);
+                continue;
+            }
+
+            if (clip != null) {
+                clips.add(clip);
+                extractions.add(extraction(recording, clip, startMillis, startNanos, fromMillis, toMillis));
+            }
+            clip = request;
+            fromMillis = from;
+            toMillis = to;
+        }
+        clips.add(clip);
+        extractions.add(extraction(recording, clip, startMillis, startNanos, fromMillis, toMillis));
+
+        final String unsupported = ClipTrimmer.extract(recording, extractions) == ClipTrimmer.Result.UNSUPPORTED
+                ? ClipTrimmer.unsupportedReason(recording)
+                : null;
+
+        int cut = 0;
+        for (int i = 0; i < clips.size(); i++) {
+            final ClipTrimmer.Extraction extraction = extractions.get(i);
+            if (unsupported != null) {
+                handler.failed(clips.get(i), unsupported);
+            } else if (extraction.getFailure() != null) {
+                log.warn("Could not cut {} from {}", clips.get(i), recording, extraction.getFailure());
+                handler.failed(clips.get(i), extraction.getFailure().getMessage());
+            } else {
+                handler.cut(clips.get(i), extraction.getTarget());
+                cut++;
+            }
+        }
+        handler.finished(recording, cut, clips.size() - cut);
+    }
+
+    private static ClipTrimmer.Extraction extraction(Path recording, ClipRequest clip, long startMillis, long startNanos,
+                                                     long fromMillis, long toMillis) {
+        final long triggeredMillis = startMillis + TimeUnit.NANOSECONDS.toMillis(clip.getTriggeredNanos() - startNanos);
+        final LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(triggeredMillis), ZoneId.systemDefault());
+        return new ClipTrimmer.Extraction(SavedReplayMover.clipTarget(recording, clip, time), fromMillis, toMillis);
+    }
+}
@@ -0,0 +1,138 @@
+package com.sirebringo.autoclip;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Getter;
+
+/**
+ * The replay buffer output settings the user configured in OBS, and the settings payloads that point the replay
+ * buffer at a clip directory and back.
+ * <p>
+ * OBS applies the given output settings on top of the current ones, so the payloads only hold the keys the plugin
+ * changes: the directory and the file name format. Restoring them does not undo settings the user changed elsewhere.
+ * The payloads for each subdirectory are built once and shared, and must not be changed.
+ */
+final class ReplayOutputSettings {
+    private static final String PATH = "path";
+    private static final String DIRECTORY = "directory";
+    private static final String FORMAT = "format";
+
+    /**
+     * The directory OBS saves the replay buffer into, or {@code null} if OBS did not say.
+     */
+    @Getter
+    private final String outputDirectory;
+    /**
+     * The length of the replay buffer in seconds, or -1 if OBS did not say.
+     */
+    @Getter
+    private final long replayBufferDuration;
+    /**
+     * Restores the directory and format to the user's.
+     */
+    @Getter
+    private final JsonObject restorePayload;
+    private final String path;
+    private final String directory;
+    private final Map<String, JsonObject> directoryPayloads = new ConcurrentHashMap<>();
+
+    private ReplayOutputSettings(String path, String directory, String format, long replayBufferDuration) {
+        this.path = path;
+        this.directory = directory;
+        this.replayBufferDuration = replayBufferDuration;
+        this.outputDirectory = directory != null ? directory : path;
+
+        restorePayload = new JsonObject();
+        if (path != null) {
+            restorePayload.addProperty(PATH, path);
+        }
+        if (directory != null) {
+            restorePayload.addProperty(DIRECTORY, directory);
+        }
+        restorePayload.addProperty(FORMAT, format);
+    }
+
+    /**
+     * @param settings The replay buffer output settings as OBS reported them.
+     * @param defaultFormat The file name format to restore if OBS did not report one.
+     */
+    static ReplayOutputSettings of(JsonObject settings, String defaultFormat) {
+        return new ReplayOutputSettings(string(settings, PATH), string(settings, DIRECTORY),
+                settings.has(FORMAT) ? settings.get(FORMAT).getAsString() : defaultFormat,
+                settings.has("max_time_sec") ? settings.get("max_time_sec").getAsLong() : -1);
+    }
+
+    /**
+     * @param format The file name format, with the OBS date placeholders.
+     * @return A new payload that saves into the subdirectory of the user's directory under the given format.
+     */
+    JsonObject clipPayload(String subDirectory, String format) {
+        final JsonObject payload = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : directoryPayload(subDirectory).entrySet()) {
+            payload.add(entry.getKey(), entry.getValue());
+        }
+        payload.addProperty(FORMAT, format);
+        return payload;
+    }
+
+    /**
+     * @return The directory {@link #clipPayload} saves into, or {@code null} if OBS did not report its directory.
+     */
+    String clipDirectory(String subDirectory) {
+        return outputDirectory != null ? outputDirectory + "/" + subDirectory : null;
+    }
+
+    /**
+     * @return Whether OBS saved the file right in the directory, comparing the paths as OBS may write them on Windows.
+     */
+    static boolean isInDirectory(String savedPath, String directory) {
+        final String file = normalize(savedPath);
+        final int separator = file.lastIndexOf('/');
+        return separator >= 0 && file.substring(0, separator).equalsIgnoreCase(normalize(directory));
+    }
+
+    /**
+     * @return Whether the settings save into one of the clip directories handed out so far, where OBS is left if
+     * restoring the user's settings failed.
+     */
+    boolean isClipDirectory(ReplayOutputSettings settings) {
+        final String directory = settings.getOutputDirectory();
+        if (directory == null || outputDirectory == null) {
+            return false;
+        }
+        for (String subDirectory : directoryPayloads.keySet()) {
+            if (normalize(directory).equalsIgnoreCase(normalize(clipDirectory(subDirectory)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private JsonObject directoryPayload(String subDirectory) {
+        return directoryPayloads.computeIfAbsent(subDirectory, sub -> {
+            final JsonObject payload = new JsonObject();
+            if (path != null) {
+                payload.addProperty(PATH, path + "/" + sub);
+            }
+            if (directory != null) {
+                payload.addProperty(DIRECTORY, directory + "/" + sub);
+            }
+            return payload;
+        });
+    }
+
+    private static String normalize(String path) {
+        String normalized = path.replace('\\', '/').replaceAll("/+", "/");
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    private static String string(JsonObject settings, String key) {
+        final JsonElement value = settings.get(key);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+}
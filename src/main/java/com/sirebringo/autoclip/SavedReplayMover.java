@@ -0,0 +1,93 @@
+package com.sirebringo.autoclip;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves a replay that OBS saved into its default location into the clip's category directory, named the same way
+ * OBS names clips when the output settings are changed.
+ */
+@Slf4j
+final class SavedReplayMover {
+    // same layout as the "%CCYY-%MM-%DD %hh-%mm-%ss" OBS format used for clips
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH-mm-ss");
+    private static final String ILLEGAL_CHARACTERS = "[<>:\"/\\\\|?*\\p{Cntrl}]";
+    // OBS may still hold the file for a moment after reporting it, mostly on Windows
+    private static final int MOVE_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MILLIS = 200;
+
+    private SavedReplayMover() {
+    }
+
+    /**
+     * @param savedReplay The file OBS reported in its ReplayBufferSaved event.
+     * @param request     The clip the file belongs to.
+     * @return The new location of the file.
+     */
+    static Path move(Path savedReplay, ClipRequest request) throws IOException, InterruptedException {
+        final Path directory = savedReplay.resolveSibling(request.getSubDirectory());
+        Files.createDirectories(directory);
+
+        final String fileName = savedReplay.getFileName().toString();
+        final int extensionStart = fileName.lastIndexOf('.');
+        final String extension = extensionStart < 0 ? "" : fileName.substring(extensionStart);
+        final String baseName = baseName(request, LocalDateTime.now());
+
+        for (int attempt = 1; ; attempt++) {
+            final Path target = uniqueTarget(directory, baseName, extension);
+            try {
+                return moveAtomically(savedReplay, target);
+            } catch (FileAlreadyExistsException e) {
+                // raced with another file of the same name, pick the next free one
+            } catch (FileSystemException e) {
+                if (attempt == MOVE_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Saved replay {} is busy, retrying move", savedReplay);
+                Thread.sleep(RETRY_DELAY_MILLIS * attempt);
+            }
+        }
+    }
+
+    /**
+     * @param recording The recording the clip is cut from.
+     * @param time      When the clip was triggered.
+     * @return A free file in the clip's category directory next to the recording, named like a moved replay.
+     */
+    static Path clipTarget(Path recording, ClipRequest request, LocalDateTime time) {
+        final String fileName = recording.getFileName().toString();
+        final int extensionStart = fileName.lastIndexOf('.');
+        final String extension = extensionStart < 0 ? "" : fileName.substring(extensionStart);
+        return uniqueTarget(recording.resolveSibling(request.getSubDirectory()), baseName(request, time), extension);
+    }
+
+    private static String baseName(ClipRequest request, LocalDateTime time) {
+        // the name is escaped for the OBS format, where "%%" is a single "%"
+        return request.getFileName().replaceAll(ILLEGAL_CHARACTERS, "").replace("%%", "%").trim() + " "
+                + time.format(DATE_FORMAT);
+    }
+
+    private static Path moveAtomically(Path source, Path target) throws IOException {
+        try {
+            return Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            return Files.move(source, target);
+        }
+    }
+
+    private static Path uniqueTarget(Path directory, String baseName, String extension) {
+        Path target = directory.resolve(baseName + extension);
+        for (int i = 2; Files.exists(target); i++) {
+            target = directory.resolve(baseName + " (" + i + ")" + extension);
+        }
+        return target;
+    }
+}
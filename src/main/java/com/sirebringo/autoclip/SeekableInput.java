@@ -0,0 +1,129 @@
+package com.sirebringo.autoclip;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Big-endian reads from a file at any position, through a small buffer, for parsing container formats without
+ * loading the media data.
+ */
+final class SeekableInput implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    // file position of the first byte in the buffer
+    private long bufferStart;
+
+    SeekableInput(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        buffer.limit(0);
+    }
+
+    long size() {
+        return size;
+    }
+
+    long position() {
+        return bufferStart + buffer.position();
+    }
+
+    void seek(long position) {
+        if (position >= bufferStart && position <= bufferStart + buffer.limit()) {
+            buffer.position((int) (position - bufferStart));
+            return;
+        }
+
+        bufferStart = position;
+        buffer.limit(0);
+    }
+
+    void skip(long bytes) {
+        seek(position() + bytes);
+    }
+
+    int readUnsignedByte() throws IOException {
+        ensure(1);
+        return buffer.get() & 0xFF;
+    }
+
+    int readUnsignedShort() throws IOException {
+        ensure(2);
+        return buffer.getShort() & 0xFFFF;
+    }
+
+    int readInt() throws IOException {
+        ensure(4);
+        return buffer.getInt();
+    }
+
+    long readUnsignedInt() throws IOException {
+        return readInt() & 0xFFFFFFFFL;
+    }
+
+    long readLong() throws IOException {
+        ensure(8);
+        return buffer.getLong();
+    }
+
+    void readFully(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensure(1);
+            final int count = Math.min(bytes.length - offset, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    /**
+     * Copies a range of the file without going through the buffer.
+     */
+    void copyTo(WritableByteChannel out, long position, long length) throws IOException {
+        if (position < 0 || position + length > size) {
+            throw new EOFException("Range " + position + "+" + length + " is outside the file of " + size + " bytes");
+        }
+
+        long copied = 0;
+        while (copied < length) {
+            final long count = channel.transferTo(position + copied, length - copied, out);
+            if (count <= 0) {
+                throw new IOException("Could not copy " + (length - copied) + " bytes at " + (position + copied));
+            }
+            copied += count;
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+
+        final long position = position();
+        if (position + bytes > size) {
+            throw new EOFException("Read of " + bytes + " bytes at " + position + " is past the end of the file");
+        }
+
+        buffer.clear();
+        bufferStart = position;
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer, bufferStart + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,92 @@
+package com.sirebringo.autoclip;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue for exactly one producer thread and one consumer thread, without locks.
+ * <p>
+ * Elements sit in a ring whose size is a power of two. The producer only writes the tail and the consumer only writes
+ * the head, and each keeps a stale copy of the other's index so it only reads the shared one when the ring looks full
+ * or empty.
+ */
+final class SpscQueue<E> {
+    private final Object[] ring;
+    private final int mask;
+    // the next slot to read, written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // the next slot to write, written by the producer
+    private final AtomicLong tail = new AtomicLong();
+    // only used by the producer
+    private long headCache;
+    // only used by the consumer
+    private long tailCache;
+
+    /**
+     * @param capacity Rounded up to a power of two.
+     */
+    SpscQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        ring = new Object[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds an element. Only call from the producer thread.
+     *
+     * @return {@code false} if the queue is full.
+     */
+    boolean offer(E element) {
+        final long t = tail.get();
+        if (t - headCache >= ring.length) {
+            headCache = head.get();
+            if (t - headCache >= ring.length) {
+                return false;
+            }
+        }
+
+        ring[(int) t & mask] = element;
+        // a full volatile write rather than lazySet, so that a consumer about to park is sure to see it, see
+        // TriggerDispatcher
+        tail.set(t + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest element. Only call from the consumer thread.
+     *
+     * @return {@code null} if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        final long h = head.get();
+        if (h >= tailCache) {
+            tailCache = tail.get();
+            if (h >= tailCache) {
+                return null;
+            }
+        }
+
+        final int index = (int) h & mask;
+        final E element = (E) ring[index];
+        ring[index] = null;
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    /**
+     * @return Whether the queue looks empty. Exact on the consumer thread, a guess anywhere else.
+     */
+    boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    int capacity() {
+        return ring.length;
+    }
+}
@@ -0,0 +1,39 @@
+package com.sirebringo.autoclip;
+
+/**
+ * What a {@link ClipTrigger} may use of the plugin.
+ */
+interface TriggerContext {
+    /**
+     * @return The state of the game when the event being handled happened.
+     */
+    GameSnapshot getGame();
+
+    ConfigSnapshot getConfig();
+
+    /**
+     * @return The Grand Exchange prices of items, empty until they are loaded.
+     */
+    ItemPriceCache getItemPrices();
+
+    /**
+     * Saves the replay buffer into the directory of the given category, timed from the event being handled.
+     */
+    default void save(String fileName, ClipCategory category) {
+        save(fileName, category, category.getDirectoryName());
+    }
+
+    /**
+     * Saves the replay buffer into the given directory, relative to the OBS recording directory.
+     */
+    default void save(String fileName, ClipCategory category, String subDirectory) {
+        save(fileName, category, subDirectory, null);
+    }
+
+    /**
+     * Saves the replay buffer into the given directory, relative to the OBS recording directory.
+     *
+     * @param player The other player the clip is about, which is rate limited on its own, or {@code null}.
+     */
+    void save(String fileName, ClipCategory category, String subDirectory, String player);
+}
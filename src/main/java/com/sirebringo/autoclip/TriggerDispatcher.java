@@ -0,0 +1,415 @@
+package com.sirebringo.autoclip;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Actor;
+import net.runelite.api.Client;
+import net.runelite.api.InventoryID;
+import net.runelite.api.Item;
+import net.runelite.api.ItemContainer;
+import net.runelite.api.NPC;
+import net.runelite.api.Player;
+import net.runelite.api.events.ActorDeath;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ScriptPreFired;
+import net.runelite.api.events.WidgetLoaded;
+import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.WidgetInfo;
+import net.runelite.client.callback.ClientThread;
+import net.runelite.client.events.NpcLootReceived;
+import net.runelite.client.events.PlayerLootReceived;
+import net.runelite.client.game.ItemManager;
+import net.runelite.client.game.ItemStack;
+
+import static net.runelite.api.widgets.WidgetID.*;
+
+/**
+ * Runs the {@link ClipTrigger}s on a thread of their own, so their regexes and file names cost the client no frame
+ * time.
+ * <p>
+ * The event handlers, called on the client thread, drop events nobody subscribed to, copy what the triggers need into
+ * a {@link TriggerEvent} and put it on a lock-free {@link SpscQueue}. When the queue is full the event is dropped and
+ * counted; the client thread never waits for the triggers.
+ * <p>
+ * Widgets get loaded before their text is set. After a widget group with declared texts loads, the client thread
+ * checks the texts after every frame until they are set, and hands them over at once. It gives up after a few ticks,
+ * and does nothing on the ticks between.
+ * <p>
+ * Loot is handed over with noted items unnoted, and the reward interfaces of Barrows and the raids with the items in
+ * their chest, both read on the client thread.
+ * <p>
+ * While recording, the trigger thread also writes every event it takes off the queue to a
+ * {@link TriggerEventRecorder} file.
+ */
+@Slf4j
+final class TriggerDispatcher {
+    private static final int QUEUE_CAPACITY = 1024;
+    // a safety net only: an event is never left waiting for the next wake up, see run()
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // three game ticks
+    private static final long WIDGET_TEXT_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(1800);
+
+    private final Client client;
+    private final ClientThread clientThread;
+    private final ItemManager itemManager;
+    private final ClipTriggerRegistry registry;
+    private final ClipMetrics metrics;
+    private final SpscQueue<TriggerEvent> queue = new SpscQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    // widget groups whose texts are being waited for, only used on the client thread
+    private final Set<Integer> pendingWidgetGroups = new HashSet<>();
+    private final TriggerEventRecorder recorder = new TriggerEventRecorder(TriggerEventRecorder.DEFAULT_DIRECTORY);
+
+    private Thread worker;
+    private volatile boolean running;
+    private volatile boolean parked;
+    // only used on the trigger thread
+    private GameSnapshot game;
+
+    /**
+     * @param itemManager Unnotes the items of loot, or {@code null} to hand them over as they are.
+     */
+    TriggerDispatcher(Client client, ClientThread clientThread, ItemManager itemManager, ClipTriggerRegistry registry,
+                      ClipMetrics metrics) {
+        this.client = client;
+        this.clientThread = clientThread;
+        this.itemManager = itemManager;
+        this.registry = registry;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Starts the trigger thread. Call before any event is handed over.
+     */
+    synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+
+        // events handed over while stopped
+        while (queue.poll() != null) {
+        }
+        running = true;
+        worker = new Thread(this::run, "obs-auto-clip-triggers");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Lets the triggers handle what is queued and stops the trigger thread, interrupting it after the given timeout.
+     */
+    synchronized void stop(long timeout, TimeUnit unit) throws InterruptedException {
+        if (worker == null) {
+            return;
+        }
+
+        running = false;
+        LockSupport.unpark(worker);
+        worker.join(unit.toMillis(timeout));
+        if (worker.isAlive()) {
+            worker.interrupt();
+        }
+        worker = null;
+    }
+
+    /**
+     * Starts or stops recording the events the triggers see, see {@link TriggerEventRecorder}.
+     */
+    void setRecording(boolean recording) {
+        recorder.setEnabled(recording);
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The snapshot of the event the triggers are handling. Only valid on the trigger thread.
+     */
+    GameSnapshot getGame() {
+        return game;
+    }
+
+    void chatMessage(ChatMessage event) {
+        if (!registry.isSubscribed(event.getType())) {
+            return;
+        }
+
+        final ChatMessage copy = new ChatMessage(null, event.getType(), event.getName(), event.getMessage(),
+                event.getSender(), event.getTimestamp());
+        offer(TriggerEvent.chatMessage(copy, capture(Collections.emptyMap())));
+    }
+
+    void widgetLoaded(WidgetLoaded event) {
+        final int groupId = event.getGroupId();
+        if (registry.isSubscribedToWidget(groupId)) {
+            offer(TriggerEvent.widgetLoaded(event, capture(Collections.emptyMap())));
+        }
+        if (registry.isSubscribed(ClipTriggerRegistry.EventType.REWARD_CHEST_LOOT)) {
+            rewardChestLoaded(groupId);
+        }
+
+        final WidgetInfo[] widgets = registry.getWidgetTexts(groupId);
+        if (widgets.length > 0 && pendingWidgetGroups.add(groupId)) {
+            final WidgetTextWatch watch = new WidgetTextWatch(event, widgets);
+            // the text may already be set by the script that opened the widget
+            if (!watch.getAsBoolean()) {
+                clientThread.invokeLater(watch);
+            }
+        }
+    }
+
+    void scriptPreFired(ScriptPreFired event) {
+        if (registry.isSubscribedToScript(event.getScriptId())) {
+            offer(TriggerEvent.scriptPreFired(new ScriptPreFired(event.getScriptId()), capture(Collections.emptyMap())));
+        }
+    }
+
+    void gameTick(GameTick event) {
+        if (registry.isSubscribed(ClipTriggerRegistry.EventType.GAME_TICK)) {
+            offer(TriggerEvent.gameTick(event, capture(Collections.emptyMap())));
+        }
+    }
+
+    void actorDeath(ActorDeath event) {
+        final Actor actor = event.getActor();
+        if (!(actor instanceof Player) || !registry.isSubscribed(ClipTriggerRegistry.EventType.PLAYER_DEATH)) {
+            return;
+        }
+
+        final Player player = (Player) actor;
+        final TriggerEvent.PlayerDeath death = new TriggerEvent.PlayerDeath(player.getName(),
+                player == client.getLocalPlayer(),
+                player.getCanvasTilePoly() != null,
+                player.isFriendsChatMember() || player.isFriend(),
+                player.isClanMember());
+        offer(TriggerEvent.playerDeath(death, capture(Collections.emptyMap())));
+    }
+
+    void playerLootReceived(PlayerLootReceived event) {
+        if (!registry.isSubscribed(ClipTriggerRegistry.EventType.PLAYER_LOOT_RECEIVED)) {
+            return;
+        }
+
+        final TriggerEvent.Loot loot = new TriggerEvent.Loot(event.getPlayer().getName(), unnoted(event.getItems()));
+        offer(TriggerEvent.playerLootReceived(loot, capture(Collections.emptyMap())));
+    }
+
+    void npcLootReceived(NpcLootReceived event) {
+        if (!registry.isSubscribed(ClipTriggerRegistry.EventType.NPC_LOOT_RECEIVED)) {
+            return;
+        }
+
+        final NPC npc = event.getNpc();
+        final TriggerEvent.Loot loot = new TriggerEvent.Loot(npc != null ? npc.getName() : null, unnoted(event.getItems()));
+        offer(TriggerEvent.npcLootReceived(loot, capture(Collections.emptyMap())));
+    }
+
+    private void rewardChestLoaded(int groupId) {
+        final String chest;
+        final InventoryID inventory;
+        switch (groupId) {
+            case BARROWS_REWARD_GROUP_ID:
+                chest = "Barrows";
+                inventory = InventoryID.BARROWS_REWARD;
+                break;
+            case CHAMBERS_OF_XERIC_REWARD_GROUP_ID:
+                chest = "Chambers of Xeric";
+                inventory = InventoryID.CHAMBERS_OF_XERIC_CHEST;
+                break;
+            case THEATRE_OF_BLOOD_REWARD_GROUP_ID:
+                chest = "Theatre of Blood";
+                inventory = InventoryID.THEATRE_OF_BLOOD_CHEST;
+                break;
+            case TOA_REWARD_GROUP_ID:
+                chest = "Tombs of Amascut";
+                inventory = InventoryID.TOA_REWARD_CHEST;
+                break;
+            default:
+                return;
+        }
+
+        final ItemContainer container = client.getItemContainer(inventory);
+        if (container == null) {
+            log.debug("The {} reward interface loaded without its chest", chest);
+            return;
+        }
+
+        final List<ItemStack> items = new ArrayList<>();
+        for (Item item : container.getItems()) {
+            if (item.getId() >= 0 && item.getQuantity() > 0) {
+                items.add(new ItemStack(item.getId(), item.getQuantity()));
+            }
+        }
+        offer(TriggerEvent.rewardChestLoot(new TriggerEvent.Loot(chest, unnoted(items)), capture(Collections.emptyMap())));
+    }
+
+    /**
+     * @return A copy of the items with noted items as the item they stand for, which is what has a price.
+     */
+    private List<ItemStack> unnoted(Collection<ItemStack> items) {
+        final List<ItemStack> copy = new ArrayList<>(items.size());
+        for (ItemStack item : items) {
+            final int id = itemManager != null ? itemManager.canonicalize(item.getId()) : item.getId();
+            copy.add(id == item.getId() ? item : new ItemStack(id, item.getQuantity()));
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Hands over an event to the trigger thread, or drops it if the queue is full.
+     */
+    private void offer(TriggerEvent event) {
+        if (!queue.offer(event)) {
+            dropped.incrementAndGet();
+            metrics.recordDroppedTriggerEvent();
+            return;
+        }
+
+        if (parked) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Takes the oldest event without handling it. Only for callers that stand in for the trigger thread.
+     */
+    @VisibleForTesting
+    TriggerEvent poll() {
+        return queue.poll();
+    }
+
+    private GameSnapshot capture(Map<WidgetInfo, String> widgetTexts) {
+        return GameSnapshot.capture(client, registry.getVarbits(), registry.getVarcStrings(), widgetTexts);
+    }
+
+    private void run() {
+        while (true) {
+            final TriggerEvent event = queue.poll();
+            if (event == null) {
+                if (!running) {
+                    recorder.close();
+                    return;
+                }
+
+                recorder.flush();
+                // the producer writes the queue and then reads the flag, this thread writes the flag and then reads
+                // the queue, so either the event offered in between is seen here or the producer wakes this thread
+                parked = true;
+                if (queue.isEmpty() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                parked = false;
+                if (Thread.interrupted()) {
+                    recorder.close();
+                    return;
+                }
+                continue;
+            }
+
+            recorder.record(event);
+            dispatch(event);
+        }
+    }
+
+    /**
+     * Runs the triggers subscribed to an event on the calling thread.
+     */
+    @VisibleForTesting
+    void dispatch(TriggerEvent event) {
+        game = event.getGame();
+        try {
+            switch (event.getKind()) {
+                case CHAT_MESSAGE:
+                    registry.dispatchChatMessage((ChatMessage) event.getEvent());
+                    break;
+                case WIDGET_LOADED:
+                    registry.dispatchWidgetLoaded((WidgetLoaded) event.getEvent());
+                    break;
+                case WIDGET_TEXTS:
+                    registry.dispatchWidgetTexts((WidgetLoaded) event.getEvent());
+                    break;
+                case SCRIPT_PRE_FIRED:
+                    registry.dispatchScriptPreFired((ScriptPreFired) event.getEvent());
+                    break;
+                case GAME_TICK:
+                    registry.dispatchGameTick((GameTick) event.getEvent());
+                    break;
+                case PLAYER_DEATH:
+                    registry.dispatchPlayerDeath((TriggerEvent.PlayerDeath) event.getEvent());
+                    break;
+                case PLAYER_LOOT_RECEIVED:
+                    registry.dispatchPlayerLootReceived((TriggerEvent.Loot) event.getEvent());
+                    break;
+                case NPC_LOOT_RECEIVED:
+                    registry.dispatchNpcLootReceived((TriggerEvent.Loot) event.getEvent());
+                    break;
+                case REWARD_CHEST_LOOT:
+                    registry.dispatchRewardChestLoot((TriggerEvent.Loot) event.getEvent());
+                    break;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Clip trigger failed on {}", event.getKind(), e);
+        } finally {
+            game = null;
+        }
+    }
+
+    /**
+     * Waits on the client thread for the declared texts of a loaded widget group to be set.
+     */
+    private final class WidgetTextWatch implements BooleanSupplier {
+        private final WidgetLoaded event;
+        private final WidgetInfo[] widgets;
+        private final long loadedNanos = System.nanoTime();
+
+        private WidgetTextWatch(WidgetLoaded event, WidgetInfo[] widgets) {
+            this.event = event;
+            this.widgets = widgets;
+        }
+
+        /**
+         * @return Whether to stop watching: the texts were handed over, or it took too long.
+         */
+        @Override
+        public boolean getAsBoolean() {
+            if (!running) {
+                pendingWidgetGroups.remove(event.getGroupId());
+                return true;
+            }
+
+            for (WidgetInfo widgetInfo : widgets) {
+                final Widget widget = client.getWidget(widgetInfo);
+                if (widget == null || widget.getText() == null || widget.getText().isEmpty()) {
+                    if (System.nanoTime() - loadedNanos < WIDGET_TEXT_TIMEOUT_NANOS) {
+                        return false;
+                    }
+                    log.debug("Widget {} of group {} got no text, not clipping it", widgetInfo, event.getGroupId());
+                    pendingWidgetGroups.remove(event.getGroupId());
+                    return true;
+                }
+            }
+
+            final Map<WidgetInfo, String> texts = new EnumMap<>(WidgetInfo.class);
+            for (WidgetInfo widgetInfo : widgets) {
+                texts.put(widgetInfo, client.getWidget(widgetInfo).getText());
+            }
+            pendingWidgetGroups.remove(event.getGroupId());
+            offer(TriggerEvent.widgetTexts(event, capture(texts)));
+            return true;
+        }
+    }
+}
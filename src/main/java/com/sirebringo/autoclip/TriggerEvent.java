@@ -0,0 +1,116 @@
+package com.sirebringo.autoclip;
+
+import java.util.Collection;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ScriptPreFired;
+import net.runelite.api.events.WidgetLoaded;
+import net.runelite.client.game.ItemStack;
+
+/**
+ * A game event on its way from the client thread to the triggers, holding only values that are safe to read from
+ * another thread.
+ */
+@Getter
+final class TriggerEvent {
+    enum Kind {
+        CHAT_MESSAGE,
+        WIDGET_LOADED,
+        WIDGET_TEXTS,
+        SCRIPT_PRE_FIRED,
+        GAME_TICK,
+        PLAYER_DEATH,
+        PLAYER_LOOT_RECEIVED,
+        NPC_LOOT_RECEIVED,
+        REWARD_CHEST_LOOT
+    }
+
+    private final Kind kind;
+    private final Object event;
+    private final GameSnapshot game;
+
+    private TriggerEvent(Kind kind, Object event, GameSnapshot game) {
+        this.kind = kind;
+        this.event = event;
+        this.game = game;
+    }
+
+    /**
+     * @param event A copy of the client's event, which other plugins may still change.
+     */
+    static TriggerEvent chatMessage(ChatMessage event, GameSnapshot game) {
+        return new TriggerEvent(Kind.CHAT_MESSAGE, event, game);
+    }
+
+    static TriggerEvent widgetLoaded(WidgetLoaded event, GameSnapshot game) {
+        return new TriggerEvent(Kind.WIDGET_LOADED, event, game);
+    }
+
+    /**
+     * @param event The event of the widget group whose texts are now set, read into the snapshot.
+     */
+    static TriggerEvent widgetTexts(WidgetLoaded event, GameSnapshot game) {
+        return new TriggerEvent(Kind.WIDGET_TEXTS, event, game);
+    }
+
+    /**
+     * @param event A copy of the client's event, without the script arguments.
+     */
+    static TriggerEvent scriptPreFired(ScriptPreFired event, GameSnapshot game) {
+        return new TriggerEvent(Kind.SCRIPT_PRE_FIRED, event, game);
+    }
+
+    static TriggerEvent gameTick(GameTick event, GameSnapshot game) {
+        return new TriggerEvent(Kind.GAME_TICK, event, game);
+    }
+
+    static TriggerEvent playerDeath(PlayerDeath death, GameSnapshot game) {
+        return new TriggerEvent(Kind.PLAYER_DEATH, death, game);
+    }
+
+    static TriggerEvent playerLootReceived(Loot loot, GameSnapshot game) {
+        return new TriggerEvent(Kind.PLAYER_LOOT_RECEIVED, loot, game);
+    }
+
+    static TriggerEvent npcLootReceived(Loot loot, GameSnapshot game) {
+        return new TriggerEvent(Kind.NPC_LOOT_RECEIVED, loot, game);
+    }
+
+    /**
+     * @param loot The items in a reward chest when its interface loaded, named after the chest.
+     */
+    static TriggerEvent rewardChestLoot(Loot loot, GameSnapshot game) {
+        return new TriggerEvent(Kind.REWARD_CHEST_LOOT, loot, game);
+    }
+
+    /**
+     * A player that died, as the client saw them.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    static final class PlayerDeath {
+        private final String name;
+        private final boolean localPlayer;
+        /**
+         * Whether the player was on screen.
+         */
+        private final boolean visible;
+        /**
+         * A friend or a member of the friends chat.
+         */
+        private final boolean friend;
+        private final boolean clanMember;
+    }
+
+    /**
+     * Loot received from a player, an NPC or a reward chest, with the item ids of noted items unnoted.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    static final class Loot {
+        private final String name;
+        private final Collection<ItemStack> items;
+    }
+}
@@ -0,0 +1,275 @@
+package com.sirebringo.autoclip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.ChatMessageType;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.api.events.GameTick;
+import net.runelite.api.events.ScriptPreFired;
+import net.runelite.api.events.WidgetLoaded;
+import net.runelite.client.RuneLite;
+import net.runelite.client.game.ItemStack;
+
+/**
+ * Writes the {@link TriggerEvent}s the triggers see to a file, so a session can be replayed without the game to find
+ * out why a clip was or was not taken.
+ * <p>
+ * Every recording goes into a new file in {@link #DEFAULT_DIRECTORY}. Each event is framed as
+ * {@code kind, payload length, payload}, holding the {@link GameSnapshot} and the event; {@link #read(Path)} stops
+ * cleanly at an event torn by a crash.
+ * <p>
+ * Not thread safe, only used on the trigger thread, except for {@link #setEnabled}.
+ */
+@Slf4j
+final class TriggerEventRecorder {
+    static final Path DEFAULT_DIRECTORY = RuneLite.RUNELITE_DIR.toPath().resolve("obs-auto-clip").resolve("events");
+
+    private static final int MAGIC = 0x4f414345;
+    private static final int VERSION = 1;
+
+    private final Path directory;
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+
+    private volatile boolean enabled;
+    private DataOutputStream out;
+    private Path file;
+
+    TriggerEventRecorder(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Starts or stops recording. Every start begins a new file.
+     */
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Appends an event to the recording, if recording.
+     */
+    void record(TriggerEvent event) {
+        if (!enabled) {
+            close();
+            return;
+        }
+
+        try {
+            if (out == null) {
+                open();
+            }
+            payload.reset();
+            writeEvent(new DataOutputStream(payload), event);
+            out.writeByte(event.getKind().ordinal());
+            out.writeShort(payload.size());
+            payload.writeTo(out);
+        } catch (IOException e) {
+            log.warn("Could not record game events to {}, no longer recording", file, e);
+            enabled = false;
+            close();
+        }
+    }
+
+    /**
+     * Writes out what was recorded so far, or closes the file if recording stopped. Called when the triggers are idle.
+     */
+    void flush() {
+        if (out == null) {
+            return;
+        }
+        if (!enabled) {
+            close();
+            return;
+        }
+
+        try {
+            out.flush();
+        } catch (IOException e) {
+            log.warn("Could not record game events to {}, no longer recording", file, e);
+            enabled = false;
+            close();
+        }
+    }
+
+    void close() {
+        if (out == null) {
+            return;
+        }
+
+        try {
+            out.close();
+            log.debug("Recorded game events to {}", file);
+        } catch (IOException e) {
+            log.warn("Could not finish the recording of game events {}", file, e);
+        }
+        out = null;
+        file = null;
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        final String name = "events-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        Path candidate = directory.resolve(name + ".bin");
+        for (int i = 2; Files.exists(candidate); i++) {
+            candidate = directory.resolve(name + "-" + i + ".bin");
+        }
+
+        final OutputStream stream = Files.newOutputStream(candidate);
+        out = new DataOutputStream(new BufferedOutputStream(stream));
+        file = candidate;
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        log.debug("Recording game events to {}", file);
+    }
+
+    /**
+     * Reads a recording back.
+     *
+     * @return The events in the order the triggers saw them.
+     * @throws IOException If the file is not a recording, or cannot be read.
+     */
+    static List<TriggerEvent> read(Path file) throws IOException {
+        final List<TriggerEvent> events = new ArrayList<>();
+        try (InputStream stream = Files.newInputStream(file)) {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a recording of game events");
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " is a recording of version " + version + ", expected " + VERSION);
+            }
+
+            while (true) {
+                final int kind = in.read();
+                if (kind < 0) {
+                    break;
+                }
+
+                final byte[] bytes;
+                try {
+                    bytes = new byte[in.readUnsignedShort()];
+                    in.readFully(bytes);
+                } catch (EOFException e) {
+                    // torn write at the end of the recording
+                    break;
+                }
+                events.add(readEvent(TriggerEvent.Kind.values()[kind],
+                        new DataInputStream(new ByteArrayInputStream(bytes))));
+            }
+        }
+        return events;
+    }
+
+    private static void writeEvent(DataOutputStream out, TriggerEvent event) throws IOException {
+        event.getGame().write(out);
+        switch (event.getKind()) {
+            case CHAT_MESSAGE:
+                final ChatMessage message = (ChatMessage) event.getEvent();
+                out.writeUTF(message.getType().name());
+                writeNullableUTF(out, message.getName());
+                writeNullableUTF(out, message.getMessage());
+                writeNullableUTF(out, message.getSender());
+                out.writeInt(message.getTimestamp());
+                break;
+            case WIDGET_LOADED:
+            case WIDGET_TEXTS:
+                out.writeInt(((WidgetLoaded) event.getEvent()).getGroupId());
+                break;
+            case SCRIPT_PRE_FIRED:
+                out.writeInt(((ScriptPreFired) event.getEvent()).getScriptId());
+                break;
+            case GAME_TICK:
+                break;
+            case PLAYER_DEATH:
+                final TriggerEvent.PlayerDeath death = (TriggerEvent.PlayerDeath) event.getEvent();
+                writeNullableUTF(out, death.getName());
+                out.writeBoolean(death.isLocalPlayer());
+                out.writeBoolean(death.isVisible());
+                out.writeBoolean(death.isFriend());
+                out.writeBoolean(death.isClanMember());
+                break;
+            case PLAYER_LOOT_RECEIVED:
+            case NPC_LOOT_RECEIVED:
+            case REWARD_CHEST_LOOT:
+                final TriggerEvent.Loot loot = (TriggerEvent.Loot) event.getEvent();
+                writeNullableUTF(out, loot.getName());
+                out.writeShort(loot.getItems().size());
+                for (ItemStack item : loot.getItems()) {
+                    out.writeInt(item.getId());
+                    out.writeInt(item.getQuantity());
+                }
+                break;
+        }
+    }
+
+    private static TriggerEvent readEvent(TriggerEvent.Kind kind, DataInputStream in) throws IOException {
+        final GameSnapshot game = GameSnapshot.read(in);
+        switch (kind) {
+            case CHAT_MESSAGE:
+                final ChatMessageType type = ChatMessageType.valueOf(in.readUTF());
+                final String name = readNullableUTF(in);
+                final String message = readNullableUTF(in);
+                return TriggerEvent.chatMessage(new ChatMessage(null, type, name, message, readNullableUTF(in),
+                        in.readInt()), game);
+            case WIDGET_LOADED:
+            case WIDGET_TEXTS:
+                final WidgetLoaded loaded = new WidgetLoaded();
+                loaded.setGroupId(in.readInt());
+                return kind == TriggerEvent.Kind.WIDGET_LOADED
+                        ? TriggerEvent.widgetLoaded(loaded, game)
+                        : TriggerEvent.widgetTexts(loaded, game);
+            case SCRIPT_PRE_FIRED:
+                return TriggerEvent.scriptPreFired(new ScriptPreFired(in.readInt()), game);
+            case GAME_TICK:
+                return TriggerEvent.gameTick(new GameTick(), game);
+            case PLAYER_DEATH:
+                return TriggerEvent.playerDeath(new TriggerEvent.PlayerDeath(readNullableUTF(in), in.readBoolean(),
+                        in.readBoolean(), in.readBoolean(), in.readBoolean()), game);
+            case PLAYER_LOOT_RECEIVED:
+            case NPC_LOOT_RECEIVED:
+            case REWARD_CHEST_LOOT:
+                final String source = readNullableUTF(in);
+                final List<ItemStack> items = new ArrayList<>();
+                for (int i = in.readUnsignedShort(); i > 0; i--) {
+                    items.add(new ItemStack(in.readInt(), in.readInt()));
+                }
+                final TriggerEvent.Loot loot = new TriggerEvent.Loot(source, Collections.unmodifiableList(items));
+                if (kind == TriggerEvent.Kind.NPC_LOOT_RECEIVED) {
+                    return TriggerEvent.npcLootReceived(loot, game);
+                }
+                return kind == TriggerEvent.Kind.REWARD_CHEST_LOOT
+                        ? TriggerEvent.rewardChestLoot(loot, game)
+                        : TriggerEvent.playerLootReceived(loot, game);
+            default:
+                throw new IOException("Unknown event kind " + kind);
+        }
+    }
+
+    static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
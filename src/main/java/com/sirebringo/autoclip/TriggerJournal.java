@@ -0,0 +1,379 @@
+package com.sirebringo.autoclip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+
+/**
+ * An append-only log of every clip trigger and what became of it, so a clip that OBS failed to save can still be
+ * found in a long recording later.
+ * <p>
+ * Recording only puts a small record on a bounded queue; a background thread writes the queue out in batches, so the
+ * client thread never touches the disk. When the writer falls behind, records are dropped and counted rather than
+ * blocking the caller.
+ * <p>
+ * Each record is framed as {@code type, payload length, payload, CRC-32}, so {@link #read(Path)} can stop cleanly at
+ * a record torn by a crash.
+ */
+@Slf4j
+final class TriggerJournal {
+    static final Path DEFAULT_FILE = RuneLite.RUNELITE_DIR.toPath().resolve("obs-auto-clip").resolve("triggers.journal");
+
+    enum Outcome {
+        SAVED,
+        FAILED,
+        DROPPED
+    }
+
+    private static final byte TRIGGER_RECORD = 'T';
+    private static final byte OUTCOME_RECORD = 'O';
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int MAX_BATCH = 256;
+    private static final long IDLE_POLL_MILLIS = 250;
+
+    private final Path file;
+    private final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // ids keep increasing across sessions as long as fewer than a thousand triggers fire per millisecond
+    private final AtomicLong nextId = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final AtomicLong dropped = new AtomicLong();
+
+    private Thread writer;
+    private volatile boolean running;
+
+    TriggerJournal(Path file) {
+        this.file = file;
+    }
+
+    synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+
+        running = true;
+        writer = new Thread(this::run, "obs-auto-clip-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Writes out what is queued and stops the writer, giving up after the given timeout.
+     */
+    synchronized void stop(long timeout, TimeUnit unit) throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+
+        running = false;
+        writer.join(unit.toMillis(timeout));
+        if (writer.isAlive()) {
+            writer.interrupt();
+        }
+        writer = null;
+    }
+
+    /**
+     * Records a trigger. Never blocks.
+     *
+     * @return The id of the trigger, to be passed along in its {@link ClipRequest}.
+     */
+    long recordTrigger(ClipCategory category, String fileName, int tick, int world, int regionId) {
+        final long id = nextId.getAndIncrement();
+        offer(new TriggerRecord(id, System.currentTimeMillis(), tick, category, fileName, world, regionId));
+        return id;
+    }
+
+    /**
+     * Records the outcome of every trigger in a request. Never blocks.
+     *
+     * @param detail The saved replay path, or why the save failed.
+     */
+    void recordOutcome(ClipRequest request, Outcome outcome, String detail) {
+        final long wallMillis = System.currentTimeMillis();
+        for (long id : request.getTriggerIds()) {
+            offer(new OutcomeRecord(id, wallMillis, outcome, detail));
+        }
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void offer(Record record) {
+        if (!queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void run() {
+        final List<Record> batch = new ArrayList<>(MAX_BATCH);
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+        final CRC32 crc = new CRC32();
+        DataOutputStream out = null;
+
+        try {
+            while (true) {
+                final Record first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                try {
+                    if (out == null) {
+                        out = open();
+                    }
+                    for (Record record : batch) {
+                        writeRecord(out, record, payload, crc);
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    log.warn("Could not write to the trigger journal {}", file, e);
+                    dropped.addAndGet(batch.size());
+                    closeQuietly(out);
+                    out = null;
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            log.debug("Trigger journal writer interrupted, {} record(s) not written", queue.size());
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private DataOutputStream open() throws IOException {
+        Files.createDirectories(file.getParent());
+        final OutputStream stream = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return new DataOutputStream(new BufferedOutputStream(stream));
+    }
+
+    private static void writeRecord(DataOutputStream out, Record record, ByteArrayOutputStream payload, CRC32 crc) throws IOException {
+        payload.reset();
+        record.writePayload(new DataOutputStream(payload));
+        final byte[] bytes = payload.toByteArray();
+
+        crc.reset();
+        crc.update(record.type());
+        crc.update(bytes, 0, bytes.length);
+
+        out.writeByte(record.type());
+        out.writeShort(bytes.length);
+        out.write(bytes);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.debug("Could not close the trigger journal", e);
+        }
+    }
+
+    /**
+     * Reads a journal back, joining every trigger with its outcome.
+     *
+     * @return The triggers in the order they fired. A trigger whose clip never finished (the client closed, or the
+     * outcome record was lost) has no outcome. An empty list if the journal does not exist.
+     */
+    static List<Entry> read(Path file) throws IOException {
+        final Map<Long, Entry> entries = new LinkedHashMap<>();
+        try (InputStream stream = Files.newInputStream(file)) {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            final CRC32 crc = new CRC32();
+            while (true) {
+                final int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+
+                final byte[] bytes;
+                try {
+                    bytes = new byte[in.readUnsignedShort()];
+                    in.readFully(bytes);
+                    crc.reset();
+                    crc.update(type);
+                    crc.update(bytes, 0, bytes.length);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        log.warn("Trigger journal {} has a corrupt record, ignoring the rest", file);
+                        break;
+                    }
+                } catch (EOFException e) {
+                    // torn write at the end of the journal
+                    break;
+                }
+
+                final DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+                if (type == TRIGGER_RECORD) {
+                    final Entry entry = Entry.read(record);
+                    entries.put(entry.id, entry);
+                } else if (type == OUTCOME_RECORD) {
+                    final long id = record.readLong();
+                    final Entry entry = entries.get(id);
+                    if (entry != null) {
+                        record.readLong();
+                        entries.put(id, entry.withOutcome(Outcome.values()[record.readByte()], record.readUTF()));
+                    }
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * One trigger read back from the journal.
+     */
+    @Getter
+    static final class Entry {
+        private final long id;
+        private final long wallMillis;
+        private final int tick;
+        /**
+         * {@code null} if the category no longer exists.
+         */
+        private final ClipCategory category;
+        private final String fileName;
+        private final int world;
+        private final int regionId;
+        /**
+         * {@code null} if the clip never finished.
+         */
+        private final Outcome outcome;
+        /**
+         * The saved replay path, or why the save failed.
+         */
+        private final String outcomeDetail;
+
+        private Entry(long id, long wallMillis, int tick, ClipCategory category, String fileName, int world, int regionId,
+                      Outcome outcome, String outcomeDetail) {
+            this.id = id;
+            this.wallMillis = wallMillis;
+            this.tick = tick;
+            this.category = category;
+            this.fileName = fileName;
+            this.world = world;
+            this.regionId = regionId;
+            this.outcome = outcome;
+            this.outcomeDetail = outcomeDetail;
+        }
+
+        private static Entry read(DataInputStream in) throws IOException {
+            final long id = in.readLong();
+            final long wallMillis = in.readLong();
+            final int tick = in.readInt();
+            final String categoryName = in.readUTF();
+            ClipCategory category = null;
+            for (ClipCategory candidate : ClipCategory.values()) {
+                if (candidate.name().equals(categoryName)) {
+                    category = candidate;
+                }
+            }
+            return new Entry(id, wallMillis, tick, category, in.readUTF(), in.readInt(), in.readInt(), null, null);
+        }
+
+        private Entry withOutcome(Outcome outcome, String detail) {
+            return new Entry(id, wallMillis, tick, category, fileName, world, regionId, outcome, detail);
+        }
+    }
+
+    private interface Record {
+        byte type();
+
+        void writePayload(DataOutputStream out) throws IOException;
+    }
+
+    private static final class TriggerRecord implements Record {
+        private final long id;
+        private final long wallMillis;
+        private final int tick;
+        private final ClipCategory category;
+        private final String fileName;
+        private final int world;
+        private final int regionId;
+
+        private TriggerRecord(long id, long wallMillis, int tick, ClipCategory category, String fileName, int world, int regionId) {
+            this.id = id;
+            this.wallMillis = wallMillis;
+            this.tick = tick;
+            this.category = category;
+            this.fileName = fileName;
+            this.world = world;
+            this.regionId = regionId;
+        }
+
+        @Override
+        public byte type() {
+            return TRIGGER_RECORD;
+        }
+
+        @Override
+        public void writePayload(DataOutputStream out) throws IOException {
+            out.writeLong(id);
+            out.writeLong(wallMillis);
+            out.writeInt(tick);
+            out.writeUTF(category.name());
+            out.writeUTF(fileName);
+            out.writeInt(world);
+            out.writeInt(regionId);
+        }
+    }
+
+    private static final class OutcomeRecord implements Record {
+        private final long id;
+        private final long wallMillis;
+        private final Outcome outcome;
+        private final String detail;
+
+        private OutcomeRecord(long id, long wallMillis, Outcome outcome, String detail) {
+            this.id = id;
+            this.wallMillis = wallMillis;
+            this.outcome = outcome;
+            this.detail = detail;
+        }
+
+        @Override
+        public byte type() {
+            return OUTCOME_RECORD;
+        }
+
+        @Override
+        public void writePayload(DataOutputStream out) throws IOException {
+            out.writeLong(id);
+            out.writeLong(wallMillis);
+            out.writeByte(outcome.ordinal());
+            out.writeUTF(detail != null ? detail : "");
+        }
+    }
+}
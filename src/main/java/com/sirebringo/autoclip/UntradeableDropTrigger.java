@@ -0,0 +1,49 @@
+package com.sirebringo.autoclip;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.runelite.api.events.ChatMessage;
+
+/**
+ * Clips an untradeable drop announcement, except for the Gauntlet, where every crystal shard is one.
+ */
+final class UntradeableDropTrigger implements ClipTrigger {
+    private static final Pattern UNTRADEABLE_DROP_PATTERN = Pattern.compile(".*Untradeable drop: ([^<>]+)(?:</col>)?");
+    private static final int GAUNTLET_REGION = 7512;
+    private static final int CORRUPTED_GAUNTLET_REGION = 7768;
+
+    private final TriggerContext context;
+
+    UntradeableDropTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.chatMessages(ChatMessageClassifier.Candidate.UNTRADEABLE_DROP)
+                .chatRules()
+                .contains(ChatMessageClassifier.Candidate.UNTRADEABLE_DROP, "Untradeable drop: ");
+    }
+
+    @Override
+    public void onChatMessage(ChatMessage event, ChatMessageClassifier.Candidate candidate) {
+        if (!context.getConfig().clipUntradeableDrop() || isInsideGauntlet()) {
+            return;
+        }
+
+        Matcher m = UNTRADEABLE_DROP_PATTERN.matcher(event.getMessage());
+        if (m.matches()) {
+            String untradeableDropName = m.group(1);
+            String fileName = "Untradeable drop " + untradeableDropName;
+            context.save(fileName, ClipCategory.UNTRADEABLE_DROPS);
+        }
+    }
+
+    private boolean isInsideGauntlet() {
+        final GameSnapshot game = context.getGame();
+        return game.isInInstancedRegion()
+                && game.getMapRegions().length > 0
+                && (game.getMapRegions()[0] == GAUNTLET_REGION
+                || game.getMapRegions()[0] == CORRUPTED_GAUNTLET_REGION);
+    }
+}
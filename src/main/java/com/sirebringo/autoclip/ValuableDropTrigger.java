@@ -0,0 +1,43 @@
+package com.sirebringo.autoclip;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.runelite.api.events.ChatMessage;
+
+/**
+ * Clips a valuable drop announcement worth at least the configured threshold.
+ */
+final class ValuableDropTrigger implements ClipTrigger {
+    private static final Pattern VALUABLE_DROP_PATTERN = Pattern.compile(".*Valuable drop: ([^<>]+?\\(((?:\\d+,?)+) coins\\))(?:</col>)?");
+
+    private final TriggerContext context;
+
+    ValuableDropTrigger(TriggerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void subscribe(ClipTriggerRegistry.Subscriptions subscriptions) {
+        subscriptions.chatMessages(ChatMessageClassifier.Candidate.VALUABLE_DROP)
+                .chatRules()
+                .contains(ChatMessageClassifier.Candidate.VALUABLE_DROP, "Valuable drop: ");
+    }
+
+    @Override
+    public void onChatMessage(ChatMessage event, ChatMessageClassifier.Candidate candidate) {
+        final ConfigSnapshot config = context.getConfig();
+        if (!config.clipValuableDrop()) {
+            return;
+        }
+
+        Matcher m = VALUABLE_DROP_PATTERN.matcher(event.getMessage());
+        if (m.matches()) {
+            int valuableDropValue = Integer.parseInt(m.group(2).replaceAll(",", ""));
+            if (valuableDropValue >= config.valuableDropThreshold()) {
+                String valuableDropName = m.group(1);
+                String fileName = "Valuable drop " + valuableDropName;
+                context.save(fileName, ClipCategory.VALUABLE_DROPS);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.sirebringo.autoclip;
+
+import com.sirebringo.autoclip.ChatMessageClassifier.Candidate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Classifies sample messages with the anchors {@link AutoClipPlugin} uses.
+ */
+public class ChatMessageClassifierTest {
+    private static final ChatMessageClassifier CLASSIFIER = ChatMessageClassifier.builder()
+            .containsAll(Candidate.CLUE_COUNT, "You have completed", "Treasure")
+            .startsWith(Candidate.BARROWS_COUNT, "Your Barrows chest count is")
+            .startsWith(Candidate.TOB_COUNT, "Your completed Theatre of Blood")
+            .containsAny(Candidate.PET, Arrays.asList("You have a funny feeling like you're being followed",
+                    "You feel something weird sneaking into your backpack"))
+            .startsWithAndContains(Candidate.BOSS_KILL, "Your ", " kill count is: <col=ff0000>")
+            .equalTo(Candidate.CHEST_LOOT, "You find some treasure in the chest!")
+            .contains(Candidate.VALUABLE_DROP, "Valuable drop: ")
+            .contains(Candidate.UNTRADEABLE_DROP, "Untradeable drop: ")
+            .containsAll(Candidate.DUEL, "You have now ", " duel")
+            .startsWith(Candidate.COLLECTION_LOG, "New item added to your collection log: ")
+            .contains(Candidate.COMBAT_TASK, "combat task")
+            .build();
+
+    @Test
+    public void singleCandidate() {
+        assertCandidates("You have a funny feeling like you're being followed.", Candidate.PET);
+        assertCandidates("Your Vorkath kill count is: <col=ff0000>123</col>.", Candidate.BOSS_KILL);
+        assertCandidates("You find some treasure in the chest!", Candidate.CHEST_LOOT);
+        assertCandidates("<col=ef1020>Valuable drop: Dragon warhammer (1,234,567 coins)</col>", Candidate.VALUABLE_DROP);
+        assertCandidates("You have now won 1,024 duels.", Candidate.DUEL);
+        assertCandidates("New item added to your collection log: <col=ef1020>Pet snakeling</col>", Candidate.COLLECTION_LOG);
+        assertCandidates("Congratulations, you've completed an elite combat task: <col=06600c>Why Are You Running?</col>.",
+                Candidate.COMBAT_TASK);
+        assertCandidates("You have completed 42 elite Treasure Trails.", Candidate.CLUE_COUNT);
+    }
+
+    @Test
+    public void noCandidate() {
+        assertCandidates("Welcome to Old School RuneScape.");
+        assertCandidates("You find some treasure in the chest! Again.");
+        assertCandidates("Your Vorkath kill count is: 123.");
+        assertCandidates("");
+    }
+
+    @Test
+    public void severalCandidates() {
+        assertCandidates("You have a funny feeling like you're being followed. Untradeable drop: Pet snakeling",
+                Candidate.PET, Candidate.UNTRADEABLE_DROP);
+    }
+
+    @Test
+    public void countMessageIsExclusive() {
+        // reads like a boss kill too, but only the count is kept for the reward interface
+        assertCandidates("Your completed Theatre of Blood kill count is: <col=ff0000>11</col>.", Candidate.TOB_COUNT);
+        assertCandidates("Your Barrows chest count is: <col=ff0000>7</col>.", Candidate.BARROWS_COUNT);
+    }
+
+    private static void assertCandidates(String message, Candidate... expected) {
+        final List<Candidate> actual = new ArrayList<>();
+        for (int candidates = CLASSIFIER.classify(message); candidates != 0; candidates &= candidates - 1) {
+            actual.add(ChatMessageClassifier.first(candidates));
+        }
+        assertEquals(message, Arrays.asList(expected), actual);
+    }
+}
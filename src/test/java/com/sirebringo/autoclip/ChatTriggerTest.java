@@ -0,0 +1,182 @@
+package com.sirebringo.autoclip;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import net.runelite.api.ChatMessageType;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.api.events.WidgetLoaded;
+import org.junit.Before;
+import org.junit.Test;
+
+import static net.runelite.api.widgets.WidgetID.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChatTriggerTest {
+    private static final int GAUNTLET_LOBBY_REGION = 12127;
+
+    private RecordingTriggerContext context;
+    private int tick;
+
+    @Before
+    public void before() {
+        final Properties properties = new Properties();
+        for (String key : Arrays.asList("clipRewards", "clipPets", "clipBoss", "clipDuels", "clipValuableDrop",
+                "clipUntradeableDrop", "clipCollectionLogEntries", "clipCombatAchievements")) {
+            properties.setProperty(key, "true");
+        }
+        properties.setProperty("clipValuableDropThreshold", "100000");
+        context = new RecordingTriggerContext(ConfigSnapshot.of(RecordingTriggerContext.config(properties)),
+                new ItemPriceCache(), false);
+    }
+
+    @Test
+    public void pet() {
+        chat("You have a funny feeling like you're being followed.");
+        assertSaves(save(ClipCategory.PETS, "Pet"));
+    }
+
+    @Test
+    public void bossKill() {
+        chat("Your Vorkath kill count is: <col=ff0000>123</col>.");
+        assertSaves(save(ClipCategory.BOSS_KILLS, "Vorkath(123)"));
+    }
+
+    @Test
+    public void chestLoot() {
+        chat("You find some treasure in the chest!", GAUNTLET_LOBBY_REGION);
+        assertSaves(save(ClipCategory.CHEST_LOOT, "The Gauntlet"));
+    }
+
+    @Test
+    public void chestLootElsewhere() {
+        chat("You find some treasure in the chest!", 12850);
+        assertSaves();
+    }
+
+    @Test
+    public void valuableDrop() {
+        chat("<col=ef1020>Valuable drop: Dragon warhammer (1,234,567 coins)</col>");
+        assertSaves(save(ClipCategory.VALUABLE_DROPS, "Valuable drop Dragon warhammer (1,234,567 coins)"));
+    }
+
+    @Test
+    public void valuableDropBelowThreshold() {
+        chat("<col=ef1020>Valuable drop: Rune platebody (38,012 coins)</col>");
+        assertSaves();
+    }
+
+    @Test
+    public void untradeableDrop() {
+        chat("<col=ef1020>Untradeable drop: Ancient shard</col>");
+        assertSaves(save(ClipCategory.UNTRADEABLE_DROPS, "Untradeable drop Ancient shard"));
+    }
+
+    @Test
+    public void duel() {
+        chat("You have now won 1,024 duels.");
+        assertSaves(save(ClipCategory.DUELS, "Duel won (1024)"));
+    }
+
+    @Test
+    public void collectionLog() {
+        chat("New item added to your collection log: <col=ef1020>Pet snakeling</col>");
+        assertSaves(save(ClipCategory.COLLECTION_LOG, "Collection log (Pet snakeling)"));
+    }
+
+    @Test
+    public void combatTask() {
+        chat("Congratulations, you've completed an elite combat task: <col=06600c>Why Are You Running?</col>.");
+        assertSaves(save(ClipCategory.COMBAT_ACHIEVEMENTS, "Combat task (Why Are You Running)"));
+    }
+
+    @Test
+    public void clueReward() {
+        chat("You have completed 42 elite Treasure Trails.");
+        widgetLoaded(CLUE_SCROLL_REWARD_GROUP_ID);
+        assertSaves(save(ClipCategory.CLUE_SCROLL_REWARDS, "Elite(42)"));
+    }
+
+    @Test
+    public void raidRewards() {
+        chat("Your Barrows chest count is: <col=ff0000>7</col>.");
+        widgetLoaded(BARROWS_REWARD_GROUP_ID);
+        chat("Your completed Chambers of Xeric count is: <col=ff0000>50</col>.");
+        widgetLoaded(CHAMBERS_OF_XERIC_REWARD_GROUP_ID);
+        chat("Your completed Chambers of Xeric Challenge Mode count is: <col=ff0000>3</col>.");
+        widgetLoaded(CHAMBERS_OF_XERIC_REWARD_GROUP_ID);
+        chat("Your completed Theatre of Blood: Hard Mode count is: <col=ff0000>11</col>.");
+        widgetLoaded(THEATRE_OF_BLOOD_REWARD_GROUP_ID);
+        chat("Your completed Tombs of Amascut: Expert Mode count is: <col=ff0000>25</col>.");
+        widgetLoaded(TOA_REWARD_GROUP_ID);
+        assertSaves(save(ClipCategory.BOSS_KILLS, "Barrows(7)"),
+                save(ClipCategory.BOSS_KILLS, "Chambers of Xeric(50)"),
+                save(ClipCategory.BOSS_KILLS, "Chambers of Xeric Challenge Mode(3)"),
+                save(ClipCategory.BOSS_KILLS, "Theatre of Blood Hard Mode(11)"),
+                save(ClipCategory.BOSS_KILLS, "Tombs of Amascut Expert Mode(25)"));
+    }
+
+    @Test
+    public void rewardForAnotherActivity() {
+        chat("Your completed Theatre of Blood count is: <col=ff0000>11</col>.");
+        widgetLoaded(CHAMBERS_OF_XERIC_REWARD_GROUP_ID);
+        assertSaves();
+    }
+
+    @Test
+    public void messageOfSeveralCategories() {
+        // every trigger the message belongs to fires, as they did when each checked every message
+        chat("You have a funny feeling like you're being followed. Untradeable drop: Pet snakeling");
+        assertSaves(save(ClipCategory.PETS, "Pet"),
+                save(ClipCategory.UNTRADEABLE_DROPS, "Untradeable drop Pet snakeling"));
+    }
+
+    @Test
+    public void countMessageEndsTheCheck() {
+        // only remembered for the reward interface, even though it reads like a boss kill
+        chat("Your completed Theatre of Blood kill count is: <col=ff0000>11</col>.");
+        assertSaves();
+    }
+
+    @Test
+    public void otherMessageTypes() {
+        context.dispatch(TriggerEvent.chatMessage(new ChatMessage(null, ChatMessageType.PUBLICCHAT, "Zezima",
+                "Your Vorkath kill count is: <col=ff0000>123</col>.", null, 0), context.game(++tick, -1)));
+        assertSaves();
+    }
+
+    @Test
+    public void unrelatedMessage() {
+        chat("Welcome to Old School RuneScape.");
+        assertTrue(context.getSaves().isEmpty());
+    }
+
+    private void chat(String message) {
+        chat(message, -1);
+    }
+
+    private void chat(String message, int regionId) {
+        context.dispatch(TriggerEvent.chatMessage(new ChatMessage(null, ChatMessageType.GAMEMESSAGE, "", message, null, 0),
+                context.game(++tick, regionId)));
+    }
+
+    private void widgetLoaded(int groupId) {
+        final WidgetLoaded event = new WidgetLoaded();
+        event.setGroupId(groupId);
+        context.dispatch(TriggerEvent.widgetLoaded(event, context.game(++tick, -1)));
+    }
+
+    private static String save(ClipCategory category, String fileName) {
+        return category.getDirectoryName() + "/" + fileName;
+    }
+
+    private void assertSaves(String... expected) {
+        final List<RecordingTriggerContext.Save> saves = context.getSaves();
+        final String[] actual = new String[saves.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = saves.get(i).getSubDirectory() + "/" + saves.get(i).getFileName();
+        }
+        assertEquals(Arrays.asList(expected), Arrays.asList(actual));
+    }
+}
@@ -0,0 +1,168 @@
+package com.sirebringo.autoclip;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClipCatalogTest {
+    private Path clips;
+    private Path file;
+    private ClipCatalog catalog;
+
+    @Before
+    public void before() throws IOException {
+        clips = Files.createTempDirectory("obs-auto-clip-test");
+        file = clips.resolve("catalog").resolve("clips.catalog");
+        catalog = new ClipCatalog(file);
+        catalog.load();
+    }
+
+    @After
+    public void after() {
+        catalog.close();
+    }
+
+    @Test
+    public void namesClipsByWhatTheyAreAbout() throws Exception {
+        add("Vorkath(50)", ClipCategory.BOSS_KILLS, 1);
+        add("Collection log (Abyssal whip)", ClipCategory.COLLECTION_LOG, 2);
+        add("Vorkath(51) + Pet", ClipCategory.PETS, 4);
+
+        final ClipCatalog.Entry kill = catalog.findByName("Vorkath").get(0);
+        assertEquals("Vorkath", kill.getName());
+        assertEquals(50, kill.getCount());
+        assertEquals(ClipCategory.BOSS_KILLS, kill.getCategory());
+        assertEquals(1, kill.getSize());
+        assertEquals("Abyssal whip", catalog.findByName("abyssal").get(0).getName());
+        assertEquals(Arrays.asList("Vorkath(50)", "Vorkath(51) + Pet"), fileNames(catalog.findByName("VORK")));
+        assertTrue(catalog.findByName("Pet").isEmpty());
+    }
+
+    @Test
+    public void findsClipsBySaveTime() throws Exception {
+        add("Vorkath(50)", ClipCategory.BOSS_KILLS, 100);
+        add("Pet", ClipCategory.PETS, 200);
+        add("Vorkath(51)", ClipCategory.BOSS_KILLS, 300);
+        add("Vorkath(52)", ClipCategory.BOSS_KILLS, 400);
+
+        assertEquals(Arrays.asList("Pet", "Vorkath(51)"), fileNames(catalog.findBySaveTime(null, 200, 300)));
+        assertEquals(Arrays.asList("Vorkath(51)", "Vorkath(52)"),
+                fileNames(catalog.findBySaveTime(ClipCategory.BOSS_KILLS, 101, 1000)));
+        assertTrue(catalog.findBySaveTime(null, 300, 200).isEmpty());
+    }
+
+    @Test
+    public void replacesAClipAtTheSamePath() throws Exception {
+        final Path clip = add("Vorkath(50)", ClipCategory.BOSS_KILLS, 100);
+        catalog.add(clip, ClipCategory.BOSS_KILLS, "Vorkath(60)", 200);
+
+        assertEquals(1, catalog.size());
+        assertEquals(60, catalog.findByName("Vorkath").get(0).getCount());
+        assertTrue(catalog.findBySaveTime(null, 0, 150).isEmpty());
+    }
+
+    @Test
+    public void readsBackAddsAndRemoves() throws Exception {
+        add("Vorkath(50)", ClipCategory.BOSS_KILLS, 100);
+        final Path pet = add("Pet", ClipCategory.PETS, 200);
+        add("Vorkath(51)", ClipCategory.BOSS_KILLS, 300);
+        catalog.remove(pet);
+        catalog.close();
+
+        final ClipCatalog reloaded = new ClipCatalog(file);
+        reloaded.load();
+        assertEquals(2, reloaded.size());
+        assertEquals(Arrays.asList("Vorkath(50)", "Vorkath(51)"), fileNames(reloaded.findBySaveTime(null, 0, 1000)));
+        reloaded.close();
+    }
+
+    @Test
+    public void compactsAMostlyRemovedCatalog() throws Exception {
+        final List<Path> added = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            added.add(add("Vorkath(" + i + ")", ClipCategory.BOSS_KILLS, i));
+        }
+        for (Path clip : added.subList(0, 8)) {
+            catalog.remove(clip);
+        }
+        catalog.close();
+        final long size = Files.size(file);
+
+        final ClipCatalog reloaded = new ClipCatalog(file);
+        reloaded.load();
+        assertEquals(2, reloaded.size());
+        assertTrue("compacted from " + size + " to " + Files.size(file) + " bytes", Files.size(file) < size / 4);
+        reloaded.close();
+    }
+
+    @Test
+    public void keepsWhatWasWrittenBeforeATornRecord() throws Exception {
+        add("Vorkath(50)", ClipCategory.BOSS_KILLS, 100);
+        add("Pet", ClipCategory.PETS, 200);
+        catalog.close();
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        final ClipCatalog reloaded = new ClipCatalog(file);
+        reloaded.load();
+        assertEquals(Arrays.asList("Vorkath(50)"), fileNames(reloaded.findBySaveTime(null, 0, 1000)));
+        final Path kill = clips.resolve("Vorkath(51).mkv");
+        Files.write(kill, new byte[1]);
+        reloaded.add(kill, ClipCategory.BOSS_KILLS, "Vorkath(51)", 300);
+        reloaded.close();
+
+        // the torn record was dropped, so what is appended after it is read too
+        final ClipCatalog again = new ClipCatalog(file);
+        again.load();
+        assertEquals(Arrays.asList("Vorkath(50)", "Vorkath(51)"), fileNames(again.findBySaveTime(null, 0, 1000)));
+        again.close();
+    }
+
+    @Test
+    public void ignoresTheRestAfterACorruptRecord() throws Exception {
+        add("Vorkath(50)", ClipCategory.BOSS_KILLS, 100);
+        catalog.close();
+        final long firstRecord = Files.size(file);
+        catalog = new ClipCatalog(file);
+        add("Pet", ClipCategory.PETS, 200);
+        catalog.close();
+        final byte[] bytes = Files.readAllBytes(file);
+        bytes[(int) firstRecord + 5] ^= 1;
+        Files.write(file, bytes, StandardOpenOption.TRUNCATE_EXISTING);
+
+        final ClipCatalog reloaded = new ClipCatalog(file);
+        reloaded.load();
+        assertEquals(Arrays.asList("Vorkath(50)"), fileNames(reloaded.findBySaveTime(null, 0, 1000)));
+        reloaded.close();
+    }
+
+    /**
+     * Adds a clip of one byte, named after the trigger.
+     */
+    private Path add(String fileName, ClipCategory category, long savedMillis) throws IOException {
+        final Path clip = clips.resolve(fileName + ".mkv");
+        Files.write(clip, new byte[1]);
+        catalog.add(clip, category, fileName, savedMillis);
+        return clip;
+    }
+
+    private static List<String> fileNames(List<ClipCatalog.Entry> entries) {
+        final List<String> names = new ArrayList<>();
+        for (ClipCatalog.Entry entry : entries) {
+            final String fileName = Paths.get(entry.getPath()).getFileName().toString();
+            names.add(fileName.substring(0, fileName.length() - ".mkv".length()));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,76 @@
+package com.sirebringo.autoclip;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ClipCoalescerTest {
+    /**
+     * The default merge window.
+     */
+    private static final long MERGE_WINDOW_MILLIS = 1200;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final BlockingQueue<ClipRequest> saved = new LinkedBlockingQueue<>();
+    private final ClipCoalescer coalescer = new ClipCoalescer(scheduler, saved::add);
+
+    @After
+    public void stopScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void savesWithoutPostRollAtOnce() throws Exception {
+        final long start = System.nanoTime();
+        coalescer.submit(request("Pet"), 0, MERGE_WINDOW_MILLIS);
+
+        final ClipRequest request = saved.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals("Pet", request.getFileName());
+        assertTrue(millisSince(start) < MERGE_WINDOW_MILLIS / 2);
+    }
+
+    @Test
+    public void waitsForTheLongestPostRoll() throws Exception {
+        final long start = System.nanoTime();
+        coalescer.submit(request("Vorkath(123)"), 200, MERGE_WINDOW_MILLIS);
+        coalescer.submit(request("Death"), 3000, MERGE_WINDOW_MILLIS);
+
+        assertNull(saved.poll(2000, TimeUnit.MILLISECONDS));
+        final ClipRequest request = saved.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals(2, request.getTriggerCount());
+        assertTrue(millisSince(start) >= 3000);
+        assertEquals(0, coalescer.getPendingCount());
+    }
+
+    @Test
+    public void startsANewSaveAfterTheWindow() throws Exception {
+        coalescer.submit(request("Death"), 3000, 100);
+        Thread.sleep(200);
+        coalescer.submit(request("Pet"), 0, 100);
+
+        final ClipRequest request = saved.poll(1, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertEquals("Pet", request.getFileName());
+        assertEquals(1, coalescer.getPendingCount());
+        assertEquals("Death", coalescer.clear().get(0).getFileName());
+    }
+
+    private static ClipRequest request(String fileName) {
+        return ClipRequest.of(0, fileName, ClipCategory.PETS);
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,107 @@
+package com.sirebringo.autoclip;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClipPipelineTest {
+    private final List<String> processed = new ArrayList<>();
+    private final List<String> dropped = new ArrayList<>();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    public void dropsByTheOverflowPolicy() throws Exception {
+        final ClipPipeline pipeline = pipeline(1, ClipOverflowPolicy.DROP_NEWEST);
+        pipeline.submit(request("Running"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        pipeline.submit(request("Queued"));
+
+        assertFalse(pipeline.submit(request("Overflow")));
+        release.countDown();
+        pipeline.shutdown(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("Running", "Queued"), processed);
+        assertEquals(Arrays.asList("Overflow: the clip queue was full"), dropped);
+        assertEquals(1, pipeline.getDroppedCount());
+    }
+
+    @Test
+    public void dropsTheOldest() throws Exception {
+        final ClipPipeline pipeline = pipeline(1, ClipOverflowPolicy.DROP_OLDEST);
+        pipeline.submit(request("Running"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        pipeline.submit(request("Queued"));
+
+        assertTrue(pipeline.submit(request("Newest")));
+        release.countDown();
+        pipeline.shutdown(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("Running", "Newest"), processed);
+        assertEquals(Arrays.asList("Queued: the clip queue was full"), dropped);
+        assertEquals(1, pipeline.getDroppedCount());
+    }
+
+    @Test
+    public void mergesIntoTheLastQueuedSave() throws Exception {
+        final ClipPipeline pipeline = pipeline(1, ClipOverflowPolicy.MERGE);
+        pipeline.submit(request("Running"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        pipeline.submit(request("Queued"));
+
+        assertTrue(pipeline.submit(request("Merged")));
+        release.countDown();
+        pipeline.shutdown(5, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("Running", "Queued + Merged"), processed);
+        assertEquals(Collections.emptyList(), dropped);
+    }
+
+    @Test
+    public void dropsWhatIsStillQueuedAtShutdown() throws Exception {
+        final ClipPipeline pipeline = pipeline(4, ClipOverflowPolicy.DROP_NEWEST);
+        pipeline.submit(request("Running"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        pipeline.submit(request("First"));
+        pipeline.submit(request("Second"));
+
+        // the running job only ends when interrupted
+        pipeline.shutdown(100, TimeUnit.MILLISECONDS);
+
+        assertEquals(Collections.emptyList(), processed);
+        assertEquals(Arrays.asList("First: shutdown", "Second: shutdown"), dropped);
+        assertFalse(pipeline.submit(request("Late")));
+    }
+
+    private ClipPipeline pipeline(int capacity, ClipOverflowPolicy overflowPolicy) {
+        return new ClipPipeline(capacity, overflowPolicy, new ClipPipeline.Handler() {
+            @Override
+            public void process(ClipRequest request) throws InterruptedException {
+                started.countDown();
+                release.await();
+                synchronized (processed) {
+                    processed.add(request.getFileName());
+                }
+            }
+
+            @Override
+            public void dropped(ClipRequest request, String reason) {
+                synchronized (dropped) {
+                    dropped.add(request.getFileName() + ": " + reason);
+                }
+            }
+        }, new ClipMetrics());
+    }
+
+    private static ClipRequest request(String fileName) {
+        return ClipRequest.of(0, fileName, ClipCategory.PETS);
+    }
+}
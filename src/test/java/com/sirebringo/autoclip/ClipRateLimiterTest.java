@@ -0,0 +1,141 @@
+package com.sirebringo.autoclip;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ClipRateLimiterTest {
+    private static final long REFILL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long START_NANOS = 123_456_789L;
+
+    private final ClipRateLimiter limiter = new ClipRateLimiter();
+    private ConfigSnapshot config;
+
+    @Before
+    public void before() {
+        config = config(2, "", 1, 30);
+    }
+
+    @Test
+    public void allowsABurstThenOneClipPerRefill() {
+        assertEquals("Death", death(0));
+        assertEquals("Death", death(1));
+        assertNull(death(2));
+        assertNull(death(REFILL_NANOS - 1));
+        // two suppressed, then one clip earned back
+        assertEquals("Death (+2 more)", death(REFILL_NANOS));
+        assertNull(death(REFILL_NANOS + 1));
+        assertEquals("Death (+1 more)", death(2 * REFILL_NANOS));
+    }
+
+    @Test
+    public void refillsUpToTheBurst() {
+        assertEquals("Death", death(0));
+        assertEquals("Death", death(1));
+        // a long quiet spell earns the burst back, not more
+        final long later = 10 * REFILL_NANOS;
+        assertEquals("Death", death(later));
+        assertEquals("Death", death(later + 1));
+        assertNull(death(later + 2));
+    }
+
+    @Test
+    public void limitsEachCategoryOnItsOwn() {
+        config = config(2, "Deaths: 1", 1, 30);
+        assertEquals("Death", death(0));
+        assertNull(death(1));
+        assertEquals("Vorkath(1)", acquire("Vorkath(1)", ClipCategory.BOSS_KILLS, null, 2));
+        assertEquals("Vorkath(2)", acquire("Vorkath(2)", ClipCategory.BOSS_KILLS, null, 3));
+        assertNull(acquire("Vorkath(3)", ClipCategory.BOSS_KILLS, null, 4));
+    }
+
+    @Test
+    public void limitsEachPlayerOnItsOwn() {
+        assertEquals("Kill Zezima", acquire("Kill Zezima", ClipCategory.PVP_KILLS, "Zezima", 0));
+        assertNull(acquire("Kill Zezima", ClipCategory.PVP_KILLS, "Zezima", 1));
+        // the suppressed kill of the other player is counted in the category
+        assertEquals("Kill Lynx Titan (+1 more)", acquire("Kill Lynx Titan", ClipCategory.PVP_KILLS, "Lynx Titan", 2));
+        assertEquals("Kill Zezima", acquire("Kill Zezima", ClipCategory.PVP_KILLS, "Zezima", REFILL_NANOS));
+    }
+
+    @Test
+    public void neverLimitsManualClips() {
+        config = config(1, "", 1, 30);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Manual", acquire("Manual", ClipCategory.MANUAL, null, i));
+        }
+    }
+
+    @Test
+    public void noRefillTimeTurnsItOff() {
+        config = config(1, "", 1, 0);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Death", death(i));
+        }
+    }
+
+    @Test
+    public void resetFillsTheBuckets() {
+        death(0);
+        death(1);
+        assertNull(death(2));
+        limiter.reset();
+        assertEquals("Death", death(3));
+    }
+
+    @Test
+    public void ignoresTimeGoingBackwards() {
+        assertEquals("Death", death(REFILL_NANOS));
+        assertEquals("Death", death(REFILL_NANOS + 1));
+        // an older trigger handed over late neither earns nor costs a refill
+        assertNull(death(0));
+        assertEquals("Death (+1 more)", death(2 * REFILL_NANOS));
+    }
+
+    @Test
+    public void remembersABoundedNumberOfPlayers() {
+        config = config(1000, "", 1, 30);
+        for (int i = 0; i < 300; i++) {
+            final String player = "Player " + i;
+            assertEquals(player, acquire(player, ClipCategory.PVP_KILLS, player, i));
+        }
+        // too many players were clipped within the refill time to remember them all, so the first were forgotten
+        assertEquals("Player 0", acquire("Player 0", ClipCategory.PVP_KILLS, "Player 0", 300));
+        assertNull(acquire("Player 299", ClipCategory.PVP_KILLS, "Player 299", 301));
+    }
+
+    private String death(long nanos) {
+        return acquire("Death", ClipCategory.DEATHS, null, nanos);
+    }
+
+    private String acquire(String fileName, ClipCategory category, String player, long nanos) {
+        return limiter.acquire(fileName, category, player, START_NANOS + nanos, config);
+    }
+
+    private static ConfigSnapshot config(int burst, String burstPerCategory, int playerBurst, int refillSeconds) {
+        return ConfigSnapshot.of(new AutoClipConfig() {
+            @Override
+            public int clipBurst() {
+                return burst;
+            }
+
+            @Override
+            public String clipBurstPerCategory() {
+                return burstPerCategory;
+            }
+
+            @Override
+            public int playerClipBurst() {
+                return playerBurst;
+            }
+
+            @Override
+            public int clipRefill() {
+                return refillSeconds;
+            }
+        });
+    }
+}
@@ -0,0 +1,287 @@
+package com.sirebringo.autoclip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Trims the recordings in the test resources: six seconds of 128x72 H.264 at 15 frames per second with a keyframe
+ * every second and two B-frames, with mono AAC at 16 kbit/s, made with ffmpeg. The fragmented MP4 was written with
+ * {@code -movflags frag_keyframe+empty_moov+default_base_moof}.
+ * <p>
+ * The trimmed clips are read back here on their own, and played with {@code ffmpeg} if it is on the path.
+ */
+public class ClipTrimmerTest {
+    private static final long RECORDING_MILLIS = 6000;
+    private static final long KEYFRAME_INTERVAL_MILLIS = 1000;
+    // an audio track may run a frame or two past the video
+    private static final long AUDIO_SLACK_MILLIS = 200;
+    private static final long KEEP_MILLIS = 2500;
+
+    private Path directory;
+
+    @Before
+    public void before() throws IOException {
+        directory = Files.createTempDirectory("obs-auto-clip-test");
+    }
+
+    @Test
+    public void trimsMp4() throws Exception {
+        final Path clip = copy("recording.mp4");
+        assertEquals(ClipTrimmer.Result.TRIMMED, ClipTrimmer.trim(clip, KEEP_MILLIS));
+        assertMp4(clip, KEEP_MILLIS);
+        assertPlays(clip);
+    }
+
+    @Test
+    public void trimsFragmentedMp4() throws Exception {
+        final Path clip = copy("recording.frag.mp4");
+        assertEquals(ClipTrimmer.Result.TRIMMED, ClipTrimmer.trim(clip, KEEP_MILLIS));
+        assertFalse("written as a plain MP4", topLevelBox(Files.readAllBytes(clip), "moof") != null);
+        assertMp4(clip, KEEP_MILLIS);
+        assertPlays(clip);
+    }
+
+    @Test
+    public void trimsMkv() throws Exception {
+        final Path clip = copy("recording.mkv");
+        assertEquals(ClipTrimmer.Result.TRIMMED, ClipTrimmer.trim(clip, KEEP_MILLIS));
+        assertMkv(clip, KEEP_MILLIS);
+        assertPlays(clip);
+    }
+
+    @Test
+    public void leavesShortClips() throws Exception {
+        for (String name : Arrays.asList("recording.mp4", "recording.frag.mp4", "recording.mkv")) {
+            final Path clip = copy(name);
+            final byte[] original = Files.readAllBytes(clip);
+            assertEquals(name, ClipTrimmer.Result.NOT_NEEDED, ClipTrimmer.trim(clip, RECORDING_MILLIS + 1000));
+            assertArrayEquals(name, original, Files.readAllBytes(clip));
+        }
+    }
+
+    @Test
+    public void leavesOtherFiles() throws Exception {
+        final Path clip = directory.resolve("recording.flv");
+        Files.write(clip, new byte[]{'F', 'L', 'V', 1});
+        assertEquals(ClipTrimmer.Result.UNSUPPORTED, ClipTrimmer.trim(clip, KEEP_MILLIS));
+    }
+
+    private Path copy(String name) throws IOException {
+        final Path copy = directory.resolve(name);
+        try (InputStream in = ClipTrimmerTest.class.getResourceAsStream(name)) {
+            Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return copy;
+    }
+
+    /**
+     * Checks the movie is as long as asked, give or take a keyframe interval, and every video track starts with a sync
+     * sample.
+     */
+    static void assertMp4(Path clip, long keepMillis) throws IOException {
+        final byte[] file = Files.readAllBytes(clip);
+        final ByteBuffer moov = topLevelBox(file, "moov");
+        final ByteBuffer mvhd = child(moov, "mvhd");
+        final boolean longTimes = mvhd.get(0) == 1;
+        final long timescale = mvhd.getInt(longTimes ? 20 : 12) & 0xFFFFFFFFL;
+        final long duration = longTimes ? mvhd.getLong(24) : mvhd.getInt(16) & 0xFFFFFFFFL;
+        assertDuration(duration * 1000 / timescale, keepMillis);
+
+        boolean video = false;
+        for (ByteBuffer trak : children(moov, "trak")) {
+            final ByteBuffer mdia = child(trak, "mdia");
+            final ByteBuffer hdlr = child(mdia, "hdlr");
+            if (!new String(bytes(hdlr, 8, 4), StandardCharsets.ISO_8859_1).equals("vide")) {
+                continue;
+            }
+            video = true;
+            final ByteBuffer stss = child(child(child(mdia, "minf"), "stbl"), "stss");
+            assertTrue("starts with a sync sample", stss == null || stss.getInt(4) > 0 && stss.getInt(8) == 1);
+        }
+        assertTrue("has a video track", video);
+    }
+
+    /**
+     * Checks the segment is as long as asked, give or take a keyframe interval, and its first video block is a
+     * keyframe.
+     */
+    static void assertMkv(Path clip, long keepMillis) throws IOException {
+        final ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(clip));
+        final ByteBuffer segment = ebmlChild(file, 0x18538067L);
+        final ByteBuffer info = ebmlChild(segment, 0x1549A966L);
+        final ByteBuffer scale = ebmlChild(info, 0x2AD7B1L);
+        final long timecodeScale = scale != null ? ebmlUnsigned(scale) : 1_000_000;
+        final ByteBuffer duration = ebmlChild(info, 0x4489L);
+        final double durationTicks = duration.remaining() == 4 ? duration.getFloat(duration.position())
+                : duration.getDouble(duration.position());
+        assertDuration((long) (durationTicks * timecodeScale / 1_000_000), keepMillis);
+
+        long videoTrack = -1;
+        final ByteBuffer tracks = ebmlChild(segment, 0x1654AE6BL);
+        while (tracks.hasRemaining()) {
+            final long id = readVint(tracks, true);
+            final ByteBuffer element = slice(tracks, readVint(tracks, false));
+            if (id == 0xAEL && ebmlUnsigned(ebmlChild(element.duplicate(), 0x83L)) == 1) {
+                videoTrack = ebmlUnsigned(ebmlChild(element.duplicate(), 0xD7L));
+            }
+        }
+        assertTrue("has a video track", videoTrack > 0);
+
+        final ByteBuffer cluster = ebmlChild(segment, 0x1F43B675L);
+        while (cluster.hasRemaining()) {
+            final long id = readVint(cluster, true);
+            final ByteBuffer element = slice(cluster, readVint(cluster, false));
+            if (id == 0xA3L && readVint(element, false) == videoTrack) {
+                assertTrue("starts with a keyframe", (element.get(element.position() + 2) & 0x80) != 0);
+                return;
+            }
+        }
+        throw new AssertionError("no video block in the first cluster");
+    }
+
+    private static void assertDuration(long durationMillis, long keepMillis) {
+        assertTrue("lasts " + durationMillis + " ms", durationMillis >= keepMillis
+                && durationMillis <= keepMillis + KEYFRAME_INTERVAL_MILLIS + AUDIO_SLACK_MILLIS);
+    }
+
+    /**
+     * Decodes the whole clip with {@code ffmpeg}, if it is installed.
+     */
+    static void assertPlays(Path clip) throws Exception {
+        final Process process;
+        try {
+            process = new ProcessBuilder("ffmpeg", "-hide_banner", "-v", "error", "-i", clip.toString(), "-f", "null", "-")
+                    .redirectErrorStream(true)
+                    .start();
+        } catch (IOException e) {
+            Assume.assumeNoException("ffmpeg is not installed", e);
+            return;
+        }
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        try (InputStream in = process.getInputStream()) {
+            for (int read; (read = in.read(buffer)) >= 0; ) {
+                output.write(buffer, 0, read);
+            }
+        }
+        assertTrue("ffmpeg finished", process.waitFor(30, TimeUnit.SECONDS));
+        final String errors = new String(output.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals(errors, 0, process.exitValue());
+        assertEquals("decode errors", "", errors.trim());
+    }
+
+    private static ByteBuffer topLevelBox(byte[] file, String type) {
+        return child(ByteBuffer.wrap(file), type);
+    }
+
+    private static ByteBuffer child(ByteBuffer parent, String type) {
+        for (ByteBuffer box : children(parent, type)) {
+            return box;
+        }
+        return null;
+    }
+
+    /**
+     * @return The payloads of the boxes of the type right inside the parent.
+     */
+    private static List<ByteBuffer> children(ByteBuffer parent, String type) {
+        final List<ByteBuffer> boxes = new ArrayList<>();
+        final ByteBuffer buffer = parent.duplicate();
+        while (buffer.remaining() >= 8) {
+            final int start = buffer.position();
+            long size = buffer.getInt() & 0xFFFFFFFFL;
+            final String boxType = new String(bytes(buffer, buffer.position(), 4), StandardCharsets.ISO_8859_1);
+            buffer.position(buffer.position() + 4);
+            if (size == 1) {
+                size = buffer.getLong();
+            } else if (size == 0) {
+                size = buffer.limit() - start;
+            }
+            final int end = (int) (start + size);
+            if (boxType.equals(type)) {
+                final ByteBuffer box = buffer.duplicate();
+                box.limit(end);
+                boxes.add(box.slice());
+            }
+            buffer.position(end);
+        }
+        return boxes;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer, int at, int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(at + i);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return The first element with the id right inside the parent, read from its position, or {@code null}.
+     */
+    private static ByteBuffer ebmlChild(ByteBuffer parent, long wanted) {
+        final ByteBuffer buffer = parent.duplicate();
+        while (buffer.hasRemaining()) {
+            final long id = readVint(buffer, true);
+            final ByteBuffer element = slice(buffer, readVint(buffer, false));
+            if (id == wanted) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The next {@code size} bytes, or the rest of the buffer for an unknown size, moving past them.
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, long size) {
+        final ByteBuffer element = buffer.duplicate();
+        final int end = size < 0 ? buffer.limit() : (int) (buffer.position() + size);
+        element.limit(end);
+        buffer.position(end);
+        return element;
+    }
+
+    private static long ebmlUnsigned(ByteBuffer element) {
+        long value = 0;
+        for (int i = element.position(); i < element.limit(); i++) {
+            value = value << 8 | element.get(i) & 0xFF;
+        }
+        return value;
+    }
+
+    /**
+     * @param keepMarker Whether to keep the length marker, as element ids do.
+     * @return The value, or -1 for an unknown size.
+     */
+    private static long readVint(ByteBuffer buffer, boolean keepMarker) {
+        final int first = buffer.get() & 0xFF;
+        final int length = Integer.numberOfLeadingZeros(first) - 23;
+        long value = keepMarker ? first : first & (0xFF >> length);
+        boolean allOnes = value == (0xFF >> length);
+        for (int i = 1; i < length; i++) {
+            final int next = buffer.get() & 0xFF;
+            value = value << 8 | next;
+            allOnes &= next == 0xFF;
+        }
+        return !keepMarker && allOnes ? -1 : value;
+    }
+}
@@ -0,0 +1,81 @@
+package com.sirebringo.autoclip;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CustomTriggerRulesTest {
+    @Test
+    public void expandsTheGroupsOfTheMatchingRule() {
+        final CustomTriggerRules rules = CustomTriggerRules.parse("Welcome to (\\w+) => Logins/$1\n"
+                + "You found (\\d+) (\\w+) => Finds/$2 x$1 $$");
+        final CustomTriggerRules.Match match = rules.match("You found 3 keys");
+        assertEquals("Finds", match.getSubDirectory());
+        assertEquals("keys x3 $", match.getFileName());
+    }
+
+    @Test
+    public void sanitizesTheExpandedFileName() {
+        final CustomTriggerRules rules = CustomTriggerRules.parse("Said (.+) => Quotes/$1");
+        assertEquals("abcd 50%%", rules.match("Said ../a:b?\"c\"/d 50% ..").getFileName());
+        assertEquals("Quotes", rules.match("Said ../../x").getSubDirectory());
+        assertEquals("x", rules.match("Said ../../x").getFileName());
+        assertEquals("", rules.match("Said ..").getFileName());
+    }
+
+    @Test
+    public void firstRuleInTheListWins() {
+        final CustomTriggerRules rules = CustomTriggerRules.parse("dragon (\\w+) => Dragon/$1\n"
+                + "You receive => Receive/$0");
+        // the second rule matches earlier in the message
+        assertEquals("Dragon", rules.match("You receive a dragon spear").getSubDirectory());
+        assertEquals("Receive", rules.match("You receive a rune spear").getSubDirectory());
+    }
+
+    @Test
+    public void firstRuleInTheListWinsAtTheSamePosition() {
+        final CustomTriggerRules rules = CustomTriggerRules.parse("You => First\nYou receive => Second");
+        assertEquals("First", rules.match("You receive a dragon spear").getFileName());
+    }
+
+    @Test
+    public void skipsNumberedBackreferences() {
+        final CustomTriggerRules rules = CustomTriggerRules.parse("(\\w+) is \\1 => Echo/$1\n"
+                + "(?<word>\\w+) or \\k<word> => Named/$1\n"
+                + "\\Q\\1\\E => Quoted");
+        assertNull(rules.match("same is same"));
+        assertEquals("this", rules.match("this or this").getFileName());
+        assertEquals("Quoted", rules.match("a literal \\1").getFileName());
+    }
+
+    @Test
+    public void namedBackreferenceOfALaterRuleUsesItsOwnGroup() {
+        final CustomTriggerRules rules = CustomTriggerRules.parse("(a)(b) => First\n"
+                + "(?<x>\\w)\\k<x> => Double/$1");
+        final CustomTriggerRules.Match match = rules.match("keep");
+        assertEquals("Double", match.getSubDirectory());
+        assertEquals("e", match.getFileName());
+    }
+
+    @Test
+    public void skipsInvalidRules() {
+        final CustomTriggerRules rules = CustomTriggerRules.parse("# comment\n\nno separator\n([ => Broken\n"
+                + "ok => Fine");
+        assertEquals("Fine", rules.match("ok").getFileName());
+        assertTrue(CustomTriggerRules.parse("# only a comment").isEmpty());
+    }
+
+    @Test
+    public void disablesARuleThatRunsOutOfBudget() {
+        final CustomTriggerRules rules = CustomTriggerRules.parse("((a+)+)+b => Slow\nfast => Fast");
+        assertEquals("Slow", rules.match("aab fast").getFileName());
+        final StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            message.append('a');
+        }
+        assertNull(rules.match(message.toString()));
+        assertEquals("Fast", rules.match("aab fast").getFileName());
+    }
+}
@@ -0,0 +1,141 @@
+package com.sirebringo.autoclip;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DiskQuotaManagerTest {
+    private static final long MEGABYTE = 1024 * 1024;
+    private static final long TIMEOUT_MILLIS = 10_000;
+    // a few polls of the manager, for what it should not delete
+    private static final long SETTLE_MILLIS = 2_000;
+
+    private Path root;
+    private ClipCatalog catalog;
+    private DiskQuotaManager manager;
+
+    @Before
+    public void before() throws IOException {
+        root = Files.createTempDirectory("obs-auto-clip-test");
+        catalog = new ClipCatalog(Files.createTempDirectory("obs-auto-clip-test").resolve("clips.catalog"));
+    }
+
+    @After
+    public void after() throws Exception {
+        if (manager != null) {
+            manager.stop(5, TimeUnit.SECONDS);
+        }
+        catalog.close();
+    }
+
+    @Test
+    public void deletesTheOldestClipsOverTheFolderLimit() throws Exception {
+        final Path kill = clip(ClipCategory.BOSS_KILLS, "Vorkath(1).mkv", 1, 50);
+        final Path pet = clip(ClipCategory.PETS, "Pet.mkv", 1, 40);
+        final Path[] kept = {
+                clip(ClipCategory.BOSS_KILLS, "Vorkath(2).mkv", 1, 30),
+                clip(ClipCategory.PETS, "Pet 2.mkv", 1, 20),
+                clip(ClipCategory.BOSS_KILLS, "Vorkath(3).mkv", 1, 10)};
+        start("clipFolderLimit", "3");
+
+        awaitDeleted(kill, pet);
+        assertExist(kept);
+        assertEquals(3, catalog.size());
+    }
+
+    @Test
+    public void deletesTheLowestPriorityClipsFirst() throws Exception {
+        final Path death = clip(ClipCategory.DEATHS, "Death.mkv", 1, 10);
+        final Path pet = clip(ClipCategory.PETS, "Pet.mkv", 1, 50);
+        final Path kill = clip(ClipCategory.BOSS_KILLS, "Vorkath(1).mkv", 1, 30);
+        final Path loot = clip(ClipCategory.LOOT_VALUE, "Loot Vorkath (3,580,000 coins).mkv", 1, 20);
+        start("clipFolderLimit", "2", "quotaEviction", QuotaEvictionPolicy.LOWEST_PRIORITY_FIRST.name());
+
+        awaitDeleted(death, kill);
+        assertExist(pet, loot);
+    }
+
+    @Test
+    public void keepsEachCategoryWithinItsLimit() throws Exception {
+        final Path oldest = clip(ClipCategory.PETS, "Pet.mkv", 1, 50);
+        final Path older = clip(ClipCategory.PETS, "Pet 2.mkv", 1, 40);
+        final Path newest = clip(ClipCategory.PETS, "Pet 3.mkv", 1, 30);
+        final Path kill = clip(ClipCategory.BOSS_KILLS, "Vorkath(1).mkv", 5, 60);
+        start("categoryFolderLimits", "Pets: 1");
+
+        awaitDeleted(oldest, older);
+        assertExist(newest, kill);
+    }
+
+    @Test
+    public void onlyDeletesClipsAndThumbnails() throws Exception {
+        final Path video = clip(ClipCategory.BOSS_KILLS, "Vorkath(1).mkv", 1, 60);
+        final Path thumbnail = clip(ClipCategory.BOSS_KILLS, "Vorkath(1)." + ClipThumbnails.FORMAT, 1, 60);
+        final Path notes = clip(ClipCategory.BOSS_KILLS, "notes.txt", 5, 120);
+        final Path noExtension = clip(ClipCategory.BOSS_KILLS, "mkv", 5, 120);
+        final Path manual = clip(ClipCategory.MANUAL, "Manual.mkv", 5, 120);
+        // OBS or the plugin may still be writing it
+        final Path recent = clip(ClipCategory.BOSS_KILLS, "Vorkath(2).mkv", 1, 0);
+        final Path outside = root.resolve("Replay.mkv");
+        sparseFile(outside, 5, 120);
+        start("clipFolderLimit", "1");
+
+        awaitDeleted(video, thumbnail);
+        assertExist(notes, noExtension, manual, recent, outside);
+    }
+
+    private void start(String... settings) {
+        final Properties properties = new Properties();
+        for (int i = 0; i < settings.length; i += 2) {
+            properties.setProperty(settings[i], settings[i + 1]);
+        }
+        manager = new DiskQuotaManager(root::toString, catalog,
+                ConfigSnapshot.of(RecordingTriggerContext.config(properties)));
+        manager.start();
+    }
+
+    /**
+     * Creates a clip of the size, last changed some minutes ago, and adds it to the catalog.
+     */
+    private Path clip(ClipCategory category, String fileName, int megabytes, int ageMinutes) throws IOException {
+        final Path clip = root.resolve(category.getDirectoryName()).resolve(fileName);
+        Files.createDirectories(clip.getParent());
+        sparseFile(clip, megabytes, ageMinutes);
+        catalog.add(clip, category, fileName, Files.getLastModifiedTime(clip).toMillis());
+        return clip;
+    }
+
+    private static void sparseFile(Path file, int megabytes, int ageMinutes) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw")) {
+            out.setLength(megabytes * MEGABYTE);
+        }
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(ageMinutes)));
+    }
+
+    private static void awaitDeleted(Path... files) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        for (Path file : files) {
+            while (Files.exists(file)) {
+                assertTrue(file + " deleted", System.currentTimeMillis() < deadline);
+                Thread.sleep(20);
+            }
+        }
+        Thread.sleep(SETTLE_MILLIS);
+    }
+
+    private static void assertExist(Path... files) {
+        for (Path file : files) {
+            assertTrue(file + " kept", Files.exists(file));
+        }
+    }
+}
@@ -0,0 +1,647 @@
+package com.sirebringo.autoclip;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * An in-process stand-in for the obs-websocket v5 server, just enough of it to drive {@link ObsConnection}.
+ * <p>
+ * It speaks plain RFC 6455 websocket over a {@link ServerSocket}, does the Hello/Identify handshake with the v5
+ * challenge/salt authentication, and answers {@code GetOutputSettings}, {@code SetOutputSettings},
+ * {@code SaveReplayBuffer} and {@code Sleep}, alone or in request batches. A save writes an empty file named after
+ * the replay buffer output settings and emits {@code ReplayBufferSaved}.
+ * <p>
+ * Like OBS, the file name is taken from the output settings a little after the save request
+ * ({@link #setFileNameDelayMillis}), so a client that restores the settings too early saves into the wrong place.
+ * Latency, jitter, failures and dropped connections can be dialled in for load testing.
+ */
+final class MockObsServer implements Closeable {
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final String SUBPROTOCOL = "obswebsocket.json";
+    private static final int RPC_VERSION = 1;
+    private static final int EVENT_INTENT_OUTPUTS = 1 << 6;
+
+    private static final int OP_HELLO = 0;
+    private static final int OP_IDENTIFY = 1;
+    private static final int OP_IDENTIFIED = 2;
+    private static final int OP_EVENT = 5;
+    private static final int OP_REQUEST = 6;
+    private static final int OP_REQUEST_RESPONSE = 7;
+    private static final int OP_REQUEST_BATCH = 8;
+    private static final int OP_REQUEST_BATCH_RESPONSE = 9;
+
+    private static final int STATUS_SUCCESS = 100;
+    private static final int STATUS_UNKNOWN_REQUEST_TYPE = 204;
+    private static final int STATUS_OUTPUT_NOT_RUNNING = 501;
+    private static final int STATUS_REQUEST_PROCESSING_FAILED = 702;
+    private static final int CLOSE_AUTHENTICATION_FAILED = 4009;
+
+    private static final DateTimeFormatter OBS_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH-mm-ss");
+
+    private final ServerSocket serverSocket;
+    private final String password;
+    private final Path outputDirectory;
+    private final Thread acceptThread;
+    private final ScheduledExecutorService eventScheduler;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    private volatile JsonObject replayBufferSettings;
+
+    @Getter
+    private final List<String> savedReplayPaths = new CopyOnWriteArrayList<>();
+    @Getter
+    private final AtomicLong requestCount = new AtomicLong();
+    @Getter
+    private final AtomicLong failedRequestCount = new AtomicLong();
+
+    /**
+     * Time taken to answer each request.
+     */
+    @Setter
+    private volatile long latencyMillis;
+    /**
+     * A random extra delay of up to this many milliseconds on top of {@link #latencyMillis}.
+     */
+    @Setter
+    private volatile long jitterMillis;
+    /**
+     * Chance between 0 and 1 that a request fails with a processing error.
+     */
+    @Setter
+    private volatile double failureRate;
+    /**
+     * Every request of this type fails with a processing error, or none if {@code null}.
+     */
+    @Setter
+    private volatile String failingRequestType;
+    /**
+     * Chance between 0 and 1 that the connection is dropped instead of answering a request.
+     */
+    @Setter
+    private volatile double disconnectRate;
+    /**
+     * Time between a save request and OBS picking the file name from the output settings.
+     */
+    @Setter
+    private volatile long fileNameDelayMillis = 100;
+    /**
+     * Time between a save request and the {@code ReplayBufferSaved} event.
+     */
+    @Setter
+    private volatile long saveDurationMillis = 300;
+    @Setter
+    private volatile boolean replayBufferActive = true;
+
+    /**
+     * @param password        The server password, or {@code null} to skip authentication.
+     * @param outputDirectory Where saved replays are written.
+     */
+    MockObsServer(String password, Path outputDirectory) throws IOException {
+        this.password = password;
+        this.outputDirectory = outputDirectory;
+        this.replayBufferSettings = defaultSettings(outputDirectory);
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.eventScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "mock-obs-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.acceptThread = new Thread(this::acceptLoop, "mock-obs-accept");
+        this.acceptThread.setDaemon(true);
+        this.acceptThread.start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return How many clients have connected since the server started.
+     */
+    int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    JsonObject getReplayBufferSettings() {
+        return replayBufferSettings.deepCopy();
+    }
+
+    /**
+     * Changes a replay buffer output setting as if the user changed it in the OBS settings, which OBS reports to no
+     * client.
+     */
+    void changeSettingAsUser(String key, String value) {
+        final JsonObject settings = replayBufferSettings.deepCopy();
+        settings.addProperty(key, value);
+        replayBufferSettings = settings;
+    }
+
+    /**
+     * Drops every open connection without a close handshake, as if OBS had crashed.
+     */
+    void disconnectAll() {
+        for (Connection connection : connections) {
+            connection.abort();
+        }
+    }
+
+    /**
+     * Saves the replay buffer under the user's own settings, as if the user saved it from OBS, and reports it to every
+     * client.
+     */
+    void saveAsUser() {
+        final JsonObject settings = defaultSettings(outputDirectory);
+        eventScheduler.execute(() -> {
+            for (Connection connection : connections) {
+                writeReplay(connection, settings);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        disconnectAll();
+        eventScheduler.shutdownNow();
+        try {
+            acceptThread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static JsonObject defaultSettings(Path outputDirectory) {
+        final JsonObject settings = new JsonObject();
+        settings.addProperty("path", outputDirectory.toString());
+        settings.addProperty("directory", outputDirectory.toString());
+        settings.addProperty("format", "Replay %CCYY-%MM-%DD %hh-%mm-%ss");
+        settings.addProperty("extension", "mkv");
+        settings.addProperty("max_time_sec", 30);
+        return settings;
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+
+            connectionCount.incrementAndGet();
+            final Connection connection = new Connection(socket);
+            connections.add(connection);
+            final Thread thread = new Thread(connection, "mock-obs-connection-" + connectionCount.get());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Handles one request, the way OBS would.
+     *
+     * @return The request status and response data, as {@code [status, data]}.
+     */
+    private JsonObject[] handle(Connection connection, String requestType, JsonObject requestData) throws InterruptedException {
+        requestCount.incrementAndGet();
+        simulateLatency();
+
+        if (requestType.equals(failingRequestType)
+                || !"Sleep".equals(requestType) && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            failedRequestCount.incrementAndGet();
+            return new JsonObject[]{status(STATUS_REQUEST_PROCESSING_FAILED, "Injected failure"), null};
+        }
+
+        switch (requestType) {
+            case "GetOutputSettings": {
+                final JsonObject data = new JsonObject();
+                data.add("outputSettings", replayBufferSettings.deepCopy());
+                return new JsonObject[]{status(STATUS_SUCCESS, null), data};
+            }
+            case "SetOutputSettings": {
+                final JsonObject settings = replayBufferSettings.deepCopy();
+                for (Map.Entry<String, JsonElement> entry : requestData.getAsJsonObject("outputSettings").entrySet()) {
+                    settings.add(entry.getKey(), entry.getValue());
+                }
+                replayBufferSettings = settings;
+                return new JsonObject[]{status(STATUS_SUCCESS, null), null};
+            }
+            case "SaveReplayBuffer":
+                if (!replayBufferActive) {
+                    return new JsonObject[]{status(STATUS_OUTPUT_NOT_RUNNING, "Replay buffer is not active."), null};
+                }
+                eventScheduler.schedule(() -> {
+                    final JsonObject settings = replayBufferSettings;
+                    eventScheduler.schedule(() -> writeReplay(connection, settings),
+                            Math.max(0, saveDurationMillis - fileNameDelayMillis), TimeUnit.MILLISECONDS);
+                }, fileNameDelayMillis, TimeUnit.MILLISECONDS);
+                return new JsonObject[]{status(STATUS_SUCCESS, null), null};
+            case "Sleep":
+                Thread.sleep(requestData.get("sleepMillis").getAsLong());
+                return new JsonObject[]{status(STATUS_SUCCESS, null), null};
+            default:
+                return new JsonObject[]{status(STATUS_UNKNOWN_REQUEST_TYPE, "Unknown request type: " + requestType), null};
+        }
+    }
+
+    private void simulateLatency() throws InterruptedException {
+        final long jitter = jitterMillis;
+        final long delay = latencyMillis + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    private void writeReplay(Connection connection, JsonObject settings) {
+        final String name = settings.get("format").getAsString()
+                .replace("%CCYY-%MM-%DD %hh-%mm-%ss", LocalDateTime.now().format(OBS_DATE));
+        final Path directory = Paths.get(settings.get("directory").getAsString());
+        Path replay = directory.resolve(name + "." + settings.get("extension").getAsString());
+        try {
+            Files.createDirectories(directory);
+            for (int i = 2; Files.exists(replay); i++) {
+                replay = directory.resolve(name + " (" + i + ")." + settings.get("extension").getAsString());
+            }
+            Files.createFile(replay);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write mock replay " + replay, e);
+        }
+
+        savedReplayPaths.add(replay.toString());
+        final JsonObject data = new JsonObject();
+        data.addProperty("savedReplayPath", replay.toString());
+        final JsonObject event = new JsonObject();
+        event.addProperty("eventType", "ReplayBufferSaved");
+        event.addProperty("eventIntent", EVENT_INTENT_OUTPUTS);
+        event.add("eventData", data);
+        connection.sendIfIdentified(OP_EVENT, event);
+    }
+
+    private static JsonObject status(int code, String comment) {
+        final JsonObject status = new JsonObject();
+        status.addProperty("result", code == STATUS_SUCCESS);
+        status.addProperty("code", code);
+        if (comment != null) {
+            status.addProperty("comment", comment);
+        }
+        return status;
+    }
+
+    private static String sha256Base64(String text) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String randomToken() {
+        final byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * One client connection: the HTTP upgrade, then websocket frames until either side goes away.
+     */
+    private final class Connection implements Runnable {
+        private final Socket socket;
+        private final String challenge = randomToken();
+        private final String salt = randomToken();
+
+        private OutputStream out;
+        private volatile boolean identified;
+
+        private Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try (Socket client = socket) {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+                out = client.getOutputStream();
+                if (!upgrade(in)) {
+                    return;
+                }
+
+                sendHello();
+                String message;
+                while ((message = readMessage(in)) != null) {
+                    if (!onMessage(JsonParser.parseString(message).getAsJsonObject())) {
+                        return;
+                    }
+                }
+            } catch (EOFException | SocketException e) {
+                // client went away or the connection was aborted
+            } catch (IOException e) {
+                throw new IllegalStateException("Mock OBS connection failed", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                connections.remove(this);
+            }
+        }
+
+        private boolean upgrade(InputStream in) throws IOException {
+            final List<String> headers = new ArrayList<>();
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                headers.add(line);
+            }
+
+            String key = null;
+            boolean obsProtocol = false;
+            for (String header : headers) {
+                final int colon = header.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                final String name = header.substring(0, colon).trim();
+                final String value = header.substring(colon + 1).trim();
+                if ("Sec-WebSocket-Key".equalsIgnoreCase(name)) {
+                    key = value;
+                } else if ("Sec-WebSocket-Protocol".equalsIgnoreCase(name)) {
+                    obsProtocol = value.contains(SUBPROTOCOL);
+                }
+            }
+
+            if (key == null) {
+                out.write("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                return false;
+            }
+
+            final String accept;
+            try {
+                accept = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1")
+                        .digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+
+            final StringBuilder response = new StringBuilder()
+                    .append("HTTP/1.1 101 Switching Protocols\r\n")
+                    .append("Upgrade: websocket\r\n")
+                    .append("Connection: Upgrade\r\n")
+                    .append("Sec-WebSocket-Accept: ").append(accept).append("\r\n");
+            if (obsProtocol) {
+                response.append("Sec-WebSocket-Protocol: ").append(SUBPROTOCOL).append("\r\n");
+            }
+            response.append("\r\n");
+            out.write(response.toString().getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            return true;
+        }
+
+        private void sendHello() throws IOException {
+            final JsonObject hello = new JsonObject();
+            hello.addProperty("obsWebSocketVersion", "5.0.1");
+            hello.addProperty("rpcVersion", RPC_VERSION);
+            if (password != null) {
+                final JsonObject authentication = new JsonObject();
+                authentication.addProperty("challenge", challenge);
+                authentication.addProperty("salt", salt);
+                hello.add("authentication", authentication);
+            }
+            send(OP_HELLO, hello);
+        }
+
+        /**
+         * @return {@code false} if the connection should be closed.
+         */
+        private boolean onMessage(JsonObject message) throws IOException, InterruptedException {
+            final int op = message.get("op").getAsInt();
+            final JsonObject data = message.getAsJsonObject("d");
+
+            if (!identified) {
+                if (op != OP_IDENTIFY) {
+                    return true;
+                }
+                if (password != null) {
+                    final String expected = sha256Base64(sha256Base64(password + salt) + challenge);
+                    final JsonElement authentication = data.get("authentication");
+                    if (authentication == null || !expected.equals(authentication.getAsString())) {
+                        sendClose(CLOSE_AUTHENTICATION_FAILED, "Authentication failed.");
+                        return false;
+                    }
+                }
+
+                identified = true;
+                final JsonObject identifiedData = new JsonObject();
+                identifiedData.addProperty("negotiatedRpcVersion", RPC_VERSION);
+                send(OP_IDENTIFIED, identifiedData);
+                return true;
+            }
+
+            if (op != OP_REQUEST && op != OP_REQUEST_BATCH) {
+                return true;
+            }
+            if (ThreadLocalRandom.current().nextDouble() < disconnectRate) {
+                abort();
+                return false;
+            }
+
+            if (op == OP_REQUEST) {
+                send(OP_REQUEST_RESPONSE, respond(data));
+            } else {
+                send(OP_REQUEST_BATCH_RESPONSE, respondToBatch(data));
+            }
+            return true;
+        }
+
+        private JsonObject respond(JsonObject request) throws InterruptedException {
+            final String requestType = request.get("requestType").getAsString();
+            final JsonObject requestData = request.has("requestData") && request.get("requestData").isJsonObject()
+                    ? request.getAsJsonObject("requestData")
+                    : new JsonObject();
+            final JsonObject[] result = handle(this, requestType, requestData);
+
+            final JsonObject response = new JsonObject();
+            response.addProperty("requestType", requestType);
+            if (request.has("requestId")) {
+                response.add("requestId", request.get("requestId"));
+            }
+            response.add("requestStatus", result[0]);
+            if (result[1] != null) {
+                response.add("responseData", result[1]);
+            }
+            return response;
+        }
+
+        private JsonObject respondToBatch(JsonObject batch) throws InterruptedException {
+            final boolean haltOnFailure = batch.has("haltOnFailure") && batch.get("haltOnFailure").getAsBoolean();
+            final JsonArray results = new JsonArray();
+            for (JsonElement request : batch.getAsJsonArray("requests")) {
+                final JsonObject response = respond(request.getAsJsonObject());
+                results.add(response);
+                if (haltOnFailure && !response.getAsJsonObject("requestStatus").get("result").getAsBoolean()) {
+                    break;
+                }
+            }
+
+            final JsonObject response = new JsonObject();
+            response.add("requestId", batch.get("requestId"));
+            response.add("results", results);
+            return response;
+        }
+
+        private void sendIfIdentified(int op, JsonObject data) {
+            if (!identified) {
+                return;
+            }
+            try {
+                send(op, data);
+            } catch (IOException e) {
+                // the client is gone, OBS drops the event as well
+            }
+        }
+
+        private void send(int op, JsonObject data) throws IOException {
+            final JsonObject message = new JsonObject();
+            message.addProperty("op", op);
+            message.add("d", data);
+            writeFrame(0x1, message.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void sendClose(int code, String reason) throws IOException {
+            final byte[] reasonBytes = reason.getBytes(StandardCharsets.UTF_8);
+            final byte[] payload = new byte[2 + reasonBytes.length];
+            payload[0] = (byte) (code >> 8);
+            payload[1] = (byte) code;
+            System.arraycopy(reasonBytes, 0, payload, 2, reasonBytes.length);
+            writeFrame(0x8, payload);
+        }
+
+        private void abort() {
+            try {
+                socket.setSoLinger(true, 0);
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+
+        private synchronized void writeFrame(int opcode, byte[] payload) throws IOException {
+            final ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.length + 10);
+            frame.write(0x80 | opcode);
+            if (payload.length < 126) {
+                frame.write(payload.length);
+            } else if (payload.length < 65536) {
+                frame.write(126);
+                frame.write(payload.length >> 8);
+                frame.write(payload.length);
+            } else {
+                frame.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    frame.write((int) ((long) payload.length >> shift));
+                }
+            }
+            frame.write(payload);
+            out.write(frame.toByteArray());
+            out.flush();
+        }
+
+        /**
+         * Reads the next text message, answering pings and reassembling fragments on the way.
+         *
+         * @return The message, or {@code null} once the client closed the connection.
+         */
+        private String readMessage(DataInputStream in) throws IOException {
+            final ByteArrayOutputStream message = new ByteArrayOutputStream();
+            while (true) {
+                final int first = in.readUnsignedByte();
+                final int second = in.readUnsignedByte();
+                final boolean fin = (first & 0x80) != 0;
+                final int opcode = first & 0x0F;
+
+                long length = second & 0x7F;
+                if (length == 126) {
+                    length = in.readUnsignedShort();
+                } else if (length == 127) {
+                    length = in.readLong();
+                }
+
+                final byte[] mask = new byte[4];
+                if ((second & 0x80) != 0) {
+                    in.readFully(mask);
+                }
+                final byte[] payload = new byte[(int) length];
+                in.readFully(payload);
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i & 3];
+                }
+
+                switch (opcode) {
+                    case 0x8:
+                        writeFrame(0x8, payload.length >= 2 ? new byte[]{payload[0], payload[1]} : new byte[0]);
+                        return null;
+                    case 0x9:
+                        writeFrame(0xA, payload);
+                        continue;
+                    case 0xA:
+                        continue;
+                    default:
+                        message.write(payload);
+                        if (fin) {
+                            return new String(message.toByteArray(), StandardCharsets.UTF_8);
+                        }
+                }
+            }
+        }
+
+        private String readLine(InputStream in) throws IOException {
+            final StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c < 0) {
+                    throw new EOFException();
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.toString();
+        }
+    }
+}
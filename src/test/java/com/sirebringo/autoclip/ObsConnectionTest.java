@@ -0,0 +1,113 @@
+package com.sirebringo.autoclip;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ObsConnectionTest {
+    private static final String PASSWORD = "test";
+    private static final long CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private Path outputDirectory;
+    private MockObsServer server;
+    private ObsConnection connection;
+
+    @Before
+    public void before() throws Exception {
+        outputDirectory = Files.createTempDirectory("obs-auto-clip-test");
+        server = new MockObsServer(PASSWORD, outputDirectory);
+        connection = new ObsConnection("localhost", server.getPort(), PASSWORD, new ClipMetrics());
+        final long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (connection.getReplayBufferDuration() < 0) {
+            assertTrue("connected to the mock OBS", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+        connection.disconnect();
+        server.close();
+    }
+
+    @Test
+    public void savesIntoTheClipDirectory() throws Exception {
+        final ClipRequest request = ClipRequest.of(1, "Vorkath(50)", ClipCategory.BOSS_KILLS);
+        final ObsConnection.SaveResult result = connection.save(request, ClipMode.OUTPUT_SETTINGS);
+
+        assertTrue(result.getFailureReason(), result.isSuccessful());
+        final Path saved = Paths.get(result.getSavedReplayPath());
+        assertEquals(outputDirectory.resolve(ClipCategory.BOSS_KILLS.getDirectoryName()), saved.getParent());
+        assertTrue(saved.getFileName().toString().startsWith("Vorkath(50) "));
+        assertEquals(outputDirectory.toString(), server.getReplayBufferSettings().get("directory").getAsString());
+    }
+
+    @Test
+    public void reportsTheOutputSettingsFailures() throws Exception {
+        server.setFailingRequestType("SetOutputSettings");
+        final ClipRequest request = ClipRequest.of(1, "Vorkath(51)", ClipCategory.BOSS_KILLS);
+        final ObsConnection.SaveResult result = connection.save(request, ClipMode.OUTPUT_SETTINGS);
+
+        assertTrue(result.getFailureReason(), result.isSuccessful());
+        assertEquals(outputDirectory, Paths.get(result.getSavedReplayPath()).getParent());
+        assertEquals("saved to the default folder, could not restore the replay buffer output settings",
+                result.getWarning());
+    }
+
+    @Test
+    public void reportsNothingWhenTheSaveGoesToPlan() throws Exception {
+        final ClipRequest request = ClipRequest.of(1, "Vorkath(52)", ClipCategory.BOSS_KILLS);
+        assertNull(connection.save(request, ClipMode.OUTPUT_SETTINGS).getWarning());
+    }
+
+    @Test
+    public void keepsTheSettingsTheUserChanged() throws Exception {
+        connection.save(ClipRequest.of(1, "Vorkath(53)", ClipCategory.BOSS_KILLS), ClipMode.OUTPUT_SETTINGS);
+        final Path changed = outputDirectory.resolve("Replays");
+        server.changeSettingAsUser("directory", changed.toString());
+        server.changeSettingAsUser("format", "Replay %hh-%mm-%ss");
+
+        final ObsConnection.SaveResult result = connection.save(ClipRequest.of(2, "Vorkath(54)", ClipCategory.BOSS_KILLS),
+                ClipMode.OUTPUT_SETTINGS);
+        assertTrue(result.getFailureReason(), result.isSuccessful());
+        assertNull(result.getWarning());
+        assertEquals(changed.toString(), server.getReplayBufferSettings().get("directory").getAsString());
+        assertEquals("Replay %hh-%mm-%ss", server.getReplayBufferSettings().get("format").getAsString());
+
+        final ObsConnection.SaveResult next = connection.save(ClipRequest.of(3, "Vorkath(55)", ClipCategory.BOSS_KILLS),
+                ClipMode.OUTPUT_SETTINGS);
+        assertEquals(changed.resolve(ClipCategory.BOSS_KILLS.getDirectoryName()),
+                Paths.get(next.getSavedReplayPath()).getParent());
+        assertEquals(changed.toString(), server.getReplayBufferSettings().get("directory").getAsString());
+    }
+
+    @Test
+    public void ignoresTheUsersOwnSave() throws Exception {
+        final ClipRequest request = ClipRequest.of(1, "Pet", ClipCategory.PETS);
+        final CompletableFuture<ObsConnection.SaveResult> save = CompletableFuture.supplyAsync(() -> {
+            try {
+                return connection.save(request, ClipMode.OUTPUT_SETTINGS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        // reported while the clip is being saved
+        Thread.sleep(50);
+        server.saveAsUser();
+
+        final ObsConnection.SaveResult result = save.get(5, TimeUnit.SECONDS);
+        assertTrue(result.getFailureReason(), result.isSuccessful());
+        assertEquals(outputDirectory.resolve(ClipCategory.PETS.getDirectoryName()),
+                Paths.get(result.getSavedReplayPath()).getParent());
+        assertEquals(2, server.getSavedReplayPaths().size());
+    }
+}
@@ -0,0 +1,238 @@
+package com.sirebringo.autoclip;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fires clip triggers at a {@link MockObsServer} for a while, through the same coalescer, pipeline and OBS connection
+ * the plugin uses, and then checks that
+ * <ul>
+ *     <li>every trigger ended up in exactly one save, and saves ran in trigger order,</li>
+ *     <li>every saved replay landed in its category directory under its clip name,</li>
+ *     <li>no replay OBS saved was lost, each one is the clip of exactly one save,</li>
+ *     <li>no threads are left behind after shutdown, and</li>
+ *     <li>the heap did not keep growing.</li>
+ * </ul>
+ * <p>
+ * Runs for {@code soak.minutes} at {@code soak.rate} triggers per hour, 10 minutes at 3600 per hour by default. The
+ * mock server can be made worse with the system properties {@code soak.latency}, {@code soak.jitter} (milliseconds),
+ * {@code soak.failureRate} and {@code soak.disconnectRate} (0 to 1).
+ */
+@Category(Soak.class)
+public class ObsSoakTest {
+    private static final String PASSWORD = "soak";
+    private static final int QUEUE_SIZE = 8;
+    private static final long MERGE_WINDOW_MILLIS = 200;
+    private static final long POST_ROLL_MILLIS = 200;
+    private static final double BURST_CHANCE = 0.2;
+    private static final long HEAP_SAMPLE_MILLIS = 30_000;
+    private static final long MAX_HEAP_GROWTH_BYTES = 16L * 1024 * 1024;
+    private static final long CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+
+    private final List<Outcome> outcomes = new CopyOnWriteArrayList<>();
+    private final List<String> failures = new ArrayList<>();
+
+    @Test
+    public void soak() throws Exception {
+        final long minutes = Long.getLong("soak.minutes", 10);
+        final long triggersPerHour = Long.getLong("soak.rate", 3600);
+
+        final List<String> failures = run(TimeUnit.MINUTES.toMillis(minutes), triggersPerHour);
+        assertTrue(String.join("\n", failures), failures.isEmpty());
+    }
+
+    private List<String> run(long durationMillis, long triggersPerHour) throws Exception {
+        final Path outputDirectory = Files.createTempDirectory("obs-auto-clip-soak");
+        final Set<Thread> threadsBefore = new HashSet<>(Thread.getAllStackTraces().keySet());
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        final MockObsServer server = new MockObsServer(PASSWORD, outputDirectory);
+        server.setLatencyMillis(Long.getLong("soak.latency", 5));
+        server.setJitterMillis(Long.getLong("soak.jitter", 20));
+        server.setFailureRate(Double.parseDouble(System.getProperty("soak.failureRate", "0.01")));
+        server.setDisconnectRate(Double.parseDouble(System.getProperty("soak.disconnectRate", "0")));
+
+        final ClipMetrics metrics = new ClipMetrics();
+        final ObsConnection connection = new ObsConnection("localhost", server.getPort(), PASSWORD, metrics);
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        final ClipPipeline pipeline = new ClipPipeline(QUEUE_SIZE, ClipOverflowPolicy.MERGE,
+                request -> {
+                    final ObsConnection.SaveResult result = connection.save(request, ClipMode.OUTPUT_SETTINGS);
+                    metrics.recordSave(result.isSuccessful());
+                    outcomes.add(new Outcome(request, result));
+                }, metrics);
+        final ClipCoalescer coalescer = new ClipCoalescer(scheduler, pipeline::submit);
+
+        final long connectDeadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (connection.getReplayBufferDuration() < 0) {
+            if (System.currentTimeMillis() > connectDeadline) {
+                throw new IllegalStateException("Could not connect to the mock OBS server");
+            }
+            Thread.sleep(10);
+        }
+
+        final long meanIntervalMillis = TimeUnit.HOURS.toMillis(1) / Math.max(1, triggersPerHour);
+        final ClipCategory[] categories = ClipCategory.values();
+        final long end = System.currentTimeMillis() + durationMillis;
+        long nextHeapSample = System.currentTimeMillis() + HEAP_SAMPLE_MILLIS;
+        long firstHeapSample = -1;
+        int triggers = 0;
+
+        while (System.currentTimeMillis() < end) {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final int burst = random.nextDouble() < BURST_CHANCE ? 2 + random.nextInt(3) : 1;
+            for (int i = 0; i < burst; i++) {
+                final ClipCategory category = categories[random.nextInt(categories.length)];
+                metrics.recordTrigger(category);
+                coalescer.submit(ClipRequest.of(triggers, "Soak " + triggers++, category), POST_ROLL_MILLIS,
+                        MERGE_WINDOW_MILLIS);
+            }
+
+            if (System.currentTimeMillis() >= nextHeapSample) {
+                final long used = usedHeapAfterGc(memory);
+                if (firstHeapSample < 0) {
+                    firstHeapSample = used;
+                } else if (used - firstHeapSample > MAX_HEAP_GROWTH_BYTES) {
+                    failures.add(String.format("heap grew from %d KiB to %d KiB", firstHeapSample / 1024, used / 1024));
+                    break;
+                }
+                nextHeapSample += HEAP_SAMPLE_MILLIS;
+            }
+
+            // exponential gaps, so bursts and lulls both happen
+            Thread.sleep(Math.max(1, (long) (-Math.log(1 - random.nextDouble()) * meanIntervalMillis)));
+        }
+
+        Thread.sleep(POST_ROLL_MILLIS * 2);
+        pipeline.shutdown(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        scheduler.shutdown();
+        scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        connection.disconnect();
+        server.close();
+
+        checkAccounting(triggers, pipeline.getDroppedCount());
+        checkOrdering();
+        checkPlacement(outputDirectory, server.getSavedReplayPaths());
+        checkLostSaves(server.getSavedReplayPaths());
+        checkThreads(threadsBefore);
+
+        System.out.printf("%d triggers, %d saves, %d requests to OBS (%d failed by injection), %d connection(s)%n",
+                triggers, outcomes.size(), server.getRequestCount().get(), server.getFailedRequestCount().get(),
+                server.getConnectionCount());
+        System.out.println(metrics.summary());
+        System.out.println("Replays in " + outputDirectory);
+        return failures;
+    }
+
+    private void checkAccounting(int triggers, long dropped) {
+        long saved = 0;
+        for (Outcome outcome : outcomes) {
+            saved += outcome.request.getTriggerCount();
+        }
+        if (saved + dropped != triggers) {
+            failures.add(String.format("%d triggers fired, but %d were saved and %d dropped", triggers, saved, dropped));
+        }
+    }
+
+    private void checkOrdering() {
+        for (int i = 1; i < outcomes.size(); i++) {
+            final Outcome outcome = outcomes.get(i);
+            if (outcome.request.getTriggeredNanos() - outcomes.get(i - 1).request.getTriggeredNanos() < 0) {
+                failures.add("save of " + outcome.request + " ran after a later trigger");
+            }
+        }
+    }
+
+    private void checkPlacement(Path outputDirectory, List<String> savedByServer) {
+        int savedToDefault = 0;
+        int previousIndex = -1;
+        for (Outcome outcome : outcomes) {
+            if (!outcome.result.isSuccessful()) {
+                continue;
+            }
+
+            final Path saved = Paths.get(outcome.result.getSavedReplayPath());
+            final int index = savedByServer.indexOf(saved.toString());
+            if (index <= previousIndex) {
+                failures.add("clip " + outcome.request + " was matched to replay " + saved + " out of order");
+            }
+            previousIndex = index;
+
+            if (saved.getParent().equals(outputDirectory)) {
+                // an injected SetOutputSettings failure, the plugin saves into the default folder then
+                savedToDefault++;
+            } else if (!saved.getParent().getFileName().toString().equals(outcome.request.getSubDirectory())
+                    || !saved.getFileName().toString().startsWith(outcome.request.getFileName() + " ")) {
+                failures.add("clip " + outcome.request + " was saved as " + saved);
+            }
+        }
+
+        if (savedToDefault > 0) {
+            System.out.println(savedToDefault + " clip(s) saved to the default folder after a failed SetOutputSettings");
+        }
+    }
+
+    private void checkLostSaves(List<String> savedByServer) {
+        final Set<String> claimed = new HashSet<>();
+        for (Outcome outcome : outcomes) {
+            if (outcome.result.isSuccessful() && !claimed.add(outcome.result.getSavedReplayPath())) {
+                failures.add("replay " + outcome.result.getSavedReplayPath() + " was taken for more than one clip");
+            }
+        }
+        for (String saved : savedByServer) {
+            if (!claimed.contains(saved)) {
+                failures.add("replay " + saved + " was saved by OBS but no clip got it");
+            }
+        }
+    }
+
+    private void checkThreads(Set<Thread> threadsBefore) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        List<Thread> leaked;
+        do {
+            Thread.sleep(100);
+            leaked = new ArrayList<>();
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.isAlive() && !threadsBefore.contains(thread)) {
+                    leaked.add(thread);
+                }
+            }
+        } while (!leaked.isEmpty() && System.currentTimeMillis() < deadline);
+
+        for (Thread thread : leaked) {
+            failures.add("thread left running after shutdown: " + thread.getName());
+        }
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static final class Outcome {
+        private final ClipRequest request;
+        private final ObsConnection.SaveResult result;
+
+        private Outcome(ClipRequest request, ObsConnection.SaveResult result) {
+            this.request = request;
+            this.result = result;
+        }
+    }
+}
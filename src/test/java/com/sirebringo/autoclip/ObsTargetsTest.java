@@ -0,0 +1,87 @@
+package com.sirebringo.autoclip;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ObsTargetsTest {
+    private static final String PASSWORD = "test";
+    private static final long CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long SLOW_SAVE_MILLIS = 2000;
+
+    private MockObsServer fast;
+    private MockObsServer slow;
+    private ObsTargets targets;
+
+    @Before
+    public void before() throws Exception {
+        fast = new MockObsServer(PASSWORD, Files.createTempDirectory("obs-auto-clip-test"));
+        slow = new MockObsServer(PASSWORD, Files.createTempDirectory("obs-auto-clip-test"));
+        slow.setSaveDurationMillis(SLOW_SAVE_MILLIS);
+        targets = ObsTargets.connect("localhost", fast.getPort(), PASSWORD,
+                "localhost:" + slow.getPort() + ":" + PASSWORD, 4, new ClipMetrics());
+        final long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        for (ObsConnection connection : targets.getConnections()) {
+            while (connection.getReplayBufferDuration() < 0) {
+                assertTrue("connected to the mock OBS", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+        targets.shutdown(5, TimeUnit.SECONDS);
+        targets.disconnect();
+        fast.close();
+        slow.close();
+    }
+
+    @Test
+    public void doesNotWaitForTheSlowestObs() throws Exception {
+        final BlockingQueue<List<ObsConnection.SaveResult>> finished = new LinkedBlockingQueue<>();
+        final long start = System.nanoTime();
+        targets.save(ClipRequest.of(1, "Vorkath(1)", ClipCategory.BOSS_KILLS), ClipMode.OUTPUT_SETTINGS, finished::add);
+        targets.save(ClipRequest.of(2, "Vorkath(2)", ClipCategory.BOSS_KILLS), ClipMode.OUTPUT_SETTINGS, finished::add);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < SLOW_SAVE_MILLIS);
+        assertNull(finished.poll());
+        for (int i = 0; i < 2; i++) {
+            final List<ObsConnection.SaveResult> results = finished.poll(10, TimeUnit.SECONDS);
+            assertNotNull(results);
+            assertEquals(2, results.size());
+            for (int target = 0; target < results.size(); target++) {
+                assertTrue(results.get(target).getFailureReason(), results.get(target).isSuccessful());
+                assertEquals(targets.getConnections().get(target), results.get(target).getConnection());
+            }
+        }
+    }
+
+    @Test
+    public void parsesTheAdditionalTargets() throws Exception {
+        final ObsTargets parsed = ObsTargets.connect("::1", 4455, "", "[::1]:4456:pass:word\n# comment\n"
+                + "[::1\nlocalhost:port\n[fe80::1]\nother", 4, new ClipMetrics());
+        try {
+            final List<String> names = new ArrayList<>();
+            for (ObsConnection connection : parsed.getConnections()) {
+                names.add(connection.getName());
+            }
+            assertEquals(Arrays.asList("[::1]:4455", "[::1]:4456", "[fe80::1]:4455", "other:4455"), names);
+        } finally {
+            parsed.shutdown(1, TimeUnit.SECONDS);
+            parsed.disconnect();
+        }
+    }
+}
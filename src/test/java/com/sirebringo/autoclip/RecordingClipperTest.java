@@ -0,0 +1,163 @@
+package com.sirebringo.autoclip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Cuts clips out of the recordings in the test resources, see {@link ClipTrimmerTest}.
+ */
+public class RecordingClipperTest {
+    private static final int PRE_ROLL_SECONDS = 1;
+    private static final int POST_ROLL_MILLIS = 500;
+    private static final long START_NANOS = 1_000_000_000L;
+
+    private Path directory;
+    private RecordingClipper clipper;
+    private final Map<ClipRequest, Path> cut = new LinkedHashMap<>();
+    private final Map<ClipRequest, String> failed = new LinkedHashMap<>();
+    private final List<String> finished = new ArrayList<>();
+
+    @Before
+    public void before() throws IOException {
+        directory = Files.createTempDirectory("obs-auto-clip-test");
+        final Properties properties = new Properties();
+        properties.setProperty("trimPreRoll", String.valueOf(PRE_ROLL_SECONDS));
+        properties.setProperty(AutoClipConfig.POST_ROLL_KEY, String.valueOf(POST_ROLL_MILLIS));
+        final ConfigSnapshot config = ConfigSnapshot.of(RecordingTriggerContext.config(properties));
+        clipper = new RecordingClipper(Runnable::run, () -> config, new RecordingClipper.Handler() {
+            @Override
+            public void cut(ClipRequest request, Path clip) {
+                cut.put(request, clip);
+            }
+
+            @Override
+            public void failed(ClipRequest request, String reason) {
+                failed.put(request, reason);
+            }
+
+            @Override
+            public void finished(Path recording, int cut, int failed) {
+                finished.add(recording.getFileName() + " " + cut + " " + failed);
+            }
+        });
+    }
+
+    @Test
+    public void cutsEveryMarkOfAnMkv() throws Exception {
+        final Path recording = copy("recording.mkv", "Recording.mkv");
+        clipper.mark(mark(1, "Pet", 1500));
+        clipper.mark(mark(2, "Vorkath(50)", 4500));
+        clipper.recordingStopped(recording.toString(), START_NANOS);
+
+        assertEquals(failed.toString(), 2, cut.size());
+        for (Path clip : cut.values()) {
+            ClipTrimmerTest.assertMkv(clip, PRE_ROLL_SECONDS * 1000 + POST_ROLL_MILLIS);
+            ClipTrimmerTest.assertPlays(clip);
+        }
+        assertEquals(directory.resolve(ClipCategory.PETS.getDirectoryName()), first(cut).getParent());
+        assertEquals("[Recording.mkv 2 0]", finished.toString());
+    }
+
+    @Test
+    public void cutsEveryMarkOfAnMp4() throws Exception {
+        for (String name : new String[]{"recording.mp4", "recording.frag.mp4"}) {
+            final Path recording = copy(name, name);
+            cut.clear();
+            clipper.mark(mark(1, "Pet", 1500));
+            clipper.mark(mark(2, "Vorkath(50)", 4500));
+            clipper.recordingStopped(recording.toString(), START_NANOS);
+
+            assertEquals(name + " " + failed, 2, cut.size());
+            for (Path clip : cut.values()) {
+                ClipTrimmerTest.assertMp4(clip, PRE_ROLL_SECONDS * 1000 + POST_ROLL_MILLIS);
+                ClipTrimmerTest.assertPlays(clip);
+            }
+        }
+    }
+
+    @Test
+    public void mergesOverlappingMarks() throws Exception {
+        final Path recording = copy("recording.mkv", "Recording.mkv");
+        // 1000 to 2500 ms and 1800 to 3300 ms
+        clipper.mark(mark(2, "Vorkath(50)", 2800));
+        clipper.mark(mark(1, "Pet", 2000));
+        clipper.recordingStopped(recording.toString(), START_NANOS);
+
+        assertEquals(failed.toString(), 1, cut.size());
+        final ClipRequest clip = cut.keySet().iterator().next();
+        assertEquals("Pet + Vorkath(50)", clip.getFileName());
+        assertEquals(START_NANOS + TimeUnit.MILLISECONDS.toNanos(2000), clip.getTriggeredNanos());
+        ClipTrimmerTest.assertMkv(first(cut), 3300 - 1000);
+    }
+
+    @Test
+    public void failsOnlyTheMarksThatCannotBeCut() throws Exception {
+        final Path recording = copy("recording.mkv", "Recording.mkv");
+        clipper.mark(mark(1, "Pet", 1500));
+        clipper.mark(mark(2, "Vorkath(50)", 20_000));
+        clipper.recordingStopped(recording.toString(), START_NANOS);
+
+        assertEquals(1, cut.size());
+        assertEquals("Pet", cut.keySet().iterator().next().getFileName());
+        assertEquals(1, failed.size());
+        assertTrue(failed.values().iterator().next(), failed.values().iterator().next().startsWith("The recording has nothing"));
+        assertEquals("[Recording.mkv 1 1]", finished.toString());
+    }
+
+    @Test
+    public void cutsTheFinishedPartOfAnUnfinishedMkv() throws Exception {
+        final Path recording = copy("recording.mkv", "Recording.mkv");
+        final byte[] bytes = Files.readAllBytes(recording);
+        Files.write(recording, Arrays.copyOf(bytes, bytes.length * 3 / 4));
+        clipper.mark(mark(1, "Pet", 1500));
+        clipper.recordingStopped(recording.toString(), START_NANOS);
+
+        assertEquals(failed.toString(), 1, cut.size());
+        ClipTrimmerTest.assertMkv(first(cut), PRE_ROLL_SECONDS * 1000 + POST_ROLL_MILLIS);
+    }
+
+    @Test
+    public void explainsRecordingsItCannotCut() throws Exception {
+        final Path recording = directory.resolve("Recording.mp4");
+        // the start of an MP4 whose moov was never written
+        Files.write(recording, new byte[]{0, 0, 0, 8, 'f', 't', 'y', 'p', 0, 0, 0, 8, 'm', 'd', 'a', 't'});
+        clipper.mark(mark(1, "Pet", 1500));
+        clipper.recordingStopped(recording.toString(), START_NANOS);
+
+        assertTrue(cut.isEmpty());
+        assertEquals("Recording.mp4 has no readable index, record to MKV to keep the clips of a recording that does not "
+                + "finish", failed.values().iterator().next());
+    }
+
+    private static ClipRequest mark(long id, String fileName, long offsetMillis) {
+        final ClipCategory category = fileName.equals("Pet") ? ClipCategory.PETS : ClipCategory.BOSS_KILLS;
+        return ClipRequest.of(id, fileName, category, category.getDirectoryName(),
+                START_NANOS + TimeUnit.MILLISECONDS.toNanos(offsetMillis));
+    }
+
+    private Path copy(String resource, String name) throws IOException {
+        final Path copy = directory.resolve(name);
+        try (InputStream in = RecordingClipperTest.class.getResourceAsStream(resource)) {
+            Files.copy(in, copy);
+        }
+        return copy;
+    }
+
+    private static Path first(Map<ClipRequest, Path> clips) {
+        return clips.values().iterator().next();
+    }
+}
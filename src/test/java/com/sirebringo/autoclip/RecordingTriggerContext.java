@@ -0,0 +1,146 @@
+package com.sirebringo.autoclip;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import lombok.Value;
+import net.runelite.client.config.ConfigItem;
+
+/**
+ * Runs all the plugin's triggers without the game or OBS, and records the saves they start instead of clipping.
+ */
+final class RecordingTriggerContext implements TriggerContext {
+    @Value
+    static class Save {
+        int tick;
+        ClipCategory category;
+        String subDirectory;
+        String fileName;
+
+        @Override
+        public String toString() {
+            return tick + "\t" + category + "\t" + subDirectory + "\t" + fileName;
+        }
+    }
+
+    private final ConfigSnapshot config;
+    private final ItemPriceCache prices;
+    private final ClipRateLimiter rateLimiter;
+    private final ClipTriggerRegistry registry;
+    private final TriggerDispatcher dispatcher;
+    private final List<Save> saves = new ArrayList<>();
+
+    /**
+     * @param rateLimited Whether the saves are rate limited like {@link AutoClipPlugin} does.
+     */
+    RecordingTriggerContext(ConfigSnapshot config, ItemPriceCache prices, boolean rateLimited) {
+        this.config = config;
+        this.prices = prices;
+        this.rateLimiter = rateLimited ? new ClipRateLimiter() : null;
+        registry = AutoClipPlugin.createTriggerRegistry(this);
+        // dispatch() reads neither the client nor the client thread
+        dispatcher = new TriggerDispatcher(null, null, null, registry, new ClipMetrics());
+    }
+
+    /**
+     * Hands the event to the triggers, as the trigger thread would.
+     */
+    void dispatch(TriggerEvent event) {
+        dispatcher.dispatch(event);
+    }
+
+    /**
+     * @return Every save started so far, in order.
+     */
+    List<Save> getSaves() {
+        return saves;
+    }
+
+    /**
+     * @return A snapshot at the given tick and region, in which every varbit a trigger declared is 1.
+     */
+    GameSnapshot game(int tick, int regionId) {
+        final int[] varbits = registry.getVarbits();
+        final int[] varbitValues = new int[varbits.length];
+        Arrays.fill(varbitValues, 1);
+        final int[] varcStrings = registry.getVarcStrings();
+        return new GameSnapshot(tick * 600_000_000L, tick, 302, regionId, false, new int[0], varbits, varbitValues,
+                varcStrings, new String[varcStrings.length], Collections.emptyMap());
+    }
+
+    @Override
+    public GameSnapshot getGame() {
+        return dispatcher.getGame();
+    }
+
+    @Override
+    public ConfigSnapshot getConfig() {
+        return config;
+    }
+
+    @Override
+    public ItemPriceCache getItemPrices() {
+        return prices;
+    }
+
+    @Override
+    public void save(String fileName, ClipCategory category, String subDirectory, String player) {
+        final GameSnapshot game = getGame();
+        final String name = rateLimiter != null
+                ? rateLimiter.acquire(fileName, category, player, game.getCapturedNanos(), config)
+                : fileName;
+        if (name != null) {
+            saves.add(new Save(game.getTick(), category, subDirectory, name));
+        }
+    }
+
+    /**
+     * @param properties {@link AutoClipConfig} values by key name, with or without the {@code clip.} prefix. Unset
+     *                   values are the defaults.
+     */
+    static AutoClipConfig config(Properties properties) {
+        final AutoClipConfig defaults = new AutoClipConfig() {
+        };
+        return (AutoClipConfig) Proxy.newProxyInstance(AutoClipConfig.class.getClassLoader(),
+                new Class<?>[]{AutoClipConfig.class}, (proxy, method, args) -> {
+                    final ConfigItem item = method.getAnnotation(ConfigItem.class);
+                    if (item != null) {
+                        String value = properties.getProperty(AutoClipConfig.GROUP + "." + item.keyName());
+                        if (value == null) {
+                            value = properties.getProperty(item.keyName());
+                        }
+                        if (value != null) {
+                            return parse(method, value.trim());
+                        }
+                    }
+                    try {
+                        return method.invoke(defaults, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object parse(Method method, String value) {
+        final Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return Boolean.parseBoolean(value);
+        }
+        if (type == int.class) {
+            return Integer.parseInt(value);
+        }
+        if (type.isEnum()) {
+            return Enum.valueOf((Class<? extends Enum>) type, value);
+        }
+        if (type == String.class) {
+            return value;
+        }
+        throw new IllegalArgumentException("Cannot set " + method.getName() + " in a test");
+    }
+}
@@ -0,0 +1,35 @@
+package com.sirebringo.autoclip;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayOutputSettingsTest {
+    @Test
+    public void isInDirectory() {
+        assertTrue(ReplayOutputSettings.isInDirectory("C:\\Videos\\Pets\\Pet 2024-01-01 10-00-00.mkv", "C:/Videos/Pets"));
+        assertTrue(ReplayOutputSettings.isInDirectory("C:/Videos//Pets/Pet.mkv", "c:/videos/pets/"));
+        assertFalse(ReplayOutputSettings.isInDirectory("C:/Videos/Replay 2024-01-01 10-00-00.mkv", "C:/Videos/Pets"));
+        assertFalse(ReplayOutputSettings.isInDirectory("C:/Videos/Pets/Older/Pet.mkv", "C:/Videos/Pets"));
+        assertFalse(ReplayOutputSettings.isInDirectory("Pet.mkv", "C:/Videos/Pets"));
+    }
+
+    @Test
+    public void isClipDirectory() {
+        final ReplayOutputSettings settings = settings("C:/Videos");
+        settings.clipPayload("Pets", "Pet %CCYY-%MM-%DD %hh-%mm-%ss");
+
+        assertTrue(settings.isClipDirectory(settings("C:\\Videos\\Pets\\")));
+        assertFalse("not handed out", settings.isClipDirectory(settings("C:/Videos/Deaths")));
+        assertFalse(settings.isClipDirectory(settings("C:/Videos")));
+        assertFalse(settings.isClipDirectory(settings("D:/Clips")));
+    }
+
+    private static ReplayOutputSettings settings(String directory) {
+        final JsonObject settings = new JsonObject();
+        settings.addProperty("directory", directory);
+        return ReplayOutputSettings.of(settings, "Replay %CCYY-%MM-%DD %hh-%mm-%ss");
+    }
+}
@@ -0,0 +1,8 @@
+package com.sirebringo.autoclip;
+
+/**
+ * JUnit category of the long running tests against {@link MockObsServer}. {@code gradle test} leaves them out,
+ * {@code gradle soak} runs them.
+ */
+public interface Soak {
+}
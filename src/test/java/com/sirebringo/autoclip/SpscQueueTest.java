@@ -0,0 +1,87 @@
+package com.sirebringo.autoclip;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpscQueueTest {
+    @Test
+    public void roundsTheCapacityUpToAPowerOfTwo() {
+        assertEquals(1, new SpscQueue<Integer>(1).capacity());
+        assertEquals(8, new SpscQueue<Integer>(5).capacity());
+        assertEquals(1024, new SpscQueue<Integer>(1024).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyCapacity() {
+        new SpscQueue<Integer>(0);
+    }
+
+    @Test
+    public void takesElementsInOrderUntilFull() {
+        final SpscQueue<Integer> queue = new SpscQueue<>(4);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse("full", queue.offer(4));
+        assertFalse(queue.isEmpty());
+
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue("room for one more", queue.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void wrapsAroundTheRing() {
+        final SpscQueue<Integer> queue = new SpscQueue<>(4);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(queue.offer(i));
+            assertTrue(queue.offer(-i));
+            assertEquals(Integer.valueOf(i), queue.poll());
+            assertEquals(Integer.valueOf(-i), queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void handsOverEveryElementBetweenThreads() throws Exception {
+        final int count = 1_000_000;
+        final SpscQueue<Integer> queue = new SpscQueue<>(64);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final Thread consumer = new Thread(() -> {
+            int expected = 0;
+            while (expected < count) {
+                final Integer element = queue.poll();
+                if (element == null) {
+                    Thread.yield();
+                } else if (element != expected++) {
+                    failure.set("got " + element + " instead of " + (expected - 1));
+                    return;
+                }
+            }
+        }, "spsc-consumer");
+        consumer.start();
+
+        for (int i = 0; i < count; i++) {
+            while (!queue.offer(i)) {
+                Thread.yield();
+            }
+        }
+        consumer.join(TimeUnit.SECONDS.toMillis(30));
+
+        assertFalse("consumer finished", consumer.isAlive());
+        assertNull(failure.get());
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,152 @@
+package com.sirebringo.autoclip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import net.runelite.http.api.item.ItemPrice;
+
+/**
+ * Replays a {@link TriggerEventRecorder} recording through all the plugin's triggers and its rate limits, as fast as
+ * they go and without the game or OBS, and lists the saves the plugin would have started.
+ * <p>
+ * Usage: {@code TriggerEventReplay <recording>}, with the system properties
+ * <ul>
+ *     <li>{@code replay.config}: a properties file of {@link AutoClipConfig} values by key name, with or without the
+ *     {@code clip.} prefix, e.g. the client's {@code settings.properties}. Unset values are the defaults,</li>
+ *     <li>{@code replay.expect}: a file of the saves the replay must start, as it prints them. Without it the saves are
+ *     printed,</li>
+ *     <li>{@code replay.write}: a file to write the saves to, to expect them in later replays,</li>
+ *     <li>{@code replay.prices}: a properties file of item prices by item id, for the loot value trigger. Without it
+ *     no item has a price, and</li>
+ *     <li>{@code replay.repeat}: how often to replay the recording for the throughput, defaults to 20.</li>
+ * </ul>
+ * Exits with status 1 if the saves are not the expected ones. {@link TriggerEventReplayTest} replays a recorded session
+ * this way in every build.
+ */
+public class TriggerEventReplay {
+    private final ConfigSnapshot config;
+    private final ItemPriceCache prices;
+
+    TriggerEventReplay(ConfigSnapshot config, ItemPriceCache prices) {
+        this.config = config;
+        this.prices = prices;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: TriggerEventReplay <recording>");
+            System.exit(2);
+        }
+
+        final List<TriggerEvent> events = TriggerEventRecorder.read(Paths.get(args[0]));
+        final TriggerEventReplay replay = new TriggerEventReplay(ConfigSnapshot.of(loadConfig(path("replay.config"))),
+                loadPrices(path("replay.prices")));
+        final List<String> saves = replay.run(events);
+
+        final String write = System.getProperty("replay.write");
+        if (write != null) {
+            Files.write(Paths.get(write), saves, StandardCharsets.UTF_8);
+        }
+
+        final int repeat = Integer.getInteger("replay.repeat", 20);
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < repeat; i++) {
+            replay.run(events);
+        }
+        final long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+        System.out.printf("%d events, %d saves, %.0f events per second%n", events.size(), saves.size(),
+                (double) events.size() * repeat * 1e9 / elapsedNanos);
+
+        final String expect = System.getProperty("replay.expect");
+        if (expect == null) {
+            saves.forEach(System.out::println);
+            System.exit(0);
+        }
+
+        final List<String> expected = Files.readAllLines(Paths.get(expect), StandardCharsets.UTF_8);
+        if (!expected.equals(saves)) {
+            System.err.println("FAILED: expected the saves");
+            expected.forEach(save -> System.err.println("  " + save));
+            System.err.println("but got");
+            saves.forEach(save -> System.err.println("  " + save));
+            System.exit(1);
+        }
+        System.out.println("Replay matched the expected saves");
+        System.exit(0);
+    }
+
+    /**
+     * Runs the events through new triggers, as the trigger thread would.
+     *
+     * @return Every save started, as {@code tick, category, subdirectory, file name} separated by tabs.
+     */
+    List<String> run(List<TriggerEvent> events) {
+        final RecordingTriggerContext context = new RecordingTriggerContext(config, prices, true);
+        for (TriggerEvent event : events) {
+            context.dispatch(event);
+        }
+
+        final List<String> saves = new ArrayList<>();
+        for (RecordingTriggerContext.Save save : context.getSaves()) {
+            saves.add(save.toString());
+        }
+        return saves;
+    }
+
+    /**
+     * @param file A properties file of config values, or {@code null} for the defaults.
+     */
+    static AutoClipConfig loadConfig(Path file) throws IOException {
+        final Properties properties = new Properties();
+        if (file != null) {
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            }
+        }
+        return RecordingTriggerContext.config(properties);
+    }
+
+    /**
+     * @param file A properties file of item prices by item id, or {@code null} for no prices.
+     */
+    static ItemPriceCache loadPrices(Path file) throws IOException {
+        final ItemPriceCache prices = new ItemPriceCache();
+        if (file == null) {
+            return prices;
+        }
+
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        final List<ItemPrice> list = new ArrayList<>();
+        for (String id : properties.stringPropertyNames()) {
+            final int itemId = Integer.parseInt(id.trim());
+            final int price = Integer.parseInt(properties.getProperty(id).trim());
+            list.add(new ItemPrice() {
+                @Override
+                public int getId() {
+                    return itemId;
+                }
+
+                @Override
+                public int getPrice() {
+                    return price;
+                }
+            });
+        }
+        prices.load(list.toArray(new ItemPrice[0]));
+        return prices;
+    }
+
+    private static Path path(String property) {
+        final String file = System.getProperty(property);
+        return file != null ? Paths.get(file) : null;
+    }
+}
@@ -0,0 +1,30 @@
+package com.sirebringo.autoclip;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Replays a recorded session of kills, drops and deaths with {@link TriggerEventReplay}, and expects the saves written
+ * when it was recorded. After a deliberate change to what the triggers clip, rewrite {@code session.saves} with the
+ * {@code replay} task and its {@code -Preplay.write} option.
+ */
+public class TriggerEventReplayTest {
+    @Test
+    public void startsTheRecordedSaves() throws Exception {
+        final TriggerEventReplay replay = new TriggerEventReplay(
+                ConfigSnapshot.of(TriggerEventReplay.loadConfig(resource("session.properties"))),
+                TriggerEventReplay.loadPrices(resource("session.prices")));
+
+        assertEquals(Files.readAllLines(resource("session.saves"), StandardCharsets.UTF_8),
+                replay.run(TriggerEventRecorder.read(resource("session.events"))));
+    }
+
+    private static Path resource(String name) throws Exception {
+        return Paths.get(TriggerEventReplayTest.class.getResource(name).toURI());
+    }
+}
@@ -0,0 +1,104 @@
+package com.sirebringo.autoclip;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TriggerJournalTest {
+    private Path file;
+
+    @Before
+    public void before() throws IOException {
+        file = Files.createTempDirectory("obs-auto-clip-test").resolve("journal").resolve("triggers.journal");
+    }
+
+    @Test
+    public void readsTriggersWithTheirOutcomes() throws Exception {
+        final TriggerJournal journal = new TriggerJournal(file);
+        journal.start();
+        final long kill = journal.recordTrigger(ClipCategory.BOSS_KILLS, "Vorkath(50)", 100, 302, 9023);
+        final long pet = journal.recordTrigger(ClipCategory.PETS, "Pet", 101, 302, 9023);
+        final long drop = journal.recordTrigger(ClipCategory.VALUABLE_DROPS, "Valuable drop", 102, 302, 9023);
+        journal.recordOutcome(ClipRequest.of(kill, "Vorkath(50)", ClipCategory.BOSS_KILLS)
+                .merge(ClipRequest.of(pet, "Pet", ClipCategory.PETS)), TriggerJournal.Outcome.SAVED, "/clips/Vorkath.mkv");
+        journal.recordOutcome(ClipRequest.of(drop, "Valuable drop", ClipCategory.VALUABLE_DROPS),
+                TriggerJournal.Outcome.DROPPED, "shutdown");
+        journal.stop(5, TimeUnit.SECONDS);
+
+        final List<TriggerJournal.Entry> entries = TriggerJournal.read(file);
+        assertEquals(3, entries.size());
+        final TriggerJournal.Entry first = entries.get(0);
+        assertEquals(kill, first.getId());
+        assertEquals(100, first.getTick());
+        assertEquals(ClipCategory.BOSS_KILLS, first.getCategory());
+        assertEquals("Vorkath(50)", first.getFileName());
+        assertEquals(302, first.getWorld());
+        assertEquals(9023, first.getRegionId());
+        assertEquals(TriggerJournal.Outcome.SAVED, first.getOutcome());
+        assertEquals("/clips/Vorkath.mkv", first.getOutcomeDetail());
+        assertEquals(TriggerJournal.Outcome.SAVED, entries.get(1).getOutcome());
+        assertEquals(TriggerJournal.Outcome.DROPPED, entries.get(2).getOutcome());
+        assertEquals("shutdown", entries.get(2).getOutcomeDetail());
+    }
+
+    @Test
+    public void appendsAcrossSessions() throws Exception {
+        for (String fileName : Arrays.asList("First", "Second")) {
+            final TriggerJournal journal = new TriggerJournal(file);
+            journal.start();
+            journal.recordTrigger(ClipCategory.PETS, fileName, 1, 302, 0);
+            journal.stop(5, TimeUnit.SECONDS);
+        }
+
+        final List<TriggerJournal.Entry> entries = TriggerJournal.read(file);
+        assertEquals(2, entries.size());
+        assertEquals("First", entries.get(0).getFileName());
+        assertNull(entries.get(0).getOutcome());
+        assertEquals("Second", entries.get(1).getFileName());
+        assertTrue(entries.get(0).getId() < entries.get(1).getId());
+    }
+
+    @Test
+    public void stopsAtATornRecord() throws Exception {
+        final TriggerJournal journal = new TriggerJournal(file);
+        journal.start();
+        journal.recordTrigger(ClipCategory.PETS, "Pet", 1, 302, 0);
+        journal.recordTrigger(ClipCategory.PETS, "Torn", 2, 302, 0);
+        journal.stop(5, TimeUnit.SECONDS);
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        final List<TriggerJournal.Entry> entries = TriggerJournal.read(file);
+        assertEquals(1, entries.size());
+        assertEquals("Pet", entries.get(0).getFileName());
+    }
+
+    @Test
+    public void stopsAtACorruptRecord() throws Exception {
+        final TriggerJournal journal = new TriggerJournal(file);
+        journal.start();
+        journal.recordTrigger(ClipCategory.PETS, "Pet", 1, 302, 0);
+        journal.stop(5, TimeUnit.SECONDS);
+        final byte[] bytes = Files.readAllBytes(file);
+        // same frame, with one payload byte flipped
+        bytes[5] ^= 1;
+        Files.write(file, bytes, StandardOpenOption.APPEND);
+
+        assertEquals(1, TriggerJournal.read(file).size());
+    }
+
+    @Test
+    public void readsAMissingJournalAsEmpty() throws Exception {
+        assertTrue(TriggerJournal.read(file).isEmpty());
+    }
+}